@@ -0,0 +1,170 @@
+package org.example.easychat.jmh;
+
+import org.example.easychat.Entity.User;
+import org.example.easychat.Mapper.UserMapper;
+import org.example.easychat.service.FriendGraphService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 好友关系判断基准测试：sendMsg 原来的 Mapper 路径与内存好友图对比
+ * Mapper 路径为两次 getUserById 加一次 getUserFriendsIds 后 List.contains，SQL 与 UserMapper 中一致，
+ * 在 H2 内存库上直接用 JDBC 执行（不含 MyBatis 映射开销和到 MySQL 的网络往返，结果偏向 Mapper 路径）。
+ * 接收方取好友列表中的最后一个，即 List.contains 的最坏情况。
+ *
+ * 运行：mvn -Pjmh compile exec:exec -Djmh.include=FriendGraphBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FriendGraphBenchmark {
+
+    private static final String SENDER_ID = "1000000000000000000";
+
+    @Param({"10", "1000", "10000"})
+    private int friends;
+
+    private Connection connection;
+    private FriendGraphService friendGraphService;
+    private String receiverId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:friends" + friends + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE users (id VARCHAR(19) PRIMARY KEY, username VARCHAR(64) NOT NULL, "
+                    + "nickname VARCHAR(64), status INT DEFAULT 1)");
+            statement.execute("CREATE TABLE user_friends (user_id VARCHAR(19) NOT NULL, friend_user_id VARCHAR(19) NOT NULL, "
+                    + "PRIMARY KEY (user_id, friend_user_id))");
+        }
+        try (PreparedStatement users = connection.prepareStatement("INSERT INTO users (id, username) VALUES (?, ?)");
+             PreparedStatement links = connection.prepareStatement("INSERT INTO user_friends (user_id, friend_user_id) VALUES (?, ?)")) {
+            users.setString(1, SENDER_ID);
+            users.setString(2, "sender");
+            users.addBatch();
+            for (int i = 1; i <= friends; i++) {
+                String friendId = String.valueOf(Long.parseLong(SENDER_ID) + i);
+                users.setString(1, friendId);
+                users.setString(2, "friend" + i);
+                users.addBatch();
+                links.setString(1, SENDER_ID);
+                links.setString(2, friendId);
+                links.addBatch();
+                receiverId = friendId;
+            }
+            users.executeBatch();
+            links.executeBatch();
+        }
+
+        friendGraphService = new FriendGraphService();
+        inject(friendGraphService, "userMapper", userMapper());
+        inject(friendGraphService, "listenerContainer", new RedisMessageListenerContainer());
+        inject(friendGraphService, "maxUsers", 100000);
+        inject(friendGraphService, "ttlMs", TimeUnit.HOURS.toMillis(1));
+        friendGraphService.init();
+        if (!friendGraphService.areFriends(SENDER_ID, receiverId)) {
+            throw new IllegalStateException("好友图加载结果与数据不一致");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    /**
+     * 原 sendMsg 路径：查询双方用户，再取发送者好友列表线性查找
+     */
+    @Benchmark
+    public boolean mapperPath() throws SQLException {
+        return getUserById(SENDER_ID) != null && getUserById(receiverId) != null
+                && getUserFriendsIds(SENDER_ID).contains(receiverId);
+    }
+
+    /**
+     * 内存好友图（已加载）
+     */
+    @Benchmark
+    public boolean friendGraph() {
+        return friendGraphService.areFriends(SENDER_ID, receiverId);
+    }
+
+    private User getUserById(String userId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select * from users where id = ? limit 1")) {
+            statement.setString(1, userId);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                User user = new User();
+                user.setId(rs.getString("id"));
+                user.setUsername(rs.getString("username"));
+                user.setNickName(rs.getString("nickname"));
+                return user;
+            }
+        }
+    }
+
+    private List<String> getUserFriendsIds(String userId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT friend_user_id FROM user_friends WHERE user_id = ?")) {
+            statement.setString(1, userId);
+            try (ResultSet rs = statement.executeQuery()) {
+                List<String> ids = new ArrayList<>();
+                while (rs.next()) {
+                    ids.add(rs.getString(1));
+                }
+                return ids;
+            }
+        }
+    }
+
+    /**
+     * 好友图加载时使用的 UserMapper，只实现 getUserFriendsIds
+     */
+    private UserMapper userMapper() {
+        return (UserMapper) Proxy.newProxyInstance(UserMapper.class.getClassLoader(), new Class<?>[]{UserMapper.class},
+                (proxy, method, args) -> {
+                    if ("getUserFriendsIds".equals(method.getName())) {
+                        return getUserFriendsIds((String) args[0]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static void inject(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
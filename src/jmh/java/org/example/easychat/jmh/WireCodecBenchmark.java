@@ -0,0 +1,105 @@
+package org.example.easychat.jmh;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.easychat.Config.SocketIOJsonSupport;
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Entity.GroupMessage;
+import org.example.easychat.utils.MessagePackCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 推送编码基准测试：典型单聊消息与群消息的 JSON 与 MessagePack 编解码耗时
+ * 使用与 Socket.IO 推送相同的 ObjectMapper（SocketIOJsonSupport），每轮开始时打印两种编码的字节数。
+ *
+ * 运行：mvn -Pjmh compile exec:exec -Djmh.include=WireCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireCodecBenchmark {
+
+    @Param({"receiveMsg", "receive_group_message"})
+    private String event;
+
+    private ObjectMapper objectMapper;
+    private Object[] payload;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        objectMapper = new SocketIOJsonSupport().getObjectMapper();
+        payload = new Object[]{"receiveMsg".equals(event) ? chatMessage() : groupMessage()};
+        json = objectMapper.writeValueAsBytes(payload);
+        binary = MessagePackCodec.encode(objectMapper.valueToTree(payload));
+        System.out.printf("%s: jsonBytes=%d, msgpackBytes=%d%n", event, json.length, binary.length);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() throws Exception {
+        return objectMapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public JsonNode jsonDecode() throws Exception {
+        return objectMapper.readTree(json);
+    }
+
+    /**
+     * 与 WireCodecService 相同：先转为 JSON 树再编码
+     */
+    @Benchmark
+    public byte[] msgpackEncode() {
+        return MessagePackCodec.encode(objectMapper.valueToTree(payload));
+    }
+
+    @Benchmark
+    public JsonNode msgpackDecode() {
+        return MessagePackCodec.decode(binary);
+    }
+
+    private static ChatHistory chatMessage() {
+        ChatHistory chat = new ChatHistory();
+        chat.setId("1873264512398745600");
+        chat.setSenderId("1873264512398745601");
+        chat.setReceiverId("1873264512398745602");
+        chat.setSessionId("1873264512398745601_1873264512398745602");
+        chat.setType(0);
+        chat.setContent("晚上一起吃饭吗？七点在老地方见");
+        chat.setHasRead(0);
+        chat.setShowTime(1);
+        chat.setCreateTime("2024-06-01 19:02:33");
+        chat.setSeq(1024L);
+        return chat;
+    }
+
+    private static GroupMessage groupMessage() {
+        GroupMessage group = new GroupMessage();
+        group.setGroupId("1873264512398745700");
+        group.setSenderId("1873264512398745601");
+        group.setContent("https://easychat.oss-cn-hangzhou.aliyuncs.com/images/2024/06/01/a1b2c3d4.png");
+        group.setMessageType("image");
+        group.setSentAt(new Timestamp(1717239753000L));
+        group.setMessageId("1873264512398745800");
+        group.setSenderUsername("alice2024");
+        return group;
+    }
+}
@@ -0,0 +1,544 @@
+package org.example.easychat.loadtest;
+
+import com.sun.management.OperatingSystemMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.example.easychat.EasychatApplication;
+import org.example.easychat.Entity.GroupMessage;
+import org.example.easychat.Mapper.GroupChatMapper;
+import org.example.easychat.service.ClusterRoutingService;
+import org.example.easychat.service.HandshakeAdmissionService;
+import org.example.easychat.service.OutboundFlowControlService;
+import org.example.easychat.service.SocketEventRateLimiter;
+import org.example.easychat.utils.JwtUtil;
+import org.example.easychat.utils.SnowflakeIdGenerator;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import redis.embedded.RedisServer;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.http.HttpClient;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Socket.IO 压测程序
+ * 在进程内启动完整服务（H2 内存库 + 嵌入式 Redis），生成测试用户、好友关系、群组和登录令牌，
+ * 用 N 个模拟客户端按配置的事件配比以固定总速率发送（开环，不等待上一条完成），
+ * 最后输出连接速率、吞吐、确认与投递延迟分位数，以及进程 CPU、堆内存和 GC 情况。
+ * 群消息只能通过上传文件的 HTTP 接口产生，这里在服务端直接走与之相同的落库 + 扇出路径注入。
+ * 场景 reconnect-burst 模拟发布后的重连洪峰：所有客户端不限并发同时握手（冷启动，令牌均未验证过），
+ * 全部连上后一起断开再同时重连（令牌已在已验证令牌缓存中），分别输出全部连上的耗时、连接延迟、
+ * 被推迟的握手次数和服务端握手准入指标。
+ *
+ * 运行：mvn -Ploadtest compile exec:java -Dloadtest.clients=2000 -Dloadtest.rate=5000 -Dloadtest.duration-seconds=60
+ * 参数（系统属性）：
+ *   loadtest.clients           模拟客户端数，默认 500
+ *   loadtest.rate              所有客户端合计每秒事件数，默认 2000
+ *   loadtest.mix               事件配比，默认 sendMsg:70,heartbeat:20,online:5,group:5
+ *   loadtest.duration-seconds  正式压测时长，默认 60
+ *   loadtest.warmup-seconds    预热时长（不计入统计），默认 10
+ *   loadtest.friends           每个用户的好友数，默认 10
+ *   loadtest.group-size        每个群的人数，默认 50
+ *   loadtest.connect-parallelism  同时进行中的握手数，默认 200
+ *   loadtest.drivers           发送线程数，默认 4
+ *   loadtest.http-clients      客户端 HttpClient 数（每个一个选择器线程），默认 4
+ *   loadtest.redis-port        嵌入式 Redis 端口，默认 6390
+ *   loadtest.scenario          压测场景：mix（按配比发送）或 reconnect-burst（重连洪峰），默认 mix
+ * 重连洪峰：mvn -Ploadtest compile exec:java -Dloadtest.scenario=reconnect-burst -Dloadtest.clients=50000
+ *   （需要先调高 ulimit -n，客户端与服务端连接都在本进程内，每个连接占两个文件描述符）
+ * 服务端按连接限流（chat.socket-limit.rules），单个客户端的各事件速率应低于对应规则，否则会被丢弃甚至断开。
+ */
+@Slf4j
+public class ChatLoadTest {
+
+    private static final long BASE_USER_ID = 1_000_000_000_000_000_000L;
+    private static final long BASE_SESSION_ID = 2_000_000_000_000_000_000L;
+    private static final String HOST = "127.0.0.1";
+
+    private final int clientCount = Integer.getInteger("loadtest.clients", 500);
+    private final int rate = Integer.getInteger("loadtest.rate", 2000);
+    private final String mix = System.getProperty("loadtest.mix", "sendMsg:70,heartbeat:20,online:5,group:5");
+    private final int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 60);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 10);
+    private final int friendsPerUser = Integer.getInteger("loadtest.friends", 10);
+    private final int groupSize = Integer.getInteger("loadtest.group-size", 50);
+    private final int connectParallelism = Integer.getInteger("loadtest.connect-parallelism", 200);
+    private final int driverCount = Integer.getInteger("loadtest.drivers", 4);
+    private final int httpClientCount = Integer.getInteger("loadtest.http-clients", 4);
+    private final int redisPort = Integer.getInteger("loadtest.redis-port", 6390);
+    private final String scenario = System.getProperty("loadtest.scenario", "mix");
+
+    private final LoadMetrics metrics = new LoadMetrics();
+    private final List<SimulatedClient> clients = new ArrayList<>();
+    // 群ID -> 成员ID
+    private final Map<String, List<String>> groups = new LinkedHashMap<>();
+
+    private ConfigurableApplicationContext context;
+    private HttpClient[] httpClients;
+    // userId -> 登录令牌
+    private final Map<String, String> tokens = new HashMap<>();
+    private String[] actions;
+    private int[] cumulativeWeights;
+    private volatile boolean running;
+
+    private final LongAdder groupInjectFailures = new LongAdder();
+    private final CpuSampler cpuSampler = new CpuSampler();
+
+    public static void main(String[] args) throws Exception {
+        int code = 0;
+        try {
+            new ChatLoadTest().run();
+        } catch (Exception e) {
+            log.error("压测失败", e);
+            code = 1;
+        }
+        System.exit(code);
+    }
+
+    private void run() throws Exception {
+        parseMix();
+        RedisServer redis = new RedisServer(redisPort);
+        redis.start();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, named("loadtest-scheduler"));
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), named("loadtest-client"));
+        ExecutorService groupInjector = Executors.newFixedThreadPool(2, named("loadtest-group"));
+        try {
+            context = new SpringApplicationBuilder(EasychatApplication.class)
+                    .profiles("loadtest")
+                    .run("--spring.redis.port=" + redisPort);
+
+            seed();
+            prepareConnections(clientExecutor);
+            if ("reconnect-burst".equals(scenario)) {
+                reconnectBurst(scheduler);
+                return;
+            }
+            connectAll(scheduler, connectParallelism, metrics);
+
+            scheduler.scheduleAtFixedRate(cpuSampler::sample, 1, 1, TimeUnit.SECONDS);
+            List<Thread> drivers = startDrivers(groupInjector);
+            log.info("预热 {} 秒...", warmupSeconds);
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+            metrics.reset();
+            cpuSampler.reset();
+            long measureStart = System.nanoTime();
+            log.info("正式压测 {} 秒...", durationSeconds);
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            running = false;
+            for (Thread driver : drivers) {
+                driver.join();
+            }
+            double elapsed = (System.nanoTime() - measureStart) / 1e9;
+            // 等待在途消息投递完
+            TimeUnit.SECONDS.sleep(2);
+            report(elapsed);
+        } finally {
+            clients.forEach(SimulatedClient::close);
+            scheduler.shutdownNow();
+            groupInjector.shutdownNow();
+            if (context != null) {
+                context.close();
+            }
+            clientExecutor.shutdownNow();
+            redis.stop();
+        }
+    }
+
+    private void parseMix() {
+        String[] parts = mix.split(",");
+        actions = new String[parts.length];
+        cumulativeWeights = new int[parts.length];
+        int total = 0;
+        for (int i = 0; i < parts.length; i++) {
+            String[] kv = parts[i].trim().split(":");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("无效的事件配比: " + parts[i]);
+            }
+            actions[i] = kv[0];
+            total += Integer.parseInt(kv[1]);
+            cumulativeWeights[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("事件配比权重之和必须大于 0: " + mix);
+        }
+    }
+
+    /**
+     * 生成用户、环形好友关系（每人与前后各 friends/2 个用户互为好友）、连续分段的群组和登录令牌
+     */
+    private void seed() {
+        long start = System.nanoTime();
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        List<String> userIds = new ArrayList<>(clientCount);
+        List<Object[]> users = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            String id = String.valueOf(BASE_USER_ID + i);
+            userIds.add(id);
+            users.add(new Object[]{id, "lt" + i, "压测用户" + i});
+        }
+        jdbc.batchUpdate("INSERT INTO users (id, username, nickname, status) VALUES (?, ?, ?, 1)", users);
+
+        int half = Math.max(1, Math.min(friendsPerUser / 2, (clientCount - 1) / 2));
+        List<List<String>> friendIds = new ArrayList<>(clientCount);
+        List<List<String>> sessionIds = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            friendIds.add(new ArrayList<>());
+            sessionIds.add(new ArrayList<>());
+        }
+        List<Object[]> friendships = new ArrayList<>();
+        long session = BASE_SESSION_ID;
+        for (int i = 0; i < clientCount && clientCount > 1; i++) {
+            for (int d = 1; d <= half; d++) {
+                int j = (i + d) % clientCount;
+                String sessionId = String.valueOf(session++);
+                friendships.add(new Object[]{userIds.get(i), userIds.get(j), sessionId});
+                friendships.add(new Object[]{userIds.get(j), userIds.get(i), sessionId});
+                friendIds.get(i).add(userIds.get(j));
+                sessionIds.get(i).add(sessionId);
+                friendIds.get(j).add(userIds.get(i));
+                sessionIds.get(j).add(sessionId);
+            }
+        }
+        jdbc.batchUpdate("INSERT INTO user_friends (user_id, friend_user_id, session_id, create_time) VALUES (?, ?, ?, NOW())",
+                friendships);
+
+        List<Object[]> groupRows = new ArrayList<>();
+        List<Object[]> memberRows = new ArrayList<>();
+        for (int from = 0, g = 1; from < clientCount; from += groupSize, g++) {
+            String groupId = String.valueOf(g);
+            List<String> members = userIds.subList(from, Math.min(from + groupSize, clientCount));
+            groups.put(groupId, members);
+            groupRows.add(new Object[]{g, "压测群" + g, members.get(0)});
+            for (String member : members) {
+                memberRows.add(new Object[]{g, member, member.equals(members.get(0)) ? "owner" : "member"});
+            }
+        }
+        jdbc.batchUpdate("INSERT INTO `groups` (group_id, group_name, owner_id) VALUES (?, ?, ?)", groupRows);
+        jdbc.batchUpdate("INSERT INTO group_members (group_id, user_id, role, created_at) VALUES (?, ?, ?, NOW())", memberRows);
+
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(new SimulatedClient(userIds.get(i), friendIds.get(i), sessionIds.get(i), metrics));
+        }
+        log.info("测试数据已生成: users={}, friendships={}, groups={}, elapsedMs={}",
+                clientCount, friendships.size(), groups.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 生成令牌并写入 Redis，创建客户端使用的 HttpClient
+     */
+    private void prepareConnections(ExecutorService clientExecutor) {
+        JwtUtil jwtUtil = context.getBean(JwtUtil.class);
+        StringRedisTemplate redisTemplate = context.getBean(StringRedisTemplate.class);
+        Map<String, String> tokenKeys = new HashMap<>();
+        for (SimulatedClient client : clients) {
+            String token = jwtUtil.generateToken(client.userId);
+            tokens.put(client.userId, token);
+            tokenKeys.put("userToken:" + client.userId, token);
+        }
+        redisTemplate.opsForValue().multiSet(tokenKeys);
+
+        httpClients = new HttpClient[Math.max(1, httpClientCount)];
+        for (int i = 0; i < httpClients.length; i++) {
+            httpClients[i] = HttpClient.newBuilder().executor(clientExecutor).build();
+        }
+    }
+
+    /**
+     * 建立所有连接，限制同时进行的握手数，连接失败的客户端从列表中移除
+     * @return 全部连接完成（或失败）的耗时（秒）
+     */
+    private double connectAll(ScheduledExecutorService scheduler, int parallelism, LoadMetrics connectMetrics) throws Exception {
+        int port = context.getEnvironment().getProperty("chat.socketio.port", Integer.class, 8082);
+        Semaphore inFlight = new Semaphore(parallelism);
+        AtomicInteger failed = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(clients.size());
+        long start = System.nanoTime();
+        for (int i = 0; i < clients.size(); i++) {
+            inFlight.acquire();
+            CompletableFuture<Void> future = clients.get(i)
+                    .connect(httpClients[i % httpClients.length], HOST, port, tokens.get(clients.get(i).userId), scheduler)
+                    .whenComplete((v, ex) -> {
+                        inFlight.release();
+                        if (ex != null) {
+                            failed.incrementAndGet();
+                        }
+                    });
+            futures.add(future);
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            log.warn("部分连接失败: {}", e.getMessage());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        List<SimulatedClient> connected = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            if (!futures.get(i).isCompletedExceptionally()) {
+                connected.add(clients.get(i));
+            }
+        }
+        log.info("连接完成: connected={}, failed={}, deferred={}, seconds={}, connectsPerSec={}, p50Ms={}, p99Ms={}",
+                connected.size(), failed.get(), connectMetrics.connectDeferred.sum(), String.format("%.2f", seconds),
+                String.format("%.0f", connected.size() / seconds),
+                millis(connectMetrics.connectLatency.percentile(0.50)), millis(connectMetrics.connectLatency.percentile(0.99)));
+        if (connected.isEmpty()) {
+            throw new IllegalStateException("没有客户端连接成功");
+        }
+        clients.clear();
+        clients.addAll(connected);
+        return seconds;
+    }
+
+    /**
+     * 重连洪峰：冷启动时所有客户端同时握手，全部断开后再同时重连一次
+     */
+    private void reconnectBurst(ScheduledExecutorService scheduler) throws Exception {
+        HandshakeAdmissionService admission = context.getBean(HandshakeAdmissionService.class);
+        StringBuilder out = new StringBuilder("\n========== 重连洪峰报告 ==========\n");
+        out.append(String.format("客户端: %d, 服务端准入: %s%n", clients.size(), admission.getStats()));
+        for (String phase : new String[]{"冷启动", "断开后重连"}) {
+            // 每一轮用新的客户端对象与统计
+            LoadMetrics phaseMetrics = new LoadMetrics();
+            List<SimulatedClient> fresh = new ArrayList<>(clients.size());
+            for (SimulatedClient client : clients) {
+                fresh.add(new SimulatedClient(client.userId, client.friendIds, client.sessionIds, phaseMetrics));
+            }
+            clients.clear();
+            clients.addAll(fresh);
+
+            Map<String, Object> before = admission.getStats();
+            log.info("{}: {} 个客户端同时握手...", phase, clients.size());
+            double seconds = connectAll(scheduler, Integer.MAX_VALUE, phaseMetrics);
+            Map<String, Object> after = admission.getStats();
+            out.append(String.format("%s: 全部连上 %.2fs, 连上 %d/%d, 客户端重试 %d 次, 断开 %d%n", phase, seconds,
+                    clients.size(), fresh.size(), phaseMetrics.connectDeferred.sum(), phaseMetrics.disconnects.sum()));
+            out.append(String.format("  连接延迟(ms): p50=%s p99=%s max=%s%n", millis(phaseMetrics.connectLatency.percentile(0.5)),
+                    millis(phaseMetrics.connectLatency.percentile(0.99)), millis(phaseMetrics.connectLatency.max())));
+            out.append("  服务端准入增量: ");
+            for (String key : new String[]{"admittedVerified", "admittedNew", "deferred", "rejected", "authFailed"}) {
+                out.append(key).append('=').append((long) after.get(key) - (long) before.get(key)).append(' ');
+            }
+            out.append('\n');
+
+            clients.forEach(SimulatedClient::close);
+            // 等待服务端处理完断开
+            TimeUnit.SECONDS.sleep(3);
+        }
+        out.append("（客户端重试次数为收到 503 后按建议时间重试的次数）\n");
+        log.info(out.toString());
+    }
+
+    /**
+     * 启动发送线程：每个线程按 rate / drivers 的固定间隔发送
+     */
+    private List<Thread> startDrivers(ExecutorService groupInjector) {
+        running = true;
+        GroupChatMapper groupChatMapper = context.getBean(GroupChatMapper.class);
+        ClusterRoutingService routingService = context.getBean(ClusterRoutingService.class);
+        SnowflakeIdGenerator idGenerator = context.getBean(SnowflakeIdGenerator.class);
+        List<String> groupIds = new ArrayList<>(groups.keySet());
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) * driverCount / Math.max(1, rate);
+        List<Thread> drivers = new ArrayList<>();
+        for (int d = 0; d < driverCount; d++) {
+            SplittableRandom random = new SplittableRandom(d);
+            Thread driver = new Thread(() -> {
+                long next = System.nanoTime();
+                while (running) {
+                    SimulatedClient client = clients.get(random.nextInt(clients.size()));
+                    switch (pickAction(random)) {
+                        case "sendMsg":
+                            if (!client.friendIds.isEmpty()) {
+                                client.sendMessage(random.nextInt(client.friendIds.size()));
+                            }
+                            break;
+                        case "heartbeat":
+                            client.heartbeat();
+                            break;
+                        case "online":
+                            client.online();
+                            break;
+                        case "group":
+                            String groupId = groupIds.get(random.nextInt(groupIds.size()));
+                            groupInjector.execute(() -> injectGroupMessage(groupChatMapper, routingService, idGenerator, groupId));
+                            break;
+                        default:
+                            break;
+                    }
+                    next += intervalNanos;
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    } else if (-wait > TimeUnit.SECONDS.toNanos(1)) {
+                        // 发送端落后超过 1 秒时不再追赶，避免瞬时突发
+                        next = System.nanoTime();
+                    }
+                }
+            }, "loadtest-driver-" + d);
+            driver.start();
+            drivers.add(driver);
+        }
+        return drivers;
+    }
+
+    private String pickAction(SplittableRandom random) {
+        int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (r < cumulativeWeights[i]) {
+                return actions[i];
+            }
+        }
+        return actions[actions.length - 1];
+    }
+
+    /**
+     * 与 GroupChatService.sendImage 相同的路径：落库后查成员，所有成员共用同一参数扇出
+     */
+    private void injectGroupMessage(GroupChatMapper groupChatMapper, ClusterRoutingService routingService,
+                                    SnowflakeIdGenerator idGenerator, String groupId) {
+        try {
+            List<String> members = groups.get(groupId);
+            GroupMessage message = new GroupMessage();
+            message.setMessageId(idGenerator.nextIdStr());
+            message.setGroupId(groupId);
+            message.setSenderId(members.get(0));
+            message.setSenderUsername("lt-group");
+            message.setMessageType("text");
+            message.setSentAt(new Timestamp(System.currentTimeMillis()));
+            message.setContent(LoadMetrics.STAMP_PREFIX + System.nanoTime());
+            groupChatMapper.insertGroupMessage(message);
+
+            Object[] args = {message};
+            Map<String, Object[]> payloads = new HashMap<>();
+            for (String memberId : groupChatMapper.getGroupMemberIds(groupId)) {
+                payloads.put(memberId, args);
+            }
+            routingService.sendToUsers("receive_group_message", payloads);
+            metrics.recordSent("group");
+        } catch (Exception e) {
+            groupInjectFailures.increment();
+        }
+    }
+
+    private void report(double seconds) {
+        long sendMsg = metrics.sentCount("sendMsg");
+        Map<String, Long> sent = new LinkedHashMap<>();
+        metrics.sent.forEach((event, count) -> sent.put(event, count.sum()));
+        Map<String, Long> acks = new LinkedHashMap<>();
+        metrics.ackStatus.forEach((status, count) -> acks.put(status, count.sum()));
+
+        StringBuilder out = new StringBuilder("\n========== 压测报告 ==========\n");
+        out.append(String.format("客户端: %d, 时长: %.1fs, 目标速率: %d/s, 配比: %s%n", clients.size(), seconds, rate, mix));
+        out.append(String.format("连接延迟(ms): p50=%s p99=%s max=%s%n", millis(metrics.connectLatency.percentile(0.5)),
+                millis(metrics.connectLatency.percentile(0.99)), millis(metrics.connectLatency.max())));
+        out.append(String.format("已发送: %s, 合计 %.0f/s%n", sent, sent.values().stream().mapToLong(Long::longValue).sum() / seconds));
+        out.append(String.format("单聊: 发送 %.0f/s, 投递 %.0f/s (%d/%d), 确认 %s%n", sendMsg / seconds,
+                metrics.delivered.sum() / seconds, metrics.delivered.sum(), sendMsg, acks));
+        out.append(latencyLine("单聊确认延迟", metrics.ackLatency));
+        out.append(latencyLine("单聊投递延迟", metrics.deliveryLatency));
+        out.append(String.format("群聊: 注入 %d 条, 投递 %.0f/s (%d 次), 注入失败 %d%n", metrics.sentCount("group"),
+                metrics.groupDelivered.sum() / seconds, metrics.groupDelivered.sum(), groupInjectFailures.sum()));
+        out.append(latencyLine("群聊投递延迟", metrics.groupDeliveryLatency));
+        out.append(String.format("异常: 断开 %d, 发送失败 %d, 协议错误 %d%n", metrics.disconnects.sum(),
+                metrics.sendFailures.sum(), metrics.protocolErrors.sum()));
+        out.append(cpuSampler.summary());
+        out.append("服务端限流: ").append(context.getBean(SocketEventRateLimiter.class).getStats()).append('\n');
+        out.append("服务端出站流控: ").append(context.getBean(OutboundFlowControlService.class).getStats()).append('\n');
+        out.append("（CPU 与堆内存为整个进程，包含模拟客户端）\n");
+        log.info(out.toString());
+    }
+
+    private static String latencyLine(String name, LatencyHistogram histogram) {
+        return String.format("%s(ms): n=%d mean=%s p50=%s p99=%s p999=%s max=%s%n", name, histogram.count(),
+                millis((long) histogram.mean()), millis(histogram.percentile(0.5)), millis(histogram.percentile(0.99)),
+                millis(histogram.percentile(0.999)), millis(histogram.max()));
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+
+    private static ThreadFactory named(String prefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + seq.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 每秒采样一次进程 CPU、堆内存，并统计 GC 次数与耗时
+     */
+    private static class CpuSampler {
+        private final OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private double cpuSum;
+        private double cpuMax;
+        private int samples;
+        private long heapMax;
+        private long gcCountStart;
+        private long gcTimeStart;
+
+        synchronized void sample() {
+            double cpu = os.getProcessCpuLoad();
+            if (cpu >= 0) {
+                cpuSum += cpu;
+                cpuMax = Math.max(cpuMax, cpu);
+                samples++;
+            }
+            heapMax = Math.max(heapMax, memory.getHeapMemoryUsage().getUsed());
+        }
+
+        synchronized void reset() {
+            cpuSum = 0;
+            cpuMax = 0;
+            samples = 0;
+            heapMax = 0;
+            gcCountStart = gcCount();
+            gcTimeStart = gcTime();
+        }
+
+        synchronized String summary() {
+            return String.format("进程 CPU: 平均 %.1f%% 峰值 %.1f%% (%d 核), 堆内存峰值 %d MB / 上限 %d MB, GC %d 次共 %d ms%n",
+                    samples > 0 ? cpuSum / samples * 100 : 0, cpuMax * 100, os.getAvailableProcessors(),
+                    heapMax >> 20, memory.getHeapMemoryUsage().getMax() >> 20,
+                    gcCount() - gcCountStart, gcTime() - gcTimeStart);
+        }
+
+        private static long gcCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+            }
+            return count;
+        }
+
+        private static long gcTime() {
+            long time = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                time += Math.max(0, gc.getCollectionTime());
+            }
+            return time;
+        }
+    }
+}
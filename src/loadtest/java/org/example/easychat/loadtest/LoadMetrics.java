@@ -0,0 +1,80 @@
+package org.example.easychat.loadtest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测过程中客户端侧统计
+ */
+public class LoadMetrics {
+
+    // 消息内容前缀，后接发送时的 System.nanoTime()，接收端据此计算投递延迟
+    public static final String STAMP_PREFIX = "lt:";
+
+    final LatencyHistogram connectLatency = new LatencyHistogram();
+    final LatencyHistogram ackLatency = new LatencyHistogram();
+    final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    final LatencyHistogram groupDeliveryLatency = new LatencyHistogram();
+
+    final Map<String, LongAdder> sent = new ConcurrentHashMap<>();
+    final Map<String, LongAdder> ackStatus = new ConcurrentHashMap<>();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder groupDelivered = new LongAdder();
+    final LongAdder sendFailures = new LongAdder();
+    final LongAdder protocolErrors = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    // 握手被服务端准入控制推迟后重试的次数
+    final LongAdder connectDeferred = new LongAdder();
+
+    void recordSent(String event) {
+        sent.computeIfAbsent(event, k -> new LongAdder()).increment();
+    }
+
+    void recordAck(String status, long sentAtNanos) {
+        ackStatus.computeIfAbsent(status, k -> new LongAdder()).increment();
+        ackLatency.record((System.nanoTime() - sentAtNanos) / 1000);
+    }
+
+    /**
+     * 根据消息内容中的发送时间戳记录投递延迟，非压测消息忽略
+     */
+    void recordDelivery(String content, boolean group) {
+        if (content == null || !content.startsWith(STAMP_PREFIX)) {
+            return;
+        }
+        long sentAt;
+        try {
+            sentAt = Long.parseLong(content.substring(STAMP_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        long micros = (System.nanoTime() - sentAt) / 1000;
+        if (group) {
+            groupDelivered.increment();
+            groupDeliveryLatency.record(micros);
+        } else {
+            delivered.increment();
+            deliveryLatency.record(micros);
+        }
+    }
+
+    long sentCount(String event) {
+        LongAdder adder = sent.get(event);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    /**
+     * 预热结束后清零，只统计正式压测阶段
+     */
+    void reset() {
+        ackLatency.reset();
+        deliveryLatency.reset();
+        groupDeliveryLatency.reset();
+        sent.values().forEach(LongAdder::reset);
+        ackStatus.values().forEach(LongAdder::reset);
+        delivered.reset();
+        groupDelivered.reset();
+        sendFailures.reset();
+    }
+}
@@ -0,0 +1,260 @@
+package org.example.easychat.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.example.easychat.service.HandshakeAdmissionService;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 模拟客户端
+ * 直接用 JDK WebSocket 按 Engine.IO v3 / Socket.IO v2 文本协议收发（与服务端 netty-socketio 一致），
+ * 每个客户端只占一条连接，不额外起线程；同一连接上的发送按顺序串接。
+ */
+class SimulatedClient implements WebSocket.Listener {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    final String userId;
+    // 好友ID与对应的会话ID，下标一一对应
+    final List<String> friendIds;
+    final List<String> sessionIds;
+
+    private final LoadMetrics metrics;
+    private final CompletableFuture<Void> authenticated = new CompletableFuture<>();
+    private final ConcurrentHashMap<Integer, Long> pendingAcks = new ConcurrentHashMap<>();
+    private final AtomicInteger ackIds = new AtomicInteger();
+    private final StringBuilder partial = new StringBuilder();
+
+    private CompletableFuture<WebSocket> sendChain;
+    private ScheduledFuture<?> pinger;
+    private volatile boolean closing;
+    private long connectStartNanos;
+
+    SimulatedClient(String userId, List<String> friendIds, List<String> sessionIds, LoadMetrics metrics) {
+        this.userId = userId;
+        this.friendIds = friendIds;
+        this.sessionIds = sessionIds;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 发起连接，收到服务端的 authenticated 事件后完成
+     * 握手被准入控制推迟（503）时按服务端建议的时间重试，连接延迟从第一次尝试算起
+     */
+    CompletableFuture<Void> connect(HttpClient http, String host, int port, String token, ScheduledExecutorService scheduler) {
+        connectStartNanos = System.nanoTime();
+        URI uri = URI.create("ws://" + host + ":" + port + "/socket.io/?EIO=3&transport=websocket&token="
+                + URLEncoder.encode(token, StandardCharsets.UTF_8));
+        open(http, uri, scheduler);
+        return authenticated.thenRun(() -> {
+            metrics.connectLatency.record((System.nanoTime() - connectStartNanos) / 1000);
+            // Engine.IO v3 由客户端发 ping，服务端超过 pingInterval + pingTimeout 未收到即断开
+            pinger = scheduler.scheduleAtFixedRate(() -> sendText("2"), 20, 20, TimeUnit.SECONDS);
+        });
+    }
+
+    private void open(HttpClient http, URI uri, ScheduledExecutorService scheduler) {
+        CompletableFuture<WebSocket> opening = http.newWebSocketBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .buildAsync(uri, this);
+        synchronized (this) {
+            sendChain = opening;
+        }
+        opening.whenComplete((ws, ex) -> {
+            if (ex == null) {
+                return;
+            }
+            long retryAfterMs = retryAfterMs(ex);
+            if (retryAfterMs > 0 && !closing) {
+                metrics.connectDeferred.increment();
+                scheduler.schedule(() -> open(http, uri, scheduler), retryAfterMs, TimeUnit.MILLISECONDS);
+            } else {
+                authenticated.completeExceptionally(ex);
+            }
+        });
+    }
+
+    /**
+     * 握手被推迟时服务端建议的重试时间（毫秒），其他失败返回 0
+     */
+    private static long retryAfterMs(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (!(cause instanceof WebSocketHandshakeException)) {
+            return 0;
+        }
+        HttpResponse<?> response = ((WebSocketHandshakeException) cause).getResponse();
+        if (response.statusCode() != 503) {
+            return 0;
+        }
+        return response.headers().firstValueAsLong(HandshakeAdmissionService.RETRY_AFTER_MS_HEADER)
+                .orElse(response.headers().firstValueAsLong("Retry-After").orElse(1) * 1000);
+    }
+
+    /**
+     * 单聊消息，带确认回调
+     */
+    void sendMessage(int friendIndex) {
+        ObjectNode message = MAPPER.createObjectNode();
+        message.put("senderId", userId);
+        message.put("receiverId", friendIds.get(friendIndex));
+        message.put("sessionId", sessionIds.get(friendIndex));
+        message.put("type", 0);
+        message.put("content", LoadMetrics.STAMP_PREFIX + System.nanoTime());
+        message.put("showTime", 0);
+        int ackId = ackIds.incrementAndGet();
+        message.put("clientMsgId", userId + "-" + ackId);
+        pendingAcks.put(ackId, System.nanoTime());
+        emit("sendMsg", ackId, message);
+    }
+
+    void heartbeat() {
+        emit("heartbeat", -1, MAPPER.createObjectNode());
+    }
+
+    void online() {
+        emit("online", -1, MAPPER.getNodeFactory().textNode(userId), MAPPER.getNodeFactory().numberNode(1));
+    }
+
+    void close() {
+        closing = true;
+        if (pinger != null) {
+            pinger.cancel(false);
+        }
+        synchronized (this) {
+            sendChain.thenAccept(ws -> ws.sendClose(WebSocket.NORMAL_CLOSURE, "done"));
+        }
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        if (!last) {
+            partial.append(data);
+        } else if (partial.length() > 0) {
+            partial.append(data);
+            onPacket(partial.toString());
+            partial.setLength(0);
+        } else {
+            onPacket(data.toString());
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        disconnected(new IllegalStateException("连接关闭: " + statusCode + " " + reason));
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        disconnected(error);
+    }
+
+    private void disconnected(Throwable cause) {
+        if (pinger != null) {
+            pinger.cancel(false);
+        }
+        if (!closing) {
+            metrics.disconnects.increment();
+        }
+        authenticated.completeExceptionally(cause);
+    }
+
+    /**
+     * 处理一个 Engine.IO 包：只关心 Socket.IO 的事件（42）与确认（43），其余（open、pong、connect）忽略
+     */
+    private void onPacket(String packet) {
+        if (packet.length() < 3 || packet.charAt(0) != '4') {
+            return;
+        }
+        try {
+            if (packet.charAt(1) == '2') {
+                onEvent((ArrayNode) MAPPER.readTree(packet.substring(2)));
+            } else if (packet.charAt(1) == '3') {
+                int open = packet.indexOf('[');
+                onAck(Integer.parseInt(packet.substring(2, open)), (ArrayNode) MAPPER.readTree(packet.substring(open)));
+            }
+        } catch (Exception e) {
+            metrics.protocolErrors.increment();
+        }
+    }
+
+    private void onEvent(ArrayNode args) {
+        switch (args.get(0).asText()) {
+            case "authenticated":
+                authenticated.complete(null);
+                break;
+            case "error":
+                authenticated.completeExceptionally(new IllegalStateException("认证失败: " + args.path(1).asText()));
+                break;
+            case "receiveMsg":
+                metrics.recordDelivery(args.path(1).path("content").asText(null), false);
+                break;
+            case "receive_group_message":
+                metrics.recordDelivery(args.path(1).path("content").asText(null), true);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 发送确认：成功为 (消息, "")，失败为 ("busy") / ("error") / (null, "notFriend")
+     */
+    private void onAck(int ackId, ArrayNode args) {
+        Long sentAt = pendingAcks.remove(ackId);
+        if (sentAt == null) {
+            return;
+        }
+        JsonNode first = args.path(0);
+        String status = first.isTextual() ? first.asText() : args.path(1).asText("");
+        metrics.recordAck(status.isEmpty() ? "ok" : status, sentAt);
+    }
+
+    private void emit(String event, int ackId, JsonNode... args) {
+        ArrayNode packet = MAPPER.createArrayNode();
+        packet.add(event);
+        for (JsonNode arg : args) {
+            packet.add(arg);
+        }
+        sendText("42" + (ackId >= 0 ? String.valueOf(ackId) : "") + packet);
+        metrics.recordSent(event);
+    }
+
+    /**
+     * JDK WebSocket 不允许上一次发送完成前再次发送，这里把发送串成链
+     */
+    private synchronized void sendText(String text) {
+        sendChain = sendChain.thenCompose(ws -> ws.sendText(text, true));
+        sendChain.whenComplete((ws, ex) -> {
+            if (ex != null) {
+                metrics.sendFailures.increment();
+            }
+        });
+    }
+}
@@ -0,0 +1,131 @@
+-- 压测用表结构（H2 MySQL 兼容模式），只包含消息收发路径用到的表和列
+
+CREATE TABLE IF NOT EXISTS users (
+    id VARCHAR(19) PRIMARY KEY,
+    username VARCHAR(64) NOT NULL,
+    nickname VARCHAR(64),
+    password VARCHAR(128),
+    email VARCHAR(128),
+    phone VARCHAR(32),
+    avatar VARCHAR(255),
+    gender VARCHAR(8),
+    birthday VARCHAR(32),
+    region VARCHAR(64),
+    introduction VARCHAR(255),
+    status INT DEFAULT 1,
+    tags VARCHAR(255),
+    create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS user_friends (
+    user_id VARCHAR(19) NOT NULL,
+    friend_user_id VARCHAR(19) NOT NULL,
+    friend_remark VARCHAR(64),
+    session_id VARCHAR(19),
+    session_time DATETIME,
+    create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, friend_user_id)
+);
+
+CREATE TABLE IF NOT EXISTS friend_verifies (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    sender_id VARCHAR(19),
+    receiver_id VARCHAR(19),
+    message VARCHAR(255),
+    status INT DEFAULT 0,
+    create_time DATETIME DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS chat_histories (
+    id VARCHAR(19) PRIMARY KEY,
+    sender_id VARCHAR(19),
+    receiver_id VARCHAR(19),
+    session_id VARCHAR(19),
+    type INT,
+    content TEXT,
+    has_read INT DEFAULT 0,
+    show_time INT,
+    create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
+    seq BIGINT
+);
+CREATE INDEX IF NOT EXISTS idx_chat_histories_session_seq ON chat_histories (session_id, seq);
+CREATE INDEX IF NOT EXISTS idx_chat_histories_session_time ON chat_histories (session_id, create_time, id);
+
+CREATE TABLE IF NOT EXISTS conversation_summaries (
+    user_id VARCHAR(19) NOT NULL,
+    session_id VARCHAR(19) NOT NULL,
+    peer_id VARCHAR(19) NOT NULL,
+    last_message_id VARCHAR(19),
+    last_sender_id VARCHAR(19),
+    last_receiver_id VARCHAR(19),
+    last_type INT,
+    last_content TEXT,
+    last_show_time INT,
+    last_time DATETIME,
+    unread_count INT NOT NULL DEFAULT 0,
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, session_id)
+);
+
+CREATE TABLE IF NOT EXISTS user_status (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id VARCHAR(19) NOT NULL UNIQUE,
+    status VARCHAR(20) NOT NULL DEFAULT 'offline',
+    last_active_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    socket_id VARCHAR(100),
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS special_attention (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id VARCHAR(19) NOT NULL,
+    target_user_id VARCHAR(19) NOT NULL,
+    online_notification TINYINT NOT NULL DEFAULT 1,
+    offline_notification TINYINT NOT NULL DEFAULT 1,
+    message_notification TINYINT NOT NULL DEFAULT 1,
+    status_change_notification TINYINT NOT NULL DEFAULT 1,
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE (user_id, target_user_id)
+);
+
+CREATE TABLE IF NOT EXISTS attention_notifications (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id VARCHAR(19) NOT NULL,
+    target_user_id VARCHAR(19) NOT NULL,
+    notification_type VARCHAR(50) NOT NULL,
+    content TEXT NOT NULL,
+    is_read TINYINT NOT NULL DEFAULT 0,
+    priority TINYINT NOT NULL DEFAULT 1,
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    read_time DATETIME
+);
+
+CREATE TABLE IF NOT EXISTS `groups` (
+    group_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    group_name VARCHAR(64),
+    owner_id VARCHAR(19),
+    announcement VARCHAR(255),
+    avatar VARCHAR(255),
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS group_members (
+    group_id BIGINT NOT NULL,
+    user_id VARCHAR(19) NOT NULL,
+    role VARCHAR(16) DEFAULT 'member',
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (group_id, user_id)
+);
+
+CREATE TABLE IF NOT EXISTS group_messages (
+    message_id VARCHAR(19) PRIMARY KEY,
+    group_id BIGINT NOT NULL,
+    sender_id VARCHAR(19),
+    content TEXT,
+    message_type VARCHAR(16),
+    sent_at TIMESTAMP,
+    sender_username VARCHAR(64)
+);
@@ -1,12 +1,14 @@
 package org.example.easychat.Config;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 
 /**
@@ -16,6 +18,10 @@ import java.util.concurrent.ThreadPoolExecutor;
 @Configuration
 @EnableAsync
 public class AsyncConfig {
+
+    // 消息落库事件处理线程池的队列容量（按批次计）
+    @Value("${chat.persistence.listener-queue-capacity:1000}")
+    private int persistedEventQueueCapacity;
     
     /**
      * 通知处理线程池
@@ -148,4 +154,51 @@ public class AsyncConfig {
         
         return executor;
     }
-}
\ No newline at end of file
+
+    /**
+     * 会话摘要与未读数更新线程池（消息落库事件、已读扣减与未读缓存重建）
+     */
+    @Bean("summaryEventExecutor")
+    public Executor summaryEventExecutor() {
+        return persistedEventExecutor("persisted-summary-");
+    }
+
+    /**
+     * 热窗口追加线程池（消息落库事件）
+     */
+    @Bean("hotWindowEventExecutor")
+    public Executor hotWindowEventExecutor() {
+        return persistedEventExecutor("persisted-hot-window-");
+    }
+
+    /**
+     * 消息落库事件处理线程池：单线程串行执行，保证批次间顺序；
+     * 队列满时阻塞刷盘线程，由持久化队列向上游施加背压；线程池关闭后由调用线程直接执行，停机时不丢批次
+     */
+    private Executor persistedEventExecutor(String threadNamePrefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(persistedEventQueueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setRejectedExecutionHandler((runnable, pool) -> {
+            if (pool.isShutdown()) {
+                runnable.run();
+                return;
+            }
+            try {
+                pool.getQueue().put(runnable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("等待消息落库事件队列时被中断", e);
+            }
+        });
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+
+        log.info("消息落库事件处理线程池初始化完成: threadNamePrefix={}, queueCapacity={}",
+                threadNamePrefix, persistedEventQueueCapacity);
+        return executor;
+    }
+}
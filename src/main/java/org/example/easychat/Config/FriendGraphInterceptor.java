@@ -0,0 +1,83 @@
+package org.example.easychat.Config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.example.easychat.Entity.FriendInfo;
+import org.example.easychat.service.FriendGraphService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+
+/**
+ * 好友关系写操作拦截器
+ * 在 insertUserFriend / removeFriend / removeChat 执行成功后失效好友图缓存（处于事务中时在提交后失效），
+ * 无论调用方是谁都能保持内存好友图与数据库一致
+ */
+@Slf4j
+@Component
+@Intercepts(@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}))
+public class FriendGraphInterceptor implements Interceptor {
+
+    private static final String INSERT_USER_FRIEND = "org.example.easychat.Mapper.UserMapper.insertUserFriend";
+    private static final String REMOVE_FRIEND = "org.example.easychat.Mapper.UserMapper.removeFriend";
+    private static final String REMOVE_CHAT = "org.example.easychat.Mapper.ChatMapper.removeChat";
+
+    // 延迟注入，避免 SqlSessionFactory 与 Mapper 之间的循环依赖
+    @Lazy
+    @Autowired
+    private FriendGraphService friendGraphService;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        String statementId = ms.getId();
+        if (INSERT_USER_FRIEND.equals(statementId) || REMOVE_FRIEND.equals(statementId) || REMOVE_CHAT.equals(statementId)) {
+            try {
+                Object parameter = invocation.getArgs()[1];
+                if (parameter instanceof Map) {
+                    Map<?, ?> params = (Map<?, ?>) parameter;
+                    String userId = asUserId(params.get("param1"));
+                    String friendId = asUserId(params.get("param2"));
+                    invalidateAfterCommit(userId, friendId);
+                }
+            } catch (Exception e) {
+                log.error("失效好友图缓存失败: statement={}", statementId, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 事务提交前其它节点重新加载仍会读到旧关系，因此处于事务中时推迟到提交后再失效
+     */
+    private void invalidateAfterCommit(String userId, String friendId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            friendGraphService.onFriendshipChanged(userId, friendId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                friendGraphService.onFriendshipChanged(userId, friendId);
+            }
+        });
+    }
+
+    private String asUserId(Object value) {
+        if (value instanceof FriendInfo) {
+            return ((FriendInfo) value).getFriendUserId();
+        }
+        return value != null ? value.toString() : null;
+    }
+}
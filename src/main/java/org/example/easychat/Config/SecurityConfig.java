@@ -35,6 +35,8 @@ public class SecurityConfig {
       .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
       .authorizeRequests(auth -> auth
               .antMatchers("/auth/**", "/user/register", "/user/verifyCode/**").permitAll()
+              // 检索索引重建会读取全部会话，仅管理员可用（chat.admin.user-ids）
+              .antMatchers("/admin/chat-search/rebuild").hasRole("ADMIN")
               .anyRequest().authenticated()
       )
       .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
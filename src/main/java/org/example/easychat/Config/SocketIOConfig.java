@@ -1,79 +1,167 @@
 package org.example.easychat.Config;
 
+import com.corundumstudio.socketio.SocketConfig;
+import com.corundumstudio.socketio.SocketIOChannelInitializer;
 import com.corundumstudio.socketio.SocketIOServer;
+import com.corundumstudio.socketio.Transport;
 import com.corundumstudio.socketio.annotation.SpringAnnotationScanner;
-import org.example.easychat.utils.JwtUtil;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.example.easychat.service.HandshakeAdmissionService;
+import org.example.easychat.service.OutboundFlowControlService;
+import org.example.easychat.service.SocketEventRateLimiter;
+import org.example.easychat.service.TokenVerificationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+@Slf4j
 @Configuration
 public class SocketIOConfig {
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private TokenVerificationService tokenVerificationService;
+
+    @Autowired
+    private OutboundFlowControlService outboundFlowControlService;
+
+    @Autowired
+    private SocketEventRateLimiter socketEventRateLimiter;
+
+    @Autowired
+    private HandshakeAdmissionService handshakeAdmissionService;
+
+    @Autowired
+    private SocketIOJsonSupport socketIOJsonSupport;
+
+    @Value("${chat.socketio.host:localhost}")
+    private String host;
+
+    @Value("${chat.socketio.port:8082}")
+    private int port;
+
+    // 0 表示使用 Netty 默认值
+    @Value("${chat.socketio.boss-threads:0}")
+    private int bossThreads;
+
+    @Value("${chat.socketio.worker-threads:0}")
+    private int workerThreads;
+
+    // 允许的传输方式，逗号分隔（websocket / polling）
+    @Value("${chat.socketio.transports:websocket,polling}")
+    private String transports;
+
+    // Linux 下使用 epoll 原生传输
+    @Value("${chat.socketio.use-epoll:false}")
+    private boolean useEpoll;
+
+    @Value("${chat.socketio.ping-interval-ms:25000}")
+    private int pingInterval;
+
+    @Value("${chat.socketio.ping-timeout-ms:5000}")
+    private int pingTimeout;
+
+    @Value("${chat.socketio.max-frame-bytes:1048576}")
+    private int maxFrameBytes;
+
+    @Value("${chat.socketio.tcp-no-delay:true}")
+    private boolean tcpNoDelay;
+
+    // TCP 发送缓冲区大小（字节），-1 表示使用系统默认值
+    @Value("${chat.socketio.tcp-send-buffer:-1}")
+    private int tcpSendBuffer;
+
+    @Value("${chat.socketio.accept-backlog:1024}")
+    private int acceptBacklog;
 
     @Bean
     public SocketIOServer socketIOServer() {
         com.corundumstudio.socketio.Configuration config =
                 new com.corundumstudio.socketio.Configuration();
 
-        config.setHostname("localhost");
-        config.setPort(8082); // Change this if port 8082 is in use
+        config.setHostname(host);
+        config.setPort(port);
         config.setOrigin("*");
+        config.setBossThreads(bossThreads);
+        config.setWorkerThreads(workerThreads);
+        config.setUseLinuxNativeEpoll(useEpoll);
+        config.setTransports(parseTransports(transports));
+        config.setJsonSupport(socketIOJsonSupport);
+
+        SocketConfig socketConfig = new SocketConfig();
+        socketConfig.setTcpNoDelay(tcpNoDelay);
+        socketConfig.setTcpSendBufferSize(tcpSendBuffer);
+        socketConfig.setAcceptBackLog(acceptBacklog);
+        config.setSocketConfig(socketConfig);
 
         // 设置心跳间隔
-        config.setPingInterval(25000);
-        config.setPingTimeout(5000);
+        config.setPingInterval(pingInterval);
+        config.setPingTimeout(pingTimeout);
         
         // 设置最大帧长度
-        config.setMaxFramePayloadLength(1024 * 1024);
-        config.setMaxHttpContentLength(1024 * 1024);
+        config.setMaxFramePayloadLength(maxFrameBytes);
+        config.setMaxHttpContentLength(maxFrameBytes);
         
-        // 设置认证逻辑
+        // 设置认证逻辑（握手已经过准入控制；重连洪峰时每秒可能有上千次握手，只记 debug 日志）
         config.setAuthorizationListener(data -> {
             try {
                 String token = data.getSingleUrlParam("token");
-                System.out.println("[Socket.IO] Handshake data: " + data.getHttpHeaders());
-                System.out.println("[Socket.IO] URL: " + data.getUrl());
-                System.out.println("[Socket.IO] Token received: " + (token != null ? token.substring(0, Math.min(20, token.length())) + "..." : "null"));
-                
                 if (token == null || token.isEmpty()) {
-                    System.out.println("[Socket.IO] No token provided in authorization");
+                    log.debug("[Socket.IO] 握手未携带令牌: url={}", data.getUrl());
+                    handshakeAdmissionService.recordAuthFailure();
                     return false;
                 }
-                
+
                 // URL解码处理
                 try {
                     token = java.net.URLDecoder.decode(token, "UTF-8");
                 } catch (Exception e) {
-                    System.out.println("[Socket.IO] Token URL decode failed: " + e.getMessage());
+                    log.debug("[Socket.IO] 令牌 URL 解码失败: {}", e.getMessage());
                 }
-                
+
                 // 移除Bearer前缀（如果存在）
                 if (token.startsWith("Bearer ")) {
                     token = token.substring(7);
                 }
-                
-                System.out.println("[Socket.IO] Processing token (after decode/prefix removal): " + token.substring(0, Math.min(20, token.length())) + "...");
-                
-                // 验证JWT token
-                String userId = jwtUtil.getUserIdFromToken(token);
+
+                // 验证JWT token（结果进入已验证令牌缓存，onConnect 时直接命中）
+                String userId = tokenVerificationService.verify(token);
                 if (userId != null && !userId.isEmpty()) {
-                    System.out.println("[Socket.IO] Authorization successful for user: " + userId);
+                    log.debug("[Socket.IO] 握手认证通过: userId={}", userId);
                     return true;
-                } else {
-                    System.out.println("[Socket.IO] Invalid token or user ID extraction failed during authorization");
-                    return false;
                 }
+                log.debug("[Socket.IO] 握手认证失败: address={}", data.getAddress());
+                handshakeAdmissionService.recordAuthFailure();
+                return false;
             } catch (Exception e) {
-                System.out.println("[Socket.IO] Authorization error: " + e.getMessage());
-                e.printStackTrace();
+                log.warn("[Socket.IO] 握手认证异常: {}", e.getMessage());
+                handshakeAdmissionService.recordAuthFailure();
                 return false;
             }
         });
 
-        return new SocketIOServer(config);
+        SocketIOServer server = new SocketIOServer(config);
+        // 每条连接设置写缓冲水位并登记到出站流控，新会话握手先经准入控制，入站事件在解码前限流
+        server.setPipelineFactory(new SocketIOChannelInitializer() {
+            @Override
+            protected void initChannel(Channel ch) throws Exception {
+                super.initChannel(ch);
+                outboundFlowControlService.attach(ch);
+                handshakeAdmissionService.attach(ch);
+                socketEventRateLimiter.attach(ch);
+            }
+        });
+        return server;
+    }
+
+    private static Transport[] parseTransports(String value) {
+        String[] names = value.split(",");
+        Transport[] result = new Transport[names.length];
+        for (int i = 0; i < names.length; i++) {
+            result[i] = Transport.valueOf(names[i].trim().toUpperCase());
+        }
+        return result;
     }
 
     @Bean
@@ -0,0 +1,21 @@
+package org.example.easychat.Config;
+
+import com.corundumstudio.socketio.protocol.JacksonJsonSupport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+/**
+ * Socket.IO 使用的 JSON 编解码
+ * 与 netty-socketio 默认实现相同，额外暴露其 ObjectMapper：跨节点转发和二进制编码需要与本地推送得到相同的 JSON
+ * （例如日期字段为毫秒时间戳，而 Spring 的 ObjectMapper 输出 ISO 字符串）。
+ */
+@Component
+public class SocketIOJsonSupport extends JacksonJsonSupport {
+
+    /**
+     * 本地推送实际使用的 ObjectMapper
+     */
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+}
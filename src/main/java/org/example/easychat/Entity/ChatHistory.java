@@ -13,4 +13,8 @@ import lombok.Data;
         private Integer hasRead;
         private Integer showTime;
         private String createTime;
+        // 会话内单调递增的序号
+        private Long seq;
+        // 客户端消息ID，用于重试去重，不落库
+        private String clientMsgId;
     }
\ No newline at end of file
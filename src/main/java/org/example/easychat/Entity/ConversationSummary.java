@@ -0,0 +1,24 @@
+package org.example.easychat.Entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+/**
+ * 会话摘要
+ * 每个用户在每个会话上一条记录，随消息写入增量维护
+ */
+@Data
+@TableName("conversation_summaries")
+public class ConversationSummary {
+    private String userId;
+    private String sessionId;
+    private String peerId;
+    private String lastMessageId;
+    private String lastSenderId;
+    private String lastReceiverId;
+    private Integer lastType;
+    private String lastContent;
+    private Integer lastShowTime;
+    private String lastTime;
+    private Integer unreadCount;
+}
@@ -0,0 +1,26 @@
+package org.example.easychat.Entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * records 按时间正序排列，nextCursor 为继续翻页时传回的不透明游标；
+ * archiveUnavailable 为 true 表示归档暂不可读，本页只含热表数据，稍后可用同一游标重试
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> records;
+    private String nextCursor;
+    private boolean hasMore;
+    private boolean archiveUnavailable;
+
+    public CursorPage(List<T> records, String nextCursor, boolean hasMore) {
+        this(records, nextCursor, hasMore, false);
+    }
+}
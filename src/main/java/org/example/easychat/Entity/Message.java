@@ -12,4 +12,6 @@ public class Message {
     private Integer hasRead;
     private Integer showTime;
     private String createTime;
+    // 客户端生成的消息ID，重试时保持不变
+    private String clientMsgId;
 }
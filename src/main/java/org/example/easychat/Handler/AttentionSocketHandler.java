@@ -13,6 +13,7 @@ import org.example.easychat.Entity.User;
 import org.example.easychat.Mapper.SpecialAttentionMapper;
 import org.example.easychat.dto.*;
 import org.example.easychat.service.NotificationService;
+import org.example.easychat.service.SocketEventDispatcher;
 import org.example.easychat.service.SpecialAttentionService;
 import org.example.easychat.service.UserService;
 import org.example.easychat.service.UserStatusService;
@@ -48,6 +49,10 @@ public class AttentionSocketHandler {
     
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
+
+    // 阻塞型事件处理移出事件循环线程，按用户分片串行执行
+    @Autowired
+    private SocketEventDispatcher socketEventDispatcher;
     
     private static final String USER_SESSION_KEY = "user:session:";
     
@@ -90,7 +95,12 @@ public class AttentionSocketHandler {
     @OnEvent("userStatusChange")
     public void onUserStatusChange(SocketIOClient client, UserStatusChangeEvent event) {
         String userId = getUserIdFromClient(client);
+        if (!socketEventDispatcher.dispatch("userStatusChange", userId, () -> handleUserStatusChange(client, userId, event))) {
+            client.sendEvent("statusChangeAck", createStatusChangeAck(event.getStatus(), false));
+        }
+    }
 
+    private void handleUserStatusChange(SocketIOClient client, String userId, UserStatusChangeEvent event) {
         // 验证权限
         if (!validateEventPermission(client, userId, event.getUserId())) {
             return;
@@ -130,17 +140,21 @@ public class AttentionSocketHandler {
     public void onHeartbeat(SocketIOClient client, Object data) {
         String userId = getUserIdFromClient(client);
         if (StringUtils.isNotBlank(userId)) {
-            try {
-                // 更新最后活跃时间
-                userStatusService.updateLastActiveTime(userId);
-                
-                // 发送心跳响应
-                client.sendEvent("heartbeatAck", createHeartbeatAck());
-                
-                log.debug("心跳检测: userId={}", userId);
-            } catch (Exception e) {
-                log.error("处理心跳检测失败: userId={}", userId, e);
-            }
+            socketEventDispatcher.dispatch("heartbeat", userId, () -> handleHeartbeat(client, userId));
+        }
+    }
+
+    private void handleHeartbeat(SocketIOClient client, String userId) {
+        try {
+            // 更新最后活跃时间
+            userStatusService.updateLastActiveTime(userId);
+
+            // 发送心跳响应
+            client.sendEvent("heartbeatAck", createHeartbeatAck());
+
+            log.debug("心跳检测: userId={}", userId);
+        } catch (Exception e) {
+            log.error("处理心跳检测失败: userId={}", userId, e);
         }
     }
     
@@ -14,19 +14,36 @@ import org.example.easychat.Mapper.ChatMapper;
 import org.example.easychat.Mapper.GroupChatMapper;
 import org.example.easychat.Mapper.UserMapper;
 import org.example.easychat.dto.AnswerCallRequest;
+import org.example.easychat.dto.InboxSyncRequest;
+import org.example.easychat.dto.MarkReadRequest;
 import org.example.easychat.dto.RejectCallRequest;
 import org.example.easychat.dto.friendVerifyDto;
-import org.example.easychat.utils.JwtUtil;
+import org.example.easychat.service.ChatPersistenceService;
+import org.example.easychat.service.ClusterRoutingService;
+import org.example.easychat.service.FriendGraphService;
+import org.example.easychat.service.MessageDedupService;
+import org.example.easychat.service.OfflineInboxService;
+import org.example.easychat.service.PresenceService;
+import org.example.easychat.service.SessionResumptionService;
+import org.example.easychat.service.SocketEventDispatcher;
+import org.example.easychat.service.SocketSessionRegistry;
+import org.example.easychat.service.TokenVerificationService;
+import org.example.easychat.service.UnreadCounterService;
+import org.example.easychat.service.WireCodecService;
+import org.example.easychat.event.MessagesReadEvent;
+import org.example.easychat.event.SessionExpiredEvent;
+import org.example.easychat.utils.SnowflakeIdGenerator;
 import org.example.easychat.utils.ValidationUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Component
@@ -47,29 +64,60 @@ public class ChatSocketIOHandler {
     private GroupChatMapper groupChatMapper;
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private TokenVerificationService tokenVerificationService;
 
     @Autowired
-    private StringRedisTemplate stringRedisTemplate;
+    private WireCodecService wireCodecService;
 
-    // 用户会话映射
-    private static final ConcurrentHashMap<String, SocketIOClient> sessions = new ConcurrentHashMap<>();
+    @Autowired
+    private SnowflakeIdGenerator snowflakeIdGenerator;
+
+    @Autowired
+    private ChatPersistenceService chatPersistenceService;
+
+    @Autowired
+    private FriendGraphService friendGraphService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private OfflineInboxService offlineInboxService;
+
+    @Autowired
+    private MessageDedupService messageDedupService;
+
+    // 用户会话注册表（userId -> 多端连接）
+    @Autowired
+    private SocketSessionRegistry sessionRegistry;
+
+    // 跨节点路由（本节点连接直接推送，其他节点转发）
+    @Autowired
+    private ClusterRoutingService clusterRoutingService;
 
-    // 在线用户列表 (userId -> status)
-    private static final ConcurrentHashMap<String, Integer> onlineUsers = new ConcurrentHashMap<>();
+    // 断线续连（短暂断线不下线，重连后补发缓存事件）
+    @Autowired
+    private SessionResumptionService sessionResumptionService;
+
+    // 阻塞型事件处理移出事件循环线程，按用户分片串行执行
+    @Autowired
+    private SocketEventDispatcher socketEventDispatcher;
+
+    // 在线状态（按周期向好友和特别关心者推送增量）
+    @Autowired
+    private PresenceService presenceService;
 
     /**
      * 用户连接时处理
      */
     @OnConnect
     public void onConnect(SocketIOClient client) {
-        log.info("Socket.IO连接已建立: {}", client.getSessionId());
-        
+        // 重连洪峰时每秒可能有上千次连接，握手细节只记 debug 日志
+        log.debug("Socket.IO连接已建立: {}", client.getSessionId());
+
         // 从连接参数中获取token
         String raw = client.getHandshakeData().getSingleUrlParam("token");
-        log.info("Handshake data: {}", client.getHandshakeData());
-        log.info("Query params: {}", client.getHandshakeData().getUrlParams());
-        log.info("Full URL: {}", client.getHandshakeData().getUrl());
+        log.debug("Full URL: {}", client.getHandshakeData().getUrl());
 
         if (raw == null || raw.isEmpty()) {
             log.warn("连接中未提供token，断开连接: {}", client.getSessionId());
@@ -84,21 +132,22 @@ public class ChatSocketIOHandler {
             if(token.startsWith("Bearer ")){
                 token = token.substring(7);
             }
-            log.info("尝试验证token（已解码/去前缀）：{}...", token.length() > 20 ? token.substring(0, 20) + "..." : token);
-
-            if (validateSocketToken(token)) {
-                String userId = getUserIdFromToken(token);
-                if (userId != null && !userId.isEmpty()) {
-                    client.set("userId", userId);
-                    client.set("authenticated", true);
-                    log.info("用户认证成功: userId={}", userId);
-                    // 发送认证成功确认
-                    client.sendEvent("authenticated", Map.of("userId", userId, "status", "success"));
-                } else {
-                    log.warn("从token中无法解析出有效的用户ID，断开连接: {}", client.getSessionId());
-                    client.sendEvent("error", "Invalid user ID in token");
-                    client.disconnect();
-                    return;
+
+            // 握手阶段已校验过同一令牌，这里通常直接命中缓存
+            String userId = tokenVerificationService.verify(token);
+            if (userId != null) {
+                client.set(SocketSessionRegistry.USER_ID_KEY, userId);
+                client.set("authenticated", true);
+                wireCodecService.negotiate(client);
+                log.debug("用户认证成功: userId={}", userId);
+                // 发送认证成功确认，附带断线后重连用的续连令牌
+                String resumeToken = sessionResumptionService.issueToken(client);
+                client.sendEvent("authenticated", Map.of("userId", userId, "status", "success", "resumeToken", resumeToken));
+                // 宽限期内携带续连令牌重连：静默恢复并补发缓存事件后再登记连接；否则登记后下发好友范围内的在线快照，之后只接收增量
+                String presentedToken = client.getHandshakeData().getSingleUrlParam(SessionResumptionService.RESUME_PARAM);
+                if (!sessionResumptionService.resume(userId, presentedToken, client,
+                        () -> clusterRoutingService.register(userId, client))) {
+                    getCurrentOnlineUsers(client, userId);
                 }
             } else {
                 log.warn("Token验证失败，断开连接: {}", client.getSessionId());
@@ -125,23 +174,11 @@ public class ChatSocketIOHandler {
         // 获取断开连接的用户ID
         String userId = client.get("userId");
         if (userId != null) {
-            log.info("用户 {} 断开连接，当前在线用户数: {}", userId, sessions.size());
-            
-            // 清理用户的通话会话
-            cleanupUserCalls(userId);
-            
-            // 从在线用户列表中移除
-            onlineUsers.remove(userId);
-            sessions.remove(userId);
-            log.info("用户 {} 已从会话映射中移除，剩余在线用户数: {}", userId, sessions.size());
-            log.info("当前在线用户列表: {}", sessions.keySet());
-            // 广播更新后的在线用户列表
-            broadcastOnlineUsers();
+            removeSession(client);
+            log.info("用户 {} 断开连接，剩余在线用户数: {}", userId, sessionRegistry.getOnlineUserCount());
         } else {
             log.warn("断开连接的客户端没有关联的用户ID: {}", sessionId);
         }
-
-        removeSession(client);
     }
 
     /**
@@ -174,37 +211,36 @@ public class ChatSocketIOHandler {
             log.info("用户上线验证通过: userId={}, status={}", actualUserId, status);
 
             // 避免重复处理同一用户的上线事件
-            if (onlineUsers.containsKey(actualUserId) && sessions.containsKey(actualUserId)) {
+            if (presenceService.isOnline(actualUserId) && sessionRegistry.isOnline(actualUserId)) {
                 log.info("用户 {} 已在线，忽略重复上线事件", actualUserId);
                 client.sendEvent("onlineConfirmed", "already_online");
                 return;
             }
 
-            // 1. 将用户ID添加到在线用户列表中
-            onlineUsers.put(actualUserId, status);
-            sessions.put(actualUserId, client);
-            
-            log.info("用户 {} 已添加到会话映射，当前在线用户数: {}", actualUserId, sessions.size());
-            log.info("当前所有在线用户: {}", sessions.keySet());
-
-            // 2. 广播更新后的在线用户列表给所有连接的客户端
-            broadcastOnlineUsers();
+            // 1. 记录在线状态，由在线状态服务合并后推送给好友和特别关心者
+            presenceService.online(actualUserId, status);
+            clusterRoutingService.register(actualUserId, client);
 
-            // 3. 通知所有用户该用户已上线
-            socketIOServer.getBroadcastOperations().sendEvent("userOnline", actualUserId);
+            log.info("用户 {} 已上线，当前在线用户数: {}", actualUserId, sessionRegistry.getOnlineUserCount());
 
-            // 4. 向当前用户发送确认消息
+            // 2. 向当前用户发送确认消息
             client.sendEvent("onlineConfirmed", "success");
-
-            // 5.获取在线用户列表
-            getCurrentOnlineUsers();
         } catch (Exception e) {
             log.error("处理用户上线时出错", e);
         }
     }
 
-    private void getCurrentOnlineUsers() {
-        //todo 获取在线用户列表
+    /**
+     * 向当前连接下发好友范围内的在线用户快照
+     */
+    private void getCurrentOnlineUsers(SocketIOClient client, String userId) {
+        try {
+            WireCodecService.PreparedEvent snapshot = wireCodecService.prepare(PresenceService.SNAPSHOT_EVENT,
+                    new Object[]{presenceService.snapshotFor(userId)});
+            client.sendEvent(snapshot.getEvent(), wireCodecService.argsFor(client, snapshot));
+        } catch (Exception e) {
+            log.error("获取在线用户快照时出错: userId={}", userId, e);
+        }
     }
 
     /**
@@ -221,15 +257,8 @@ public class ChatSocketIOHandler {
         try {
             log.info("用户下线: userId={}", userId);
 
-            // 1. 从在线用户列表中移除该用户
-            onlineUsers.remove(userId);
-            sessions.remove(userId);
-
-            // 2. 广播更新后的在线用户列表
-            broadcastOnlineUsers();
-
-            // 3. 通知所有用户该用户已下线
-            socketIOServer.getBroadcastOperations().sendEvent("userOffline", userId);
+            // 从在线状态中移除该用户（连接仍由注册表管理，断开时移除），下线增量由在线状态服务推送
+            presenceService.offline(userId);
 
         } catch (Exception e) {
             log.error("处理用户下线时出错", e);
@@ -243,54 +272,82 @@ public class ChatSocketIOHandler {
      */
     @OnEvent("sendMsg")
     public void onSendMessage( Message message, AckRequest ackRequest) {
+        // 按发送者分片，同一用户的消息按到达顺序处理
+        boolean accepted = socketEventDispatcher.dispatch("sendMsg", message.getSenderId(),
+                () -> handleSendMessage(message, ackRequest));
+        if (!accepted && ackRequest.isAckRequested()) {
+            ackRequest.sendAckData("busy");
+        }
+    }
+
+    private void handleSendMessage(Message message, AckRequest ackRequest) {
         try {
             log.info("收到消息: {}", message);
 
-            // 检查发送者和接收者是否为好友
-            User sender = userMapper.getUserById(message.getSenderId());
-            User receiver = userMapper.getUserById(message.getReceiverId());
-
-            if (sender == null || receiver == null) {
+            // 检查发送者和接收者是否为好友（内存好友图，O(1)）
+            String receiverId = message.getReceiverId();
+            if (!friendGraphService.areFriends(message.getSenderId(), receiverId)) {
+                // 仅在失败路径上查库，区分用户不存在与非好友
+                boolean usersExist = message.getSenderId() != null && receiverId != null
+                        && userMapper.getUserById(message.getSenderId()) != null
+                        && userMapper.getUserById(receiverId) != null;
                 // 发送错误响应
                 if (ackRequest.isAckRequested()) {
-                    ackRequest.sendAckData(null, "error");
+                    ackRequest.sendAckData(null, usersExist ? "notFriend" : "error");
                 }
                 return;
             }
 
-            List<String> friendIds = userMapper.getUserFriendsIds(sender.getId());
-            if (!friendIds.contains(receiver.getId())) {
-                // 发送错误响应
-                if (ackRequest.isAckRequested()) {
-                    ackRequest.sendAckData(null, "notFriend");
-                }
-                return;
-            }
-
-            // 保存消息到数据库
+            // 构造消息并交给写后合并提交管道落库
             ChatHistory chatHistory = new ChatHistory();
             BeanUtils.copyProperties(message, chatHistory);
-            String id = jwtUtil.generateCode();
+            String id = snowflakeIdGenerator.nextIdStr();
             chatHistory.setId(id);
-            chatMapper.insert(chatHistory);
-
-            // 构造响应信息
             chatHistory.setHasRead(0);
 
-            // 发送成功响应给发送者
-            if (ackRequest.isAckRequested()) {
-                ackRequest.sendAckData(chatHistory, "");
+            // 客户端重试：同一 clientMsgId 只受理一次，重复提交直接按原消息确认，不再落库和推送
+            String clientMsgId = message.getClientMsgId();
+            ChatHistory original = messageDedupService.claim(message.getSenderId(), clientMsgId, chatHistory);
+            if (original != null) {
+                log.info("重复提交的消息已忽略: senderId={}, clientMsgId={}, messageId={}",
+                        message.getSenderId(), clientMsgId, original.getId());
+                if (ackRequest.isAckRequested()) {
+                    ackRequest.sendAckData(original, "");
+                }
+                return;
             }
 
-            // 推送消息给接收者
-            SocketIOClient receiverClient = sessions.get(receiver.getId());
-            if (receiverClient != null && receiverClient.isChannelOpen()) {
-                receiverClient.sendEvent("receiveMsg", chatHistory);
-            } else {
-                // 如果接收者离线，发送离线通知
+            // 会话序号由刷盘线程在写库前分配，被拒绝或落库失败的消息不会占用序号
+            CompletableFuture<ChatHistory> persisted = chatPersistenceService.submit(chatHistory);
+            if (persisted.isCompletedExceptionally()) {
+                // 持久化队列已满：拒绝本条，客户端稍后按同一 clientMsgId 重试
+                messageDedupService.release(message.getSenderId(), clientMsgId);
                 if (ackRequest.isAckRequested()) {
-                    ackRequest.sendAckData(chatHistory, "offline");
+                    ackRequest.sendAckData("busy");
                 }
+                return;
+            }
+
+            if (chatPersistenceService.isAckAfterCommit()) {
+                // 提交后确认：落库成功后再确认发送者并推送给接收者；
+                // 回调在刷盘线程上触发，确认与推送交回发送者所在分片执行，不占用刷盘线程
+                persisted.whenComplete((saved, ex) -> {
+                    Runnable task = ex != null
+                            ? () -> ackPersistFailure(message.getSenderId(), clientMsgId, id, ex, ackRequest)
+                            : () -> ackAndDeliver(chatHistory, receiverId, ackRequest);
+                    if (!socketEventDispatcher.dispatch("sendMsgAck", message.getSenderId(), task)) {
+                        // 分片队列已满时消息已落库，不能丢弃确认与推送，只能在当前线程执行
+                        task.run();
+                    }
+                });
+            } else {
+                // 入队即确认（此时尚未分配序号，接收方按序号区间补拉时获得）；最终落库失败时撤销去重记录，允许客户端重试
+                ackAndDeliver(chatHistory, receiverId, ackRequest);
+                persisted.whenComplete((saved, ex) -> {
+                    if (ex != null) {
+                        messageDedupService.release(message.getSenderId(), clientMsgId);
+                    }
+                });
             }
 
         } catch (Exception e) {
@@ -303,29 +360,142 @@ public class ChatSocketIOHandler {
     }
 
     /**
-     * 从会话映射中移除会话
+     * 落库失败：撤销去重记录，允许客户端重试
      */
-    private void removeSession(SocketIOClient client) {
-        // 找到对应的用户ID并从在线列表中移除
-        String userIdToRemove = null;
-        for (Map.Entry<String, SocketIOClient> entry : sessions.entrySet()) {
-            if (entry.getValue().equals(client)) {
-                userIdToRemove = entry.getKey();
-                break;
+    private void ackPersistFailure(String senderId, String clientMsgId, String messageId, Throwable ex, AckRequest ackRequest) {
+        log.error("消息落库失败: messageId={}", messageId, ex);
+        messageDedupService.release(senderId, clientMsgId);
+        if (ackRequest.isAckRequested()) {
+            ackRequest.sendAckData("error");
+        }
+    }
+
+    /**
+     * 确认发送者并推送消息给接收者
+     */
+    private void ackAndDeliver(ChatHistory chatHistory, String receiverId, AckRequest ackRequest) {
+        // 发送成功响应给发送者
+        if (ackRequest.isAckRequested()) {
+            ackRequest.sendAckData(chatHistory, "");
+        }
+
+        // 推送消息给接收者的所有在线设备
+        if (clusterRoutingService.sendToUser(receiverId, "receiveMsg", chatHistory) == 0) {
+            // 接收者离线，写入离线收件箱等待重连后同步
+            offlineInboxService.append(receiverId, chatHistory);
+            // 如果接收者离线，发送离线通知
+            if (ackRequest.isAckRequested()) {
+                ackRequest.sendAckData(chatHistory, "offline");
             }
         }
+    }
 
-        if (userIdToRemove != null) {
-            onlineUsers.remove(userIdToRemove);
-            sessions.remove(userIdToRemove);
+    /**
+     * 重连后同步离线收件箱
+     * 客户端携带上次同步返回的游标，只下发游标之后错过的消息；hasMore 为 true 时继续用新游标同步
+     */
+    @OnEvent("syncInbox")
+    public void onSyncInbox(SocketIOClient client, InboxSyncRequest request, AckRequest ackRequest) {
+        try {
+            String userId = client.get("userId");
+            if (userId == null || userId.isEmpty()) {
+                if (ackRequest.isAckRequested()) {
+                    ackRequest.sendAckData("error");
+                }
+                return;
+            }
+            CursorPage<ChatHistory> page = offlineInboxService.sync(userId, request != null ? request.getCursor() : null);
+            if (ackRequest.isAckRequested()) {
+                ackRequest.sendAckData(page);
+            } else {
+                client.sendEvent("inboxMessages", page);
+            }
+        } catch (Exception e) {
+            log.error("同步离线收件箱时出错", e);
+            if (ackRequest.isAckRequested()) {
+                ackRequest.sendAckData("error");
+            }
         }
+    }
 
-        // 广播更新后的在线用户列表
+    /**
+     * 标记会话已读到指定消息
+     */
+    @OnEvent("markRead")
+    public void onMarkRead(SocketIOClient client, MarkReadRequest request, AckRequest ackRequest) {
         try {
-            broadcastOnlineUsers();
+            String userId = client.get("userId");
+            if (userId == null || userId.isEmpty() || request == null) {
+                if (ackRequest.isAckRequested()) {
+                    ackRequest.sendAckData("error");
+                }
+                return;
+            }
+            unreadCounterService.markReadUpTo(userId, request.getSessionId(), request.getMessageId());
+            if (ackRequest.isAckRequested()) {
+                ackRequest.sendAckData("ok");
+            }
         } catch (Exception e) {
-            log.error("广播在线用户时出错", e);
+            log.error("处理已读事件时出错", e);
+            if (ackRequest.isAckRequested()) {
+                ackRequest.sendAckData("error");
+            }
+        }
+    }
+
+    /**
+     * 已读位置写回后向对方推送合并后的已读回执
+     */
+    @EventListener
+    public void onMessagesRead(MessagesReadEvent event) {
+        clusterRoutingService.sendToUser(event.getPeerId(), "messagesRead", Map.of(
+                "sessionId", event.getSessionId(),
+                "readerId", event.getReaderId(),
+                "upToMessageId", event.getUpToMessageId()));
+    }
+
+    /**
+     * 从注册表中移除连接；用户在所有节点上的最后一个设备断开、且断线宽限期结束时才视为下线
+     */
+    private void removeSession(SocketIOClient client) {
+        // 开启断线续连时，最后一个连接断开后暂不撤销集群路由、不下线，宽限期结束再处理
+        boolean resumable = sessionResumptionService.isEnabled();
+        if (!clusterRoutingService.unregister(client, resumable)) {
+            return;
+        }
+        String userId = client.get(SocketSessionRegistry.USER_ID_KEY);
+        if (resumable) {
+            sessionResumptionService.park(userId, client.get(SessionResumptionService.RESUME_TOKEN_KEY));
+            return;
+        }
+        goOffline(userId);
+    }
+
+    /**
+     * 断线宽限期结束仍未重连：撤销集群路由并下线
+     */
+    @EventListener
+    public void onSessionExpired(SessionExpiredEvent event) {
+        String userId = event.getUserId();
+        if (sessionRegistry.isOnline(userId)) {
+            return;
         }
+        clusterRoutingService.releaseRoute(userId);
+        goOffline(userId);
+    }
+
+    /**
+     * 用户在所有节点上都没有连接时，清理通话并下线
+     */
+    private void goOffline(String userId) {
+        if (clusterRoutingService.isOnlineElsewhere(userId)) {
+            return;
+        }
+
+        // 清理用户的通话会话
+        cleanupUserCalls(userId);
+
+        presenceService.offline(userId);
     }
 
     //存储当前通话状态
@@ -352,11 +522,8 @@ public class ChatSocketIOHandler {
                     // 一对一通话，通知对方
                     String otherUserId = session.getCallerId().equals(userId) ? 
                         session.getReceiverId() : session.getCallerId();
-                    SocketIOClient otherClient = findClientById(otherUserId);
-                    if (otherClient != null) {
-                        otherClient.sendEvent("callEnded", 
-                            Map.of("callId", entry.getKey(), "reason", "peer_disconnected"));
-                    }
+                    clusterRoutingService.sendToUser(otherUserId, "callEnded",
+                        Map.of("callId", entry.getKey(), "reason", "peer_disconnected"));
                 }
             }
             
@@ -364,112 +531,15 @@ public class ChatSocketIOHandler {
         });
     }
 
-    /**
-     * 根据用户ID查找客户端
-     */
-    private SocketIOClient findClientById(String userId) {
-        Collection<SocketIOClient> clients = socketIOServer.getAllClients();
-        log.info("查找用户 {} 的客户端连接，当前总连接数: {}", userId, clients.size());
-        
-        for (SocketIOClient client : clients) {
-            String clientUserId = client.get("userId");
-            log.debug("检查客户端 {} 的用户ID: {}", client.getSessionId(), clientUserId);
-            if (userId != null && userId.equals(clientUserId)) {
-                log.info("找到用户 {} 的客户端连接: {}", userId, client.getSessionId());
-                return client;
-            }
-        }
-        
-        log.warn("未找到用户 {} 的客户端连接", userId);
-        
-        // 打印所有在线用户的详细信息
-        log.info("当前所有在线客户端:");
-        for (SocketIOClient client : clients) {
-            String clientUserId = client.get("userId");
-            log.info("  - 会话ID: {}, 用户ID: {}", client.getSessionId(), clientUserId);
-        }
-        
-        return null;
-    }
-
     /**
      * 向通话参与者广播消息
      */
     private void broadcastToCallParticipants(CallSession session, String eventName,Map<String, Object> data, String excludeUserId) {
         for (String participantId : session.getParticipants()) {
             if (!participantId.equals(excludeUserId)) {
-                SocketIOClient participantClient = findClientById(participantId);
-                if (participantClient != null) {
-                    participantClient.sendEvent(eventName, data);
-                }
+                clusterRoutingService.sendToUser(participantId, eventName, data);
             }
         }
     }
 
-    /**
-     * 广播在线用户列表给所有连接的客户端
-     */
-    private void broadcastOnlineUsers() {
-        try {
-            // 构造在线用户列表
-            Map<String, Integer> onlineUsersMap = new ConcurrentHashMap<>(onlineUsers);
-
-            // 广播给所有连接的客户端
-            socketIOServer.getBroadcastOperations().sendEvent("onlineUsers", onlineUsersMap);
-
-        } catch (Exception e) {
-            log.error("广播在线用户时出错", e);
-        }
-    }
-
-    /**
-     * 获取用户的Socket客户端
-     * @param userId 用户ID
-     * @return SocketIOClient 客户端实例
-     */
-    public SocketIOClient getUserClient(String userId) {
-        return sessions.get(userId);
-    }
-
-    /**
-     * 验证token是否有效
-     * @param token JWT token
-     * @return token是否有效
-     */
-    private boolean validateSocketToken(String token) {
-        try {
-            if (!jwtUtil.validateToken(token)) {
-                log.warn("JWT验证失败或已过期，exp={}", jwtUtil.getExpirationDateFromToken(token));
-                return false;
-            }
-            // 统一：仅校验 userToken:<userId> -> <token>
-            String userId = jwtUtil.getUserIdFromToken(token);
-            String cachedToken = stringRedisTemplate.opsForValue().get("userToken:" + userId);
-            boolean ok = token.equals(cachedToken);
-            if (!ok) {
-                log.warn("Redis 未命中 userToken 映射，userId={}", userId);
-            }
-            return ok;
-        } catch (Exception e) {
-            log.error("验证token时出错", e);
-            return false;
-        }
-    }
-
-    /**
-     * 从token中获取用户ID
-     * @param token JWT token
-     * @return 用户ID
-     */
-    private String getUserIdFromToken(String token) {
-        try {
-            String userId = jwtUtil.getUserIdFromToken( token);
-            log.info("从token中解析出userId: {}", userId);
-            return userId;
-        } catch (Exception e) {
-            log.error("从token解析用户ID时出错", e);
-            return null;
-        }
-    }
-
 }
\ No newline at end of file
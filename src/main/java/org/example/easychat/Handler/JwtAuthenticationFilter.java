@@ -1,14 +1,16 @@
 package org.example.easychat.Handler;
 
 import org.example.easychat.Entity.User;
-import org.example.easychat.Mapper.UserMapper;
-import org.example.easychat.utils.JwtUtil;
+import org.example.easychat.service.PrincipalCacheService;
+import org.example.easychat.service.TokenVerificationService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.data.redis.core.StringRedisTemplate;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -16,27 +18,29 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     /**
-     * JWT工具类
+     * 令牌校验服务（已验证令牌缓存）
      */
     @Autowired
-    private JwtUtil jwtUtil;
+    private TokenVerificationService tokenVerificationService;
 
     /**
-     * 用户Mapper
+     * 认证主体缓存
      */
     @Autowired
-    private UserMapper userMapper;
+    private PrincipalCacheService principalCacheService;
 
     /**
-     * Redis模板
+     * 管理员用户ID（逗号分隔），这些用户额外获得 ROLE_ADMIN
      */
-    @Autowired
-    private StringRedisTemplate stringRedisTemplate;
+    @Value("${chat.admin.user-ids:}")
+    private String adminUserIds;
 
     /**
      * 过滤器处理逻辑
@@ -53,18 +57,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         // 1. 从请求头获取Token
         String token = extractTokenFromRequest(request);
 
-        if (token != null && validateJwtToken(token)) {
-            // 2. 验证Token并解析出用户ID（支持两种映射）
-            String userId = getUserIdFromToken(token);
+        if (token != null) {
+            // 2. 验证Token并解析出用户ID（重复请求直接命中已验证令牌缓存）
+            String userId = tokenVerificationService.verify(token);
 
             if (userId != null) {
-                // 3. 加载用户信息 (从数据库查询)
-                User user = userMapper.getUserById(userId);
+                // 3. 加载用户信息 (优先读取认证主体缓存，不再每个请求查库)
+                User user = principalCacheService.getPrincipal(userId);
                 
                 if (user != null) {
                     // 4. 创建认证对象，并存入Spring Security的上下文中
+                    List<GrantedAuthority> authorities = new ArrayList<>();
+                    if (isAdmin(userId)) {
+                        authorities.add(new SimpleGrantedAuthority("ROLE_ADMIN"));
+                    }
                     UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                            user, null, new ArrayList<>());
+                            user, null, authorities);
                     SecurityContextHolder.getContext().setAuthentication(authentication);
                 }
             }
@@ -73,6 +81,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
     
+    /**
+     * 是否为配置的管理员
+     * @param userId 用户ID
+     * @return 是否为管理员
+     */
+    private boolean isAdmin(String userId) {
+        return !adminUserIds.isBlank() && Arrays.stream(adminUserIds.split(","))
+                .map(String::trim)
+                .anyMatch(userId::equals);
+    }
+
     /**
      * 从请求中提取JWT token
      * @param request HTTP请求
@@ -102,38 +121,4 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         
         return null;
     }
-    
-    /**
-     * 验证token是否有效
-     * @param token JWT token
-     * @return token是否有效
-     */
-    private boolean validateJwtToken(String token) {
-        try {
-            // 先检查JWT本身是否有效
-            if (jwtUtil.validateToken(token)) {
-                // 统一：仅检查 userToken:<userId> -> <token>
-                String userId = jwtUtil.getUserIdFromToken(token);
-                String t = stringRedisTemplate.opsForValue().get("userToken:" + userId);
-                return token.equals(t);
-            }
-            return false;
-        } catch (Exception e) {
-            return false;
-        }
-    }
-    
-    /**
-     * 从token中获取用户ID
-     * @param token JWT token
-     * @return 用户ID
-     */
-    private String getUserIdFromToken(String token) {
-        try {
-            // 仅从JWT解析 userId
-            return jwtUtil.getUserIdFromToken(token);
-        } catch (Exception e) {
-            return null;
-        }
-    }
 }
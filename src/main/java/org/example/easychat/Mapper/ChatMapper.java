@@ -4,7 +4,9 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
 import org.example.easychat.Entity.*;
 
 import java.util.List;
@@ -16,6 +18,8 @@ public interface ChatMapper extends BaseMapper<ChatHistory> {
 
     List<ChatSession> getChats(String userId);
 
+    List<ChatSession> getChatsBySessionIds(@Param("userId") String userId, @Param("sessionIds") List<String> sessionIds);
+
     @Select("select * from chat_histories where session_id=#{sessionId}")
     List<ChatHistory> getChatHistory(String sessionId);
 
@@ -24,6 +28,50 @@ public interface ChatMapper extends BaseMapper<ChatHistory> {
 
     ChatHistory getLatestChatHistoryBySessionId(String sessionId);
 
+    @Select("SELECT * FROM chat_histories WHERE id = #{id}")
+    ChatHistory getChatHistoryById(String id);
+
+    /**
+     * 将会话中发给该用户、位于指定位置及之前的消息标记为已读
+     */
+    int markReadUpTo(@Param("sessionId") String sessionId, @Param("userId") String userId,
+                     @Param("createTime") String createTime, @Param("id") String id);
+
+    /**
+     * 流式读取整段会话（需在事务内遍历）
+     */
+    Cursor<ChatHistory> streamChatHistory(@Param("sessionId") String sessionId);
+
+    List<ChatHistory> getChatHistoryByIds(@Param("ids") List<String> ids);
+
+    @Select("SELECT DISTINCT session_id FROM chat_histories")
+    List<String> listSessionIds();
+
+    @Select("SELECT DISTINCT session_id FROM chat_histories WHERE create_time < #{cutoff} LIMIT #{limit}")
+    List<String> listSessionIdsBefore(@Param("cutoff") String cutoff, @Param("limit") int limit);
+
+    /**
+     * 流式读取待归档的消息（指定位置之后、截止时间之前，需在事务内遍历）
+     */
+    Cursor<ChatHistory> streamArchivableHistory(@Param("sessionId") String sessionId,
+                                                @Param("createTime") String createTime,
+                                                @Param("id") String id,
+                                                @Param("cutoff") String cutoff);
+
+    /**
+     * 按消息ID删除已写入归档段的消息，分批执行避免长事务
+     */
+    int deleteArchivedByIds(@Param("sessionId") String sessionId, @Param("ids") List<String> ids);
+
+    @Select("SELECT COUNT(*) FROM user_friends WHERE session_id = #{sessionId} AND user_id = #{userId}")
+    int countSessionMember(@Param("sessionId") String sessionId, @Param("userId") String userId);
+
+    @Select("SELECT MAX(seq) FROM chat_histories WHERE session_id = #{sessionId}")
+    Long getMaxSeq(String sessionId);
+
+    List<ChatHistory> getChatHistoryBySeqRange(@Param("sessionId") String sessionId, @Param("fromSeq") long fromSeq,
+                                               @Param("toSeq") long toSeq, @Param("limit") int limit);
+
     Message getLatestChatMessage(String sessionId);
 
     @Delete("delete from chat_sessions where user_id=#{userId} and friend_user_id=#{friendId}")
@@ -36,4 +84,26 @@ public interface ChatMapper extends BaseMapper<ChatHistory> {
     List<String> getGroupMemberIds(String groupId);
 
     void insertCallRecord(CallRecord callRecord);
+
+    /**
+     * 游标分页：查询指定位置之前的消息（按时间倒序）
+     * createTime/id 为空时从最新一条开始
+     */
+    List<ChatHistory> getChatHistoryBefore(@Param("sessionId") String sessionId,
+                                           @Param("createTime") String createTime,
+                                           @Param("id") String id,
+                                           @Param("limit") int limit);
+
+    /**
+     * 游标分页：查询指定位置之后的消息（按时间正序）
+     */
+    List<ChatHistory> getChatHistoryAfter(@Param("sessionId") String sessionId,
+                                          @Param("createTime") String createTime,
+                                          @Param("id") String id,
+                                          @Param("limit") int limit);
+
+    /**
+     * 批量插入聊天记录（多行 INSERT）
+     */
+    int batchInsert(@Param("list") List<ChatHistory> chatHistories);
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package org.example.easychat.Mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.example.easychat.Entity.ConversationSummary;
+
+import java.util.List;
+
+@Mapper
+public interface ConversationSummaryMapper extends BaseMapper<ConversationSummary> {
+
+    /**
+     * 批量写入会话摘要，已存在时覆盖最后一条消息并累加未读数
+     */
+    int batchUpsert(@Param("list") List<ConversationSummary> summaries);
+
+    /**
+     * 批量扣减未读数（已读写回时按实际标记为已读的行数扣减）
+     */
+    int batchDecrementUnread(@Param("list") List<ConversationSummary> summaries);
+
+    /**
+     * 按最近消息时间倒序获取用户的会话摘要
+     */
+    List<ConversationSummary> selectByUserId(@Param("userId") String userId);
+}
@@ -46,7 +46,7 @@ public interface GroupChatMapper extends BaseMapper<createGroupDto> {
     @Select("SELECT COUNT(*) FROM group_members WHERE group_id = #{groupId}")
     Integer getGroupMemberCount(String groupId);
 
-    @Insert("INSERT INTO group_messages (group_id, sender_id, content, message_type, sent_at, sender_username) VALUES (#{groupId}, #{senderId}, #{content}, #{messageType}, #{sentAt}, #{senderUsername})")
+    @Insert("INSERT INTO group_messages (message_id, group_id, sender_id, content, message_type, sent_at, sender_username) VALUES (#{messageId}, #{groupId}, #{senderId}, #{content}, #{messageType}, #{sentAt}, #{senderUsername})")
     void insertGroupMessage(GroupMessage message);
 
     @Delete("DELETE FROM `groups` WHERE group_id = #{groupId}")
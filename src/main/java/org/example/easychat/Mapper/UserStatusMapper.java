@@ -40,6 +40,11 @@ public interface UserStatusMapper extends BaseMapper<UserStatus> {
      * 更新用户最后活跃时间
      */
     int updateLastActiveTime(@Param("userId") String userId, @Param("lastActiveTime") LocalDateTime lastActiveTime);
+
+    /**
+     * 批量更新最后活跃时间（单条 UPDATE ... CASE，只前进不回退）
+     */
+    int batchUpdateLastActiveTime(@Param("statusList") List<UserStatus> statusList);
     
     /**
      * 批量获取用户状态
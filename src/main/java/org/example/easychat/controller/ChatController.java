@@ -3,15 +3,25 @@ package org.example.easychat.controller;
 import org.example.easychat.BO.ApiResponseBO;
 import org.example.easychat.Entity.ChatHistory;
 import org.example.easychat.Entity.ChatSession;
+import org.example.easychat.Entity.CursorPage;
 import org.example.easychat.BO.ResponseBO;
 import org.example.easychat.Entity.PageResult;
+import org.example.easychat.Entity.User;
+import org.example.easychat.service.ChatExportService;
 import org.example.easychat.service.ChatService;
+import org.example.easychat.service.MessageSearchService;
+import org.example.easychat.service.UnreadCounterService;
 import org.example.easychat.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletResponse;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/chat")
@@ -23,6 +33,15 @@ public class ChatController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ChatExportService chatExportService;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
     /**
      * 获取聊天列表
      */
@@ -36,8 +55,41 @@ public class ChatController {
     }
 
     /**
-     * 获取聊天历史
+     * 按最近消息时间分页获取聊天列表
      */
+    @GetMapping("chats/recent")
+    public ResponseBO<List<ChatSession>> getRecentChats(@RequestParam("id") String userId,
+                                                        @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                                        @RequestParam(value = "limit", defaultValue = "50") int limit){
+        if(userId == null){
+            return ResponseBO.error("用户ID不能为空");
+        }
+        return ResponseBO.success(chatService.getRecentChats(userId, offset, limit));
+    }
+
+    /**
+     * 获取各会话未读数
+     */
+    @GetMapping("chats/unread")
+    public ResponseBO<Map<String, Integer>> getUnreadCounts(@RequestParam("id") String userId){
+        return ResponseBO.success(unreadCounterService.getUnreadCounts(userId));
+    }
+
+    /**
+     * 标记会话已读到指定消息（含该消息）
+     */
+    @PostMapping("chats/read")
+    public ResponseBO<String> markRead(@RequestParam("id") String userId,
+                                       @RequestParam("session") String sessionId,
+                                       @RequestParam("messageId") String messageId){
+        unreadCounterService.markReadUpTo(userId, sessionId, messageId);
+        return ResponseBO.success("标记已读成功");
+    }
+
+    /**
+     * 页码分页获取聊天历史（第 1 页为最新的一页），兼容旧客户端，新客户端请使用游标分页
+     */
+    @Deprecated
     @GetMapping("chats/chatHistory")
     public ResponseBO<PageResult<ChatHistory>> getChatHistory(@RequestParam("id")    String userId,
                                                               @RequestParam("session") String sessionId,
@@ -47,6 +99,60 @@ public class ChatController {
         return ResponseBO.success(pageResult);
     }
 
+    /**
+     * 游标分页获取聊天历史
+     * 不传 cursor 时返回最新一页；向上翻页 direction=before，增量拉取 direction=after
+     */
+    @GetMapping("chats/chatHistory/cursor")
+    public ResponseBO<CursorPage<ChatHistory>> getChatHistoryByCursor(@RequestParam("session") String sessionId,
+                                                                      @RequestParam(value = "cursor", required = false) String cursor,
+                                                                      @RequestParam(value = "direction", defaultValue = "before") String direction,
+                                                                      @RequestParam(value = "limit", defaultValue = "30") int limit){
+        CursorPage<ChatHistory> page = chatService.getChatHistoryByCursor(sessionId, cursor, direction, limit);
+        return ResponseBO.success(page);
+    }
+
+    /**
+     * 按会话序号区间补拉缺失消息（接收方发现序号不连续时调用，单次最多返回 100 条）
+     */
+    @GetMapping("chats/chatHistory/range")
+    public ResponseBO<List<ChatHistory>> getChatHistoryBySeqRange(@RequestParam("session") String sessionId,
+                                                                  @RequestParam("fromSeq") long fromSeq,
+                                                                  @RequestParam("toSeq") long toSeq){
+        return ResponseBO.success(chatService.getChatHistoryBySeqRange(sessionId, fromSeq, toSeq));
+    }
+
+    /**
+     * 在会话中检索包含关键词的消息（最新优先）
+     */
+    @GetMapping("chats/search")
+    public ResponseBO<List<ChatHistory>> searchChatHistory(@RequestParam("session") String sessionId,
+                                                           @RequestParam("keyword") String keyword,
+                                                           @RequestParam(value = "limit", defaultValue = "20") int limit){
+        return ResponseBO.success(messageSearchService.search(sessionId, keyword, limit));
+    }
+
+    /**
+     * 流式导出整段会话（含已归档的历史），只能导出当前登录用户参与的会话
+     * format=jsonl 每行一条 JSON，format=csv 带表头；gzip=true 时输出 .gz 文件
+     */
+    @GetMapping("chats/export")
+    public WebAsyncTask<Void> exportChatHistory(Authentication authentication,
+                                                @RequestParam("session") String sessionId,
+                                                @RequestParam(value = "format", defaultValue = "jsonl") String format,
+                                                @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+                                                HttpServletResponse response){
+        String userId = ((User) authentication.getPrincipal()).getId();
+        WebAsyncTask<Void> task = chatExportService.export(userId, sessionId, format, gzip, response);
+        String fileName = "chat-" + sessionId + "." + format.toLowerCase() + (gzip ? ".gz" : "");
+        String contentType = gzip ? "application/gzip"
+                : ChatExportService.FORMAT_CSV.equalsIgnoreCase(format) ? "text/csv;charset=UTF-8"
+                : "application/x-ndjson;charset=UTF-8";
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        response.setContentType(contentType);
+        return task;
+    }
+
     /**
      * 发送图片消息
      */
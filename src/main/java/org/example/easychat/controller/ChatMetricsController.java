@@ -0,0 +1,336 @@
+package org.example.easychat.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.easychat.BO.ApiResponseBO;
+import org.example.easychat.service.ChatArchiveService;
+import org.example.easychat.service.ChatExportService;
+import org.example.easychat.service.ChatPersistenceService;
+import org.example.easychat.service.ClusterRoutingService;
+import org.example.easychat.service.FriendGraphService;
+import org.example.easychat.service.HandshakeAdmissionService;
+import org.example.easychat.service.HotWindowCacheService;
+import org.example.easychat.service.LivenessTracker;
+import org.example.easychat.service.MessageDedupService;
+import org.example.easychat.service.OfflineInboxService;
+import org.example.easychat.service.OutboundFlowControlService;
+import org.example.easychat.service.PresenceService;
+import org.example.easychat.service.PrincipalCacheService;
+import org.example.easychat.service.SessionResumptionService;
+import org.example.easychat.service.SocketEventDispatcher;
+import org.example.easychat.service.SocketEventRateLimiter;
+import org.example.easychat.service.SocketSessionRegistry;
+import org.example.easychat.service.TokenVerificationService;
+import org.example.easychat.service.UnreadCounterService;
+import org.example.easychat.service.WireCodecService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 聊天链路监控控制器
+ * 提供消息管道等聊天核心组件的运行指标
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/chat-metrics")
+public class ChatMetricsController {
+
+    @Autowired
+    private ChatPersistenceService chatPersistenceService;
+
+    @Autowired
+    private FriendGraphService friendGraphService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private OfflineInboxService offlineInboxService;
+
+    @Autowired
+    private MessageDedupService messageDedupService;
+
+    @Autowired
+    private HotWindowCacheService hotWindowCacheService;
+
+    @Autowired
+    private ChatExportService chatExportService;
+
+    @Autowired
+    private ChatArchiveService chatArchiveService;
+
+    @Autowired
+    private SocketSessionRegistry socketSessionRegistry;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private ClusterRoutingService clusterRoutingService;
+
+    @Autowired
+    private SocketEventDispatcher socketEventDispatcher;
+
+    @Autowired
+    private TokenVerificationService tokenVerificationService;
+
+    @Autowired
+    private PrincipalCacheService principalCacheService;
+
+    @Autowired
+    private OutboundFlowControlService outboundFlowControlService;
+
+    @Autowired
+    private WireCodecService wireCodecService;
+
+    @Autowired
+    private SocketEventRateLimiter socketEventRateLimiter;
+
+    @Autowired
+    private LivenessTracker livenessTracker;
+
+    @Autowired
+    private SessionResumptionService sessionResumptionService;
+
+    @Autowired
+    private HandshakeAdmissionService handshakeAdmissionService;
+
+    /**
+     * 获取消息持久化管道指标（批大小、刷盘延迟、队列深度）
+     */
+    @GetMapping("/persistence")
+    public ApiResponseBO<Map<String, Object>> getPersistenceStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取消息持久化指标成功", 200, chatPersistenceService.getStats());
+        } catch (Exception e) {
+            log.error("获取消息持久化指标失败", e);
+            return new ApiResponseBO<>(false, "获取消息持久化指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取好友图缓存指标
+     */
+    @GetMapping("/friend-graph")
+    public ApiResponseBO<Map<String, Object>> getFriendGraphStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取好友图缓存指标成功", 200, friendGraphService.getStats());
+        } catch (Exception e) {
+            log.error("获取好友图缓存指标失败", e);
+            return new ApiResponseBO<>(false, "获取好友图缓存指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取未读计数与已读写回指标
+     */
+    @GetMapping("/unread")
+    public ApiResponseBO<Map<String, Object>> getUnreadStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取未读计数指标成功", 200, unreadCounterService.getStats());
+        } catch (Exception e) {
+            log.error("获取未读计数指标失败", e);
+            return new ApiResponseBO<>(false, "获取未读计数指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取离线收件箱指标
+     */
+    @GetMapping("/inbox")
+    public ApiResponseBO<Map<String, Object>> getInboxStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取离线收件箱指标成功", 200, offlineInboxService.getStats());
+        } catch (Exception e) {
+            log.error("获取离线收件箱指标失败", e);
+            return new ApiResponseBO<>(false, "获取离线收件箱指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取消息去重指标
+     */
+    @GetMapping("/dedup")
+    public ApiResponseBO<Map<String, Object>> getDedupStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取消息去重指标成功", 200, messageDedupService.getStats());
+        } catch (Exception e) {
+            log.error("获取消息去重指标失败", e);
+            return new ApiResponseBO<>(false, "获取消息去重指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取会话热窗口缓存指标（命中率、内存占用）
+     */
+    @GetMapping("/hot-window")
+    public ApiResponseBO<Map<String, Object>> getHotWindowStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取热窗口缓存指标成功", 200, hotWindowCacheService.getStats());
+        } catch (Exception e) {
+            log.error("获取热窗口缓存指标失败", e);
+            return new ApiResponseBO<>(false, "获取热窗口缓存指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取聊天记录导出指标
+     */
+    @GetMapping("/export")
+    public ApiResponseBO<Map<String, Object>> getExportStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取导出指标成功", 200, chatExportService.getStats());
+        } catch (Exception e) {
+            log.error("获取导出指标失败", e);
+            return new ApiResponseBO<>(false, "获取导出指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取聊天记录归档指标
+     */
+    @GetMapping("/archive")
+    public ApiResponseBO<Map<String, Object>> getArchiveStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取归档指标成功", 200, chatArchiveService.getStats());
+        } catch (Exception e) {
+            log.error("获取归档指标失败", e);
+            return new ApiResponseBO<>(false, "获取归档指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取 Socket.IO 会话注册表指标（在线用户数、连接数）
+     */
+    @GetMapping("/sessions")
+    public ApiResponseBO<Map<String, Object>> getSessionStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取会话注册表指标成功", 200, socketSessionRegistry.getStats());
+        } catch (Exception e) {
+            log.error("获取会话注册表指标失败", e);
+            return new ApiResponseBO<>(false, "获取会话注册表指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取在线状态增量推送指标
+     */
+    @GetMapping("/presence")
+    public ApiResponseBO<Map<String, Object>> getPresenceStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取在线状态指标成功", 200, presenceService.getStats());
+        } catch (Exception e) {
+            log.error("获取在线状态指标失败", e);
+            return new ApiResponseBO<>(false, "获取在线状态指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取跨节点路由指标（本节点投递、转发批次、丢弃数）
+     */
+    @GetMapping("/cluster")
+    public ApiResponseBO<Map<String, Object>> getClusterStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取集群路由指标成功", 200, clusterRoutingService.getStats());
+        } catch (Exception e) {
+            log.error("获取集群路由指标失败", e);
+            return new ApiResponseBO<>(false, "获取集群路由指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取 Socket 事件分发指标（分片队列深度、排队耗时、事件循环线程耗时）
+     */
+    @GetMapping("/dispatch")
+    public ApiResponseBO<Map<String, Object>> getDispatchStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取事件分发指标成功", 200, socketEventDispatcher.getStats());
+        } catch (Exception e) {
+            log.error("获取事件分发指标失败", e);
+            return new ApiResponseBO<>(false, "获取事件分发指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    @GetMapping("/token-cache")
+    public ApiResponseBO<Map<String, Object>> getTokenCacheStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取令牌缓存指标成功", 200, tokenVerificationService.getStats());
+        } catch (Exception e) {
+            log.error("获取令牌缓存指标失败", e);
+            return new ApiResponseBO<>(false, "获取令牌缓存指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    @GetMapping("/principal-cache")
+    public ApiResponseBO<Map<String, Object>> getPrincipalCacheStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取认证主体缓存指标成功", 200, principalCacheService.getStats());
+        } catch (Exception e) {
+            log.error("获取认证主体缓存指标失败", e);
+            return new ApiResponseBO<>(false, "获取认证主体缓存指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    @GetMapping("/outbound")
+    public ApiResponseBO<Map<String, Object>> getOutboundStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取出站流控指标成功", 200, outboundFlowControlService.getStats());
+        } catch (Exception e) {
+            log.error("获取出站流控指标失败", e);
+            return new ApiResponseBO<>(false, "获取出站流控指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    @GetMapping("/wire-codec")
+    public ApiResponseBO<Map<String, Object>> getWireCodecStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取推送编码指标成功", 200, wireCodecService.getStats());
+        } catch (Exception e) {
+            log.error("获取推送编码指标失败", e);
+            return new ApiResponseBO<>(false, "获取推送编码指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    @GetMapping("/socket-limit")
+    public ApiResponseBO<Map<String, Object>> getSocketLimitStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取Socket事件限流指标成功", 200, socketEventRateLimiter.getStats());
+        } catch (Exception e) {
+            log.error("获取Socket事件限流指标失败", e);
+            return new ApiResponseBO<>(false, "获取Socket事件限流指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    @GetMapping("/liveness")
+    public ApiResponseBO<Map<String, Object>> getLivenessStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取活跃时间跟踪指标成功", 200, livenessTracker.getStats());
+        } catch (Exception e) {
+            log.error("获取活跃时间跟踪指标失败", e);
+            return new ApiResponseBO<>(false, "获取活跃时间跟踪指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    @GetMapping("/resumption")
+    public ApiResponseBO<Map<String, Object>> getResumptionStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取断线续连指标成功", 200, sessionResumptionService.getStats());
+        } catch (Exception e) {
+            log.error("获取断线续连指标失败", e);
+            return new ApiResponseBO<>(false, "获取断线续连指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    @GetMapping("/handshake")
+    public ApiResponseBO<Map<String, Object>> getHandshakeStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取握手准入指标成功", 200, handshakeAdmissionService.getStats());
+        } catch (Exception e) {
+            log.error("获取握手准入指标失败", e);
+            return new ApiResponseBO<>(false, "获取握手准入指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+}
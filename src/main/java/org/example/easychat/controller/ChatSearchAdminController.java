@@ -0,0 +1,52 @@
+package org.example.easychat.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.easychat.BO.ApiResponseBO;
+import org.example.easychat.service.MessageSearchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 消息检索索引管理控制器
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/chat-search")
+public class ChatSearchAdminController {
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    /**
+     * 从 MySQL 重建本节点的检索索引（异步执行，仅管理员），不传 session 时重建全部会话
+     */
+    @PostMapping("/rebuild")
+    public ApiResponseBO<Void> rebuild(@RequestParam(value = "session", required = false) String sessionId) {
+        try {
+            messageSearchService.rebuild(sessionId);
+            return new ApiResponseBO<>(true, "已提交检索索引重建任务", 200, null);
+        } catch (Exception e) {
+            log.error("提交检索索引重建任务失败", e);
+            return new ApiResponseBO<>(false, "提交检索索引重建任务失败: " + e.getMessage(), 500, null);
+        }
+    }
+
+    /**
+     * 获取检索索引指标
+     */
+    @GetMapping("/stats")
+    public ApiResponseBO<Map<String, Object>> getStats() {
+        try {
+            return new ApiResponseBO<>(true, "获取检索索引指标成功", 200, messageSearchService.getStats());
+        } catch (Exception e) {
+            log.error("获取检索索引指标失败", e);
+            return new ApiResponseBO<>(false, "获取检索索引指标失败: " + e.getMessage(), 500, null);
+        }
+    }
+}
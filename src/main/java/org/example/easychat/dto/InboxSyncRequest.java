@@ -0,0 +1,8 @@
+package org.example.easychat.dto;
+
+import lombok.Data;
+
+@Data
+public class InboxSyncRequest {
+    private String cursor;
+}
@@ -0,0 +1,9 @@
+package org.example.easychat.dto;
+
+import lombok.Data;
+
+@Data
+public class MarkReadRequest {
+    private String sessionId;
+    private String messageId;
+}
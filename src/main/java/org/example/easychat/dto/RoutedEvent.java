@@ -0,0 +1,25 @@
+package org.example.easychat.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 跨节点转发的 Socket.IO 事件
+ */
+@Data
+@NoArgsConstructor
+public class RoutedEvent {
+    // 接收用户ID
+    private String userId;
+    // 事件名
+    private String event;
+    // 事件参数（JSON 数组）
+    private JsonNode args;
+
+    public RoutedEvent(String userId, String event, JsonNode args) {
+        this.userId = userId;
+        this.event = event;
+        this.args = args;
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.easychat.event;
+
+import lombok.Getter;
+import org.example.easychat.Entity.ChatHistory;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * 聊天消息批量落库事件
+ * 由写后合并提交管道在一批消息提交成功后发布
+ */
+@Getter
+public class ChatMessagesPersistedEvent extends ApplicationEvent {
+
+    private final List<ChatHistory> messages;
+
+    public ChatMessagesPersistedEvent(Object source, List<ChatHistory> messages) {
+        super(source);
+        this.messages = messages;
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.easychat.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 会话已读事件
+ * 已读位置写回后发布，每个会话在一个写回周期内只发布一次
+ */
+@Getter
+public class MessagesReadEvent extends ApplicationEvent {
+
+    private final String readerId;
+    private final String peerId;
+    private final String sessionId;
+    private final String upToMessageId;
+
+    public MessagesReadEvent(Object source, String readerId, String peerId, String sessionId, String upToMessageId) {
+        super(source);
+        this.readerId = readerId;
+        this.peerId = peerId;
+        this.sessionId = sessionId;
+        this.upToMessageId = upToMessageId;
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.easychat.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 断线宽限期结束事件
+ * 用户最后一个连接断开后在宽限期内未重连时发布，此时才做下线处理
+ */
+@Getter
+public class SessionExpiredEvent extends ApplicationEvent {
+
+    private final String userId;
+
+    public SessionExpiredEvent(Object source, String userId) {
+        super(source);
+        this.userId = userId;
+    }
+}
@@ -25,6 +25,15 @@ public class AuthService implements AuthInterface{
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    @Autowired
+    private TokenVerificationService tokenVerificationService;
+
+    @Autowired
+    private PrincipalCacheService principalCacheService;
+
+    @Autowired
+    private SessionResumptionService sessionResumptionService;
+
 
     @Override
     public LoginBO login(authDto authDto) {
@@ -58,10 +67,13 @@ public class AuthService implements AuthInterface{
         
         // 登录成功后仅存储单一映射：userToken:<userId> -> <token>
         stringRedisTemplate.opsForValue().set("userToken:" + user.getId(), token, 7, TimeUnit.DAYS);
+        // 旧令牌已被替换，通知各节点丢弃其缓存的校验结果
+        tokenVerificationService.revokeUser(user.getId());
         
         // 更新用户状态
         user.setStatus(1);
         userMapper.updateById(user);
+        principalCacheService.put(user);
         
         // 直接返回用户ID和token
         return new LoginBO(user.getId(), token);
@@ -78,6 +90,10 @@ public class AuthService implements AuthInterface{
         String userId = jwt.getUserIdFromToken(token);
         if (userId != null && !userId.isEmpty()) {
             stringRedisTemplate.delete("userToken:" + userId);
+            tokenVerificationService.revokeUser(userId);
+            principalCacheService.invalidate(userId);
+            // 退出登录不再保留断线宽限期
+            sessionResumptionService.expireNow(userId);
         }
         
         //更新用戶离线状态
@@ -0,0 +1,801 @@
+package org.example.easychat.service;
+
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.ListObjectsRequest;
+import com.aliyun.oss.model.OSSObjectSummary;
+import com.aliyun.oss.model.ObjectListing;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Mapper.ChatMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 聊天记录冷归档服务
+ * 定时把超过保留期的消息从 chat_histories 迁出，按会话写成压缩的不可变段文件（每块若干条消息单独 deflate 压缩，
+ * 文件尾部为块索引），再从热表删除。读取时通过 MappedByteBuffer 映射段文件，按 (create_time, id) 定位块后解压，
+ * 历史接口在热表数据不足一页时透明地继续从归档读取。
+ * 段文件以 OSS 为准（所有节点可读），本地目录只是下载缓存；归档任务由 Redis 锁保证集群内同时只有一个节点执行，
+ * 段文件上传并回读校验后才按段内的消息ID删除热表行，写入新段后广播会话ID让各节点重新读取该会话的段清单。
+ * 每个会话的段清单保存在 Redis 哈希 chat:archive:manifest:<sessionId>（段名 -> 字节数），读取时不访问 OSS LIST，
+ * 没有归档的会话不产生任何 OSS 请求；下载段失败时抛出 ArchiveUnavailableException，由调用方降级为只读热表。
+ */
+@Slf4j
+@Service
+public class ChatArchiveService {
+
+    private static final int SEGMENT_MAGIC = 0x45434131;
+
+    private static final String SEGMENT_SUFFIX = ".arc";
+
+    // 单块消息条数
+    private static final int BLOCK_SIZE = 256;
+
+    // 单次删除热表行数（IN 列表长度）
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private static final Pattern SAFE_SESSION_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static final String LOCK_KEY = "chat:archive:lock";
+
+    public static final String INVALIDATE_CHANNEL = "chat:archive:invalidate";
+
+    public static final String MANIFEST_PREFIX = "chat:archive:manifest:";
+
+    // 仍持有锁时续期
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "end " +
+            "return 0", Long.class);
+
+    // 仍持有锁时释放
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('DEL', KEYS[1]) " +
+            "end " +
+            "return 0", Long.class);
+
+    @Value("${chat.archive.enabled:true}")
+    private boolean enabled;
+
+    // 段文件在 OSS 中的前缀，每个会话一个子目录
+    @Value("${chat.archive.oss-prefix:archive/}")
+    private String ossPrefix;
+
+    // 段文件本地缓存目录
+    @Value("${chat.archive.cache-dir:./data/archive}")
+    private String cacheDir;
+
+    // 归档锁过期时间（毫秒），每归档完一个会话续期一次
+    @Value("${chat.archive.lock-ttl-ms:600000}")
+    private long lockTtlMs;
+
+    @Value("${aliyun.oss.bucketName}")
+    private String bucketName;
+
+    // 超过该天数的消息迁入归档
+    @Value("${chat.archive.age-days:180}")
+    private int ageDays;
+
+    // 单次任务最多处理的会话数
+    @Value("${chat.archive.sessions-per-run:500}")
+    private int sessionsPerRun;
+
+    // 最多同时映射的会话数
+    @Value("${chat.archive.max-open-sessions:256}")
+    private int maxOpenSessions;
+
+    @Autowired
+    private ChatMapper chatMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private OSS ossClient;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private Path root;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    // 已映射的会话段，按访问顺序淘汰
+    private LinkedHashMap<String, List<Segment>> openSegments;
+
+    private final LongAdder archivedCount = new LongAdder();
+    private final LongAdder segmentCount = new LongAdder();
+    private final LongAdder readCount = new LongAdder();
+    private final LongAdder skippedRunCount = new LongAdder();
+    private final LongAdder readFailureCount = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(cacheDir).toAbsolutePath();
+        Files.createDirectories(root);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        openSegments = new LinkedHashMap<String, List<Segment>>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Segment>> eldest) {
+                return size() > maxOpenSessions;
+            }
+        };
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String sessionId = new String(message.getBody(), StandardCharsets.UTF_8);
+            synchronized (openSegments) {
+                openSegments.remove(sessionId);
+            }
+        }, new ChannelTopic(INVALIDATE_CHANNEL));
+        log.info("聊天记录归档初始化完成: enabled={}, bucket={}, prefix={}, cacheDir={}, ageDays={}",
+                enabled, bucketName, ossPrefix, root, ageDays);
+    }
+
+    /**
+     * 归档超过保留期的消息（其它节点正在执行时直接跳过）
+     * @return 本次归档的消息数
+     */
+    public long archiveExpired() {
+        if (!enabled) {
+            return 0;
+        }
+        String lockToken = UUID.randomUUID().toString();
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY, lockToken, Duration.ofMillis(lockTtlMs));
+        if (!Boolean.TRUE.equals(locked)) {
+            skippedRunCount.increment();
+            log.info("其它节点正在执行聊天记录归档，本次跳过");
+            return 0;
+        }
+        try {
+            String cutoff = LocalDateTime.now().minusDays(ageDays).format(TIME_FORMATTER);
+            List<String> sessionIds = chatMapper.listSessionIdsBefore(cutoff, sessionsPerRun);
+            long total = 0;
+            for (String sessionId : sessionIds) {
+                if (sessionId == null || !SAFE_SESSION_ID.matcher(sessionId).matches()) {
+                    continue;
+                }
+                if (!renewLock(lockToken)) {
+                    log.warn("归档锁已失效，停止本次归档: processed={}", total);
+                    break;
+                }
+                try {
+                    total += archiveSession(sessionId, cutoff, lockToken);
+                } catch (Exception e) {
+                    log.error("归档会话失败: sessionId={}", sessionId, e);
+                }
+            }
+            log.info("聊天记录归档完成: cutoff={}, sessions={}, messages={}", cutoff, sessionIds.size(), total);
+            return total;
+        } finally {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(LOCK_KEY), lockToken);
+        }
+    }
+
+    /**
+     * 读取归档中位于指定位置之前的消息（按时间倒序）
+     * @param createTime 位置的创建时间，为空表示从最新的归档消息开始
+     * @param id 位置的消息ID
+     * @throws ArchiveUnavailableException 归档暂不可读
+     */
+    public List<ChatHistory> getBefore(String sessionId, String createTime, String id, int limit) {
+        List<ChatHistory> result = new ArrayList<>();
+        if (!enabled || limit <= 0 || sessionId == null || !SAFE_SESSION_ID.matcher(sessionId).matches()) {
+            return result;
+        }
+        List<Segment> segments = segments(sessionId);
+        for (int s = segments.size() - 1; s >= 0 && result.size() < limit; s--) {
+            Segment segment = segments.get(s);
+            for (int b = segment.blocks.size() - 1; b >= 0 && result.size() < limit; b--) {
+                BlockInfo block = segment.blocks.get(b);
+                if (createTime != null && compare(block.firstCreateTime, block.firstId, createTime, id) >= 0) {
+                    continue;
+                }
+                List<ChatHistory> rows = segment.readBlock(block, sessionId);
+                for (int i = rows.size() - 1; i >= 0 && result.size() < limit; i--) {
+                    ChatHistory row = rows.get(i);
+                    if (createTime == null || compare(row.getCreateTime(), row.getId(), createTime, id) < 0) {
+                        result.add(row);
+                    }
+                }
+            }
+        }
+        readCount.increment();
+        return result;
+    }
+
+    /**
+     * 读取归档中位于指定位置之后的消息（按时间正序）
+     */
+    public List<ChatHistory> getAfter(String sessionId, String createTime, String id, int limit) {
+        List<ChatHistory> result = new ArrayList<>();
+        if (!enabled || limit <= 0 || sessionId == null || !SAFE_SESSION_ID.matcher(sessionId).matches()) {
+            return result;
+        }
+        for (Segment segment : segments(sessionId)) {
+            for (BlockInfo block : segment.blocks) {
+                if (result.size() >= limit) {
+                    return result;
+                }
+                if (createTime != null && compare(block.lastCreateTime, block.lastId, createTime, id) <= 0) {
+                    continue;
+                }
+                for (ChatHistory row : segment.readBlock(block, sessionId)) {
+                    if (result.size() < limit
+                            && (createTime == null || compare(row.getCreateTime(), row.getId(), createTime, id) > 0)) {
+                        result.add(row);
+                    }
+                }
+            }
+        }
+        readCount.increment();
+        return result;
+    }
+
+    /**
+     * 按时间正序逐条遍历会话的全部归档消息（每次只解压一个块，供导出使用）
+     * 应先调用 prepare 确认归档可读，避免响应写出一半时才失败
+     * @return 遍历的消息数
+     * @throws ArchiveUnavailableException 归档暂不可读
+     */
+    public long forEachArchived(String sessionId, ArchivedRowHandler handler) throws IOException {
+        if (!enabled || sessionId == null || !SAFE_SESSION_ID.matcher(sessionId).matches()) {
+            return 0;
+        }
+        long count = 0;
+        for (Segment segment : segments(sessionId)) {
+            for (BlockInfo block : segment.blocks) {
+                for (ChatHistory row : segment.readBlock(block, sessionId)) {
+                    handler.accept(row);
+                    count++;
+                }
+            }
+        }
+        readCount.increment();
+        return count;
+    }
+
+    /**
+     * 确认会话的归档可读（段清单已读取、段文件已在本地缓存）
+     * @throws ArchiveUnavailableException 归档暂不可读
+     */
+    public void prepare(String sessionId) {
+        if (enabled && sessionId != null && SAFE_SESSION_ID.matcher(sessionId).matches()) {
+            segments(sessionId);
+        }
+    }
+
+    /**
+     * 获取归档指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("bucket", bucketName);
+        stats.put("ossPrefix", ossPrefix);
+        stats.put("cacheDir", root != null ? root.toString() : cacheDir);
+        stats.put("ageDays", ageDays);
+        stats.put("skippedRuns", skippedRunCount.sum());
+        stats.put("archivedMessages", archivedCount.sum());
+        stats.put("segmentsWritten", segmentCount.sum());
+        stats.put("reads", readCount.sum());
+        stats.put("readFailures", readFailureCount.sum());
+        synchronized (openSegments) {
+            stats.put("openSessions", openSegments.size());
+        }
+        return stats;
+    }
+
+    /**
+     * 归档单个会话：先写本地临时段文件并上传 OSS，从 OSS 回读校验通过后记入段清单，再按段内的消息ID删除热表行；
+     * 中途失败重跑时从 OSS 中最后一个段的末尾位置继续，并补删该段中仍留在热表的行，不会重复归档
+     */
+    private long archiveSession(String sessionId, String cutoff, String lockToken) throws IOException {
+        // 以 OSS 中的段为准，不用本节点可能过期的列表，同时校正段清单
+        List<Segment> existing = listFromOss(sessionId);
+        String afterTime = null;
+        String afterId = null;
+        if (!existing.isEmpty()) {
+            Segment lastSegment = existing.get(existing.size() - 1);
+            BlockInfo last = lastSegment.lastBlock();
+            afterTime = last.lastCreateTime;
+            afterId = last.lastId;
+            // 上次上传后未来得及删除的行
+            if (renewLock(lockToken)) {
+                deleteArchivedRows(sessionId, lastSegment);
+            }
+        }
+
+        Path dir = root.resolve(sessionId);
+        Files.createDirectories(dir);
+        String segmentName = String.format("%012d%s", nextSegmentNo(existing), SEGMENT_SUFFIX);
+        Path target = dir.resolve(segmentName);
+        Path tmp = dir.resolve(segmentName + ".tmp");
+
+        String finalAfterTime = afterTime;
+        String finalAfterId = afterId;
+        long written = readOnlyTransaction.execute(status -> {
+            try (Cursor<ChatHistory> cursor = chatMapper.streamArchivableHistory(sessionId, finalAfterTime, finalAfterId, cutoff);
+                 FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                return writeSegment(cursor, channel);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        if (written == 0) {
+            Files.deleteIfExists(tmp);
+            return 0;
+        }
+        try {
+            upload(sessionId, segmentName, tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        stringRedisTemplate.opsForHash().put(MANIFEST_PREFIX + sessionId, segmentName, String.valueOf(Files.size(target)));
+        segmentCount.increment();
+        synchronized (openSegments) {
+            openSegments.remove(sessionId);
+        }
+        stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, sessionId);
+
+        // 只删除确实写入并校验过的段中的消息，锁已被其它节点取得时留到下次补删
+        if (renewLock(lockToken)) {
+            deleteArchivedRows(sessionId, Segment.open(target));
+        }
+        archivedCount.add(written);
+        log.debug("归档会话: sessionId={}, messages={}", sessionId, written);
+        return written;
+    }
+
+    /**
+     * 按段内的消息ID分批删除热表行；快照之后写入的行或客户端给出较早时间的行不在段内，不会被删除
+     */
+    private void deleteArchivedRows(String sessionId, Segment segment) {
+        List<String> ids = new ArrayList<>(DELETE_BATCH_SIZE);
+        for (BlockInfo block : segment.blocks) {
+            for (ChatHistory row : segment.readBlock(block, sessionId)) {
+                ids.add(row.getId());
+                if (ids.size() == DELETE_BATCH_SIZE) {
+                    chatMapper.deleteArchivedByIds(sessionId, ids);
+                    ids.clear();
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            chatMapper.deleteArchivedByIds(sessionId, ids);
+        }
+    }
+
+    /**
+     * 段文件格式：
+     * [块数据...] [块索引：块数, 每块(偏移, 压缩长度, 条数, 首条时间, 首条ID, 末条时间, 末条ID)] [索引偏移(long)] [魔数(int)]
+     */
+    private long writeSegment(Cursor<ChatHistory> cursor, FileChannel channel) throws IOException {
+        List<BlockInfo> blocks = new ArrayList<>();
+        List<ChatHistory> pending = new ArrayList<>(BLOCK_SIZE);
+        long offset = 0;
+        long count = 0;
+        for (ChatHistory row : cursor) {
+            pending.add(row);
+            count++;
+            if (pending.size() == BLOCK_SIZE) {
+                offset = writeBlock(channel, pending, offset, blocks);
+                pending.clear();
+            }
+        }
+        if (!pending.isEmpty()) {
+            offset = writeBlock(channel, pending, offset, blocks);
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(indexBytes);
+        out.writeInt(blocks.size());
+        for (BlockInfo block : blocks) {
+            out.writeLong(block.offset);
+            out.writeInt(block.length);
+            out.writeInt(block.count);
+            out.writeUTF(block.firstCreateTime);
+            out.writeUTF(block.firstId);
+            out.writeUTF(block.lastCreateTime);
+            out.writeUTF(block.lastId);
+        }
+        out.writeLong(offset);
+        out.writeInt(SEGMENT_MAGIC);
+        out.flush();
+        writeFully(channel, ByteBuffer.wrap(indexBytes.toByteArray()));
+        channel.force(true);
+        return count;
+    }
+
+    private long writeBlock(FileChannel channel, List<ChatHistory> rows, long offset, List<BlockInfo> blocks) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(rows.size() * 128);
+        DataOutputStream out = new DataOutputStream(raw);
+        out.writeInt(rows.size());
+        for (ChatHistory row : rows) {
+            writeString(out, row.getId());
+            writeString(out, row.getSenderId());
+            writeString(out, row.getReceiverId());
+            out.writeInt(row.getType() != null ? row.getType() : Integer.MIN_VALUE);
+            writeString(out, row.getContent());
+            out.writeInt(row.getHasRead() != null ? row.getHasRead() : Integer.MIN_VALUE);
+            out.writeInt(row.getShowTime() != null ? row.getShowTime() : Integer.MIN_VALUE);
+            writeString(out, row.getCreateTime());
+            out.writeLong(row.getSeq() != null ? row.getSeq() : Long.MIN_VALUE);
+        }
+        out.flush();
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        byte[] compressed;
+        try {
+            deflater.setInput(raw.toByteArray());
+            deflater.finish();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(raw.size() / 2 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                buffer.write(chunk, 0, n);
+            }
+            compressed = buffer.toByteArray();
+        } finally {
+            deflater.end();
+        }
+        writeFully(channel, ByteBuffer.wrap(compressed));
+
+        ChatHistory first = rows.get(0);
+        ChatHistory last = rows.get(rows.size() - 1);
+        blocks.add(new BlockInfo(offset, compressed.length, rows.size(),
+                first.getCreateTime(), first.getId(), last.getCreateTime(), last.getId()));
+        return offset + compressed.length;
+    }
+
+    /**
+     * 上传段文件，再从 OSS 下载到本地缓存并校验格式与内容一致，确认其它节点可读
+     */
+    private void upload(String sessionId, String segmentName, Path tmp, Path target) throws IOException {
+        String key = ossKey(sessionId, segmentName);
+        ossClient.putObject(bucketName, key, tmp.toFile());
+        Path verify = target.resolveSibling(segmentName + ".verify");
+        try {
+            ossClient.getObject(new GetObjectRequest(bucketName, key), verify.toFile());
+            if (Files.size(verify) != Files.size(tmp)) {
+                throw new IOException("归档段回读长度不一致: " + key);
+            }
+            Segment written = Segment.open(tmp);
+            Segment readBack = Segment.open(verify);
+            if (readBack.blocks.size() != written.blocks.size()
+                    || !readBack.lastBlock().lastId.equals(written.lastBlock().lastId)) {
+                throw new IOException("归档段回读内容不一致: " + key);
+            }
+            Files.move(verify, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(verify);
+        }
+    }
+
+    /**
+     * 按 Redis 中的段清单打开会话的段文件，本地缓存缺失的从 OSS 下载；没有归档的会话不访问 OSS
+     * @throws ArchiveUnavailableException 段清单或段文件读取失败（不缓存不完整的列表）
+     */
+    private List<Segment> segments(String sessionId) {
+        synchronized (openSegments) {
+            List<Segment> cached = openSegments.get(sessionId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<Segment> segments = new ArrayList<>();
+        try {
+            Map<Object, Object> manifest = stringRedisTemplate.opsForHash().entries(MANIFEST_PREFIX + sessionId);
+            List<String> names = new ArrayList<>();
+            for (Object name : manifest.keySet()) {
+                names.add((String) name);
+            }
+            Collections.sort(names);
+            Path dir = root.resolve(sessionId);
+            for (String name : names) {
+                Path file = dir.resolve(name);
+                long size = Long.parseLong((String) manifest.get(name));
+                if (!Files.exists(file) || Files.size(file) != size) {
+                    download(ossKey(sessionId, name), file);
+                }
+                segments.add(Segment.open(file));
+            }
+        } catch (Exception e) {
+            readFailureCount.increment();
+            throw new ArchiveUnavailableException("读取归档段失败: sessionId=" + sessionId, e);
+        }
+        List<Segment> result = Collections.unmodifiableList(segments);
+        synchronized (openSegments) {
+            openSegments.put(sessionId, result);
+        }
+        return result;
+    }
+
+    /**
+     * 列出 OSS 中会话的段文件（仅归档任务使用），下载缺失的到本地缓存，并用结果重写段清单
+     */
+    private List<Segment> listFromOss(String sessionId) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        Map<String, String> manifest = new HashMap<>();
+        Path dir = root.resolve(sessionId);
+        for (OSSObjectSummary summary : listSegments(sessionId)) {
+            String name = summary.getKey().substring(summary.getKey().lastIndexOf('/') + 1);
+            Path file = dir.resolve(name);
+            if (!Files.exists(file) || Files.size(file) != summary.getSize()) {
+                download(summary.getKey(), file);
+            }
+            segments.add(Segment.open(file));
+            manifest.put(name, String.valueOf(summary.getSize()));
+        }
+        if (!manifest.isEmpty()) {
+            stringRedisTemplate.opsForHash().putAll(MANIFEST_PREFIX + sessionId, manifest);
+        }
+        return segments;
+    }
+
+    private List<OSSObjectSummary> listSegments(String sessionId) {
+        List<OSSObjectSummary> summaries = new ArrayList<>();
+        ListObjectsRequest request = new ListObjectsRequest(bucketName)
+                .withPrefix(ossPrefix + sessionId + "/")
+                .withMaxKeys(1000);
+        ObjectListing listing;
+        do {
+            listing = ossClient.listObjects(request);
+            for (OSSObjectSummary summary : listing.getObjectSummaries()) {
+                if (summary.getKey().endsWith(SEGMENT_SUFFIX)) {
+                    summaries.add(summary);
+                }
+            }
+            request.setMarker(listing.getNextMarker());
+        } while (listing.isTruncated());
+        summaries.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+        return summaries;
+    }
+
+    private void download(String key, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".download");
+        try {
+            ossClient.getObject(new GetObjectRequest(bucketName, key), tmp.toFile());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private String ossKey(String sessionId, String segmentName) {
+        return ossPrefix + sessionId + "/" + segmentName;
+    }
+
+    private boolean renewLock(String lockToken) {
+        Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(LOCK_KEY),
+                lockToken, String.valueOf(lockTtlMs));
+        return renewed != null && renewed == 1L;
+    }
+
+    private long nextSegmentNo(List<Segment> existing) {
+        if (existing.isEmpty()) {
+            return 0;
+        }
+        String name = existing.get(existing.size() - 1).path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())) + 1;
+    }
+
+    /**
+     * 按 (create_time, id) 比较位置，与热表排序规则一致
+     */
+    private static int compare(String timeA, String idA, String timeB, String idB) {
+        int c = timeA.compareTo(timeB);
+        return c != 0 ? c : idA.compareTo(idB != null ? idB : "");
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 块索引项
+     */
+    private static class BlockInfo {
+        private final long offset;
+        private final int length;
+        private final int count;
+        private final String firstCreateTime;
+        private final String firstId;
+        private final String lastCreateTime;
+        private final String lastId;
+
+        private BlockInfo(long offset, int length, int count, String firstCreateTime, String firstId,
+                          String lastCreateTime, String lastId) {
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+            this.firstCreateTime = firstCreateTime;
+            this.firstId = firstId;
+            this.lastCreateTime = lastCreateTime;
+            this.lastId = lastId;
+        }
+    }
+
+    /**
+     * 只读映射的段文件
+     */
+    private static class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final List<BlockInfo> blocks;
+
+        private Segment(Path path, MappedByteBuffer buffer, List<BlockInfo> blocks) {
+            this.path = path;
+            this.buffer = buffer;
+            this.blocks = blocks;
+        }
+
+        private static Segment open(Path file) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            int size = buffer.capacity();
+            if (size < 12 || buffer.getInt(size - 4) != SEGMENT_MAGIC) {
+                throw new IOException("归档段文件格式错误: " + file);
+            }
+            long indexOffset = buffer.getLong(size - 12);
+            ByteBuffer index = buffer.duplicate();
+            index.position((int) indexOffset).limit(size - 12);
+            byte[] indexBytes = new byte[index.remaining()];
+            index.get(indexBytes);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(indexBytes));
+            int blockCount = in.readInt();
+            List<BlockInfo> blocks = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                blocks.add(new BlockInfo(in.readLong(), in.readInt(), in.readInt(),
+                        in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF()));
+            }
+            return new Segment(file, buffer, blocks);
+        }
+
+        private BlockInfo lastBlock() {
+            return blocks.get(blocks.size() - 1);
+        }
+
+        private List<ChatHistory> readBlock(BlockInfo block, String sessionId) {
+            byte[] compressed = new byte[block.length];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position((int) block.offset);
+            slice.get(compressed);
+
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                ByteArrayOutputStream raw = new ByteArrayOutputStream(block.length * 4);
+                byte[] chunk = new byte[8192];
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(chunk);
+                    if (n == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    raw.write(chunk, 0, n);
+                }
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw.toByteArray()));
+                int count = in.readInt();
+                List<ChatHistory> rows = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    ChatHistory row = new ChatHistory();
+                    row.setId(readString(in));
+                    row.setSenderId(readString(in));
+                    row.setReceiverId(readString(in));
+                    row.setSessionId(sessionId);
+                    int type = in.readInt();
+                    row.setType(type != Integer.MIN_VALUE ? type : null);
+                    row.setContent(readString(in));
+                    int hasRead = in.readInt();
+                    row.setHasRead(hasRead != Integer.MIN_VALUE ? hasRead : null);
+                    int showTime = in.readInt();
+                    row.setShowTime(showTime != Integer.MIN_VALUE ? showTime : null);
+                    row.setCreateTime(readString(in));
+                    long seq = in.readLong();
+                    row.setSeq(seq != Long.MIN_VALUE ? seq : null);
+                    rows.add(row);
+                }
+                return rows;
+            } catch (IOException | DataFormatException e) {
+                throw new IllegalStateException("读取归档块失败: " + path, e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * 归档消息的逐条处理
+     */
+    public interface ArchivedRowHandler {
+        void accept(ChatHistory row) throws IOException;
+    }
+
+    /**
+     * 归档暂不可读（段清单或 OSS 访问失败），调用方应降级为只返回热表数据
+     */
+    public static class ArchiveUnavailableException extends RuntimeException {
+        public ArchiveUnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
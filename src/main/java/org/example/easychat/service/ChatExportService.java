@@ -0,0 +1,247 @@
+package org.example.easychat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.cursor.Cursor;
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Handler.BusinessException;
+import org.example.easychat.Handler.ErrorCode;
+import org.example.easychat.Mapper.ChatMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 聊天记录导出服务
+ * 先按块读取会话已迁入冷归档的消息，再通过 MyBatis Cursor 流式读取热表，逐行写出（JSON Lines / CSV，可选 gzip），
+ * 内存占用与会话大小无关；归档暂不可读时拒绝导出，不输出缺少历史的文件。
+ * 流式读取期间会一直占用一个数据库连接，因此用信号量限制同时进行的导出数量，避免耗尽连接池。
+ * 导出作为带独立超时的异步任务执行：名额由写出线程结束时归还，写出未开始时由异步请求结束回调归还，不会泄漏。
+ */
+@Slf4j
+@Service
+public class ChatExportService {
+
+    public static final String FORMAT_JSONL = "jsonl";
+    public static final String FORMAT_CSV = "csv";
+
+    private static final String CSV_HEADER = "id,seq,sender_id,receiver_id,type,content,has_read,create_time";
+
+    // 同时进行的导出数量上限
+    @Value("${chat.export.max-concurrent:2}")
+    private int maxConcurrent;
+
+    // 等待导出名额的最长时间（毫秒）
+    @Value("${chat.export.acquire-timeout-ms:1000}")
+    private long acquireTimeoutMs;
+
+    // 单次导出的异步请求超时（毫秒），只作用于导出接口
+    @Value("${chat.export.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Autowired
+    private ChatMapper chatMapper;
+
+    @Autowired
+    private ChatArchiveService chatArchiveService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Semaphore permits;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private final LongAdder exportCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder exportedRowCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * 创建会话导出的异步任务，任务执行时把会话逐行写入响应体（响应头由调用方在返回任务前设置）
+     * @param userId 发起导出的用户ID（取自认证信息，必须是会话参与者）
+     * @param sessionId 会话ID
+     * @param format jsonl 或 csv
+     * @param gzip 是否 gzip 压缩
+     */
+    public WebAsyncTask<Void> export(String userId, String sessionId, String format, boolean gzip,
+                                     HttpServletResponse response) {
+        if (StringUtils.isAnyBlank(userId, sessionId)) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMS, "用户ID和会话ID不能为空");
+        }
+        if (!FORMAT_JSONL.equalsIgnoreCase(format) && !FORMAT_CSV.equalsIgnoreCase(format)) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMS, "不支持的导出格式: " + format);
+        }
+        if (chatMapper.countSessionMember(sessionId, userId) == 0) {
+            throw new BusinessException(ErrorCode.FORBIDDEN, "无权导出该会话");
+        }
+        try {
+            chatArchiveService.prepare(sessionId);
+        } catch (ChatArchiveService.ArchiveUnavailableException e) {
+            log.warn("归档暂不可读，拒绝导出: sessionId={}, error={}", sessionId, e.getMessage());
+            throw new BusinessException(ErrorCode.INTERNAL_ERROR, "历史归档暂不可读，请稍后再试");
+        }
+        acquirePermit();
+
+        boolean csv = FORMAT_CSV.equalsIgnoreCase(format);
+        // 0-未开始 1-写出中 2-已归还名额
+        AtomicInteger state = new AtomicInteger();
+        WebAsyncTask<Void> task = new WebAsyncTask<>(timeoutMs, () -> {
+            if (!state.compareAndSet(0, 1)) {
+                return null;
+            }
+            long rows = 0;
+            try {
+                OutputStream outputStream = response.getOutputStream();
+                OutputStream target = gzip ? new GZIPOutputStream(outputStream, 8192) : outputStream;
+                Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 8192);
+                rows = writeRows(sessionId, csv, writer);
+                writer.flush();
+                if (gzip) {
+                    ((GZIPOutputStream) target).finish();
+                }
+            } finally {
+                state.set(2);
+                permits.release();
+                exportedRowCount.add(rows);
+                log.info("导出聊天记录完成: userId={}, sessionId={}, format={}, gzip={}, rows={}",
+                        userId, sessionId, format, gzip, rows);
+            }
+            return null;
+        });
+        // 请求在写出开始前结束（超时、客户端断开、任务未被执行）时归还名额；写出已开始则由写出线程归还，
+        // 超时后写出线程仍持有游标，直到写响应失败才退出
+        task.onCompletion(() -> {
+            if (state.compareAndSet(0, 2)) {
+                permits.release();
+            }
+        });
+        return task;
+    }
+
+    /**
+     * 获取导出指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("timeoutMs", timeoutMs);
+        stats.put("running", maxConcurrent - permits.availablePermits());
+        stats.put("exports", exportCount.sum());
+        stats.put("rejected", rejectedCount.sum());
+        stats.put("exportedRows", exportedRowCount.sum());
+        return stats;
+    }
+
+    private void acquirePermit() {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejectedCount.increment();
+            throw new BusinessException(ErrorCode.RATE_LIMIT_EXCEEDED, "导出任务过多，请稍后再试");
+        }
+        exportCount.increment();
+    }
+
+    /**
+     * 先写归档中的消息（都早于热表），再在只读事务内遍历热表游标（游标依赖打开的连接），逐行写出
+     */
+    private long writeRows(String sessionId, boolean csv, Writer writer) throws IOException {
+        if (csv) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        long archived = chatArchiveService.forEachArchived(sessionId, row -> writeRow(writer, row, csv));
+        try {
+            Long rows = readOnlyTransaction.execute(status -> {
+                long count = 0;
+                try (Cursor<ChatHistory> cursor = chatMapper.streamChatHistory(sessionId)) {
+                    for (ChatHistory row : cursor) {
+                        writeRow(writer, row, csv);
+                        count++;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return count;
+            });
+            return archived + (rows != null ? rows : 0);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void writeRow(Writer writer, ChatHistory row, boolean csv) throws IOException {
+        if (csv) {
+            writeCsvRow(writer, row);
+        } else {
+            writer.write(objectMapper.writeValueAsString(row));
+            writer.write('\n');
+        }
+    }
+
+    private void writeCsvRow(Writer writer, ChatHistory row) throws IOException {
+        writer.write(csvField(row.getId()));
+        writer.write(',');
+        writer.write(csvField(row.getSeq()));
+        writer.write(',');
+        writer.write(csvField(row.getSenderId()));
+        writer.write(',');
+        writer.write(csvField(row.getReceiverId()));
+        writer.write(',');
+        writer.write(csvField(row.getType()));
+        writer.write(',');
+        writer.write(csvField(row.getContent()));
+        writer.write(',');
+        writer.write(csvField(row.getHasRead()));
+        writer.write(',');
+        writer.write(csvField(row.getCreateTime()));
+        writer.write('\n');
+    }
+
+    private String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
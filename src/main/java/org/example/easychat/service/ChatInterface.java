@@ -3,6 +3,7 @@ package org.example.easychat.service;
 import org.example.easychat.BO.ApiResponseBO;
 import org.example.easychat.Entity.ChatSession;
 import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Entity.CursorPage;
 import org.example.easychat.Entity.PageResult;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -17,11 +18,44 @@ public interface ChatInterface {
     List<ChatSession> getChats(String userId);
     
     List<ChatSession> getChatList(String userId);
+
+    /**
+     * 按最近消息时间倒序分页获取会话列表
+     * @param userId 用户ID
+     * @param offset 起始位置
+     * @param limit 条数
+     * @return 会话列表
+     */
+    List<ChatSession> getRecentChats(String userId, int offset, int limit);
     
     List<ChatHistory> getChatHistoryList(String sessionId);
 
+    /**
+     * 页码分页获取聊天历史（第 1 页为最新的一页），仅为兼容旧客户端保留
+     * @deprecated 使用 {@link #getChatHistoryByCursor(String, String, String, int)}
+     */
+    @Deprecated
     PageResult<ChatHistory> getChatPage(String userId, String sessionId, int current, Integer pageSize);
 
+    /**
+     * 游标分页获取聊天历史
+     * @param sessionId 会话ID
+     * @param cursor 上一页返回的游标，为空时从最新消息开始
+     * @param direction before-更早的消息，after-更新的消息
+     * @param limit 每页条数
+     * @return 按时间正序排列的消息及下一页游标
+     */
+    CursorPage<ChatHistory> getChatHistoryByCursor(String sessionId, String cursor, String direction, int limit);
+
+    /**
+     * 按会话序号区间补拉缺失的消息
+     * @param sessionId 会话ID
+     * @param fromSeq 起始序号（含）
+     * @param toSeq 结束序号（含）
+     * @return 按序号正序排列的消息
+     */
+    List<ChatHistory> getChatHistoryBySeqRange(String sessionId, long fromSeq, long toSeq);
+
 
     ApiResponseBO savePictureMsg(MultipartFile file, String senderId,
                                  String receiverId, String sessionId);
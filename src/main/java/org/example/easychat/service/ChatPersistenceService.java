@@ -0,0 +1,408 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Mapper.ChatMapper;
+import org.example.easychat.event.ChatMessagesPersistedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单聊消息写后合并提交服务
+ * 发送线程只负责入队，由单独的刷盘线程按数量/时间阈值将消息合并为多行 INSERT 写入 chat_histories。
+ * 单线程按 FIFO 顺序刷盘，因此同一会话内的消息落库顺序与入队顺序一致。
+ * 会话序号在刷盘线程写库前按会话整段分配：被拒绝入队的消息不会占用序号，逐条写入时失败的消息也不占用序号，
+ * 只有未用完的尾段在其他节点已继续分配时才会留下空洞（计入 seqGaps）。
+ * 队列已满时直接拒绝（由调用方回复繁忙让客户端重试），不在调用线程上越过已排队的消息同步写入，以免打乱会话内顺序。
+ */
+@Slf4j
+@Service
+public class ChatPersistenceService {
+
+    public static final String ACK_MODE_ENQUEUE = "enqueue";
+    public static final String ACK_MODE_COMMIT = "commit";
+
+    @Autowired
+    private ChatMapper chatMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private SessionSequenceService sessionSequenceService;
+
+    // 队列容量
+    @Value("${chat.persistence.queue-capacity:20000}")
+    private int queueCapacity;
+
+    // 单批最大行数
+    @Value("${chat.persistence.batch-size:500}")
+    private int batchSize;
+
+    // 攒批最长等待时间（毫秒）
+    @Value("${chat.persistence.flush-interval-ms:5}")
+    private long flushIntervalMs;
+
+    // 队列满时的最长入队等待时间（毫秒），超时后拒绝
+    @Value("${chat.persistence.offer-timeout-ms:20}")
+    private long offerTimeoutMs;
+
+    // 批量写入失败时的重试次数
+    @Value("${chat.persistence.max-retries:3}")
+    private int maxRetries;
+
+    // 确认模式：commit-提交后确认，enqueue-入队即确认（进程崩溃时会丢失已确认但未落库的消息）
+    @Value("${chat.persistence.ack-mode:commit}")
+    private String ackMode;
+
+    private BlockingQueue<PendingMessage> queue;
+
+    private Thread flushThread;
+
+    private volatile boolean running;
+
+    // 监控指标
+    private final LongAdder enqueuedCount = new LongAdder();
+    private final LongAdder persistedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder seqGapCount = new LongAdder();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong lastBatchSize = new AtomicLong();
+    private final AtomicLong lastFlushLatencyMicros = new AtomicLong();
+    private final AtomicLong maxFlushLatencyMicros = new AtomicLong();
+    private final LongAdder totalFlushLatencyMicros = new LongAdder();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        flushThread = new Thread(this::flushLoop, "chat-persistence-flusher");
+        flushThread.setDaemon(true);
+        flushThread.start();
+        log.info("聊天消息写后合并提交管道已启动: queueCapacity={}, batchSize={}, flushIntervalMs={}, ackMode={}",
+                queueCapacity, batchSize, flushIntervalMs, ackMode);
+    }
+
+    /**
+     * 停机时先停止接收，再把队列中剩余的消息全部刷盘
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (flushThread != null) {
+            try {
+                flushThread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (queue != null && !queue.isEmpty()) {
+            log.warn("停机时仍有 {} 条消息未落库，改为同步写入", queue.size());
+            List<PendingMessage> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            flush(rest);
+        }
+        log.info("聊天消息写后合并提交管道已停止: persisted={}, failed={}", persistedCount.sum(), failedCount.sum());
+    }
+
+    /**
+     * 提交一条消息等待落库
+     * @param chatHistory 聊天记录
+     * @return 落库完成（或失败）时结束的 Future；队列已满或管道已停止时立即以 RejectedExecutionException 结束
+     */
+    public CompletableFuture<ChatHistory> submit(ChatHistory chatHistory) {
+        PendingMessage pending = new PendingMessage(chatHistory);
+        boolean offered;
+        try {
+            offered = running && queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            offered = false;
+        }
+
+        if (!offered) {
+            rejectedCount.increment();
+            log.warn("消息持久化队列已满，拒绝写入: messageId={}, queueDepth={}", chatHistory.getId(), queue.size());
+            pending.future.completeExceptionally(new RejectedExecutionException("消息持久化队列已满"));
+            return pending.future;
+        }
+
+        enqueuedCount.increment();
+        maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        return pending.future;
+    }
+
+    /**
+     * 是否在提交成功后才确认发送方
+     */
+    public boolean isAckAfterCommit() {
+        return ACK_MODE_COMMIT.equalsIgnoreCase(ackMode);
+    }
+
+    /**
+     * 当前队列深度
+     */
+    public int getQueueDepth() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * 获取管道运行指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long batches = batchCount.sum();
+        stats.put("ackMode", ackMode);
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("maxQueueDepth", maxQueueDepth.get());
+        stats.put("enqueued", enqueuedCount.sum());
+        stats.put("persisted", persistedCount.sum());
+        stats.put("failed", failedCount.sum());
+        stats.put("rejected", rejectedCount.sum());
+        stats.put("seqGaps", seqGapCount.sum());
+        stats.put("batches", batches);
+        stats.put("lastBatchSize", lastBatchSize.get());
+        stats.put("maxBatchSize", maxBatchSize.get());
+        stats.put("avgBatchSize", batches > 0 ? (double) persistedCount.sum() / batches : 0);
+        stats.put("lastFlushLatencyMicros", lastFlushLatencyMicros.get());
+        stats.put("maxFlushLatencyMicros", maxFlushLatencyMicros.get());
+        stats.put("avgFlushLatencyMicros", batches > 0 ? (double) totalFlushLatencyMicros.sum() / batches : 0);
+        return stats;
+    }
+
+    /**
+     * 刷盘线程主循环：取到第一条后，在 flushIntervalMs 内尽量攒满 batchSize 条
+     */
+    private void flushLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("消息刷盘线程异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 将一批消息写入数据库，失败时重试，重试仍失败则逐条写入以隔离坏数据
+     */
+    private void flush(List<PendingMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<String, SeqRange> ranges = reserveSeqs(batch);
+        List<ChatHistory> rows = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            if (!pending.future.isDone()) {
+                rows.add(pending.chatHistory);
+            }
+        }
+
+        List<ChatHistory> committed;
+        if (rows.isEmpty()) {
+            committed = rows;
+        } else if (insertWithRetry(rows)) {
+            committed = rows;
+            for (PendingMessage pending : batch) {
+                pending.future.complete(pending.chatHistory);
+            }
+        } else {
+            // 逐条写入：序号在写入前按会话顺延，失败的消息不占用序号
+            committed = new ArrayList<>(rows.size());
+            for (PendingMessage pending : batch) {
+                if (pending.future.isDone()) {
+                    continue;
+                }
+                SeqRange range = ranges.get(pending.chatHistory.getSessionId());
+                pending.chatHistory.setSeq(range.next);
+                try {
+                    chatMapper.insert(pending.chatHistory);
+                    range.next++;
+                    committed.add(pending.chatHistory);
+                    pending.future.complete(pending.chatHistory);
+                } catch (Exception e) {
+                    pending.chatHistory.setSeq(null);
+                    failedCount.increment();
+                    log.error("消息落库失败: messageId={}, sessionId={}",
+                            pending.chatHistory.getId(), pending.chatHistory.getSessionId(), e);
+                    pending.future.completeExceptionally(e);
+                }
+            }
+            releaseUnusedSeqs(ranges);
+        }
+
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        batchCount.increment();
+        persistedCount.add(committed.size());
+        lastBatchSize.set(batch.size());
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+        lastFlushLatencyMicros.set(latencyMicros);
+        maxFlushLatencyMicros.accumulateAndGet(latencyMicros, Math::max);
+        totalFlushLatencyMicros.add(latencyMicros);
+        log.debug("消息批量落库: size={}, committed={}, latency={}us", batch.size(), committed.size(), latencyMicros);
+
+        if (!committed.isEmpty()) {
+            try {
+                eventPublisher.publishEvent(new ChatMessagesPersistedEvent(this, committed));
+            } catch (Exception e) {
+                log.error("发布消息落库事件失败: size={}", committed.size(), e);
+            }
+        }
+    }
+
+    /**
+     * 按会话为本批消息整段分配序号并按入队顺序写入；分配失败的会话其消息直接以失败结束
+     */
+    private Map<String, SeqRange> reserveSeqs(List<PendingMessage> batch) {
+        Map<String, SeqRange> ranges = new LinkedHashMap<>();
+        for (PendingMessage pending : batch) {
+            ranges.computeIfAbsent(pending.chatHistory.getSessionId(), k -> new SeqRange()).count++;
+        }
+        for (Map.Entry<String, SeqRange> entry : ranges.entrySet()) {
+            SeqRange range = entry.getValue();
+            try {
+                range.first = sessionSequenceService.reserve(entry.getKey(), range.count);
+                range.next = range.first;
+            } catch (Exception e) {
+                log.error("分配会话序号失败: sessionId={}, count={}", entry.getKey(), range.count, e);
+                range.failure = e;
+            }
+        }
+        for (PendingMessage pending : batch) {
+            SeqRange range = ranges.get(pending.chatHistory.getSessionId());
+            if (range.failure != null) {
+                failedCount.increment();
+                pending.future.completeExceptionally(range.failure);
+            } else {
+                pending.chatHistory.setSeq(range.next++);
+            }
+        }
+        // 逐条写入时从区间起点重新顺延
+        for (SeqRange range : ranges.values()) {
+            range.next = range.first;
+        }
+        return ranges;
+    }
+
+    /**
+     * 归还逐条写入后未用完的尾段序号
+     */
+    private void releaseUnusedSeqs(Map<String, SeqRange> ranges) {
+        for (Map.Entry<String, SeqRange> entry : ranges.entrySet()) {
+            SeqRange range = entry.getValue();
+            if (range.failure != null) {
+                continue;
+            }
+            long last = range.first + range.count - 1;
+            int unused = (int) (last - range.next + 1);
+            if (unused <= 0) {
+                continue;
+            }
+            boolean released;
+            try {
+                released = sessionSequenceService.release(entry.getKey(), last, unused);
+            } catch (Exception e) {
+                log.warn("归还会话序号失败: sessionId={}, error={}", entry.getKey(), e.getMessage());
+                released = false;
+            }
+            if (!released) {
+                seqGapCount.add(unused);
+                log.warn("会话序号留下空洞: sessionId={}, from={}, to={}", entry.getKey(), range.next, last);
+            }
+        }
+    }
+
+    private boolean insertWithRetry(List<ChatHistory> rows) {
+        for (int attempt = 1; attempt <= maxRetries; attempt++) {
+            try {
+                chatMapper.batchInsert(rows);
+                return true;
+            } catch (Exception e) {
+                log.warn("批量写入聊天记录失败: size={}, attempt={}/{}, error={}", rows.size(), attempt, maxRetries, e.getMessage());
+                if (attempt < maxRetries) {
+                    try {
+                        Thread.sleep(10L * attempt);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 本批中某个会话分配到的序号区间
+     */
+    private static class SeqRange {
+        private int count;
+        private long first;
+        private long next;
+        private Exception failure;
+    }
+
+    /**
+     * 待落库消息
+     */
+    private static class PendingMessage {
+        private final ChatHistory chatHistory;
+        private final CompletableFuture<ChatHistory> future = new CompletableFuture<>();
+
+        private PendingMessage(ChatHistory chatHistory) {
+            this.chatHistory = chatHistory;
+        }
+    }
+}
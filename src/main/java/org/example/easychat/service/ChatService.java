@@ -4,27 +4,48 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.easychat.BO.ApiResponseBO;
 import org.example.easychat.Entity.ChatSession;
 import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Entity.CursorPage;
 import org.example.easychat.Entity.PageResult;
 import org.example.easychat.Mapper.ChatMapper;
 import org.example.easychat.utils.AliOSSUtil;
+import org.example.easychat.utils.ChatCursorCodec;
 import org.example.easychat.utils.JwtUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Service
 public class ChatService implements ChatInterface{
 
+    public static final String DIRECTION_BEFORE = "before";
+    public static final String DIRECTION_AFTER = "after";
+
+    // 游标分页单页最大条数
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+
     @Autowired
     private ChatMapper chatMapper;
 
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Autowired
+    private HotWindowCacheService hotWindowCacheService;
+
+    @Autowired
+    private ChatArchiveService chatArchiveService;
+
     @Autowired
     private AliOSSUtil aliOSSUtil;
 
@@ -32,11 +53,8 @@ public class ChatService implements ChatInterface{
     private JwtUtil jwtUtil;
 
     public List<ChatSession> getChats(String userId) {
-        List<ChatSession> chatBOList = chatMapper.getChats(userId);
-        for(ChatSession chatBO:chatBOList){
-            chatBO.setLatestChatHistory(chatMapper.getLatestChatHistoryBySessionId(chatBO.getSessionId()));
-        }
-        return chatBOList;
+        // 最后一条消息已随会话列表一次查出
+        return chatMapper.getChats(userId);
     }
     
     @Override
@@ -44,17 +62,145 @@ public class ChatService implements ChatInterface{
         return chatMapper.getChats(userId);
     }
 
+    @Override
+    public List<ChatSession> getRecentChats(String userId, int offset, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_CURSOR_PAGE_SIZE));
+        List<String> sessionIds = conversationSummaryService.getRecentSessionIds(userId, Math.max(0, offset), pageSize);
+        if (sessionIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, ChatSession> bySessionId = new HashMap<>();
+        for (ChatSession chatSession : chatMapper.getChatsBySessionIds(userId, sessionIds)) {
+            bySessionId.put(chatSession.getSessionId(), chatSession);
+        }
+        // 按有序集合中的顺序返回
+        List<ChatSession> result = new ArrayList<>(sessionIds.size());
+        for (String sessionId : sessionIds) {
+            ChatSession chatSession = bySessionId.get(sessionId);
+            if (chatSession != null) {
+                result.add(chatSession);
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<ChatHistory> getChatHistoryList(String sessionId) {
         return chatMapper.getChatHistory(sessionId);
     }
 
+    /**
+     * 兼容旧客户端的页码分页：第 1 页为最新的一页，逐页沿游标向前定位，每页一次索引范围扫描，不再整表加载
+     */
+    @Deprecated
     @Override
     public PageResult<ChatHistory> getChatPage(String userId, String sessionId, int current, Integer pageSize) {
-        List<ChatHistory> chatHistory = getChatHistoryList(sessionId);
+        int size = Math.max(1, Math.min(pageSize != null ? pageSize : MAX_CURSOR_PAGE_SIZE, MAX_CURSOR_PAGE_SIZE));
+        int page = Math.max(1, current);
+        CursorPage<ChatHistory> cursorPage = getChatHistoryByCursor(sessionId, null, DIRECTION_BEFORE, size);
+        for (int i = 1; i < page; i++) {
+            if (!cursorPage.isHasMore()) {
+                // 页码超出范围
+                cursorPage = new CursorPage<>(new ArrayList<>(), cursorPage.getNextCursor(), false);
+                break;
+            }
+            cursorPage = getChatHistoryByCursor(sessionId, cursorPage.getNextCursor(), DIRECTION_BEFORE, size);
+        }
         long total = chatMapper.getTotal(sessionId);
-        return new PageResult<>(chatHistory, total, current, pageSize);
+        return new PageResult<>(cursorPage.getRecords(), total, page, size);
+    }
+
+    @Override
+    public CursorPage<ChatHistory> getChatHistoryByCursor(String sessionId, String cursor, String direction, int limit) {
+        if (sessionId == null || sessionId.isEmpty()) {
+            throw new IllegalArgumentException("会话ID不能为空");
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_CURSOR_PAGE_SIZE));
+        boolean after = DIRECTION_AFTER.equalsIgnoreCase(direction);
+
+        String createTime = null;
+        String id = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] position = ChatCursorCodec.decode(cursor);
+            createTime = position[0];
+            id = position[1];
+        }
+
+        // 向前翻页且范围落在热窗口内时直接返回
+        if (!after) {
+            CursorPage<ChatHistory> cached = hotWindowCacheService.getPageBefore(sessionId, id, pageSize);
+            if (cached != null) {
+                if (cached.getNextCursor() == null) {
+                    cached.setNextCursor(cursor);
+                }
+                return cached;
+            }
+        }
+
+        // 多取一条用于判断是否还有更多，避免 COUNT(*)
+        long fillToken = hotWindowCacheService.fillToken(sessionId);
+        List<ChatHistory> rows;
+        boolean archiveUnavailable = false;
+        if (after) {
+            // 归档中的消息都早于热表，先读归档再接热表
+            rows = new ArrayList<>();
+            try {
+                rows.addAll(chatArchiveService.getAfter(sessionId, createTime, id, pageSize + 1));
+            } catch (ChatArchiveService.ArchiveUnavailableException e) {
+                log.warn("归档暂不可读，只返回热表数据: sessionId={}, error={}", sessionId, e.getMessage());
+                archiveUnavailable = true;
+            }
+            if (rows.size() <= pageSize) {
+                ChatHistory edge = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+                rows.addAll(chatMapper.getChatHistoryAfter(sessionId,
+                        edge != null ? edge.getCreateTime() : createTime,
+                        edge != null ? edge.getId() : id, pageSize + 1 - rows.size()));
+            }
+        } else {
+            rows = new ArrayList<>(chatMapper.getChatHistoryBefore(sessionId, createTime, id, pageSize + 1));
+            if (rows.size() <= pageSize) {
+                // 热表已读到头，剩余部分从归档补齐
+                ChatHistory edge = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+                try {
+                    rows.addAll(chatArchiveService.getBefore(sessionId,
+                            edge != null ? edge.getCreateTime() : createTime,
+                            edge != null ? edge.getId() : id, pageSize + 1 - rows.size()));
+                } catch (ChatArchiveService.ArchiveUnavailableException e) {
+                    log.warn("归档暂不可读，只返回热表数据: sessionId={}, error={}", sessionId, e.getMessage());
+                    archiveUnavailable = true;
+                }
+            }
+        }
+        boolean hasMore = rows.size() > pageSize;
+        List<ChatHistory> records = new ArrayList<>(hasMore ? rows.subList(0, pageSize) : rows);
+        if (!after) {
+            // 倒序查出，统一按时间正序返回
+            Collections.reverse(records);
+            if (id == null) {
+                // 归档不可读时不能确认已到会话开头
+                hotWindowCacheService.fillLatest(sessionId, records, !hasMore && !archiveUnavailable, fillToken);
+            }
+        }
+
+        String nextCursor = cursor;
+        if (!records.isEmpty()) {
+            ChatHistory edge = after ? records.get(records.size() - 1) : records.get(0);
+            nextCursor = ChatCursorCodec.encode(edge.getCreateTime(), edge.getId());
+        }
+        return new CursorPage<>(records, nextCursor, hasMore, archiveUnavailable);
     }
+
+    @Override
+    public List<ChatHistory> getChatHistoryBySeqRange(String sessionId, long fromSeq, long toSeq) {
+        if (sessionId == null || sessionId.isEmpty()) {
+            throw new IllegalArgumentException("会话ID不能为空");
+        }
+        if (fromSeq < 1 || toSeq < fromSeq) {
+            throw new IllegalArgumentException("序号区间无效");
+        }
+        return chatMapper.getChatHistoryBySeqRange(sessionId, fromSeq, toSeq, MAX_CURSOR_PAGE_SIZE);
+    }
+
     @Override
     public ApiResponseBO savePictureMsg(MultipartFile file, String senderId,
                                         String receiverId, String sessionId) {
@@ -0,0 +1,373 @@
+package org.example.easychat.service;
+
+import com.corundumstudio.socketio.SocketIOClient;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.example.easychat.Config.SocketIOJsonSupport;
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.dto.RoutedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 跨节点消息路由服务
+ * 接收者在本节点有连接时直接推送（零跳）；否则通过集群传输层查询其所在节点，
+ * 转发事件进入发送队列，由转发线程按目标节点合并成批次后发布，单批最多 batch-size 条。
+ * 事件参数用 Socket.IO 的 ObjectMapper 转为 JSON 树，接收节点推送出的内容与本地推送一致；
+ * 转发到达时用户已不在接收节点的单聊消息写入离线收件箱。
+ */
+@Slf4j
+@Service
+public class ClusterRoutingService {
+
+    private static final TypeReference<List<RoutedEvent>> BATCH_TYPE = new TypeReference<List<RoutedEvent>>() {
+    };
+
+    private static final String RECEIVE_MSG_EVENT = "receiveMsg";
+
+    // 单批最多转发的事件数
+    @Value("${chat.cluster.batch-size:256}")
+    private int batchSize;
+
+    // 攒批最长等待时间（毫秒）
+    @Value("${chat.cluster.batch-linger-ms:2}")
+    private long lingerMs;
+
+    // 发送队列容量，队列满时丢弃并计数
+    @Value("${chat.cluster.queue-capacity:100000}")
+    private int queueCapacity;
+
+    @Autowired
+    private ClusterTransport clusterTransport;
+
+    @Autowired
+    private SocketSessionRegistry sessionRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private WireCodecService wireCodecService;
+
+    @Autowired
+    private SocketIOJsonSupport socketIOJsonSupport;
+
+    @Autowired
+    private OfflineInboxService offlineInboxService;
+
+    private BlockingQueue<Outbound> outbound;
+
+    private Thread forwardThread;
+
+    private volatile boolean running;
+
+    private final LongAdder localCount = new LongAdder();
+    private final LongAdder forwardedCount = new LongAdder();
+    private final LongAdder receivedCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder inboxFallbackCount = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        outbound = new LinkedBlockingQueue<>(queueCapacity);
+        clusterTransport.subscribe(this::onBatch);
+        running = true;
+        forwardThread = new Thread(this::forwardLoop, "chat-cluster-forwarder");
+        forwardThread.setDaemon(true);
+        forwardThread.start();
+        log.info("跨节点消息路由已启动: nodeId={}, batchSize={}, lingerMs={}", clusterTransport.getNodeId(), batchSize, lingerMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (forwardThread != null) {
+            forwardThread.interrupt();
+            try {
+                forwardThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 登记认证成功的连接，用户在本节点的第一个连接写入集群路由
+     */
+    public void register(String userId, SocketIOClient client) {
+        if (sessionRegistry.register(userId, client)) {
+            try {
+                clusterTransport.registerUser(userId);
+            } catch (Exception e) {
+                log.error("写入集群路由失败: userId={}", userId, e);
+            }
+        }
+    }
+
+    /**
+     * 移除连接，用户在本节点的最后一个连接断开时撤销集群路由
+     * @return 是否为该用户在本节点的最后一个连接
+     */
+    public boolean unregister(SocketIOClient client) {
+        return unregister(client, false);
+    }
+
+    /**
+     * 移除连接
+     * @param keepRoute 最后一个连接断开时是否暂时保留集群路由（断线宽限期内其他节点仍把事件转发到本节点缓存）
+     * @return 是否为该用户在本节点的最后一个连接
+     */
+    public boolean unregister(SocketIOClient client, boolean keepRoute) {
+        if (!sessionRegistry.unregister(client)) {
+            return false;
+        }
+        if (!keepRoute) {
+            releaseRoute(client.get(SocketSessionRegistry.USER_ID_KEY));
+        }
+        return true;
+    }
+
+    /**
+     * 撤销用户在本节点的集群路由（用户在本节点已无连接时）
+     */
+    public void releaseRoute(String userId) {
+        if (sessionRegistry.isOnline(userId)) {
+            return;
+        }
+        try {
+            clusterTransport.unregisterUser(userId);
+        } catch (Exception e) {
+            log.error("撤销集群路由失败: userId={}", userId, e);
+        }
+    }
+
+    /**
+     * 当前节点ID
+     */
+    public String getNodeId() {
+        return clusterTransport.getNodeId();
+    }
+
+    /**
+     * 当前存活的节点ID（包含当前节点）
+     */
+    public Set<String> getAliveNodes() {
+        return clusterTransport.getAliveNodes();
+    }
+
+    /**
+     * 用户是否还连接在其他节点
+     */
+    public boolean isOnlineElsewhere(String userId) {
+        try {
+            Set<String> nodes = clusterTransport.lookupNodes(Collections.singletonList(userId)).get(userId);
+            return nodes != null && nodes.stream().anyMatch(node -> !node.equals(clusterTransport.getNodeId()));
+        } catch (Exception e) {
+            log.warn("查询集群路由失败: userId={}, error={}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 向用户的所有设备推送事件（本节点直接推送，其余节点转发）
+     * @return 推送到的本节点连接数与转发的节点数之和，为 0 表示用户离线
+     */
+    public int sendToUser(String userId, String event, Object... payload) {
+        return sendToUsers(event, Collections.singletonMap(userId, payload)).getOrDefault(userId, 0);
+    }
+
+    /**
+     * 向多个用户推送各自的事件参数，远程路由一次批量查询
+     * 用户可能同时在多个节点有设备，本节点推送成功后仍转发到路由表中的其余节点；
+     * 转发失败（队列已满、路由查询失败）且本节点未送达的单聊消息转入离线收件箱
+     * @param payloads userId -> 事件参数
+     * @return userId -> 推送到的连接数与转发节点数之和（离线用户不出现）
+     */
+    public Map<String, Integer> sendToUsers(String event, Map<String, Object[]> payloads) {
+        Map<String, Integer> delivered = new HashMap<>();
+        // 多个接收者共用同一参数数组时（如群消息），编码结果只生成一次
+        Map<Object[], WireCodecService.PreparedEvent> prepared = new IdentityHashMap<>();
+        for (Map.Entry<String, Object[]> entry : payloads.entrySet()) {
+            int local = sessionRegistry.sendToUser(entry.getKey(),
+                    prepared.computeIfAbsent(entry.getValue(), args -> wireCodecService.prepare(event, args)));
+            if (local > 0) {
+                delivered.put(entry.getKey(), local);
+                localCount.increment();
+            }
+        }
+
+        Map<String, Set<String>> routes;
+        try {
+            routes = clusterTransport.lookupNodes(new ArrayList<>(payloads.keySet()));
+        } catch (Exception e) {
+            log.error("查询集群路由失败: users={}", payloads.size(), e);
+            for (Map.Entry<String, Object[]> entry : payloads.entrySet()) {
+                if (!delivered.containsKey(entry.getKey()) && RECEIVE_MSG_EVENT.equals(event) && entry.getValue().length > 0) {
+                    fallbackToInbox(entry.getKey(), entry.getValue()[0]);
+                }
+            }
+            return delivered;
+        }
+        String self = clusterTransport.getNodeId();
+        ObjectMapper wireMapper = socketIOJsonSupport.getObjectMapper();
+        Map<Object[], JsonNode> trees = new IdentityHashMap<>();
+        for (Map.Entry<String, Set<String>> route : routes.entrySet()) {
+            JsonNode args = trees.computeIfAbsent(payloads.get(route.getKey()), wireMapper::valueToTree);
+            int nodes = 0;
+            boolean dropped = false;
+            for (String node : route.getValue()) {
+                if (node.equals(self)) {
+                    continue;
+                }
+                if (outbound.offer(new Outbound(node, new RoutedEvent(route.getKey(), event, args)))) {
+                    nodes++;
+                } else {
+                    droppedCount.increment();
+                    dropped = true;
+                }
+            }
+            if (dropped && RECEIVE_MSG_EVENT.equals(event) && args.size() > 0) {
+                fallbackToInbox(route.getKey(), args.get(0));
+            }
+            if (nodes > 0) {
+                delivered.merge(route.getKey(), nodes, Integer::sum);
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * 获取路由指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("nodeId", clusterTransport.getNodeId());
+        stats.put("queueDepth", outbound.size());
+        stats.put("localDeliveries", localCount.sum());
+        stats.put("forwardedEvents", forwardedCount.sum());
+        stats.put("forwardedBatches", batchCount.sum());
+        stats.put("receivedEvents", receivedCount.sum());
+        stats.put("dropped", droppedCount.sum());
+        stats.put("inboxFallbacks", inboxFallbackCount.sum());
+        return stats;
+    }
+
+    /**
+     * 处理其他节点转发来的事件批次，推送给本节点的连接；
+     * 发送方已把转发计为送达，用户在此期间离开本节点时单聊消息转入离线收件箱
+     */
+    private void onBatch(String payload) {
+        try {
+            List<RoutedEvent> events = objectMapper.readValue(payload, BATCH_TYPE);
+            for (RoutedEvent event : events) {
+                Object[] args = new Object[event.getArgs() != null ? event.getArgs().size() : 0];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = event.getArgs().get(i);
+                }
+                if (sessionRegistry.sendToUser(event.getUserId(), event.getEvent(), args) == 0
+                        && RECEIVE_MSG_EVENT.equals(event.getEvent()) && args.length > 0) {
+                    fallbackToInbox(event.getUserId(), args[0]);
+                }
+            }
+            receivedCount.add(events.size());
+        } catch (Exception e) {
+            log.error("处理转发事件批次失败", e);
+        }
+    }
+
+    private void fallbackToInbox(String userId, Object message) {
+        try {
+            offlineInboxService.append(userId,
+                    socketIOJsonSupport.getObjectMapper().convertValue(message, ChatHistory.class));
+            inboxFallbackCount.increment();
+        } catch (Exception e) {
+            log.error("转发消息转入离线收件箱失败: userId={}", userId, e);
+        }
+    }
+
+    private void forwardLoop() {
+        List<Outbound> drained = new ArrayList<>();
+        while (running) {
+            try {
+                Outbound first = outbound.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // 短暂等待以便同一目标节点的事件合并为一批
+                if (lingerMs > 0) {
+                    Thread.sleep(lingerMs);
+                }
+                drained.add(first);
+                outbound.drainTo(drained);
+                publish(drained);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("转发跨节点事件失败", e);
+            } finally {
+                drained.clear();
+            }
+        }
+    }
+
+    private void publish(List<Outbound> drained) {
+        Map<String, List<RoutedEvent>> byNode = new LinkedHashMap<>();
+        for (Outbound item : drained) {
+            byNode.computeIfAbsent(item.nodeId, k -> new ArrayList<>()).add(item.event);
+        }
+        for (Map.Entry<String, List<RoutedEvent>> entry : byNode.entrySet()) {
+            List<RoutedEvent> events = entry.getValue();
+            for (int from = 0; from < events.size(); from += batchSize) {
+                List<RoutedEvent> batch = events.subList(from, Math.min(from + batchSize, events.size()));
+                try {
+                    clusterTransport.publish(entry.getKey(), objectMapper.writeValueAsString(batch));
+                    forwardedCount.add(batch.size());
+                    batchCount.increment();
+                } catch (Exception e) {
+                    droppedCount.add(batch.size());
+                    log.error("发布跨节点事件批次失败: nodeId={}, events={}", entry.getKey(), batch.size(), e);
+                    // 发送方已把转发计为送达，单聊消息改由离线收件箱兜底
+                    for (RoutedEvent routed : batch) {
+                        if (RECEIVE_MSG_EVENT.equals(routed.getEvent()) && routed.getArgs() != null
+                                && routed.getArgs().size() > 0) {
+                            fallbackToInbox(routed.getUserId(), routed.getArgs().get(0));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 待转发的事件
+     */
+    private static class Outbound {
+        private final String nodeId;
+        private final RoutedEvent event;
+
+        private Outbound(String nodeId, RoutedEvent event) {
+            this.nodeId = nodeId;
+            this.event = event;
+        }
+    }
+}
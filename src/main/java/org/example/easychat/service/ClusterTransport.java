@@ -0,0 +1,50 @@
+package org.example.easychat.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 集群传输层
+ * 维护 userId -> 所在节点 的路由表，并在节点之间传递转发的事件批次。
+ * 默认实现基于 Redis（路由集合 + 节点频道发布订阅），单机部署或测试时可切换为进程内实现。
+ */
+public interface ClusterTransport {
+
+    /**
+     * 当前节点ID
+     */
+    String getNodeId();
+
+    /**
+     * 当前存活的节点ID（包含当前节点）
+     */
+    Set<String> getAliveNodes();
+
+    /**
+     * 登记用户连接在当前节点（用户在本节点的第一个连接建立时调用）
+     */
+    void registerUser(String userId);
+
+    /**
+     * 撤销用户在当前节点的路由（用户在本节点的最后一个连接断开时调用）
+     */
+    void unregisterUser(String userId);
+
+    /**
+     * 批量查询用户所在的存活节点（可能包含当前节点）
+     * @return userId -> 节点ID集合，无路由的用户不出现在结果中
+     */
+    Map<String, Set<String>> lookupNodes(Collection<String> userIds);
+
+    /**
+     * 向指定节点发布一批事件
+     */
+    void publish(String nodeId, String payload);
+
+    /**
+     * 订阅发往当前节点的事件批次
+     */
+    void subscribe(Consumer<String> listener);
+}
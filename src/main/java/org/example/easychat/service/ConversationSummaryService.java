@@ -0,0 +1,189 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Entity.ConversationSummary;
+import org.example.easychat.Mapper.ConversationSummaryMapper;
+import org.example.easychat.event.ChatMessagesPersistedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 会话摘要服务
+ * 消息批量落库后按 (用户, 会话) 合并更新摘要表，并维护 Redis 中按最近消息时间排序的会话有序集合，
+ * 会话列表由一次范围读取得到，不再对 chat_histories 做聚合和逐会话查询
+ */
+@Slf4j
+@Service
+public class ConversationSummaryService {
+
+    // 用户最近会话有序集合：member=sessionId, score=最后消息时间
+    public static final String RECENT_CONVERSATIONS_PREFIX = "chat:conv:recent:";
+
+    private static final Duration RECENT_CONVERSATIONS_TTL = Duration.ofDays(7);
+
+    // 每个用户保留的最近会话数量
+    private static final int MAX_RECENT_CONVERSATIONS = 1000;
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Autowired
+    private ConversationSummaryMapper conversationSummaryMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    /**
+     * 消息批量落库后更新会话摘要（在单线程的事件处理线程池上执行，不占用刷盘线程，批次间顺序不变）
+     */
+    @EventListener
+    @Async("summaryEventExecutor")
+    public void onMessagesPersisted(ChatMessagesPersistedEvent event) {
+        List<ChatHistory> messages = event.getMessages();
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+
+        try {
+            // 同一批次内按 (用户, 会话) 合并，后到的消息覆盖先到的
+            Map<String, ConversationSummary> merged = new LinkedHashMap<>();
+            for (ChatHistory message : messages) {
+                if (StringUtils.isAnyBlank(message.getSenderId(), message.getReceiverId(), message.getSessionId())) {
+                    continue;
+                }
+                mergeInto(merged, message.getSenderId(), message.getReceiverId(), message, 0);
+                mergeInto(merged, message.getReceiverId(), message.getSenderId(), message, 1);
+            }
+            if (merged.isEmpty()) {
+                return;
+            }
+
+            List<ConversationSummary> summaries = new ArrayList<>(merged.values());
+            conversationSummaryMapper.batchUpsert(summaries);
+            // 未读数缓存与摘要表在同一线程上按同一批次更新，重建时两者一致
+            unreadCounterService.applyPersisted(summaries);
+            touchRecentConversations(summaries);
+
+            log.debug("更新会话摘要: messages={}, summaries={}", messages.size(), summaries.size());
+        } catch (Exception e) {
+            log.error("更新会话摘要失败: messages={}", messages.size(), e);
+        }
+    }
+
+    /**
+     * 按最近消息时间倒序获取用户的会话ID
+     */
+    public List<String> getRecentSessionIds(String userId, int offset, int limit) {
+        if (StringUtils.isBlank(userId)) {
+            return new ArrayList<>();
+        }
+        String key = RECENT_CONVERSATIONS_PREFIX + userId;
+        try {
+            Set<String> sessionIds = stringRedisTemplate.opsForZSet().reverseRange(key, offset, offset + limit - 1L);
+            if (sessionIds != null && !sessionIds.isEmpty()) {
+                return new ArrayList<>(sessionIds);
+            }
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+                return new ArrayList<>();
+            }
+        } catch (Exception e) {
+            log.error("读取最近会话缓存失败: userId={}", userId, e);
+        }
+
+        // 缓存未命中，从摘要表重建
+        List<ConversationSummary> summaries = conversationSummaryMapper.selectByUserId(userId);
+        touchRecentConversations(summaries);
+        List<String> result = new ArrayList<>();
+        for (int i = offset; i < summaries.size() && result.size() < limit; i++) {
+            result.add(summaries.get(i).getSessionId());
+        }
+        return result;
+    }
+
+    /**
+     * 获取用户的会话摘要（按最近消息时间倒序）
+     */
+    public List<ConversationSummary> getSummaries(String userId) {
+        return conversationSummaryMapper.selectByUserId(userId);
+    }
+
+    private void mergeInto(Map<String, ConversationSummary> merged, String userId, String peerId,
+                           ChatHistory message, int unreadDelta) {
+        String key = userId + ":" + message.getSessionId();
+        ConversationSummary summary = merged.get(key);
+        int unread = unreadDelta;
+        if (summary == null) {
+            summary = new ConversationSummary();
+            summary.setUserId(userId);
+            summary.setSessionId(message.getSessionId());
+            summary.setPeerId(peerId);
+            merged.put(key, summary);
+        } else {
+            unread += summary.getUnreadCount();
+        }
+        summary.setLastMessageId(message.getId());
+        summary.setLastSenderId(message.getSenderId());
+        summary.setLastReceiverId(message.getReceiverId());
+        summary.setLastType(message.getType());
+        summary.setLastContent(message.getContent());
+        summary.setLastShowTime(message.getShowTime());
+        summary.setLastTime(StringUtils.isNotBlank(message.getCreateTime())
+                ? message.getCreateTime() : LocalDateTime.now().format(TIME_FORMATTER));
+        summary.setUnreadCount(unread);
+    }
+
+    /**
+     * 使用管道批量更新 Redis 中的最近会话有序集合
+     */
+    private void touchRecentConversations(List<ConversationSummary> summaries) {
+        if (summaries == null || summaries.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (ConversationSummary summary : summaries) {
+                    String key = RECENT_CONVERSATIONS_PREFIX + summary.getUserId();
+                    conn.zAdd(key, toScore(summary.getLastTime()), summary.getSessionId());
+                    conn.zRemRangeByRank(key, 0, -MAX_RECENT_CONVERSATIONS - 1L);
+                    conn.expire(key, RECENT_CONVERSATIONS_TTL.getSeconds());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("更新最近会话缓存失败: size={}", summaries.size(), e);
+        }
+    }
+
+    private double toScore(String time) {
+        if (StringUtils.isNotBlank(time)) {
+            try {
+                String normalized = time.length() > 19 ? time.substring(0, 19) : time;
+                return LocalDateTime.parse(normalized.replace('T', ' '), TIME_FORMATTER)
+                        .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (Exception ignored) {
+                // 无法解析的时间使用当前时间
+            }
+        }
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,167 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.example.easychat.Mapper.UserMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 好友关系图服务
+ * 在内存中按用户维护好友邻接集合，按需懒加载，超过容量后按 LRU 淘汰。
+ * 好友关系变更由 FriendGraphInterceptor 拦截对应的 Mapper 写操作后失效，并通过 Redis 频道广播到所有节点；
+ * 缓存项另有存活上限，即使错过失效广播也会在上限时间内重新加载。
+ */
+@Slf4j
+@Service
+public class FriendGraphService {
+
+    public static final String INVALIDATE_CHANNEL = "chat:friend-graph:invalidate";
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    // 最多缓存的用户邻接集合数量
+    @Value("${chat.friend-graph.max-users:100000}")
+    private int maxUsers;
+
+    // 邻接集合最长存活时间（毫秒）
+    @Value("${chat.friend-graph.ttl-ms:300000}")
+    private long ttlMs;
+
+    private Map<String, FriendSet> adjacency;
+
+    // 失效序号：加载期间如发生失效则不写入缓存，避免旧数据覆盖
+    private final AtomicLong invalidationSeq = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder evictCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        adjacency = Collections.synchronizedMap(new LinkedHashMap<String, FriendSet>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FriendSet> eldest) {
+                return size() > maxUsers;
+            }
+        });
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] ids = new String(message.getBody(), StandardCharsets.UTF_8).split(",", -1);
+            evict(StringUtils.defaultIfEmpty(ids[0], null), ids.length > 1 ? StringUtils.defaultIfEmpty(ids[1], null) : null);
+        }, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 判断 friendId 是否在 userId 的好友列表中
+     */
+    public boolean areFriends(String userId, String friendId) {
+        if (StringUtils.isAnyBlank(userId, friendId)) {
+            return false;
+        }
+        return getFriendIds(userId).contains(friendId);
+    }
+
+    /**
+     * 获取用户的好友ID集合（只读）
+     */
+    public Set<String> getFriendIds(String userId) {
+        if (StringUtils.isBlank(userId)) {
+            return Collections.emptySet();
+        }
+        FriendSet cached = adjacency.get(userId);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            hitCount.increment();
+            return cached.friendIds;
+        }
+        return load(userId);
+    }
+
+    /**
+     * 好友关系发生变化时，失效双方的邻接集合，并通知其它节点
+     */
+    public void onFriendshipChanged(String userId, String friendId) {
+        evict(userId, friendId);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL,
+                    StringUtils.defaultString(userId) + "," + StringUtils.defaultString(friendId));
+        } catch (Exception e) {
+            log.error("广播好友图失效失败: userId={}, friendId={}", userId, friendId, e);
+        }
+    }
+
+    /**
+     * 获取好友图缓存指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("cachedUsers", adjacency.size());
+        stats.put("maxUsers", maxUsers);
+        stats.put("ttlMs", ttlMs);
+        stats.put("hits", hitCount.sum());
+        stats.put("loads", loadCount.sum());
+        stats.put("invalidations", evictCount.sum());
+        return stats;
+    }
+
+    private void evict(String userId, String friendId) {
+        invalidationSeq.incrementAndGet();
+        if (userId != null) {
+            adjacency.remove(userId);
+        }
+        if (friendId != null) {
+            adjacency.remove(friendId);
+        }
+        evictCount.increment();
+        log.debug("好友关系变更，失效好友图缓存: userId={}, friendId={}", userId, friendId);
+    }
+
+    private Set<String> load(String userId) {
+        long seq = invalidationSeq.get();
+        List<String> friendIds = userMapper.getUserFriendsIds(userId);
+        Set<String> friends = friendIds == null || friendIds.isEmpty()
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(new HashSet<>(friendIds));
+        loadCount.increment();
+
+        if (invalidationSeq.get() == seq) {
+            adjacency.put(userId, new FriendSet(friends, System.currentTimeMillis() + ttlMs));
+        }
+        return friends;
+    }
+
+    /**
+     * 缓存的邻接集合与过期时间
+     */
+    private static class FriendSet {
+        private final Set<String> friendIds;
+        private final long expiresAt;
+
+        private FriendSet(Set<String> friendIds, long expiresAt) {
+            this.friendIds = friendIds;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
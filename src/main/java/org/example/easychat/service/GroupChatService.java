@@ -5,11 +5,11 @@ import org.example.easychat.BO.ApiResponseBO;
 import org.example.easychat.Entity.GroupMember;
 import org.example.easychat.Entity.GroupMessage;
 import org.example.easychat.Entity.User;
-import org.example.easychat.Handler.ChatSocketIOHandler;
 import org.example.easychat.Mapper.GroupChatMapper;
 import org.example.easychat.Mapper.UserMapper;
 import org.example.easychat.dto.createGroupDto;
 import org.example.easychat.utils.AliOSSUtil;
+import org.example.easychat.utils.SnowflakeIdGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -36,7 +36,10 @@ public class GroupChatService implements GroupChatInterface{
     private AliOSSUtil aliOSSUtil;
 
     @Autowired
-    private ChatSocketIOHandler chatSocketIOHandler;
+    private ClusterRoutingService clusterRoutingService;
+
+    @Autowired
+    private SnowflakeIdGenerator snowflakeIdGenerator;
 
     @Override
     @Transactional
@@ -133,6 +136,7 @@ public class GroupChatService implements GroupChatInterface{
             String senderUsername = sender != null ? sender.getNickName() : "未知用户";
             
             GroupMessage message = new GroupMessage();
+            message.setMessageId(snowflakeIdGenerator.nextIdStr());
             message.setGroupId(groupId);
             message.setContent(url);
             message.setMessageType("image");
@@ -145,14 +149,13 @@ public class GroupChatService implements GroupChatInterface{
             // 获取群成员列表
             List<String> groupMembers = groupChatMapper.getGroupMemberIds(groupId);
             
-            // 推送消息给每个在线的群成员
+            // 推送消息给每个在线的群成员（所有成员共用同一参数，编码只做一次）
+            Object[] args = {message};
+            Map<String, Object[]> payloads = new HashMap<>();
             for (String memberId : groupMembers) {
-                // 获取用户的Socket客户端
-                com.corundumstudio.socketio.SocketIOClient client = chatSocketIOHandler.getUserClient(memberId);
-                if (client != null && client.isChannelOpen()) {
-                    client.sendEvent("receive_group_message", message);
-                }
+                payloads.put(memberId, args);
             }
+            clusterRoutingService.sendToUsers("receive_group_message", payloads);
             
             return ApiResponseBO.success(url);
 
@@ -179,6 +182,7 @@ public class GroupChatService implements GroupChatInterface{
             String senderUsername = sender != null ? sender.getNickName() : "未知用户";
             
             GroupMessage message = new GroupMessage();
+            message.setMessageId(snowflakeIdGenerator.nextIdStr());
             message.setGroupId(groupId);
             message.setContent(url);
             message.setMessageType("file");
@@ -191,14 +195,13 @@ public class GroupChatService implements GroupChatInterface{
             // 获取群成员列表
             List<String> groupMembers = groupChatMapper.getGroupMemberIds(groupId);
             
-            // 推送消息给每个在线的群成员
+            // 推送消息给每个在线的群成员（所有成员共用同一参数，编码只做一次）
+            Object[] args = {message};
+            Map<String, Object[]> payloads = new HashMap<>();
             for (String memberId : groupMembers) {
-                // 获取用户的Socket客户端
-                com.corundumstudio.socketio.SocketIOClient client = chatSocketIOHandler.getUserClient(memberId);
-                if (client != null && client.isChannelOpen()) {
-                    client.sendEvent("receive_group_message", message);
-                }
+                payloads.put(memberId, args);
             }
+            clusterRoutingService.sendToUsers("receive_group_message", payloads);
             
             return ApiResponseBO.success(url);
 
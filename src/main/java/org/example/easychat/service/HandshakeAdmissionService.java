@@ -0,0 +1,304 @@
+package org.example.easychat.service;
+
+import com.corundumstudio.socketio.SocketIOChannelInitializer;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.ReferenceCountUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Socket 握手准入控制
+ * 在 Netty 管道中位于 Socket.IO 握手认证之前，对新建会话的请求（/socket.io/ 且不带 sid）做全局令牌桶限速。
+ * 准入判断本身不验签、不访问 Redis，只做廉价的分级，扣减令牌桶后才由握手认证完整校验一次令牌：
+ * 令牌已在已验证令牌缓存中的握手认证时无需验签和查 Redis，只消耗少量令牌，但另受每秒放行数上限约束；
+ * 载荷中 sub、exp 表明未过期的握手（重启后缓存为空时的正常重连）按完整代价计，可使用保留额度；
+ * 其余握手只有在桶内余量高于保留额度时才放行。
+ * 未放行的握手返回 503，并通过 Retry-After / X-Retry-After-Ms 给出带随机抖动的重试时间，
+ * 抖动范围随最近被推迟的握手数增长，把重启后的重连洪峰摊开到排空所需的时间内；未携带令牌的握手直接拒绝。
+ * 这些响应由本处理器直接写出，不经过 Socket.IO 的跨域处理，因此自行带上跨域头，浏览器客户端才能读到重试时间。
+ */
+@Slf4j
+@Service
+public class HandshakeAdmissionService {
+
+    // 建议重试时间（毫秒）的响应头，标准 Retry-After 只能精确到秒
+    public static final String RETRY_AFTER_MS_HEADER = "X-Retry-After-Ms";
+
+    private static final String HANDSHAKE_PATH = "/socket.io/";
+
+    // 浏览器跨域读取时需要暴露的响应头
+    private static final String EXPOSED_HEADERS = HttpHeaderNames.RETRY_AFTER + ", " + RETRY_AFTER_MS_HEADER;
+
+    @Value("${chat.handshake.enabled:true}")
+    private boolean enabled;
+
+    // 每秒放行的握手数（按需要完整校验的握手计）与桶容量
+    @Value("${chat.handshake.rate:500}")
+    private double rate;
+
+    @Value("${chat.handshake.burst:1000}")
+    private double burst;
+
+    // 令牌已在缓存中的握手消耗的令牌数
+    @Value("${chat.handshake.verified-cost:0.1}")
+    private double verifiedCost;
+
+    // 令牌已在缓存中的握手每秒最多放行数（低消耗不等于不限量，每个放行的握手仍会建立会话）
+    @Value("${chat.handshake.verified-max-rate:1000}")
+    private double verifiedMaxRate;
+
+    // 为令牌看起来有效的握手保留的额度（占桶容量的比例），其余握手不能用到这部分
+    @Value("${chat.handshake.verified-reserve:0.2}")
+    private double verifiedReserve;
+
+    // 建议重试时间的下限与上限（毫秒）
+    @Value("${chat.handshake.min-retry-ms:500}")
+    private long minRetryMs;
+
+    @Value("${chat.handshake.max-retry-ms:30000}")
+    private long maxRetryMs;
+
+    @Autowired
+    private TokenVerificationService tokenVerificationService;
+
+    private final AdmissionHandler handler = new AdmissionHandler();
+
+    // 全局令牌桶与缓存命中握手的放行上限
+    private TokenBucket bucket;
+    private TokenBucket verifiedBucket;
+
+    // 推迟计数，只在 synchronized 方法内读写
+    private long windowStart;
+    private long windowDeferred;
+    private long lastWindowDeferred;
+
+    private final LongAdder admittedVerifiedCount = new LongAdder();
+    private final LongAdder admittedUnexpiredCount = new LongAdder();
+    private final LongAdder admittedNewCount = new LongAdder();
+    private final LongAdder deferredCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder authFailedCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        bucket = new TokenBucket(rate, burst);
+        verifiedBucket = new TokenBucket(verifiedMaxRate, verifiedMaxRate);
+    }
+
+    /**
+     * 新建连接时调用（由 Socket.IO 管道初始化器调用）：在握手认证之前插入准入处理器
+     */
+    public void attach(Channel channel) {
+        if (enabled) {
+            channel.pipeline().addBefore(SocketIOChannelInitializer.AUTHORIZE_HANDLER, "chatHandshakeAdmission", handler);
+        }
+    }
+
+    /**
+     * 记录已放行但认证失败的握手（由认证监听器调用）
+     */
+    public void recordAuthFailure() {
+        authFailedCount.increment();
+    }
+
+    /**
+     * 获取握手准入指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("rate", rate);
+        stats.put("burst", burst);
+        stats.put("verifiedMaxRate", verifiedMaxRate);
+        stats.put("availableTokens", bucket.available(System.nanoTime()));
+        stats.put("admittedVerified", admittedVerifiedCount.sum());
+        stats.put("admittedUnexpired", admittedUnexpiredCount.sum());
+        stats.put("admittedNew", admittedNewCount.sum());
+        stats.put("admitted", admittedVerifiedCount.sum() + admittedUnexpiredCount.sum() + admittedNewCount.sum());
+        stats.put("deferred", deferredCount.sum());
+        stats.put("rejected", rejectedCount.sum());
+        stats.put("authFailed", authFailedCount.sum());
+        return stats;
+    }
+
+    /**
+     * 准入判断（在事件循环线程上执行，只做摘要查找和载荷解码）
+     * @param now System.nanoTime()
+     * @return 0 表示放行，大于 0 为建议的重试时间（毫秒）
+     */
+    long admit(String token, long now) {
+        boolean cached = tokenVerificationService.isCached(token);
+        // 先占上限再扣全局桶，全局桶不足时退还上限；超出上限的按完整代价计
+        if (cached && verifiedBucket.tryAcquire(1, 0, now)) {
+            if (bucket.tryAcquire(verifiedCost, 0, now)) {
+                admittedVerifiedCount.increment();
+                return 0;
+            }
+            verifiedBucket.giveBack(1);
+        }
+        if (cached || tokenVerificationService.hasUnexpiredClaims(token)) {
+            if (bucket.tryAcquire(1, 0, now)) {
+                admittedUnexpiredCount.increment();
+                return 0;
+            }
+        } else if (bucket.tryAcquire(1, burst * verifiedReserve, now)) {
+            admittedNewCount.increment();
+            return 0;
+        }
+        deferredCount.increment();
+        return retryDelayMs(TimeUnit.NANOSECONDS.toMillis(now));
+    }
+
+    /**
+     * 建议的重试时间：在下限与“按放行速率排空最近一秒被推迟的握手所需时间”之间均匀随机
+     */
+    private synchronized long retryDelayMs(long now) {
+        if (now - windowStart >= 1000) {
+            lastWindowDeferred = now - windowStart >= 2000 ? 0 : windowDeferred;
+            windowDeferred = 0;
+            windowStart = now;
+        }
+        windowDeferred++;
+        long drainMs = (long) (Math.max(windowDeferred, lastWindowDeferred) * 1000 / rate);
+        long upper = Math.min(maxRetryMs, Math.max(minRetryMs, drainMs));
+        return minRetryMs + ThreadLocalRandom.current().nextLong(Math.max(1, upper - minRetryMs + 1));
+    }
+
+    private static String tokenOf(QueryStringDecoder query) {
+        List<String> values = query.parameters().get("token");
+        if (values == null || values.isEmpty() || StringUtils.isBlank(values.get(0))) {
+            return null;
+        }
+        String token = values.get(0);
+        return token.startsWith("Bearer ") ? token.substring(7) : token;
+    }
+
+    private static void respond(ChannelHandlerContext ctx, FullHttpRequest request, HttpResponseStatus status,
+                                long retryAfterMs) {
+        byte[] body = retryAfterMs > 0
+                ? ("{\"retryAfterMs\":" + retryAfterMs + "}").getBytes(StandardCharsets.UTF_8)
+                : new byte[0];
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, Unpooled.wrappedBuffer(body));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+        response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, body.length);
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        String origin = request.headers().get(HttpHeaderNames.ORIGIN);
+        if (origin != null) {
+            response.headers().set(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN, origin);
+            response.headers().set(HttpHeaderNames.ACCESS_CONTROL_ALLOW_CREDENTIALS, HttpHeaderValues.TRUE);
+            response.headers().set(HttpHeaderNames.VARY, HttpHeaderNames.ORIGIN);
+        } else {
+            response.headers().set(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        }
+        response.headers().set(HttpHeaderNames.ACCESS_CONTROL_EXPOSE_HEADERS, EXPOSED_HEADERS);
+        if (retryAfterMs > 0) {
+            response.headers().set(HttpHeaderNames.RETRY_AFTER, (retryAfterMs + 999) / 1000);
+            response.headers().set(RETRY_AFTER_MS_HEADER, retryAfterMs);
+        }
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    /**
+     * 握手准入处理器（无连接级状态，所有连接共用一个实例）
+     */
+    @ChannelHandler.Sharable
+    private class AdmissionHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof FullHttpRequest) {
+                FullHttpRequest request = (FullHttpRequest) msg;
+                QueryStringDecoder query = new QueryStringDecoder(request.uri());
+                if (HANDSHAKE_PATH.equals(query.path()) && !query.parameters().containsKey("sid")) {
+                    String token = tokenOf(query);
+                    if (token == null) {
+                        rejectedCount.increment();
+                        respond(ctx, request, HttpResponseStatus.UNAUTHORIZED, 0);
+                        ReferenceCountUtil.release(msg);
+                        return;
+                    }
+                    long retryAfterMs = admit(token, System.nanoTime());
+                    if (retryAfterMs > 0) {
+                        respond(ctx, request, HttpResponseStatus.SERVICE_UNAVAILABLE, retryAfterMs);
+                        ReferenceCountUtil.release(msg);
+                        return;
+                    }
+                }
+            }
+            super.channelRead(ctx, msg);
+        }
+    }
+
+    /**
+     * 令牌桶（首次使用时装满）
+     */
+    private static class TokenBucket {
+        private final double rate;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt;
+        private boolean started;
+
+        private TokenBucket(double rate, double capacity) {
+            this.rate = rate;
+            this.capacity = capacity;
+        }
+
+        /**
+         * 扣减后余量不低于 floor 时扣减并返回 true
+         */
+        private synchronized boolean tryAcquire(double cost, double floor, long now) {
+            refill(now);
+            if (tokens - cost >= floor) {
+                tokens -= cost;
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void giveBack(double cost) {
+            tokens = Math.min(capacity, tokens + cost);
+        }
+
+        private synchronized double available(long now) {
+            refill(now);
+            return tokens;
+        }
+
+        private void refill(long now) {
+            if (!started) {
+                tokens = capacity;
+                started = true;
+            } else if (now > refilledAt) {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * rate / TimeUnit.SECONDS.toNanos(1));
+            } else {
+                return;
+            }
+            refilledAt = now;
+        }
+    }
+}
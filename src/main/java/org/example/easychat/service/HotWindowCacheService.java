@@ -0,0 +1,509 @@
+package org.example.easychat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Entity.CursorPage;
+import org.example.easychat.event.ChatMessagesPersistedEvent;
+import org.example.easychat.event.MessagesReadEvent;
+import org.example.easychat.utils.ChatCursorCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话热窗口缓存
+ * 每个活跃会话在进程内保留最近 N 条消息（环形缓冲），会话之间按 LRU 淘汰并受总内存上限约束；
+ * Redis 有序集合 chat:hot:<sessionId> 作为共享层：所有成员分值为 0，成员为 "create_time id JSON"，
+ * 按字典序即按 (create_time, id) 排列，与数据库排序一致。共享层只接受追加在末尾的写入：
+ * 某批消息排在已有成员之前（其它节点落库较晚的消息）或写入失败时删除该会话的共享层，
+ * 保证共享层始终是会话最新的连续消息，不留缺口，之后由数据库重新提供。消息落库后写入窗口，
+ * 历史接口请求的范围完全落在窗口内时直接返回，不再查询 MySQL。
+ * 每个节点只能看到本节点落库的消息，因此写入后通过 Redis 频道广播会话ID，其它节点丢弃对应的进程内窗口，
+ * 之后由共享层或数据库提供最新消息。
+ */
+@Slf4j
+@Service
+public class HotWindowCacheService {
+
+    public static final String HOT_WINDOW_PREFIX = "chat:hot:";
+
+    public static final String INVALIDATE_CHANNEL = "chat:hot:invalidate";
+
+    // 失效序号分段数：查库期间所在分段发生过失效时，不用查库结果填充窗口
+    private static final int INVALIDATION_STRIPES = 1024;
+
+    private static final long REDIS_TTL_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    // create_time 文本长度（yyyy-MM-dd HH:mm:ss）
+    private static final int CREATE_TIME_LENGTH = 19;
+
+    // 追加到共享层：ARGV 为 窗口大小, 过期秒数, 然后每个 KEY 依次为 条数, 按升序排列的成员...
+    // 本批最小的成员不在末尾（排在已有成员之前）时删除该 KEY；返回删除的 KEY 数
+    private static final DefaultRedisScript<Long> APPEND_SCRIPT = new DefaultRedisScript<>(
+            "local size = tonumber(ARGV[1]) " +
+            "local ttl = tonumber(ARGV[2]) " +
+            "local pos = 3 " +
+            "local dropped = 0 " +
+            "for i = 1, #KEYS do " +
+            "  local n = tonumber(ARGV[pos]) " +
+            "  local card = redis.call('ZCARD', KEYS[i]) " +
+            "  for j = 1, n do " +
+            "    redis.call('ZADD', KEYS[i], 0, ARGV[pos + j]) " +
+            "  end " +
+            "  if card > 0 and redis.call('ZRANK', KEYS[i], ARGV[pos + 1]) < redis.call('ZCARD', KEYS[i]) - n then " +
+            "    redis.call('DEL', KEYS[i]) " +
+            "    dropped = dropped + 1 " +
+            "  else " +
+            "    redis.call('ZREMRANGEBYRANK', KEYS[i], 0, -size - 1) " +
+            "    redis.call('EXPIRE', KEYS[i], ttl) " +
+            "  end " +
+            "  pos = pos + n + 1 " +
+            "end " +
+            "return dropped", Long.class);
+
+    // 单条消息除内容外的估算占用（对象头、字段与字符串）
+    private static final int MESSAGE_OVERHEAD_BYTES = 256;
+
+    @Value("${chat.hot-window.enabled:true}")
+    private boolean enabled;
+
+    // 每个会话保留的最近消息条数
+    @Value("${chat.hot-window.size:50}")
+    private int windowSize;
+
+    // 进程内窗口总内存上限（字节，估算值）
+    @Value("${chat.hot-window.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    // 本实例标识，忽略自己发出的失效广播
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final AtomicLongArray invalidationSeqs = new AtomicLongArray(INVALIDATION_STRIPES);
+
+    private LinkedHashMap<String, SessionWindow> windows;
+
+    private long totalBytes;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder redisHitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictCount = new LongAdder();
+    private final LongAdder remoteInvalidationCount = new LongAdder();
+    private final LongAdder sharedWriteFailureCount = new LongAdder();
+    private final LongAdder outOfOrderDropCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        windows = new LinkedHashMap<>(1024, 0.75f, true);
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onInvalidated(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATE_CHANNEL));
+        log.info("会话热窗口缓存初始化完成: enabled={}, windowSize={}, maxBytes={}", enabled, windowSize, maxBytes);
+    }
+
+    /**
+     * 消息落库后追加到对应会话的窗口，同步到 Redis 共享层，并通知其它节点丢弃这些会话的进程内窗口
+     * （在单线程的事件处理线程池上执行，不占用刷盘线程，批次间顺序不变）
+     */
+    @EventListener
+    @Async("hotWindowEventExecutor")
+    public void onMessagesPersisted(ChatMessagesPersistedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Map<String, List<String>> redisAppends = new LinkedHashMap<>();
+        synchronized (this) {
+            for (ChatHistory message : event.getMessages()) {
+                if (StringUtils.isBlank(message.getSessionId())) {
+                    continue;
+                }
+                SessionWindow window = windows.get(message.getSessionId());
+                if (window == null) {
+                    window = new SessionWindow(windowSize, false);
+                    windows.put(message.getSessionId(), window);
+                }
+                totalBytes += window.append(message);
+            }
+            evictIfNeeded();
+        }
+
+        try {
+            for (ChatHistory message : event.getMessages()) {
+                if (StringUtils.isNotBlank(message.getSessionId())) {
+                    redisAppends.computeIfAbsent(message.getSessionId(), k -> new ArrayList<>())
+                            .add(sharedMember(message));
+                }
+            }
+            if (!redisAppends.isEmpty()) {
+                List<String> keys = new ArrayList<>(redisAppends.size());
+                List<String> args = new ArrayList<>();
+                args.add(String.valueOf(windowSize));
+                args.add(String.valueOf(REDIS_TTL_SECONDS));
+                for (Map.Entry<String, List<String>> entry : redisAppends.entrySet()) {
+                    List<String> members = entry.getValue();
+                    Collections.sort(members);
+                    keys.add(HOT_WINDOW_PREFIX + entry.getKey());
+                    args.add(String.valueOf(members.size()));
+                    args.addAll(members);
+                }
+                Long dropped = stringRedisTemplate.execute(APPEND_SCRIPT, keys, args.toArray());
+                if (dropped != null && dropped > 0) {
+                    outOfOrderDropCount.add(dropped);
+                }
+            }
+        } catch (Exception e) {
+            sharedWriteFailureCount.increment();
+            log.error("写入热窗口共享层失败，删除相关会话的共享层: sessions={}", redisAppends.size(), e);
+            dropShared(redisAppends.keySet());
+        }
+        publishInvalidation(redisAppends.keySet());
+    }
+
+    /**
+     * 已读后更新窗口内消息的已读标记，共享层直接失效
+     */
+    @EventListener
+    public void onMessagesRead(MessagesReadEvent event) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            SessionWindow window = windows.get(event.getSessionId());
+            if (window != null) {
+                window.markRead(event.getReaderId(), event.getUpToMessageId());
+            }
+        }
+        try {
+            stringRedisTemplate.delete(HOT_WINDOW_PREFIX + event.getSessionId());
+        } catch (Exception e) {
+            log.warn("失效热窗口共享层失败: sessionId={}, error={}", event.getSessionId(), e.getMessage());
+        }
+        publishInvalidation(Collections.singleton(event.getSessionId()));
+    }
+
+    /**
+     * 查库前取得会话的失效序号，查库后随结果传给 fillLatest
+     */
+    public long fillToken(String sessionId) {
+        return invalidationSeqs.get(stripeOf(sessionId));
+    }
+
+    /**
+     * 从窗口中读取指定位置之前的一页消息
+     * @param sessionId 会话ID
+     * @param beforeId 游标位置的消息ID，为空表示最新一页
+     * @param limit 条数
+     * @return 范围完全落在窗口内时返回结果，否则返回 null 由调用方查库
+     */
+    public CursorPage<ChatHistory> getPageBefore(String sessionId, String beforeId, int limit) {
+        if (!enabled || limit > windowSize) {
+            return null;
+        }
+        CursorPage<ChatHistory> page;
+        synchronized (this) {
+            SessionWindow window = windows.get(sessionId);
+            page = window != null ? window.pageBefore(beforeId, limit) : null;
+        }
+        if (page != null) {
+            hitCount.increment();
+            return page;
+        }
+
+        SessionWindow shared = loadFromRedis(sessionId);
+        if (shared != null) {
+            page = shared.pageBefore(beforeId, limit);
+            if (page != null) {
+                redisHitCount.increment();
+                return page;
+            }
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * 查库得到最新一页后填充窗口
+     * 窗口中查库之后才落库的消息追加在查库结果之后
+     * @param records 按时间正序排列的最新消息
+     * @param reachedStart 是否已包含会话的第一条消息
+     * @param token 查库前由 fillToken 取得；查库期间会话被其它节点的写入失效过时放弃填充
+     */
+    public void fillLatest(String sessionId, List<ChatHistory> records, boolean reachedStart, long token) {
+        if (!enabled || StringUtils.isBlank(sessionId)) {
+            return;
+        }
+        synchronized (this) {
+            if (invalidationSeqs.get(stripeOf(sessionId)) != token) {
+                return;
+            }
+            SessionWindow existing = windows.get(sessionId);
+            // 已有窗口与查库结果都是会话最新的连续消息：查库结果的最后一条若在窗口中，其之后的为新落库消息
+            int overlap = -1;
+            if (existing != null && !records.isEmpty()) {
+                overlap = existing.indexOf(records.get(records.size() - 1).getId());
+                if (overlap < 0) {
+                    // 两者衔接不上，无法确定先后与是否有缺口：丢弃已有窗口，等下次查库重新填充
+                    windows.remove(sessionId);
+                    totalBytes -= existing.bytes;
+                    return;
+                }
+                if (overlap + 1 >= records.size()) {
+                    // 已有窗口不比查库结果短，保持不变
+                    return;
+                }
+            }
+            SessionWindow window = new SessionWindow(windowSize, reachedStart && records.size() <= windowSize);
+            for (ChatHistory record : records) {
+                window.append(record);
+            }
+            if (existing != null) {
+                for (int i = overlap + 1; i < existing.size; i++) {
+                    window.append(existing.get(i));
+                }
+                totalBytes -= existing.bytes;
+            }
+            totalBytes += window.bytes;
+            windows.put(sessionId, window);
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * 获取热窗口指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long hits = hitCount.sum();
+        long redisHits = redisHitCount.sum();
+        long misses = missCount.sum();
+        long total = hits + redisHits + misses;
+        synchronized (this) {
+            stats.put("sessions", windows.size());
+            stats.put("estimatedBytes", totalBytes);
+        }
+        stats.put("enabled", enabled);
+        stats.put("windowSize", windowSize);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("redisHits", redisHits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictCount.sum());
+        stats.put("remoteInvalidations", remoteInvalidationCount.sum());
+        stats.put("sharedWriteFailures", sharedWriteFailureCount.sum());
+        stats.put("sharedOutOfOrderDrops", outOfOrderDropCount.sum());
+        stats.put("hitRatio", total > 0 ? (double) (hits + redisHits) / total : 0);
+        return stats;
+    }
+
+    private SessionWindow loadFromRedis(String sessionId) {
+        try {
+            Set<String> members = stringRedisTemplate.opsForZSet().range(HOT_WINDOW_PREFIX + sessionId, -windowSize, -1);
+            if (members == null || members.isEmpty()) {
+                return null;
+            }
+            SessionWindow window = new SessionWindow(windowSize, false);
+            // 按 (create_time, id) 正序
+            for (String member : members) {
+                window.append(objectMapper.readValue(member.substring(member.indexOf(' ', CREATE_TIME_LENGTH + 1) + 1),
+                        ChatHistory.class));
+            }
+            return window;
+        } catch (Exception e) {
+            log.warn("读取热窗口共享层失败: sessionId={}, error={}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 共享层成员："create_time id JSON"。create_time 为定长的 yyyy-MM-dd HH:mm:ss，空格小于 ID 中的任何字符，
+     * 字典序与数据库的 ORDER BY create_time, id 一致
+     */
+    private String sharedMember(ChatHistory message) throws JsonProcessingException {
+        String createTime = message.getCreateTime();
+        if (createTime == null || createTime.length() != CREATE_TIME_LENGTH || message.getId() == null) {
+            throw new IllegalArgumentException("消息缺少创建时间或ID: id=" + message.getId());
+        }
+        return createTime + ' ' + message.getId() + ' ' + objectMapper.writeValueAsString(message);
+    }
+
+    private void dropShared(Collection<String> sessionIds) {
+        try {
+            List<String> keys = new ArrayList<>(sessionIds.size());
+            for (String sessionId : sessionIds) {
+                keys.add(HOT_WINDOW_PREFIX + sessionId);
+            }
+            stringRedisTemplate.delete(keys);
+        } catch (Exception e) {
+            log.error("删除热窗口共享层失败，等待过期: sessions={}, error={}", sessionIds.size(), e.getMessage());
+        }
+    }
+
+    private void publishInvalidation(Collection<String> sessionIds) {
+        if (sessionIds.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, instanceId + "|" + String.join(",", sessionIds));
+        } catch (Exception e) {
+            log.warn("广播热窗口失效失败: sessions={}, error={}", sessionIds.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 其它节点写入了这些会话：丢弃进程内窗口，并使进行中的查库填充作废
+     */
+    private void onInvalidated(String payload) {
+        int separator = payload.indexOf('|');
+        if (separator < 0 || instanceId.equals(payload.substring(0, separator))) {
+            return;
+        }
+        synchronized (this) {
+            for (String sessionId : payload.substring(separator + 1).split(",")) {
+                invalidationSeqs.incrementAndGet(stripeOf(sessionId));
+                SessionWindow window = windows.remove(sessionId);
+                if (window != null) {
+                    totalBytes -= window.bytes;
+                    remoteInvalidationCount.increment();
+                }
+            }
+        }
+    }
+
+    private static int stripeOf(String sessionId) {
+        return Math.floorMod(sessionId.hashCode(), INVALIDATION_STRIPES);
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, SessionWindow>> it = windows.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            totalBytes -= it.next().getValue().bytes;
+            it.remove();
+            evictCount.increment();
+        }
+    }
+
+    private static int estimateBytes(ChatHistory message) {
+        return MESSAGE_OVERHEAD_BYTES + (message.getContent() != null ? message.getContent().length() * 2 : 0);
+    }
+
+    /**
+     * 单个会话的环形窗口，保存会话最新的连续若干条消息
+     */
+    private static class SessionWindow {
+        private final ChatHistory[] ring;
+        // 下一条写入位置
+        private int head;
+        private int size;
+        private long bytes;
+        // 窗口是否已包含会话的第一条消息
+        private boolean reachedStart;
+
+        private SessionWindow(int capacity, boolean reachedStart) {
+            this.ring = new ChatHistory[capacity];
+            this.reachedStart = reachedStart;
+        }
+
+        /**
+         * 追加一条消息，返回占用变化量
+         */
+        private long append(ChatHistory message) {
+            // 查库填充与落库事件可能交错，按ID去重
+            for (int i = 0; i < size; i++) {
+                if (message.getId() != null && message.getId().equals(get(i).getId())) {
+                    return 0;
+                }
+            }
+            long delta = estimateBytes(message);
+            if (size == ring.length) {
+                delta -= estimateBytes(ring[head]);
+                reachedStart = false;
+            } else {
+                size++;
+            }
+            ring[head] = message;
+            head = (head + 1) % ring.length;
+            bytes += delta;
+            return delta;
+        }
+
+        /**
+         * 第 i 条（0 为最早）
+         */
+        private ChatHistory get(int i) {
+            return ring[(head - size + i + ring.length) % ring.length];
+        }
+
+        private void markRead(String readerId, String upToMessageId) {
+            int end = indexOf(upToMessageId);
+            for (int i = 0; i <= end; i++) {
+                ChatHistory message = get(i);
+                if (readerId.equals(message.getReceiverId())) {
+                    message.setHasRead(1);
+                }
+            }
+        }
+
+        private int indexOf(String id) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (get(i).getId() != null && get(i).getId().equals(id)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private CursorPage<ChatHistory> pageBefore(String beforeId, int limit) {
+            int end = beforeId == null ? size : indexOf(beforeId);
+            if (end < 0) {
+                return null;
+            }
+            // 需要多一条判断是否还有更多，除非窗口已覆盖会话开头
+            if (end < limit + 1 && !reachedStart) {
+                return null;
+            }
+            int start = Math.max(0, end - limit);
+            List<ChatHistory> records = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                records.add(get(i));
+            }
+            boolean hasMore = start > 0 || !reachedStart;
+            String nextCursor = records.isEmpty() ? null
+                    : ChatCursorCodec.encode(records.get(0).getCreateTime(), records.get(0).getId());
+            return new CursorPage<>(records, nextCursor, hasMore);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.example.easychat.Entity.UserStatus;
+import org.example.easychat.Mapper.UserStatusMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 活跃时间跟踪器
+ * 心跳只在内存表中刷新用户的最后活跃时间（分段加锁，每段内用基本类型数组保存时间戳），
+ * 定时把发生变化的记录批量写入 user_status 表，并用脚本就地更新 Redis 中缓存的用户状态的活跃时间字段；
+ * 数据库写入次数只取决于刷写周期内活跃的用户数，与心跳频率无关。
+ */
+@Slf4j
+@Service
+public class LivenessTracker {
+
+    private static final String USER_STATUS_KEY = "user:status:";
+
+    // 与 UserStatus.lastActiveTime 的 @JsonFormat 一致，该格式下字符串顺序即时间顺序
+    private static final DateTimeFormatter CACHE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // 只替换已缓存状态 JSON 中的 lastActiveTime（仅向后推进），其余字段和剩余过期时间保持不变，
+    // 不会覆盖其他线程或节点同时写入的状态
+    private static final DefaultRedisScript<Long> TOUCH_CACHED_SCRIPT = new DefaultRedisScript<>(
+            "local field = '\"lastActiveTime\":' " +
+            "local n = 0 " +
+            "for i = 1, #KEYS do " +
+            "  local v = redis.call('GET', KEYS[i]) " +
+            "  if v then " +
+            "    local s, e = string.find(v, field .. '\"[^\"]*\"') " +
+            "    local newer = true " +
+            "    if s then " +
+            "      newer = string.sub(v, s + #field + 1, e - 1) < ARGV[i] " +
+            "    else " +
+            "      s, e = string.find(v, field .. 'null', 1, true) " +
+            "    end " +
+            "    if s and newer then " +
+            "      local updated = string.sub(v, 1, s - 1) .. field .. '\"' .. ARGV[i] .. '\"' .. string.sub(v, e + 1) " +
+            "      local ttl = redis.call('PTTL', KEYS[i]) " +
+            "      if ttl > 0 then " +
+            "        redis.call('SET', KEYS[i], updated, 'PX', ttl) " +
+            "      else " +
+            "        redis.call('SET', KEYS[i], updated) " +
+            "      end " +
+            "      n = n + 1 " +
+            "    end " +
+            "  end " +
+            "end " +
+            "return n", Long.class);
+
+    // 分段数（2 的幂）
+    private static final int STRIPES = 64;
+
+    // 每批写入数据库的记录数
+    @Value("${chat.liveness.batch-size:500}")
+    private int batchSize;
+
+    // 超过该时间（毫秒）无心跳且已刷写的记录从内存表移除
+    @Value("${chat.liveness.idle-evict-ms:3600000}")
+    private long idleEvictMs;
+
+    @Autowired
+    private UserStatusMapper userStatusMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final LongAdder touchCount = new LongAdder();
+    private final LongAdder flushedCount = new LongAdder();
+    private final LongAdder flushBatchCount = new LongAdder();
+    private final LongAdder flushFailureCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+
+    /**
+     * 记录用户活跃（心跳时调用）
+     */
+    public void touch(String userId) {
+        if (StringUtils.isBlank(userId)) {
+            return;
+        }
+        stripeOf(userId).touch(userId, System.currentTimeMillis());
+        touchCount.increment();
+    }
+
+    /**
+     * 把变化的活跃时间批量写入数据库和 Redis
+     */
+    @Scheduled(fixedDelayString = "${chat.liveness.flush-interval-ms:30000}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        List<String> ids = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.drainDirty(ids, times, now - idleEvictMs);
+        }
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, ids.size());
+            List<UserStatus> batch = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                UserStatus status = new UserStatus();
+                status.setUserId(ids.get(i));
+                status.setLastActiveTime(toLocalDateTime(times.get(i)));
+                batch.add(status);
+            }
+            try {
+                userStatusMapper.batchUpdateLastActiveTime(batch);
+                flushedCount.add(batch.size());
+                flushBatchCount.increment();
+            } catch (Exception e) {
+                flushFailureCount.increment();
+                log.error("批量写入最后活跃时间失败，下个周期重试: count={}", batch.size(), e);
+                for (int i = from; i < to; i++) {
+                    stripeOf(ids.get(i)).markDirty(ids.get(i), times.get(i));
+                }
+                continue;
+            }
+            refreshCachedStatuses(batch);
+        }
+    }
+
+    /**
+     * 获取活跃时间跟踪指标
+     */
+    public Map<String, Object> getStats() {
+        int tracked = 0;
+        int dirty = 0;
+        for (Stripe stripe : stripes) {
+            int[] counts = stripe.counts();
+            tracked += counts[0];
+            dirty += counts[1];
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("trackedUsers", tracked);
+        stats.put("dirtyUsers", dirty);
+        stats.put("heartbeats", touchCount.sum());
+        stats.put("flushedRows", flushedCount.sum());
+        stats.put("flushBatches", flushBatchCount.sum());
+        stats.put("flushFailures", flushFailureCount.sum());
+        return stats;
+    }
+
+    /**
+     * 更新 Redis 中已缓存的用户状态的最后活跃时间：一批只执行一次脚本，未缓存的用户跳过
+     */
+    private void refreshCachedStatuses(List<UserStatus> batch) {
+        try {
+            List<String> keys = new ArrayList<>(batch.size());
+            Object[] times = new Object[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                keys.add(USER_STATUS_KEY + batch.get(i).getUserId());
+                times[i] = batch.get(i).getLastActiveTime().format(CACHE_TIME_FORMAT);
+            }
+            stringRedisTemplate.execute(TOUCH_CACHED_SCRIPT, keys, times);
+        } catch (Exception e) {
+            log.warn("同步缓存中的最后活跃时间失败: count={}, error={}", batch.size(), e.getMessage());
+        }
+    }
+
+    private Stripe stripeOf(String userId) {
+        return stripes[userId.hashCode() & (STRIPES - 1)];
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    /**
+     * 一个分段：userId -> 槽位，槽位上保存最后活跃时间与已刷写的时间
+     */
+    private static class Stripe {
+        private final Map<String, Integer> slots = new HashMap<>();
+        private String[] ids = new String[64];
+        private long[] lastSeen = new long[64];
+        private long[] flushed = new long[64];
+        private int size;
+
+        private synchronized void touch(String userId, long now) {
+            Integer slot = slots.get(userId);
+            if (slot == null) {
+                slot = add(userId);
+            }
+            lastSeen[slot] = now;
+        }
+
+        private synchronized void markDirty(String userId, long time) {
+            Integer slot = slots.get(userId);
+            if (slot == null) {
+                slot = add(userId);
+                lastSeen[slot] = time;
+            }
+            flushed[slot] = 0;
+        }
+
+        /**
+         * 取出变化的记录并标记为已刷写，同时移除长时间无心跳的记录
+         */
+        private synchronized void drainDirty(List<String> outIds, List<Long> outTimes, long idleBefore) {
+            int i = 0;
+            while (i < size) {
+                if (lastSeen[i] > flushed[i]) {
+                    outIds.add(ids[i]);
+                    outTimes.add(lastSeen[i]);
+                    flushed[i] = lastSeen[i];
+                    i++;
+                } else if (lastSeen[i] < idleBefore) {
+                    remove(i);
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        private synchronized int[] counts() {
+            int dirty = 0;
+            for (int i = 0; i < size; i++) {
+                if (lastSeen[i] > flushed[i]) {
+                    dirty++;
+                }
+            }
+            return new int[]{size, dirty};
+        }
+
+        private int add(String userId) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                lastSeen = Arrays.copyOf(lastSeen, size * 2);
+                flushed = Arrays.copyOf(flushed, size * 2);
+            }
+            int slot = size++;
+            ids[slot] = userId;
+            lastSeen[slot] = 0;
+            flushed[slot] = 0;
+            slots.put(userId, slot);
+            return slot;
+        }
+
+        /**
+         * 用最后一个槽位填补被移除的槽位
+         */
+        private void remove(int slot) {
+            slots.remove(ids[slot]);
+            int last = --size;
+            if (slot != last) {
+                ids[slot] = ids[last];
+                lastSeen[slot] = lastSeen[last];
+                flushed[slot] = flushed[last];
+                slots.put(ids[slot], slot);
+            }
+            ids[last] = null;
+        }
+    }
+}
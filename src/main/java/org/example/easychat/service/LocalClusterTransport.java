@@ -0,0 +1,107 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 进程内集群传输层
+ * 路由表和节点频道保存在静态结构中，同一 JVM 内的多个实例可以互相转发；
+ * 用于单机部署和测试（chat.cluster.transport=local），不依赖 Redis。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "chat.cluster.transport", havingValue = "local")
+public class LocalClusterTransport implements ClusterTransport {
+
+    // userId -> 节点ID集合
+    private static final ConcurrentHashMap<String, Set<String>> ROUTES = new ConcurrentHashMap<>();
+
+    // 节点ID -> 订阅者
+    private static final ConcurrentHashMap<String, Consumer<String>> LISTENERS = new ConcurrentHashMap<>();
+
+    @Value("${chat.cluster.node-id:local}")
+    private String nodeId;
+
+    public LocalClusterTransport() {
+    }
+
+    /**
+     * 供测试直接创建多个节点
+     */
+    public LocalClusterTransport(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    @PostConstruct
+    public void init() {
+        log.info("进程内集群传输层已启动: nodeId={}", nodeId);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        LISTENERS.remove(nodeId);
+        ROUTES.values().forEach(nodes -> nodes.remove(nodeId));
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public Set<String> getAliveNodes() {
+        Set<String> alive = new HashSet<>(LISTENERS.keySet());
+        alive.add(nodeId);
+        return alive;
+    }
+
+    @Override
+    public void registerUser(String userId) {
+        ROUTES.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(nodeId);
+    }
+
+    @Override
+    public void unregisterUser(String userId) {
+        ROUTES.computeIfPresent(userId, (k, nodes) -> {
+            nodes.remove(nodeId);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    @Override
+    public Map<String, Set<String>> lookupNodes(Collection<String> userIds) {
+        Map<String, Set<String>> routes = new HashMap<>();
+        for (String userId : userIds) {
+            Set<String> nodes = ROUTES.get(userId);
+            if (nodes != null && !nodes.isEmpty()) {
+                routes.put(userId, new HashSet<>(nodes));
+            }
+        }
+        return routes;
+    }
+
+    @Override
+    public void publish(String targetNodeId, String payload) {
+        Consumer<String> listener = LISTENERS.get(targetNodeId);
+        if (listener != null) {
+            listener.accept(payload);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        LISTENERS.put(nodeId, listener);
+    }
+}
@@ -0,0 +1,134 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.example.easychat.Entity.ChatHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 消息幂等去重服务
+ * 以 (发送者, 客户端消息ID) 为键，本地用两代哈希表轮换实现短窗口去重（每个窗口整体丢弃一代，无需逐条过期），
+ * Redis SET NX 兜底跨节点和重启后的重复提交。
+ */
+@Slf4j
+@Service
+public class MessageDedupService {
+
+    public static final String DEDUP_PREFIX = "chat:dedup:";
+
+    // 去重窗口（秒）
+    @Value("${chat.dedup.window-seconds:300}")
+    private long windowSeconds;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 当前代与上一代，键为 senderId:clientMsgId，值为已受理的消息（占位时 id 为空）
+    private volatile ConcurrentHashMap<String, ChatHistory> current = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<String, ChatHistory> previous = new ConcurrentHashMap<>();
+    private volatile long generationStart = System.currentTimeMillis();
+
+    private final LongAdder claimCount = new LongAdder();
+    private final LongAdder localHitCount = new LongAdder();
+    private final LongAdder redisHitCount = new LongAdder();
+
+    /**
+     * 尝试受理一条消息
+     * @param senderId 发送者ID
+     * @param clientMsgId 客户端消息ID
+     * @param candidate 本次生成的消息（已分配服务端ID）
+     * @return 首次提交返回 null；重复提交返回先前受理的消息（跨节点时仅包含服务端ID）
+     */
+    public ChatHistory claim(String senderId, String clientMsgId, ChatHistory candidate) {
+        if (StringUtils.isAnyBlank(senderId, clientMsgId)) {
+            return null;
+        }
+        rotateIfNeeded();
+        claimCount.increment();
+        String key = senderId + ":" + clientMsgId;
+
+        ChatHistory existing = previous.get(key);
+        if (existing == null) {
+            existing = current.putIfAbsent(key, candidate);
+        }
+        if (existing != null) {
+            localHitCount.increment();
+            return existing;
+        }
+
+        try {
+            Boolean claimed = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(DEDUP_PREFIX + key, candidate.getId(), Duration.ofSeconds(windowSeconds));
+            if (Boolean.FALSE.equals(claimed)) {
+                current.remove(key, candidate);
+                redisHitCount.increment();
+                ChatHistory original = new ChatHistory();
+                original.setId(stringRedisTemplate.opsForValue().get(DEDUP_PREFIX + key));
+                original.setSenderId(senderId);
+                original.setClientMsgId(clientMsgId);
+                return original;
+            }
+        } catch (Exception e) {
+            // Redis 不可用时仅依赖本地窗口
+            log.warn("Redis 去重失败，仅使用本地去重: key={}, error={}", key, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 撤销受理（消息最终未能落库时调用，允许客户端重试）
+     */
+    public void release(String senderId, String clientMsgId) {
+        if (StringUtils.isAnyBlank(senderId, clientMsgId)) {
+            return;
+        }
+        String key = senderId + ":" + clientMsgId;
+        current.remove(key);
+        previous.remove(key);
+        try {
+            stringRedisTemplate.delete(DEDUP_PREFIX + key);
+        } catch (Exception e) {
+            log.warn("撤销去重记录失败: key={}, error={}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * 获取去重指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("windowSeconds", windowSeconds);
+        stats.put("localEntries", current.size() + previous.size());
+        stats.put("claims", claimCount.sum());
+        stats.put("localDuplicates", localHitCount.sum());
+        stats.put("redisDuplicates", redisHitCount.sum());
+        return stats;
+    }
+
+    /**
+     * 窗口到期后整体轮换：上一代丢弃，当前代降为上一代
+     */
+    private void rotateIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - generationStart < windowSeconds * 1000) {
+            return;
+        }
+        synchronized (this) {
+            if (now - generationStart < windowSeconds * 1000) {
+                return;
+            }
+            previous = current;
+            current = new ConcurrentHashMap<>();
+            generationStart = now;
+        }
+    }
+}
@@ -0,0 +1,674 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.cursor.Cursor;
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Handler.BusinessException;
+import org.example.easychat.Handler.ErrorCode;
+import org.example.easychat.Mapper.ChatMapper;
+import org.example.easychat.utils.BigramTokenizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * 消息全文检索服务
+ * 按会话分区维护倒排索引：查询前按会话序号从 MySQL 补齐上次之后落库的消息写入内存表，定时刷成本地不可变段文件，
+ * 段数过多时合并为一个。消息可能由任意节点落库，索引不依赖本节点的落库事件，因此每个节点的索引都是完整的；
+ * 其他节点分配了序号但尚未提交的消息在 settle 时间内会被反复补拉，超过后视为空洞跳过。
+ * 查询时对查询词的各词项求交（段内文档序号按时间递增，倒序遍历即为最新优先），再按候选ID批量回表并用原文校验。
+ * 检索范围只覆盖热表 chat_histories：已归档的消息回表时查不到，不出现在结果中；
+ * 没有序号的早期消息只能由重建工具（从 MySQL 流式读取整段会话）补进索引。
+ */
+@Slf4j
+@Service
+public class MessageSearchService {
+
+    private static final int SEGMENT_MAGIC = 0x45435331;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    // 已持久化的补齐位置：该序号及之前的消息都已在段文件中
+    private static final String WATERMARK_FILE = "watermark";
+
+    // 补齐时单次按序号读取的行数
+    private static final int CATCH_UP_BATCH = 1000;
+
+    private static final Pattern SAFE_SESSION_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    // 单次查询最多返回条数
+    private static final int MAX_SEARCH_LIMIT = 100;
+
+    @Value("${chat.search.enabled:true}")
+    private boolean enabled;
+
+    // 段文件根目录，每个会话一个子目录
+    @Value("${chat.search.data-dir:./data/search}")
+    private String dataDir;
+
+    // 单个会话段文件数超过该值时合并
+    @Value("${chat.search.max-segments:8}")
+    private int maxSegments;
+
+    // 最多同时加载到内存的会话索引数
+    @Value("${chat.search.max-loaded-sessions:1000}")
+    private int maxLoadedSessions;
+
+    // 序号空洞等待其他节点提交的时间（毫秒），超过后跳过
+    @Value("${chat.search.settle-ms:10000}")
+    private long settleMs;
+
+    // 单次查询最多补齐的行数，首次检索大会话时分多次补齐
+    @Value("${chat.search.max-catch-up-rows:50000}")
+    private int maxCatchUpRows;
+
+    @Autowired
+    private ChatMapper chatMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Path root;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    // 会话索引，卸载段文件且无未持久化内容时一并移除
+    private final ConcurrentHashMap<String, SessionIndex> indexes = new ConcurrentHashMap<>();
+
+    // 已加载段文件的会话，按访问顺序淘汰
+    private LinkedHashMap<String, SessionIndex> loaded;
+
+    private final LongAdder indexedCount = new LongAdder();
+    private final LongAdder queryCount = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder mergeCount = new LongAdder();
+    private final LongAdder skippedGapCount = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(dataDir).toAbsolutePath();
+        Files.createDirectories(root);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        loaded = new LinkedHashMap<>(256, 0.75f, true);
+        log.info("消息检索索引初始化完成: enabled={}, dataDir={}", enabled, root);
+    }
+
+    /**
+     * 在会话中检索包含关键词的消息，最新优先
+     */
+    public List<ChatHistory> search(String sessionId, String keyword, int limit) {
+        if (StringUtils.isAnyBlank(sessionId, keyword)) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMS, "会话ID和关键词不能为空");
+        }
+        if (!enabled) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMS, "消息检索未启用");
+        }
+        if (!SAFE_SESSION_ID.matcher(sessionId).matches()) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMS, "会话ID无效");
+        }
+        queryCount.increment();
+        int pageSize = Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT));
+        Set<String> terms = BigramTokenizer.tokenizeQuery(keyword);
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<String> candidates;
+        SessionIndex index = indexes.computeIfAbsent(sessionId, SessionIndex::new);
+        synchronized (index) {
+            ensureLoaded(index);
+            catchUp(index);
+            candidates = index.candidates(terms);
+        }
+
+        // 分批回表并按原文校验，直到凑满一页
+        String needle = keyword.toLowerCase();
+        List<ChatHistory> result = new ArrayList<>(pageSize);
+        int batchSize = pageSize * 2;
+        for (int from = 0; from < candidates.size() && result.size() < pageSize; from += batchSize) {
+            List<String> batch = candidates.subList(from, Math.min(candidates.size(), from + batchSize));
+            Map<String, ChatHistory> rows = new HashMap<>();
+            for (ChatHistory row : chatMapper.getChatHistoryByIds(batch)) {
+                rows.put(row.getId(), row);
+            }
+            for (String id : batch) {
+                ChatHistory row = rows.get(id);
+                if (row != null && row.getContent() != null && row.getContent().toLowerCase().contains(needle)) {
+                    result.add(row);
+                    if (result.size() == pageSize) {
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 定时把内存表刷成段文件，合并段数过多的会话，并卸载超出上限的已加载会话
+     */
+    @Scheduled(fixedDelayString = "${chat.search.flush-interval-ms:30000}")
+    public void flushMemTables() {
+        if (!enabled) {
+            return;
+        }
+        for (SessionIndex index : indexes.values()) {
+            try {
+                synchronized (index) {
+                    if (index.memTable.size() == 0 && index.watermark == index.persistedWatermark) {
+                        continue;
+                    }
+                    ensureLoaded(index);
+                    if (index.memTable.size() > 0) {
+                        Segment segment = index.memTable.toSegment();
+                        writeSegment(index, segment);
+                        index.segments.add(segment);
+                        index.memTable = new MemTable();
+                        flushCount.increment();
+                        if (index.segments.size() > maxSegments) {
+                            merge(index);
+                        }
+                    }
+                    // 内存表已落盘，补齐位置之前的消息都在段文件中
+                    writeWatermark(index);
+                }
+            } catch (Exception e) {
+                log.error("刷写检索段失败: sessionId={}", index.sessionId, e);
+            }
+        }
+        unloadEldest();
+    }
+
+    /**
+     * 停机前刷写内存表
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushMemTables();
+    }
+
+    /**
+     * 重建会话索引：流式读取 MySQL 热表中的全部消息（含没有序号的早期消息）生成单个段文件
+     * 由管理接口触发，只重建本节点的索引文件
+     * @param sessionId 会话ID，为空时重建全部会话
+     */
+    @Async("batchOperationExecutor")
+    public void rebuild(String sessionId) {
+        List<String> sessionIds = StringUtils.isBlank(sessionId)
+                ? chatMapper.listSessionIds() : Arrays.asList(sessionId);
+        log.info("开始重建消息检索索引: sessions={}", sessionIds.size());
+        long start = System.currentTimeMillis();
+        for (String id : sessionIds) {
+            if (id == null || !SAFE_SESSION_ID.matcher(id).matches()) {
+                continue;
+            }
+            try {
+                rebuildSession(id);
+            } catch (Exception e) {
+                log.error("重建会话检索索引失败: sessionId={}", id, e);
+            }
+        }
+        log.info("重建消息检索索引完成: sessions={}, elapsed={}ms", sessionIds.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 获取检索索引指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("dataDir", root != null ? root.toString() : dataDir);
+        stats.put("sessions", indexes.size());
+        synchronized (loaded) {
+            stats.put("loadedSessions", loaded.size());
+        }
+        stats.put("indexed", indexedCount.sum());
+        stats.put("queries", queryCount.sum());
+        stats.put("flushes", flushCount.sum());
+        stats.put("merges", mergeCount.sum());
+        stats.put("skippedSeqGaps", skippedGapCount.sum());
+        return stats;
+    }
+
+    private void rebuildSession(String sessionId) throws IOException {
+        // 按时间顺序流式读取，文档序号与时间顺序一致
+        long[] maxSeq = {0};
+        MemTable rebuilt = readOnlyTransaction.execute(status -> {
+            MemTable table = new MemTable();
+            try (Cursor<ChatHistory> cursor = chatMapper.streamChatHistory(sessionId)) {
+                for (ChatHistory row : cursor) {
+                    if (StringUtils.isNotBlank(row.getContent())) {
+                        table.add(row.getId(), row.getContent());
+                    }
+                    if (row.getSeq() != null) {
+                        maxSeq[0] = Math.max(maxSeq[0], row.getSeq());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return table;
+        });
+
+        SessionIndex index = indexes.computeIfAbsent(sessionId, SessionIndex::new);
+        synchronized (index) {
+            ensureLoaded(index);
+            List<Segment> old = new ArrayList<>(index.segments);
+            Segment segment = rebuilt.toSegment();
+            writeSegment(index, segment);
+            for (Segment stale : old) {
+                Files.deleteIfExists(stale.path);
+            }
+            index.segments.clear();
+            index.segments.add(segment);
+            // 重建期间补齐到内存表的消息保留，查询时按ID去重；补齐位置在下次刷写内存表时持久化
+            if (maxSeq[0] > index.watermark) {
+                index.watermark = maxSeq[0];
+                index.indexedSeqs.headSet(maxSeq[0], true).clear();
+                index.gapSince.headMap(maxSeq[0], true).clear();
+            }
+        }
+        log.info("重建会话检索索引: sessionId={}, docs={}", sessionId, rebuilt.size());
+    }
+
+    private void merge(SessionIndex index) throws IOException {
+        MemTable merged = new MemTable();
+        for (Segment segment : index.segments) {
+            segment.appendTo(merged);
+        }
+        Segment combined = merged.toSegment();
+        writeSegment(index, combined);
+        for (Segment old : index.segments) {
+            Files.deleteIfExists(old.path);
+        }
+        index.segments.clear();
+        index.segments.add(combined);
+        mergeCount.increment();
+        log.debug("合并检索段: sessionId={}, docs={}", index.sessionId, combined.docIds.length);
+    }
+
+    /**
+     * 卸载最久未访问的会话段（先在 loaded 锁内选出，再逐个加会话锁卸载，避免嵌套加锁）
+     */
+    private void unloadEldest() {
+        List<SessionIndex> evicted = new ArrayList<>();
+        synchronized (loaded) {
+            Iterator<SessionIndex> it = loaded.values().iterator();
+            while (loaded.size() > maxLoadedSessions && it.hasNext()) {
+                evicted.add(it.next());
+                it.remove();
+            }
+        }
+        for (SessionIndex index : evicted) {
+            synchronized (index) {
+                index.segments = null;
+                // 内容已全部落盘时整个移出，下次查询从段文件和补齐位置文件恢复
+                if (index.memTable.size() == 0 && index.watermark == index.persistedWatermark) {
+                    indexes.remove(index.sessionId, index);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按会话序号从 MySQL 补齐上次之后落库的消息（调用方持有会话锁）
+     * 补齐位置只越过已索引的序号和等待超过 settleMs 的空洞，空洞之后已读到的消息按序号记录，避免重复写入
+     */
+    private void catchUp(SessionIndex index) {
+        long from = index.watermark + 1;
+        int read = 0;
+        while (read < maxCatchUpRows) {
+            List<ChatHistory> rows = chatMapper.getChatHistoryBySeqRange(index.sessionId, from, Long.MAX_VALUE, CATCH_UP_BATCH);
+            for (ChatHistory row : rows) {
+                if (index.indexedSeqs.add(row.getSeq()) && StringUtils.isNotBlank(row.getContent())) {
+                    index.memTable.add(row.getId(), row.getContent());
+                    indexedCount.increment();
+                }
+            }
+            read += rows.size();
+            if (rows.size() < CATCH_UP_BATCH) {
+                break;
+            }
+            from = rows.get(rows.size() - 1).getSeq() + 1;
+        }
+
+        long now = System.currentTimeMillis();
+        while (!index.indexedSeqs.isEmpty()) {
+            long next = index.watermark + 1;
+            if (index.indexedSeqs.first() == next) {
+                index.indexedSeqs.pollFirst();
+            } else {
+                Long since = index.gapSince.putIfAbsent(next, now);
+                if (since == null || now - since < settleMs) {
+                    break;
+                }
+                skippedGapCount.increment();
+            }
+            index.gapSince.remove(next);
+            index.watermark = next;
+        }
+    }
+
+    private void ensureLoaded(SessionIndex index) {
+        synchronized (loaded) {
+            loaded.put(index.sessionId, index);
+        }
+        if (index.segments != null) {
+            return;
+        }
+        List<Segment> segments = new ArrayList<>();
+        Path dir = root.resolve(index.sessionId);
+        if (Files.isDirectory(dir)) {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+                stream.forEach(files::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            files.sort(Comparator.comparingLong(this::segmentNo));
+            for (Path file : files) {
+                try {
+                    segments.add(readSegment(file));
+                    index.nextSegmentNo = Math.max(index.nextSegmentNo, segmentNo(file) + 1);
+                } catch (IOException e) {
+                    log.error("读取检索段失败，已跳过: file={}", file, e);
+                }
+            }
+        }
+        index.segments = segments;
+        if (!index.watermarkLoaded) {
+            index.watermark = readWatermark(dir);
+            index.persistedWatermark = index.watermark;
+            index.watermarkLoaded = true;
+        }
+    }
+
+    private long readWatermark(Path dir) {
+        Path file = dir.resolve(WATERMARK_FILE);
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readLong();
+        } catch (IOException e) {
+            log.error("读取检索补齐位置失败，从头补齐: file={}", file, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 先写临时文件再原子改名
+     */
+    private void writeWatermark(SessionIndex index) throws IOException {
+        if (index.watermark == index.persistedWatermark) {
+            return;
+        }
+        Path dir = root.resolve(index.sessionId);
+        Files.createDirectories(dir);
+        Path target = dir.resolve(WATERMARK_FILE);
+        Path tmp = dir.resolve(WATERMARK_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+            out.writeLong(index.watermark);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        index.persistedWatermark = index.watermark;
+    }
+
+    private long segmentNo(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 段文件格式：魔数、文档数、文档ID列表、词项数、每个词项及其差值编码的文档序号
+     * 先写临时文件再原子改名，避免进程中断留下半个段
+     */
+    private void writeSegment(SessionIndex index, Segment segment) throws IOException {
+        Path dir = root.resolve(index.sessionId);
+        Files.createDirectories(dir);
+        Path target = dir.resolve(String.format("%012d%s", index.nextSegmentNo++, SEGMENT_SUFFIX));
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 65536))) {
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeInt(segment.docIds.length);
+            for (String docId : segment.docIds) {
+                out.writeUTF(docId);
+            }
+            out.writeInt(segment.postings.size());
+            for (Map.Entry<String, int[]> entry : segment.postings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                int[] docs = entry.getValue();
+                writeVarInt(out, docs.length);
+                int prev = 0;
+                for (int doc : docs) {
+                    writeVarInt(out, doc - prev);
+                    prev = doc;
+                }
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        segment.path = target;
+    }
+
+    private Segment readSegment(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 65536))) {
+            if (in.readInt() != SEGMENT_MAGIC) {
+                throw new IOException("检索段文件格式错误: " + file);
+            }
+            String[] docIds = new String[in.readInt()];
+            for (int i = 0; i < docIds.length; i++) {
+                docIds[i] = in.readUTF();
+            }
+            int termCount = in.readInt();
+            Map<String, int[]> postings = new HashMap<>(termCount * 2);
+            for (int t = 0; t < termCount; t++) {
+                String term = in.readUTF();
+                int[] docs = new int[readVarInt(in)];
+                int prev = 0;
+                for (int i = 0; i < docs.length; i++) {
+                    prev += readVarInt(in);
+                    docs[i] = prev;
+                }
+                postings.put(term, docs);
+            }
+            Segment segment = new Segment(docIds, postings);
+            segment.path = file;
+            return segment;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * 求多个有序文档序号列表的交集
+     */
+    private static int[] intersect(List<int[]> lists) {
+        lists.sort(Comparator.comparingInt(a -> a.length));
+        int[] result = lists.get(0);
+        for (int k = 1; k < lists.size() && result.length > 0; k++) {
+            int[] other = lists.get(k);
+            int[] next = new int[Math.min(result.length, other.length)];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < result.length && j < other.length) {
+                if (result[i] == other[j]) {
+                    next[n++] = result[i];
+                    i++;
+                    j++;
+                } else if (result[i] < other[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            result = Arrays.copyOf(next, n);
+        }
+        return result;
+    }
+
+    /**
+     * 单个会话的索引：若干不可变段 + 一个内存表
+     */
+    private static class SessionIndex {
+        private final String sessionId;
+        // 为 null 表示段文件尚未加载
+        private List<Segment> segments;
+        private MemTable memTable = new MemTable();
+        private long nextSegmentNo;
+        // 补齐位置：该序号及之前的消息已写入索引（或空洞已跳过）
+        private long watermark;
+        private long persistedWatermark;
+        private boolean watermarkLoaded;
+        // 补齐位置之后已写入索引的序号
+        private final TreeSet<Long> indexedSeqs = new TreeSet<>();
+        // 补齐位置之后的空洞序号 -> 首次发现的时间
+        private final TreeMap<Long, Long> gapSince = new TreeMap<>();
+
+        private SessionIndex(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        /**
+         * 按最新优先返回全部词项都命中的消息ID（内存表最新，其次按段倒序）
+         */
+        private List<String> candidates(Set<String> terms) {
+            Set<String> ids = new LinkedHashSet<>();
+            memTable.toSegment().collect(terms, ids);
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                segments.get(i).collect(terms, ids);
+            }
+            return new ArrayList<>(ids);
+        }
+    }
+
+    /**
+     * 不可变段：文档序号即 docIds 下标，按写入（时间）顺序递增
+     */
+    private static class Segment {
+        private final String[] docIds;
+        private final Map<String, int[]> postings;
+        private Path path;
+
+        private Segment(String[] docIds, Map<String, int[]> postings) {
+            this.docIds = docIds;
+            this.postings = postings;
+        }
+
+        private void collect(Set<String> terms, Set<String> out) {
+            List<int[]> lists = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                int[] docs = postings.get(term);
+                if (docs == null) {
+                    return;
+                }
+                lists.add(docs);
+            }
+            int[] hits = intersect(lists);
+            for (int i = hits.length - 1; i >= 0; i--) {
+                out.add(docIds[hits[i]]);
+            }
+        }
+
+        private void appendTo(MemTable table) {
+            int base = table.docIds.size();
+            table.docIds.addAll(Arrays.asList(docIds));
+            for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+                List<Integer> docs = table.postings.computeIfAbsent(entry.getKey(), k -> new ArrayList<>());
+                for (int doc : entry.getValue()) {
+                    docs.add(base + doc);
+                }
+            }
+        }
+    }
+
+    /**
+     * 内存表：接收增量写入，刷写时转换为段
+     */
+    private static class MemTable {
+        private final List<String> docIds = new ArrayList<>();
+        private final Map<String, List<Integer>> postings = new HashMap<>();
+
+        private void add(String messageId, String content) {
+            int doc = docIds.size();
+            docIds.add(messageId);
+            for (String term : BigramTokenizer.tokenize(content)) {
+                postings.computeIfAbsent(term, k -> new ArrayList<>()).add(doc);
+            }
+        }
+
+        private int size() {
+            return docIds.size();
+        }
+
+        private Segment toSegment() {
+            Map<String, int[]> frozen = new HashMap<>(postings.size() * 2);
+            for (Map.Entry<String, List<Integer>> entry : postings.entrySet()) {
+                List<Integer> docs = entry.getValue();
+                int[] array = new int[docs.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = docs.get(i);
+                }
+                frozen.put(entry.getKey(), array);
+            }
+            return new Segment(docIds.toArray(new String[0]), frozen);
+        }
+    }
+}
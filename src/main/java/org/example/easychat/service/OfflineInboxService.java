@@ -0,0 +1,203 @@
+package org.example.easychat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Entity.CursorPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 离线收件箱服务
+ * 接收方离线时消息追加到 Redis Stream chat:inbox:<userId>，按长度和时间双重上限裁剪。
+ * 客户端重连后携带最后确认的游标同步，一次只返回游标之后错过的消息，已确认的部分随同步裁剪掉。
+ */
+@Slf4j
+@Service
+public class OfflineInboxService {
+
+    public static final String INBOX_PREFIX = "chat:inbox:";
+
+    private static final String MESSAGE_FIELD = "msg";
+
+    // 单个收件箱最多保留的消息数（近似裁剪）
+    @Value("${chat.inbox.max-length:1000}")
+    private long maxLength;
+
+    // 收件箱消息最长保留时间（小时）
+    @Value("${chat.inbox.max-age-hours:168}")
+    private long maxAgeHours;
+
+    // 单次同步最多返回的消息数
+    @Value("${chat.inbox.sync-batch-size:200}")
+    private int syncBatchSize;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final LongAdder appendedCount = new LongAdder();
+    private final LongAdder syncCount = new LongAdder();
+    private final LongAdder syncedMessageCount = new LongAdder();
+
+    /**
+     * 将消息追加到接收方的离线收件箱
+     */
+    public void append(String userId, ChatHistory message) {
+        appendMessage(userId, message);
+    }
+
+    /**
+     * 将单聊消息事件的参数追加到离线收件箱（本地推送为 ChatHistory，其他节点转发来的为 JSON 树）
+     * @return 是否已写入
+     */
+    public boolean appendPayload(String userId, Object[] payload) {
+        if (payload == null || payload.length == 0 || payload[0] == null) {
+            return false;
+        }
+        ChatHistory message;
+        try {
+            message = payload[0] instanceof ChatHistory
+                    ? (ChatHistory) payload[0]
+                    : objectMapper.convertValue(payload[0], ChatHistory.class);
+        } catch (Exception e) {
+            log.error("解析单聊消息事件失败: userId={}", userId, e);
+            return false;
+        }
+        return appendMessage(userId, message);
+    }
+
+    private boolean appendMessage(String userId, ChatHistory message) {
+        if (StringUtils.isBlank(userId) || message == null) {
+            return false;
+        }
+        try {
+            String key = INBOX_PREFIX + userId;
+            String payload = objectMapper.writeValueAsString(message);
+            long ttlSeconds = TimeUnit.HOURS.toSeconds(maxAgeHours);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.execute("XADD", key, "MAXLEN", "~", String.valueOf(maxLength), "*", MESSAGE_FIELD, payload);
+                conn.expire(key, ttlSeconds);
+                return null;
+            });
+            appendedCount.increment();
+            return true;
+        } catch (Exception e) {
+            log.error("写入离线收件箱失败: userId={}, messageId={}", userId, message.getId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 同步游标之后错过的消息，并裁剪游标及之前已确认的部分
+     * @param userId 用户ID
+     * @param cursor 上次同步返回的游标，为空时从头开始
+     * @return 按写入顺序排列的消息及下一次同步的游标
+     */
+    public CursorPage<ChatHistory> sync(String userId, String cursor) {
+        if (StringUtils.isBlank(userId)) {
+            throw new IllegalArgumentException("用户ID不能为空");
+        }
+        String key = INBOX_PREFIX + userId;
+        String start = StringUtils.isBlank(cursor) ? "-" : nextStreamId(cursor);
+        if (StringUtils.isNotBlank(cursor)) {
+            trimUpTo(key, start);
+        }
+
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(key, Range.closed(start, "+"), Limit.limit().count(syncBatchSize + 1));
+        if (records == null) {
+            records = new ArrayList<>();
+        }
+        boolean hasMore = records.size() > syncBatchSize;
+        if (hasMore) {
+            records = records.subList(0, syncBatchSize);
+        }
+
+        long minTimestamp = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(maxAgeHours);
+        List<ChatHistory> messages = new ArrayList<>(records.size());
+        String nextCursor = cursor;
+        for (MapRecord<String, Object, Object> record : records) {
+            String recordId = record.getId().getValue();
+            nextCursor = recordId;
+            // 超过保留时间的消息不再下发
+            if (record.getId().getTimestamp() != null && record.getId().getTimestamp() < minTimestamp) {
+                continue;
+            }
+            Object payload = record.getValue().get(MESSAGE_FIELD);
+            if (payload == null) {
+                continue;
+            }
+            try {
+                messages.add(objectMapper.readValue(payload.toString(), ChatHistory.class));
+            } catch (Exception e) {
+                log.warn("解析离线消息失败: userId={}, recordId={}", userId, recordId);
+            }
+        }
+
+        syncCount.increment();
+        syncedMessageCount.add(messages.size());
+        log.debug("同步离线收件箱: userId={}, cursor={}, size={}, hasMore={}", userId, cursor, messages.size(), hasMore);
+        return new CursorPage<>(messages, nextCursor, hasMore);
+    }
+
+    /**
+     * 获取离线收件箱指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("appended", appendedCount.sum());
+        stats.put("syncs", syncCount.sum());
+        stats.put("syncedMessages", syncedMessageCount.sum());
+        stats.put("maxLength", maxLength);
+        stats.put("maxAgeHours", maxAgeHours);
+        return stats;
+    }
+
+    /**
+     * 删除 minId 之前的消息（XTRIM MINID，需要 Redis 6.2+）
+     */
+    private void trimUpTo(String key, String minId) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                    ((StringRedisConnection) connection).execute("XTRIM", key, "MINID", minId));
+        } catch (Exception e) {
+            log.warn("裁剪离线收件箱失败: key={}, minId={}, error={}", key, minId, e.getMessage());
+        }
+    }
+
+    /**
+     * 计算紧随给定 Stream ID 之后的 ID，用于实现开区间读取
+     */
+    private String nextStreamId(String cursor) {
+        int dash = cursor.indexOf('-');
+        try {
+            if (dash < 0) {
+                return Long.parseLong(cursor) + "-1";
+            }
+            long millis = Long.parseLong(cursor.substring(0, dash));
+            long sequence = Long.parseLong(cursor.substring(dash + 1));
+            return millis + "-" + (sequence + 1);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的同步游标: " + cursor);
+        }
+    }
+}
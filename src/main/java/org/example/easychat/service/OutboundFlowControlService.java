@@ -0,0 +1,223 @@
+package org.example.easychat.service;
+
+import com.corundumstudio.socketio.SocketIOClient;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 出站流控服务
+ * 为每条 Socket 连接设置 Netty 写缓冲高低水位，推送前检查连接是否可写：
+ * 超过高水位的慢连接先丢弃低优先级事件（在线状态、正在输入等），单聊消息由会话注册表改为写入离线收件箱，
+ * 其余重要事件仍然写入；转入收件箱的连接在积压降到低水位、恢复可写时收到一次 inboxSyncHint，提示客户端立即同步收件箱；
+ * 积压字节超过驱逐阈值、或持续不可写超过驱逐时间后直接断开连接（积压中的数据随之丢弃，
+ * 因此不在积压后面再排通知），客户端每次重连都会同步离线收件箱，避免单个慢连接拖垮堆内存。
+ * 仅 WebSocket 连接可按远端地址对应到底层 Channel，轮询连接不做流控。
+ */
+@Slf4j
+@Service
+public class OutboundFlowControlService {
+
+    public static final String INBOX_SYNC_HINT_EVENT = "inboxSyncHint";
+
+    private static final AttributeKey<Long> UNWRITABLE_SINCE = AttributeKey.valueOf("chatUnwritableSince");
+
+    // 积压期间有单聊消息转入收件箱的连接，恢复可写时据此下发同步提示
+    private static final AttributeKey<SocketIOClient> SYNC_HINT_CLIENT = AttributeKey.valueOf("chatSyncHintClient");
+
+    // 写缓冲低水位（字节），积压降到该值以下恢复可写
+    @Value("${chat.outbound.low-watermark:32768}")
+    private int lowWatermark;
+
+    // 写缓冲高水位（字节），积压超过该值视为慢连接
+    @Value("${chat.outbound.high-watermark:262144}")
+    private int highWatermark;
+
+    // 积压超过该字节数立即断开
+    @Value("${chat.outbound.evict-pending-bytes:4194304}")
+    private long evictPendingBytes;
+
+    // 持续不可写超过该时间（毫秒）后断开
+    @Value("${chat.outbound.evict-after-ms:30000}")
+    private long evictAfterMs;
+
+    // 慢连接上优先丢弃的低优先级事件
+    @Value("${chat.outbound.low-priority-events:presenceDelta,typing,attentionUserStatusChange}")
+    private String lowPriorityEventConfig;
+
+    private Set<String> lowPriorityEvents;
+
+    // 远端地址 -> 底层 Channel（连接关闭时移除）
+    private final ConcurrentHashMap<SocketAddress, Channel> channels = new ConcurrentHashMap<>();
+
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder syncHintCount = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> droppedByEvent = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        lowPriorityEvents = new HashSet<>();
+        for (String event : lowPriorityEventConfig.split(",")) {
+            if (!event.isBlank()) {
+                lowPriorityEvents.add(event.trim());
+            }
+        }
+    }
+
+    /**
+     * 新建连接时调用（由 Socket.IO 管道初始化器调用）：设置写缓冲水位并登记 Channel
+     */
+    public void attach(Channel channel) {
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(lowWatermark, highWatermark));
+        channel.pipeline().addLast(new WritabilityTracker());
+        SocketAddress address = channel.remoteAddress();
+        if (address != null) {
+            channels.put(address, channel);
+            channel.closeFuture().addListener(future -> channels.remove(address, channel));
+        }
+    }
+
+    /**
+     * 连接是否处于不可写状态（写缓冲积压超过高水位）
+     */
+    public boolean isBacklogged(SocketIOClient client) {
+        Channel channel = channels.get(client.getRemoteAddress());
+        return channel != null && !channel.isWritable();
+    }
+
+    /**
+     * 记录连接积压期间有消息转入离线收件箱，恢复可写时提示客户端同步（登记时已恢复可写则立即提示）
+     */
+    public void markDiverted(SocketIOClient client) {
+        Channel channel = channels.get(client.getRemoteAddress());
+        if (channel == null) {
+            return;
+        }
+        channel.attr(SYNC_HINT_CLIENT).set(client);
+        if (channel.isWritable()) {
+            sendSyncHint(channel);
+        }
+    }
+
+    /**
+     * 按流控策略向连接推送事件
+     * @return 是否已写入；低优先级事件被丢弃或连接被驱逐时返回 false
+     */
+    public boolean send(SocketIOClient client, String event, Object... payload) {
+        Channel channel = channels.get(client.getRemoteAddress());
+        if (channel == null || channel.isWritable()) {
+            client.sendEvent(event, payload);
+            sentCount.increment();
+            return true;
+        }
+        if (lowPriorityEvents.contains(event)) {
+            droppedCount.increment();
+            droppedByEvent.computeIfAbsent(event, k -> new LongAdder()).increment();
+            return false;
+        }
+        Long since = channel.attr(UNWRITABLE_SINCE).get();
+        long pending = pendingBytes(channel);
+        if (pending > evictPendingBytes || (since != null && System.currentTimeMillis() - since > evictAfterMs)) {
+            evict(client, pending);
+            return false;
+        }
+        client.sendEvent(event, payload);
+        sentCount.increment();
+        return true;
+    }
+
+    /**
+     * 获取出站流控指标（含积压最多的连接）
+     */
+    public Map<String, Object> getStats() {
+        int unwritable = 0;
+        long totalPending = 0;
+        List<Map.Entry<SocketAddress, Long>> pendings = new ArrayList<>();
+        for (Map.Entry<SocketAddress, Channel> entry : channels.entrySet()) {
+            long pending = pendingBytes(entry.getValue());
+            totalPending += pending;
+            if (!entry.getValue().isWritable()) {
+                unwritable++;
+            }
+            if (pending > 0) {
+                pendings.add(Map.entry(entry.getKey(), pending));
+            }
+        }
+        pendings.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<String, Long> topPending = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(10, pendings.size()); i++) {
+            topPending.put(pendings.get(i).getKey().toString(), pendings.get(i).getValue());
+        }
+        Map<String, Long> dropped = new HashMap<>();
+        droppedByEvent.forEach((event, count) -> dropped.put(event, count.sum()));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("lowWatermark", lowWatermark);
+        stats.put("highWatermark", highWatermark);
+        stats.put("trackedChannels", channels.size());
+        stats.put("unwritableChannels", unwritable);
+        stats.put("pendingBytes", totalPending);
+        stats.put("topPendingBytes", topPending);
+        stats.put("sent", sentCount.sum());
+        stats.put("dropped", droppedCount.sum());
+        stats.put("droppedByEvent", dropped);
+        stats.put("evicted", evictedCount.sum());
+        stats.put("syncHints", syncHintCount.sum());
+        return stats;
+    }
+
+    private void evict(SocketIOClient client, long pending) {
+        evictedCount.increment();
+        log.warn("连接写缓冲积压过多，断开慢连接: sessionId={}, userId={}, pendingBytes={}",
+                client.getSessionId(), client.get(SocketSessionRegistry.USER_ID_KEY), pending);
+        client.disconnect();
+    }
+
+    private void sendSyncHint(Channel channel) {
+        SocketIOClient client = channel.attr(SYNC_HINT_CLIENT).getAndSet(null);
+        if (client != null && client.isChannelOpen()) {
+            client.sendEvent(INBOX_SYNC_HINT_EVENT, Map.of("reason", "backlog_drained"));
+            syncHintCount.increment();
+        }
+    }
+
+    private static long pendingBytes(Channel channel) {
+        ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+        return buffer != null ? buffer.totalPendingWriteBytes() : 0;
+    }
+
+    /**
+     * 记录连接变为不可写的时间，恢复可写时下发待发的收件箱同步提示
+     */
+    private class WritabilityTracker extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            boolean writable = ctx.channel().isWritable();
+            ctx.channel().attr(UNWRITABLE_SINCE).set(writable ? null : System.currentTimeMillis());
+            if (writable) {
+                sendSyncHint(ctx.channel());
+            }
+            super.channelWritabilityChanged(ctx);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package org.example.easychat.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.example.easychat.Entity.SpecialAttention;
+import org.example.easychat.Mapper.SpecialAttentionMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在线状态服务
+ * 维护用户在线状态，状态变化先记入待发布表并按用户合并，每个周期统一计算受众后下发增量：
+ * 只推送给把该用户加为好友或特别关心、且当前在线的用户，不再向所有连接广播完整在线列表。
+ * 客户端仅在建立连接时获取一次好友范围内的在线快照。
+ * 多节点部署时每个节点只发布本节点用户的变化，在线状态同步写入本节点独占的 Redis 哈希 chat:presence:<nodeId> 供快照读取；
+ * 哈希按节点心跳周期续期、按节点超时过期，节点宕机后其用户的在线状态随哈希过期自动消失，快照也只读取存活节点的哈希。
+ * 发布周期很短，使用独立线程，不与其他定时任务争用共享调度线程。
+ */
+@Slf4j
+@Service
+public class PresenceService {
+
+    public static final String DELTA_EVENT = "presenceDelta";
+
+    public static final String SNAPSHOT_EVENT = "onlineUsers";
+
+    public static final String PRESENCE_PREFIX = "chat:presence:";
+
+    // 待发布表中表示下线的状态值
+    private static final Integer OFFLINE = Integer.MIN_VALUE;
+
+    // 按被关心用户批量查询特别关心关系时的单批大小
+    private static final int WATCHER_QUERY_BATCH = 500;
+
+    // 是否把特别关心者纳入推送范围
+    @Value("${chat.presence.include-attention:true}")
+    private boolean includeAttention;
+
+    // 增量发布周期（毫秒）
+    @Value("${chat.presence.tick-ms:250}")
+    private long tickMs;
+
+    // 共享在线状态的续期周期与过期时间（毫秒），与集群节点心跳、节点超时一致
+    @Value("${chat.cluster.heartbeat-interval-ms:5000}")
+    private long refreshIntervalMs;
+
+    @Value("${chat.cluster.node-timeout-ms:15000}")
+    private long sharedTtlMs;
+
+    @Autowired
+    private FriendGraphService friendGraphService;
+
+    @Autowired
+    private SpecialAttentionMapper specialAttentionMapper;
+
+    @Autowired
+    private ClusterRoutingService clusterRoutingService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 当前在线状态 (userId -> status)
+    private final ConcurrentHashMap<String, Integer> statuses = new ConcurrentHashMap<>();
+
+    // 本周期内发生变化、尚未发布的状态（同一用户多次变化只保留最后一次）
+    private final ConcurrentHashMap<String, Integer> pending = new ConcurrentHashMap<>();
+
+    // 最近一次已发布的状态，用于丢弃周期内"下线又上线"这类无净变化的抖动
+    private final ConcurrentHashMap<String, Integer> published = new ConcurrentHashMap<>();
+
+    private final LongAdder changeCount = new LongAdder();
+    private final LongAdder publishedChangeCount = new LongAdder();
+    private final LongAdder deltaCount = new LongAdder();
+    private final LongAdder sharedRestoreCount = new LongAdder();
+
+    private ScheduledExecutorService publishExecutor;
+
+    // 本节点的共享在线状态哈希
+    private String sharedKey;
+
+    @PostConstruct
+    public void init() {
+        sharedKey = PRESENCE_PREFIX + clusterRoutingService.getNodeId();
+        publishExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-presence-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publishExecutor.scheduleWithFixedDelay(this::publishDeltas, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        publishExecutor.scheduleWithFixedDelay(this::refreshShared, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (publishExecutor != null) {
+            publishExecutor.shutdownNow();
+        }
+        try {
+            stringRedisTemplate.delete(sharedKey);
+        } catch (Exception e) {
+            log.warn("删除共享在线状态失败: key={}, error={}", sharedKey, e.getMessage());
+        }
+    }
+
+    /**
+     * 用户上线或切换状态
+     */
+    public void online(String userId, Integer status) {
+        if (StringUtils.isBlank(userId)) {
+            return;
+        }
+        Integer value = status != null ? status : 0;
+        statuses.put(userId, value);
+        pending.put(userId, value);
+        changeCount.increment();
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.hSet(sharedKey, userId, value.toString());
+                conn.pExpire(sharedKey, sharedTtlMs);
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("写入共享在线状态失败: userId={}, error={}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 用户下线
+     */
+    public void offline(String userId) {
+        if (StringUtils.isBlank(userId)) {
+            return;
+        }
+        if (statuses.remove(userId) != null) {
+            pending.put(userId, OFFLINE);
+            changeCount.increment();
+            try {
+                stringRedisTemplate.opsForHash().delete(sharedKey, userId);
+            } catch (Exception e) {
+                log.warn("删除共享在线状态失败: userId={}, error={}", userId, e.getMessage());
+            }
+        }
+    }
+
+    public boolean isOnline(String userId) {
+        return userId != null && statuses.containsKey(userId);
+    }
+
+    /**
+     * 获取用户关心范围（好友与特别关心对象）内的在线快照
+     */
+    public Map<String, Integer> snapshotFor(String userId) {
+        Set<String> watched = new HashSet<>(friendGraphService.getFriendIds(userId));
+        if (includeAttention) {
+            List<SpecialAttention> attentions = specialAttentionMapper.selectList(new LambdaQueryWrapper<SpecialAttention>()
+                    .select(SpecialAttention::getTargetUserId)
+                    .eq(SpecialAttention::getUserId, userId));
+            for (SpecialAttention attention : attentions) {
+                watched.add(attention.getTargetUserId());
+            }
+        }
+        Map<String, Integer> snapshot = new HashMap<>();
+        if (watched.isEmpty()) {
+            return snapshot;
+        }
+        // 本节点的用户以内存状态为准，其余存活节点各读一次自己的哈希
+        List<String> nodes = new ArrayList<>(clusterRoutingService.getAliveNodes());
+        nodes.remove(clusterRoutingService.getNodeId());
+        List<String> ids = new ArrayList<>(watched);
+        List<Object> results = null;
+        if (!nodes.isEmpty()) {
+            try {
+                results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    String[] fields = ids.toArray(new String[0]);
+                    for (String node : nodes) {
+                        conn.hMGet(PRESENCE_PREFIX + node, fields);
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                log.warn("读取共享在线状态失败，使用本节点状态: userId={}, error={}", userId, e.getMessage());
+            }
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            Integer status = statuses.get(id);
+            if (status == null && results != null) {
+                status = sharedStatus(results, i);
+            }
+            if (status != null) {
+                snapshot.put(id, status);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 续期本节点的共享在线状态；哈希已丢失（Redis 重启或续期中断超过超时）时按内存状态整体补回
+     */
+    public void refreshShared() {
+        try {
+            if (Boolean.TRUE.equals(stringRedisTemplate.expire(sharedKey, sharedTtlMs, TimeUnit.MILLISECONDS))
+                    || statuses.isEmpty()) {
+                return;
+            }
+            Map<String, String> fields = new HashMap<>();
+            statuses.forEach((id, status) -> fields.put(id, status.toString()));
+            stringRedisTemplate.opsForHash().putAll(sharedKey, fields);
+            stringRedisTemplate.expire(sharedKey, sharedTtlMs, TimeUnit.MILLISECONDS);
+            sharedRestoreCount.increment();
+            log.warn("共享在线状态已丢失，按本节点状态补回: key={}, users={}", sharedKey, fields.size());
+        } catch (Exception e) {
+            log.warn("续期共享在线状态失败: key={}, error={}", sharedKey, e.getMessage());
+        }
+    }
+
+    private Integer sharedStatus(List<Object> results, int index) {
+        for (Object result : results) {
+            if (result instanceof List) {
+                Object value = ((List<?>) result).get(index);
+                if (value != null) {
+                    return Integer.valueOf(value.toString());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 发布本周期合并后的状态增量
+     */
+    public void publishDeltas() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, Integer> changes = drainChanges();
+            if (changes.isEmpty()) {
+                return;
+            }
+
+            Map<String, Set<String>> audiences = new HashMap<>();
+            for (String userId : changes.keySet()) {
+                audiences.put(userId, new HashSet<>(friendGraphService.getFriendIds(userId)));
+            }
+            if (includeAttention) {
+                addAttentionWatchers(audiences);
+            }
+
+            // 按接收者汇总：一个接收者每周期只收到一条增量事件，离线接收者由路由层丢弃
+            Map<String, PresenceDelta> deltas = new HashMap<>();
+            for (Map.Entry<String, Integer> change : changes.entrySet()) {
+                for (String recipient : audiences.get(change.getKey())) {
+                    PresenceDelta delta = deltas.computeIfAbsent(recipient, k -> new PresenceDelta());
+                    if (OFFLINE.equals(change.getValue())) {
+                        delta.getOffline().add(change.getKey());
+                    } else {
+                        delta.getOnline().put(change.getKey(), change.getValue());
+                    }
+                }
+            }
+            Map<String, Object[]> payloads = new HashMap<>();
+            for (Map.Entry<String, PresenceDelta> entry : deltas.entrySet()) {
+                payloads.put(entry.getKey(), new Object[]{entry.getValue()});
+            }
+            Map<String, Integer> delivered = clusterRoutingService.sendToUsers(DELTA_EVENT, payloads);
+            publishedChangeCount.add(changes.size());
+            deltaCount.add(delivered.size());
+        } catch (Exception e) {
+            log.error("发布在线状态增量失败", e);
+        }
+    }
+
+    /**
+     * 获取在线状态指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("onlineUsers", statuses.size());
+        stats.put("pending", pending.size());
+        stats.put("changes", changeCount.sum());
+        stats.put("publishedChanges", publishedChangeCount.sum());
+        stats.put("deltasSent", deltaCount.sum());
+        stats.put("sharedRestores", sharedRestoreCount.sum());
+        return stats;
+    }
+
+    private Map<String, Integer> drainChanges() {
+        Map<String, Integer> changes = new LinkedHashMap<>();
+        for (String userId : new ArrayList<>(pending.keySet())) {
+            Integer value = pending.remove(userId);
+            if (value == null) {
+                continue;
+            }
+            Integer previous = OFFLINE.equals(value) ? published.remove(userId) : published.put(userId, value);
+            // 与上次发布的状态相同（或从未发布过就已下线），无需推送
+            if (OFFLINE.equals(value) ? previous == null : value.equals(previous)) {
+                continue;
+            }
+            changes.put(userId, value);
+        }
+        return changes;
+    }
+
+    private void addAttentionWatchers(Map<String, Set<String>> audiences) {
+        List<String> targets = new ArrayList<>(audiences.keySet());
+        for (int from = 0; from < targets.size(); from += WATCHER_QUERY_BATCH) {
+            List<String> batch = targets.subList(from, Math.min(from + WATCHER_QUERY_BATCH, targets.size()));
+            List<SpecialAttention> attentions = specialAttentionMapper.selectList(new LambdaQueryWrapper<SpecialAttention>()
+                    .select(SpecialAttention::getUserId, SpecialAttention::getTargetUserId)
+                    .in(SpecialAttention::getTargetUserId, batch));
+            for (SpecialAttention attention : attentions) {
+                audiences.get(attention.getTargetUserId()).add(attention.getUserId());
+            }
+        }
+    }
+
+    /**
+     * 单个接收者在一个周期内收到的状态增量
+     */
+    public static class PresenceDelta {
+        // 上线或状态变化的用户 (userId -> status)
+        private final Map<String, Integer> online = new HashMap<>();
+        // 下线的用户
+        private final List<String> offline = new ArrayList<>();
+
+        public Map<String, Integer> getOnline() {
+            return online;
+        }
+
+        public List<String> getOffline() {
+            return offline;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.example.easychat.Entity.User;
+import org.example.easychat.Mapper.UserMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 认证主体缓存
+ * JwtAuthenticationFilter 构建安全上下文时使用的精简用户信息（只含鉴权需要的字段，不含密码），
+ * 登录时写入，超过刷新间隔后由后台线程异步重新加载，请求线程始终直接返回缓存值；
+ * 资料修改、改密和登出时失效，并通过 Redis 频道通知其它节点。
+ */
+@Slf4j
+@Service
+public class PrincipalCacheService {
+
+    public static final String INVALIDATE_CHANNEL = "chat:principal:invalidate";
+
+    // 最多缓存的用户数
+    @Value("${chat.principal-cache.max-size:100000}")
+    private int maxSize;
+
+    // 缓存项超过该时间（毫秒）后在下次访问时异步刷新
+    @Value("${chat.principal-cache.refresh-ms:60000}")
+    private long refreshMs;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private Map<String, CachedPrincipal> cache;
+
+    private ThreadPoolExecutor refresher;
+
+    // 正在异步刷新的用户，避免重复提交
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    // 失效序号：加载期间如发生失效则不写入缓存，避免旧数据覆盖
+    private final AtomicLong invalidationSeq = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder refreshCount = new LongAdder();
+    private final LongAdder invalidateCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        cache = Collections.synchronizedMap(new LinkedHashMap<String, CachedPrincipal>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPrincipal> eldest) {
+                return size() > maxSize;
+            }
+        });
+        refresher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(10000),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "principal-cache-refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        listenerContainer.addMessageListener(
+                (message, pattern) -> evict(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * 获取认证主体；未缓存时同步加载，缓存过旧时返回旧值并异步刷新
+     * @return 精简后的用户信息，用户不存在时返回 null
+     */
+    public User getPrincipal(String userId) {
+        if (StringUtils.isBlank(userId)) {
+            return null;
+        }
+        CachedPrincipal cached = cache.get(userId);
+        if (cached == null) {
+            return load(userId);
+        }
+        hitCount.increment();
+        if (System.currentTimeMillis() - cached.loadedAt > refreshMs) {
+            scheduleRefresh(userId);
+        }
+        return cached.user;
+    }
+
+    /**
+     * 登录成功后写入缓存
+     */
+    public void put(User user) {
+        if (user == null || StringUtils.isBlank(user.getId())) {
+            return;
+        }
+        cache.put(user.getId(), new CachedPrincipal(trim(user), System.currentTimeMillis()));
+    }
+
+    /**
+     * 用户资料、密码变更或登出时失效，并通知其它节点
+     */
+    public void invalidate(String userId) {
+        if (StringUtils.isBlank(userId)) {
+            return;
+        }
+        evict(userId);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, userId);
+        } catch (Exception e) {
+            log.error("广播认证主体失效失败: userId={}", userId, e);
+        }
+    }
+
+    /**
+     * 获取认证主体缓存指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", cache.size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hitCount.sum());
+        stats.put("loads", loadCount.sum());
+        stats.put("refreshes", refreshCount.sum());
+        stats.put("invalidations", invalidateCount.sum());
+        stats.put("refreshQueue", refresher.getQueue().size());
+        return stats;
+    }
+
+    private void evict(String userId) {
+        invalidationSeq.incrementAndGet();
+        cache.remove(userId);
+        invalidateCount.increment();
+    }
+
+    private void scheduleRefresh(String userId) {
+        if (!refreshing.add(userId)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    load(userId);
+                    refreshCount.increment();
+                } catch (Exception e) {
+                    log.warn("刷新认证主体失败，继续使用旧值: userId={}, error={}", userId, e.getMessage());
+                } finally {
+                    refreshing.remove(userId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(userId);
+        }
+    }
+
+    private User load(String userId) {
+        long seq = invalidationSeq.get();
+        User user = userMapper.getUserById(userId);
+        loadCount.increment();
+        if (user == null) {
+            cache.remove(userId);
+            return null;
+        }
+        User principal = trim(user);
+        if (invalidationSeq.get() == seq) {
+            cache.put(userId, new CachedPrincipal(principal, System.currentTimeMillis()));
+        }
+        return principal;
+    }
+
+    /**
+     * 只保留鉴权与展示需要的字段
+     */
+    private static User trim(User user) {
+        User principal = new User();
+        principal.setId(user.getId());
+        principal.setUsername(user.getUsername());
+        principal.setNickName(user.getNickName());
+        principal.setAvatar(user.getAvatar());
+        principal.setStatus(user.getStatus());
+        return principal;
+    }
+
+    private static class CachedPrincipal {
+        private final User user;
+        private final long loadedAt;
+
+        private CachedPrincipal(User user, long loadedAt) {
+            this.user = user;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -123,7 +123,7 @@ public class RateLimitService {
     }
     
     /**
-     * 检查Socket.IO事件限流
+     * 检查Socket.IO事件限流（跨节点的用户级总量限制；单连接限流由 SocketEventRateLimiter 在进程内完成）
      */
     public void checkSocketEventRateLimit(String userId, String eventType) {
         String key = rateLimitConfig.getRateLimitKey(eventType, userId);
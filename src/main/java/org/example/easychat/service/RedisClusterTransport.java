@@ -0,0 +1,243 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 基于 Redis 的集群传输层
+ * 路由表：集合 chat:route:<userId> 保存用户所在的节点ID，心跳时定期为本节点的在线用户续期；
+ * 节点存活：有序集合 chat:cluster:nodes 以心跳时间为分值，超时未心跳的节点路由视为失效；
+ * 心跳在独立线程上执行，不与其他定时任务共用调度线程，避免被慢任务拖过超时；
+ * 事件转发：每个节点订阅自己的频道 chat:cluster:node:<nodeId>。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "chat.cluster.transport", havingValue = "redis", matchIfMissing = true)
+public class RedisClusterTransport implements ClusterTransport {
+
+    public static final String ROUTE_PREFIX = "chat:route:";
+
+    public static final String NODES_KEY = "chat:cluster:nodes";
+
+    public static final String NODE_CHANNEL_PREFIX = "chat:cluster:node:";
+
+    // 单次续期管道中的用户数
+    private static final int ROUTE_REFRESH_BATCH = 1000;
+
+    // 节点ID，未配置时按主机名加随机后缀生成
+    @Value("${chat.cluster.node-id:}")
+    private String configuredNodeId;
+
+    // 节点心跳超时（毫秒），超过后该节点上的路由视为失效
+    @Value("${chat.cluster.node-timeout-ms:15000}")
+    private long nodeTimeoutMs;
+
+    @Value("${chat.cluster.heartbeat-interval-ms:5000}")
+    private long heartbeatIntervalMs;
+
+    // 路由过期时间（毫秒），心跳每过三分之一为本节点在线用户续期
+    @Value("${chat.cluster.route-ttl-ms:600000}")
+    private long routeTtlMs;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private SocketSessionRegistry sessionRegistry;
+
+    private String nodeId;
+
+    private ScheduledExecutorService heartbeatExecutor;
+
+    private long lastRouteRefresh;
+
+    // 存活节点（心跳时刷新）
+    private volatile Set<String> aliveNodes = Collections.emptySet();
+
+    @PostConstruct
+    public void init() {
+        nodeId = StringUtils.isNotBlank(configuredNodeId) ? configuredNodeId : generateNodeId();
+        lastRouteRefresh = System.currentTimeMillis();
+        heartbeat();
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatExecutor.scheduleWithFixedDelay(this::heartbeat, heartbeatIntervalMs, heartbeatIntervalMs,
+                TimeUnit.MILLISECONDS);
+        log.info("Redis 集群传输层已启动: nodeId={}", nodeId);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+        }
+        try {
+            stringRedisTemplate.opsForZSet().remove(NODES_KEY, nodeId);
+        } catch (Exception e) {
+            log.warn("注销集群节点失败: nodeId={}, error={}", nodeId, e.getMessage());
+        }
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public Set<String> getAliveNodes() {
+        return aliveNodes;
+    }
+
+    @Override
+    public void registerUser(String userId) {
+        String key = ROUTE_PREFIX + userId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.sAdd(key, nodeId);
+            conn.pExpire(key, routeTtlMs);
+            return null;
+        });
+    }
+
+    @Override
+    public void unregisterUser(String userId) {
+        stringRedisTemplate.opsForSet().remove(ROUTE_PREFIX + userId, nodeId);
+    }
+
+    @Override
+    public Map<String, Set<String>> lookupNodes(Collection<String> userIds) {
+        Map<String, Set<String>> routes = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return routes;
+        }
+        List<String> ids = new ArrayList<>(userIds);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String id : ids) {
+                conn.sMembers(ROUTE_PREFIX + id);
+            }
+            return null;
+        });
+        Set<String> alive = aliveNodes;
+        for (int i = 0; i < ids.size(); i++) {
+            Object result = results.get(i);
+            if (!(result instanceof Collection)) {
+                continue;
+            }
+            Set<String> nodes = new HashSet<>();
+            for (Object node : (Collection<?>) result) {
+                if (alive.contains(node.toString())) {
+                    nodes.add(node.toString());
+                }
+            }
+            if (!nodes.isEmpty()) {
+                routes.put(ids.get(i), nodes);
+            }
+        }
+        return routes;
+    }
+
+    @Override
+    public void publish(String targetNodeId, String payload) {
+        stringRedisTemplate.convertAndSend(NODE_CHANNEL_PREFIX + targetNodeId, payload);
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> listener.accept(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(NODE_CHANNEL_PREFIX + nodeId));
+    }
+
+    /**
+     * 上报心跳并刷新存活节点列表，同时清理超时节点
+     */
+    public void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().add(NODES_KEY, nodeId, now);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(NODES_KEY, 0, now - nodeTimeoutMs);
+            Set<String> nodes = stringRedisTemplate.opsForZSet().rangeByScore(NODES_KEY, now - nodeTimeoutMs, Double.MAX_VALUE);
+            Set<String> alive = nodes != null ? new HashSet<>(nodes) : new HashSet<>();
+            alive.add(nodeId);
+            aliveNodes = alive;
+            if (now - lastRouteRefresh >= routeTtlMs / 3) {
+                refreshRoutes();
+                lastRouteRefresh = now;
+            }
+        } catch (Exception e) {
+            log.error("集群节点心跳失败: nodeId={}", nodeId, e);
+        }
+    }
+
+    /**
+     * 为本节点的在线用户续期路由（路由被误删或已过期时同时补回）
+     */
+    private void refreshRoutes() {
+        List<String> batch = new ArrayList<>(ROUTE_REFRESH_BATCH);
+        for (String userId : sessionRegistry.getOnlineUserIds()) {
+            batch.add(userId);
+            if (batch.size() == ROUTE_REFRESH_BATCH) {
+                refreshRoutes(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            refreshRoutes(batch);
+        }
+    }
+
+    private void refreshRoutes(List<String> userIds) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String userId : userIds) {
+                conn.sAdd(ROUTE_PREFIX + userId, nodeId);
+                conn.pExpire(ROUTE_PREFIX + userId, routeTtlMs);
+            }
+            return null;
+        });
+    }
+
+    private static String generateNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,329 @@
+package org.example.easychat.service;
+
+import com.corundumstudio.socketio.SocketIOClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.event.SessionExpiredEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 断线续连服务
+ * 用户在本节点的最后一个连接断开时不立即下线，而是把会话挂起一段宽限期：期间保留集群路由，
+ * 推送给该用户的事件按顺序缓存在内存中（有上限，超出后单聊消息直接进离线收件箱）。
+ * 宽限期内携带同一续连令牌重连即静默恢复并补发缓存事件，不产生下线、上线广播；
+ * 补发完成后才登记新连接，期间到达的事件继续缓存并随之补发，保证实时事件不会先于补发的事件。
+ * 不带令牌或令牌不匹配的重连只取消下线，缓存的单聊消息转入离线收件箱由客户端同步。
+ * 宽限期结束仍未重连时，缓存的单聊消息转入离线收件箱，并发布 SessionExpiredEvent 做下线处理。
+ * 挂起的会话只存在于本节点，用户同时在其他节点在线时这些消息已由其他节点送达，不再转入收件箱。
+ */
+@Slf4j
+@Service
+public class SessionResumptionService {
+
+    // 握手参数名
+    public static final String RESUME_PARAM = "resumeToken";
+
+    // 连接上保存续连令牌的属性名
+    public static final String RESUME_TOKEN_KEY = "resumeToken";
+
+    // 恢复成功后下发的事件
+    public static final String RESUMED_EVENT = "sessionResumed";
+
+    private static final String RECEIVE_MSG_EVENT = "receiveMsg";
+
+    // 宽限时间（毫秒），0 表示关闭，断开即下线
+    @Value("${chat.resume.grace-ms:15000}")
+    private long graceMs;
+
+    // 宽限期内为单个用户缓存的最大事件数
+    @Value("${chat.resume.max-buffered-events:200}")
+    private int maxBufferedEvents;
+
+    @Autowired
+    private OfflineInboxService offlineInboxService;
+
+    @Autowired
+    private OutboundFlowControlService outboundFlowControlService;
+
+    @Autowired
+    private WireCodecService wireCodecService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // 延迟注入，避免经 SocketSessionRegistry 形成循环依赖
+    @Lazy
+    @Autowired
+    private ClusterRoutingService clusterRoutingService;
+
+    private final SecureRandom random = new SecureRandom();
+
+    // userId -> 挂起的会话
+    private final ConcurrentHashMap<String, ParkedSession> parked = new ConcurrentHashMap<>();
+
+    private final LongAdder parkedCount = new LongAdder();
+    private final LongAdder resumedCount = new LongAdder();
+    private final LongAdder reattachedCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
+    private final LongAdder bufferedCount = new LongAdder();
+    private final LongAdder replayedCount = new LongAdder();
+    private final LongAdder overflowCount = new LongAdder();
+    private final LongAdder skippedInboxCount = new LongAdder();
+
+    public boolean isEnabled() {
+        return graceMs > 0;
+    }
+
+    /**
+     * 为认证成功的连接签发续连令牌
+     */
+    public String issueToken(SocketIOClient client) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        client.set(RESUME_TOKEN_KEY, token);
+        return token;
+    }
+
+    /**
+     * 挂起用户会话（用户在本节点的最后一个连接断开时调用）
+     * @param resumeToken 最后断开的连接的续连令牌
+     */
+    public void park(String userId, String resumeToken) {
+        ParkedSession previous = parked.put(userId, new ParkedSession(resumeToken, System.currentTimeMillis() + graceMs));
+        if (previous != null) {
+            List<WireCodecService.PreparedEvent> events = previous.close();
+            if (events != null) {
+                moveToInbox(userId, events);
+            }
+        }
+        parkedCount.increment();
+        log.debug("连接断开，会话进入宽限期: userId={}, graceMs={}", userId, graceMs);
+    }
+
+    /**
+     * 缓存推送给挂起用户的事件
+     * @return 用户处于宽限期时返回 true（已缓存，或缓存已满时单聊消息已转入离线收件箱；
+     *         会话刚恢复时直接推送到恢复的连接）；未挂起返回 false
+     */
+    public boolean buffer(String userId, WireCodecService.PreparedEvent prepared) {
+        ParkedSession session = parked.get(userId);
+        if (session == null) {
+            return false;
+        }
+        synchronized (session) {
+            if (session.resumedTo != null) {
+                // 在补发期间等待的事件：补发已完成，直接推送
+                outboundFlowControlService.send(session.resumedTo, prepared.getEvent(),
+                        wireCodecService.argsFor(session.resumedTo, prepared));
+                return true;
+            }
+            if (!session.closed && session.events.size() < maxBufferedEvents) {
+                session.events.add(prepared);
+                bufferedCount.increment();
+                return true;
+            }
+            if (!session.closed && !session.overflowed) {
+                session.overflowed = true;
+                overflowCount.increment();
+                log.warn("宽限期内缓存事件已满，后续单聊消息转入离线收件箱: userId={}", userId);
+            }
+        }
+        moveToInbox(userId, Collections.singletonList(prepared));
+        return true;
+    }
+
+    /**
+     * 用户重新连接：取消挂起，令牌匹配时按顺序补发缓存事件，之后再登记新连接
+     * 补发与登记在会话锁内完成，期间推送给该用户的事件等待锁后排在补发的事件之后
+     * @param register 登记新连接（无论是否恢复都会执行）
+     * @return 是否恢复了挂起的会话（恢复后无需再下发在线快照）
+     */
+    public boolean resume(String userId, String resumeToken, SocketIOClient client, Runnable register) {
+        ParkedSession session = parked.get(userId);
+        if (session == null) {
+            register.run();
+            return false;
+        }
+        boolean matched = tokenMatches(resumeToken, session.resumeToken);
+        List<WireCodecService.PreparedEvent> events;
+        synchronized (session) {
+            events = session.close();
+            if (events == null) {
+                // 宽限期已结束或会话已被替换
+                register.run();
+                return false;
+            }
+            if (matched) {
+                for (WireCodecService.PreparedEvent event : events) {
+                    outboundFlowControlService.send(client, event.getEvent(), wireCodecService.argsFor(client, event));
+                }
+                // complete 为 false 表示宽限期内有事件未能缓存，客户端应再同步一次离线收件箱
+                client.sendEvent(RESUMED_EVENT, Map.of("replayed", events.size(), "complete", !session.overflowed));
+                session.resumedTo = client;
+            }
+            register.run();
+            // 登记之后才移出挂起表：未找到挂起会话的推送再查本地连接时一定能看到新连接
+            parked.remove(userId, session);
+        }
+        if (!matched) {
+            reattachedCount.increment();
+            moveToInbox(userId, events);
+            return false;
+        }
+        replayedCount.add(events.size());
+        resumedCount.increment();
+        log.debug("会话已恢复: userId={}, replayed={}", userId, events.size());
+        return true;
+    }
+
+    /**
+     * 结束已到期的宽限期
+     */
+    @Scheduled(fixedDelayString = "${chat.resume.sweep-interval-ms:1000}")
+    public void expireDue() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, ParkedSession> entry : parked.entrySet()) {
+            if (entry.getValue().expiresAt <= now) {
+                expire(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 立即结束用户的宽限期（如退出登录）
+     */
+    public void expireNow(String userId) {
+        ParkedSession session = parked.get(userId);
+        if (session != null) {
+            expire(userId, session);
+        }
+    }
+
+    /**
+     * 获取断线续连指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("graceMs", graceMs);
+        stats.put("parkedNow", parked.size());
+        stats.put("parked", parkedCount.sum());
+        stats.put("resumed", resumedCount.sum());
+        stats.put("reattachedWithoutReplay", reattachedCount.sum());
+        stats.put("expired", expiredCount.sum());
+        stats.put("bufferedEvents", bufferedCount.sum());
+        stats.put("replayedEvents", replayedCount.sum());
+        stats.put("overflows", overflowCount.sum());
+        stats.put("inboxSkippedOnlineElsewhere", skippedInboxCount.sum());
+        return stats;
+    }
+
+    /**
+     * 结束宽限期，与恢复并发时以先关闭会话的一方为准
+     */
+    private void expire(String userId, ParkedSession session) {
+        List<WireCodecService.PreparedEvent> events = session.close();
+        parked.remove(userId, session);
+        if (events == null) {
+            return;
+        }
+        expiredCount.increment();
+        moveToInbox(userId, events);
+        try {
+            eventPublisher.publishEvent(new SessionExpiredEvent(this, userId));
+        } catch (Exception e) {
+            log.error("处理宽限期结束失败: userId={}", userId, e);
+        }
+    }
+
+    /**
+     * 缓存中的单聊消息转入离线收件箱，其余事件丢弃（与离线时一致）
+     * 用户在其他节点在线时消息已同时转发到该节点，不再写入，避免客户端同步时重复
+     */
+    private void moveToInbox(String userId, List<WireCodecService.PreparedEvent> events) {
+        List<Object[]> messages = new ArrayList<>();
+        for (WireCodecService.PreparedEvent event : events) {
+            Object[] payload = event.getPayload();
+            if (RECEIVE_MSG_EVENT.equals(event.getEvent()) && payload.length > 0 && payload[0] != null) {
+                messages.add(payload);
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (clusterRoutingService.isOnlineElsewhere(userId)) {
+            skippedInboxCount.add(messages.size());
+            return;
+        }
+        for (Object[] payload : messages) {
+            try {
+                // 其他节点转发来的事件参数为 JSON 树
+                ChatHistory message = payload[0] instanceof ChatHistory
+                        ? (ChatHistory) payload[0]
+                        : objectMapper.convertValue(payload[0], ChatHistory.class);
+                offlineInboxService.append(userId, message);
+            } catch (Exception e) {
+                log.error("缓存消息转入离线收件箱失败: userId={}", userId, e);
+            }
+        }
+    }
+
+    private static boolean tokenMatches(String presented, String expected) {
+        return presented != null && expected != null && MessageDigest.isEqual(
+                presented.getBytes(StandardCharsets.UTF_8), expected.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 挂起的会话：续连令牌、到期时间与按顺序缓存的事件
+     */
+    private static class ParkedSession {
+        private final String resumeToken;
+        private final long expiresAt;
+        private List<WireCodecService.PreparedEvent> events = new ArrayList<>();
+        private boolean overflowed;
+        private boolean closed;
+        // 恢复成功后的新连接
+        private SocketIOClient resumedTo;
+
+        private ParkedSession(String resumeToken, long expiresAt) {
+            this.resumeToken = resumeToken;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * 结束挂起并取出缓存的事件，之后到达的事件不再缓存
+         * @return 已被关闭过时返回 null
+         */
+        private synchronized List<WireCodecService.PreparedEvent> close() {
+            if (closed) {
+                return null;
+            }
+            closed = true;
+            List<WireCodecService.PreparedEvent> drained = events;
+            events = Collections.emptyList();
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.example.easychat.Mapper.ChatMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+
+/**
+ * 会话序号服务
+ * 为每个会话分配单调递增的序号，接收方据此发现缺失区间并只补拉缺失部分。
+ * 序号计数器保存在 Redis chat:seq:<sessionId>，计数器丢失时从 chat_histories 中的最大序号恢复。
+ * 序号由刷盘线程在写库前按批分配（见 ChatPersistenceService），未能落库的尾部序号尽量归还，避免接收方看到永远补不齐的空洞。
+ */
+@Slf4j
+@Service
+public class SessionSequenceService {
+
+    public static final String SEQ_PREFIX = "chat:seq:";
+
+    // 计数器存在时按数量递增，不存在时返回 -1 由调用方恢复
+    private static final DefaultRedisScript<Long> INCRBY_IF_EXISTS_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return redis.call('INCRBY', KEYS[1], ARGV[1]) end return -1",
+            Long.class);
+
+    // 计数器仍停在本次分配的末尾时才回退，期间其他节点已继续分配则放弃归还
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then redis.call('DECRBY', KEYS[1], ARGV[2]) return 1 end return 0",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ChatMapper chatMapper;
+
+    /**
+     * 分配会话的下一个序号
+     */
+    public long next(String sessionId) {
+        return reserve(sessionId, 1);
+    }
+
+    /**
+     * 为会话连续分配 count 个序号
+     * @return 区间内的第一个序号，区间为 [first, first + count - 1]
+     */
+    public long reserve(String sessionId, int count) {
+        if (StringUtils.isBlank(sessionId)) {
+            throw new IllegalArgumentException("会话ID不能为空");
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("分配数量必须为正数");
+        }
+        String key = SEQ_PREFIX + sessionId;
+        Long last = stringRedisTemplate.execute(INCRBY_IF_EXISTS_SCRIPT, Collections.singletonList(key), String.valueOf(count));
+        if (last == null || last <= 0) {
+            // 计数器不存在：以数据库中的最大序号为起点，并发恢复时只有一个 SETNX 生效
+            Long maxSeq = chatMapper.getMaxSeq(sessionId);
+            stringRedisTemplate.opsForValue().setIfAbsent(key, String.valueOf(maxSeq != null ? maxSeq : 0L));
+            last = stringRedisTemplate.opsForValue().increment(key, count);
+            log.info("恢复会话序号计数器: sessionId={}, maxSeq={}, last={}", sessionId, maxSeq, last);
+            if (last == null) {
+                throw new IllegalStateException("分配会话序号失败: " + sessionId);
+            }
+        }
+        return last - count + 1;
+    }
+
+    /**
+     * 归还一次分配末尾未使用的序号
+     * @param last 本次分配的最后一个序号
+     * @param unused 末尾未使用的数量
+     * @return 计数器已回退返回 true；其他节点已继续分配时返回 false，这部分序号成为空洞
+     */
+    public boolean release(String sessionId, long last, int unused) {
+        if (unused <= 0) {
+            return true;
+        }
+        Long released = stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(SEQ_PREFIX + sessionId),
+                String.valueOf(last), String.valueOf(unused));
+        return released != null && released == 1L;
+    }
+}
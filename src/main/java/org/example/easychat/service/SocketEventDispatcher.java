@@ -0,0 +1,331 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Socket 事件分发器
+ * 把包含数据库、Redis 调用的事件处理从 netty-socketio 的事件循环线程移到工作线程池执行。
+ * 线程池按 key（userId 或 sessionId）分片，每个分片是单线程 + 有界队列，同一 key 的事件始终落在同一分片，
+ * 按到达顺序串行执行，不需要全局锁；分片队列满时拒绝并由调用方快速失败。
+ * JDK 21 及以上可开启虚拟线程模式：不再分片，每个 key 一个串行任务队列，队列非空时由一个虚拟线程依次执行，
+ * 排空后线程结束、队列移除；不同 key 之间不会因为落在同一分片而互相排队，阻塞调用也不再占用平台线程。
+ * 虚拟线程模式下单个 key 的队列容量为 queue-capacity，全部 key 的积压总量不超过 分片数 × queue-capacity。
+ */
+@Slf4j
+@Service
+public class SocketEventDispatcher {
+
+    // 是否启用分发；关闭时在事件循环线程上直接执行（仍统计耗时，便于对比）
+    @Value("${chat.dispatch.enabled:true}")
+    private boolean enabled;
+
+    // 分片数，0 表示按 CPU 核数的两倍
+    @Value("${chat.dispatch.shards:0}")
+    private int shards;
+
+    // 每个分片的队列容量
+    @Value("${chat.dispatch.queue-capacity:1000}")
+    private int queueCapacity;
+
+    // 是否使用虚拟线程（需要 JDK 21+，否则退回平台线程）
+    @Value("${chat.dispatch.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    private ThreadPoolExecutor[] workers;
+
+    private boolean virtualActive;
+
+    // 虚拟线程模式：key -> 串行任务队列（排空后移除）
+    private final ConcurrentHashMap<String, KeyQueue> keyQueues = new ConcurrentHashMap<>();
+
+    private ThreadFactory virtualFactory;
+
+    private int maxVirtualBacklog;
+
+    private final AtomicInteger virtualBacklog = new AtomicInteger();
+
+    private final LongAdder submittedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder queueWaitMicros = new LongAdder();
+    private final AtomicLong maxQueueWaitMicros = new AtomicLong();
+    // 事件循环线程上的耗时（分发时为入队耗时，未启用分发时为整个处理耗时）
+    private final ConcurrentHashMap<String, EventLoopTiming> eventLoopTimings = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        int count = shards > 0 ? shards : Runtime.getRuntime().availableProcessors() * 2;
+        virtualFactory = virtualThreads ? virtualThreadFactory() : null;
+        virtualActive = virtualFactory != null;
+        if (virtualActive) {
+            maxVirtualBacklog = count * queueCapacity;
+            workers = new ThreadPoolExecutor[0];
+            log.info("Socket 事件分发器已启动: enabled={}, virtualThreads=true, queueCapacity={}, maxBacklog={}",
+                    enabled, queueCapacity, maxVirtualBacklog);
+            return;
+        }
+        AtomicInteger seq = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "socket-dispatch-" + seq.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        workers = new ThreadPoolExecutor[count];
+        for (int i = 0; i < count; i++) {
+            workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        }
+        log.info("Socket 事件分发器已启动: enabled={}, shards={}, queueCapacity={}, virtualThreads=false",
+                enabled, count, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (workers == null) {
+            return;
+        }
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+        for (ThreadPoolExecutor worker : workers) {
+            try {
+                worker.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 虚拟线程模式：等待各 key 队列排空
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!keyQueues.isEmpty() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 按 key 分发事件处理
+     * @param event 事件名（用于统计）
+     * @param key 排序键，同一 key 的任务按提交顺序执行
+     * @param task 事件处理逻辑
+     * @return 是否已受理；分片队列已满时返回 false，由调用方回复繁忙
+     */
+    public boolean dispatch(String event, String key, Runnable task) {
+        long start = System.nanoTime();
+        try {
+            if (!enabled) {
+                run(task);
+                return true;
+            }
+            long enqueuedAt = System.nanoTime();
+            Runnable queued = () -> {
+                recordQueueWait(System.nanoTime() - enqueuedAt);
+                run(task);
+            };
+            if (virtualActive) {
+                enqueueVirtual(key != null ? key : "", queued);
+            } else {
+                workers[shardOf(key)].execute(queued);
+            }
+            submittedCount.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            log.warn("Socket 事件分发队列已满，拒绝处理: event={}, key={}", event, key);
+            return false;
+        } finally {
+            eventLoopTimings.computeIfAbsent(event, k -> new EventLoopTiming()).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 获取分发器指标（各分片队列深度、排队耗时、事件循环线程耗时）
+     */
+    public Map<String, Object> getStats() {
+        int totalDepth = 0;
+        int maxDepth = 0;
+        int[] depths = new int[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            depths[i] = workers[i].getQueue().size();
+            totalDepth += depths[i];
+            maxDepth = Math.max(maxDepth, depths[i]);
+        }
+        long submitted = submittedCount.sum();
+        Map<String, Object> eventLoop = new HashMap<>();
+        eventLoopTimings.forEach((event, timing) -> eventLoop.put(event, timing.toMap()));
+
+        if (virtualActive) {
+            totalDepth = virtualBacklog.get();
+            for (KeyQueue queue : keyQueues.values()) {
+                maxDepth = Math.max(maxDepth, queue.size);
+            }
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("virtualThreads", virtualActive);
+        stats.put("activeKeys", keyQueues.size());
+        stats.put("shards", workers.length);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("queueDepth", totalDepth);
+        stats.put("maxShardQueueDepth", maxDepth);
+        stats.put("shardQueueDepths", depths);
+        stats.put("submitted", submitted);
+        stats.put("rejected", rejectedCount.sum());
+        stats.put("failed", failedCount.sum());
+        stats.put("avgQueueWaitMicros", submitted > 0 ? queueWaitMicros.sum() / submitted : 0);
+        stats.put("maxQueueWaitMicros", maxQueueWaitMicros.get());
+        stats.put("eventLoop", eventLoop);
+        return stats;
+    }
+
+    /**
+     * 虚拟线程模式入队：key 的队列从空变为非空时启动一个虚拟线程排空它
+     */
+    private void enqueueVirtual(String key, Runnable task) {
+        if (virtualBacklog.incrementAndGet() > maxVirtualBacklog) {
+            virtualBacklog.decrementAndGet();
+            throw new RejectedExecutionException("分发积压已满");
+        }
+        boolean[] accepted = new boolean[1];
+        boolean[] start = new boolean[1];
+        keyQueues.compute(key, (k, queue) -> {
+            if (queue == null) {
+                queue = new KeyQueue();
+            }
+            if (queue.size < queueCapacity) {
+                queue.tasks.add(task);
+                queue.size++;
+                accepted[0] = true;
+                if (!queue.running) {
+                    queue.running = true;
+                    start[0] = true;
+                }
+            }
+            return queue;
+        });
+        if (!accepted[0]) {
+            virtualBacklog.decrementAndGet();
+            throw new RejectedExecutionException("分发队列已满");
+        }
+        if (start[0]) {
+            virtualFactory.newThread(() -> drain(key)).start();
+        }
+    }
+
+    /**
+     * 依次执行 key 队列中的任务，队列排空时在同一原子操作中移除队列，之后到达的任务会启动新的虚拟线程
+     */
+    private void drain(String key) {
+        Runnable[] next = new Runnable[1];
+        while (true) {
+            keyQueues.compute(key, (k, queue) -> {
+                next[0] = queue.tasks.poll();
+                if (next[0] == null) {
+                    return null;
+                }
+                queue.size--;
+                return queue;
+            });
+            if (next[0] == null) {
+                return;
+            }
+            virtualBacklog.decrementAndGet();
+            next[0].run();
+        }
+    }
+
+    private int shardOf(String key) {
+        return key == null ? 0 : Math.floorMod(key.hashCode(), workers.length);
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            failedCount.increment();
+            log.error("Socket 事件处理失败", e);
+        }
+    }
+
+    private void recordQueueWait(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        queueWaitMicros.add(micros);
+        maxQueueWaitMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * 通过反射创建虚拟线程工厂（Thread.ofVirtual().name(...).factory()），编译目标低于 21 时也可使用
+     */
+    private ThreadFactory virtualThreadFactory() {
+        if (Runtime.version().feature() < 21) {
+            log.warn("当前 JDK {} 不支持虚拟线程，Socket 事件分发使用平台线程", Runtime.version().feature());
+            return null;
+        }
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "socket-dispatch-v-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            log.warn("创建虚拟线程工厂失败，Socket 事件分发使用平台线程: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 虚拟线程模式下单个 key 的串行任务队列（只在 keyQueues.compute 内修改）
+     */
+    private static class KeyQueue {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private int size;
+        private boolean running;
+    }
+
+    /**
+     * 单个事件在事件循环线程上的耗时统计
+     */
+    private static class EventLoopTiming {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        private void record(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            count.increment();
+            totalMicros.add(micros);
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+
+        private Map<String, Object> toMap() {
+            long n = count.sum();
+            Map<String, Object> map = new HashMap<>();
+            map.put("count", n);
+            map.put("avgMicros", n > 0 ? totalMicros.sum() / n : 0);
+            map.put("maxMicros", maxMicros.get());
+            return map;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package org.example.easychat.service;
+
+import com.corundumstudio.socketio.SocketIOChannelInitializer;
+import com.corundumstudio.socketio.handler.ClientHead;
+import com.corundumstudio.socketio.messages.PacketsMessage;
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.protocol.PacketType;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Socket 事件限流器
+ * 在 Netty 管道中位于 Socket.IO 包解码之前：WebSocket 传输（分片已由帧聚合器合并）和轮询传输都把完整的消息
+ * 交给包解码器，限流器在这里直接扫描原始字节取出事件名（轮询负载按长度前缀拆成多个包），
+ * 按“会话 + 事件”做进程内令牌桶限流，超限的包在 JSON 解码和事件分发之前去掉，带确认ID的事件回复 rate_limited 确认。
+ * 包边界打包在 long 中、丢弃标记记在位图里，放行的消息扫描过程不分配对象；只有丢弃时才会构造确认包、
+ * 为轮询负载重写分配池化缓冲区（超过 64 个包的负载另分配位图）。
+ * 令牌桶状态保存在 Socket.IO 会话上（轮询的每次请求可能使用不同的 TCP 连接），按会话加锁。
+ * 短时间内违规次数过多的会话直接断开。跨节点的用户级总量限制仍由 RateLimitService 基于 Redis 完成。
+ */
+@Slf4j
+@Service
+public class SocketEventRateLimiter {
+
+    // 未单独配置的事件使用的规则名
+    private static final String DEFAULT_RULE = "*";
+
+    // 被限流事件的确认内容
+    public static final String RATE_LIMITED_ACK = "rate_limited";
+
+    // 会话存储中保存令牌桶的键
+    private static final String BUCKETS_KEY = "chatEventRateLimit";
+
+    // 轮询二进制负载中长度前缀的结束标记
+    private static final int BINARY_LENGTH_END = 0xFF;
+
+    @Value("${chat.socket-limit.enabled:true}")
+    private boolean enabled;
+
+    // 规则：事件名:每秒令牌数:桶容量，逗号分隔；* 为其余事件的默认规则
+    @Value("${chat.socket-limit.rules:sendMsg:20:40,markRead:20:40,syncInbox:5:10,heartbeat:2:5,userStatusChange:2:5,attentionUpdate:5:10,getOnlineUsers:1:3,online:1:3,offline:1:3,ping:2:5,*:30:60}")
+    private String ruleConfig;
+
+    // 违规统计窗口内超过该次数即断开连接
+    @Value("${chat.socket-limit.max-violations:50}")
+    private int maxViolations;
+
+    @Value("${chat.socket-limit.violation-window-ms:10000}")
+    private long violationWindowMs;
+
+    private byte[][] ruleNames;
+    private double[] ratesPerNano;
+    private double[] capacities;
+    private int defaultRule = -1;
+
+    private LongAdder[] droppedByRule;
+    private final LongAdder allowedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder ackCount = new LongAdder();
+    private final LongAdder disconnectCount = new LongAdder();
+
+    private final RateLimitHandler handler = new RateLimitHandler();
+
+    @PostConstruct
+    public void init() {
+        List<String[]> rules = new ArrayList<>();
+        for (String rule : ruleConfig.split(",")) {
+            if (rule.isBlank()) {
+                continue;
+            }
+            String[] parts = rule.trim().split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("无效的 Socket 事件限流规则: " + rule);
+            }
+            rules.add(parts);
+        }
+        ruleNames = new byte[rules.size()][];
+        ratesPerNano = new double[rules.size()];
+        capacities = new double[rules.size()];
+        droppedByRule = new LongAdder[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            String[] parts = rules.get(i);
+            ruleNames[i] = parts[0].getBytes(StandardCharsets.UTF_8);
+            ratesPerNano[i] = Double.parseDouble(parts[1]) / TimeUnit.SECONDS.toNanos(1);
+            capacities[i] = Double.parseDouble(parts[2]);
+            droppedByRule[i] = new LongAdder();
+            if (DEFAULT_RULE.equals(parts[0])) {
+                defaultRule = i;
+            }
+        }
+    }
+
+    /**
+     * 新建连接时调用（由 Socket.IO 管道初始化器调用）：在 Socket.IO 包解码之前插入限流处理器
+     */
+    public void attach(Channel channel) {
+        if (enabled) {
+            channel.pipeline().addBefore(SocketIOChannelInitializer.PACKET_HANDLER, "chatEventRateLimit", handler);
+        }
+    }
+
+    /**
+     * 获取限流指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Long> dropped = new HashMap<>();
+        for (int i = 0; i < ruleNames.length; i++) {
+            dropped.put(new String(ruleNames[i], StandardCharsets.UTF_8), droppedByRule[i].sum());
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("allowed", allowedCount.sum());
+        stats.put("dropped", droppedCount.sum());
+        stats.put("droppedByRule", dropped);
+        stats.put("rateLimitedAcks", ackCount.sum());
+        stats.put("disconnected", disconnectCount.sum());
+        return stats;
+    }
+
+    /**
+     * 查找包对应的规则：只识别 Engine.IO message + Socket.IO EVENT/BINARY_EVENT 包（"42" / "45" 开头），
+     * 事件名是第一个 '[' 之后的字符串；其它包（连接、确认、心跳等）返回 -1 表示不限流
+     */
+    private int ruleOf(ByteBuf content, int start, int end) {
+        if (end - start < 4 || content.getByte(start) != '4') {
+            return -1;
+        }
+        byte type = content.getByte(start + 1);
+        if (type != '2' && type != '5') {
+            return -1;
+        }
+        int open = content.indexOf(start + 2, end, (byte) '[');
+        if (open < 0 || open + 1 >= end || content.getByte(open + 1) != '"') {
+            return -1;
+        }
+        int nameStart = open + 2;
+        int nameEnd = content.indexOf(nameStart, end, (byte) '"');
+        if (nameEnd < 0) {
+            return -1;
+        }
+        int length = nameEnd - nameStart;
+        for (int i = 0; i < ruleNames.length; i++) {
+            byte[] name = ruleNames[i];
+            if (name.length != length) {
+                continue;
+            }
+            boolean match = true;
+            for (int j = 0; j < length && match; j++) {
+                match = content.getByte(nameStart + j) == name[j];
+            }
+            if (match) {
+                return i;
+            }
+        }
+        return defaultRule;
+    }
+
+    /**
+     * 被丢弃的事件若带确认ID（"42" 后、'[' 前的数字，可能有 "/命名空间," 前缀），回复 rate_limited 确认
+     */
+    private void ackRateLimited(ClientHead client, ByteBuf content, int start, int end) {
+        int open = content.indexOf(start + 2, end, (byte) '[');
+        if (open < 0) {
+            return;
+        }
+        int idStart = start + 2;
+        String nsp = "";
+        if (content.getByte(idStart) == '/') {
+            int comma = content.indexOf(idStart, open, (byte) ',');
+            if (comma < 0) {
+                return;
+            }
+            nsp = content.toString(idStart, comma - idStart, StandardCharsets.UTF_8);
+            idStart = comma + 1;
+        }
+        if (idStart == open) {
+            return;
+        }
+        long ackId = 0;
+        for (int i = idStart; i < open; i++) {
+            byte b = content.getByte(i);
+            if (b < '0' || b > '9') {
+                return;
+            }
+            ackId = ackId * 10 + (b - '0');
+        }
+        Packet ack = new Packet(PacketType.MESSAGE);
+        ack.setSubType(PacketType.ACK);
+        ack.setAckId(ackId);
+        ack.setNsp(nsp);
+        ack.setData(Collections.singletonList(RATE_LIMITED_ACK));
+        client.send(ack);
+        ackCount.increment();
+    }
+
+    /**
+     * 解析从 index 开始的一个包，返回 (包起点 << 32) | 包终点，包的头部（长度前缀）从 index 开始：WebSocket 消息为单个包；
+     * 轮询文本负载为 "长度:包" 的拼接（长度按 UTF-16 字符计），二进制负载为 "类型字节 长度数字字节 0xFF 包"
+     * （长度按字节计）；格式不符时剩余部分视为一个包
+     */
+    private static long nextPacket(ByteBuf content, int index, int end) {
+        int first = content.getByte(index) & 0xFF;
+        if (first == 0 || first == 1) {
+            long length = 0;
+            int i = index + 1;
+            while (i < end && (content.getByte(i) & 0xFF) != BINARY_LENGTH_END && (content.getByte(i) & 0xFF) <= 9) {
+                length = length * 10 + content.getByte(i);
+                i++;
+            }
+            if (i < end && (content.getByte(i) & 0xFF) == BINARY_LENGTH_END && i + 1 + length <= end) {
+                return bounds(i + 1, (int) (i + 1 + length));
+            }
+        } else if (first >= '0' && first <= '9') {
+            long length = 0;
+            int i = index;
+            while (i < end && content.getByte(i) >= '0' && content.getByte(i) <= '9') {
+                length = length * 10 + (content.getByte(i) - '0');
+                i++;
+            }
+            if (i < end && content.getByte(i) == ':') {
+                int packetEnd = advanceChars(content, i + 1, end, length);
+                if (packetEnd >= 0) {
+                    return bounds(i + 1, packetEnd);
+                }
+            }
+        }
+        return bounds(index, end);
+    }
+
+    private static long bounds(int packetStart, int packetEnd) {
+        return ((long) packetStart << 32) | packetEnd;
+    }
+
+    private static int packetStart(long bounds) {
+        return (int) (bounds >>> 32);
+    }
+
+    private static int packetEnd(long bounds) {
+        return (int) bounds;
+    }
+
+    /**
+     * 从 index 开始跨过 chars 个 UTF-16 字符，返回结束位置；超出 end 时返回 -1
+     */
+    private static int advanceChars(ByteBuf content, int index, int end, long chars) {
+        while (chars > 0) {
+            if (index >= end) {
+                return -1;
+            }
+            int b = content.getByte(index) & 0xFF;
+            if (b < 0x80) {
+                index += 1;
+                chars -= 1;
+            } else if (b < 0xE0) {
+                index += 2;
+                chars -= 1;
+            } else if (b < 0xF0) {
+                index += 3;
+                chars -= 1;
+            } else {
+                index += 4;
+                chars -= 2;
+            }
+        }
+        return index <= end ? index : -1;
+    }
+
+    /**
+     * 限流处理器（所有连接共用），令牌桶状态在会话上
+     */
+    @ChannelHandler.Sharable
+    private class RateLimitHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (!(msg instanceof PacketsMessage)) {
+                super.channelRead(ctx, msg);
+                return;
+            }
+            PacketsMessage message = (PacketsMessage) msg;
+            ClientHead client = message.getClient();
+            ByteBuf content = message.getContent();
+            if (client == null || content == null) {
+                super.channelRead(ctx, msg);
+                return;
+            }
+            Buckets buckets = client.getStore().get(BUCKETS_KEY);
+            if (buckets == null) {
+                buckets = new Buckets();
+                client.getStore().set(BUCKETS_KEY, buckets);
+            }
+
+            // 第一遍逐包判定，前 64 个包的丢弃标记记在位图里，更长的轮询负载才另外分配
+            int end = content.writerIndex();
+            int packets = 0;
+            int droppedPackets = 0;
+            long droppedMask = 0;
+            BitSet droppedOverflow = null;
+            for (int index = content.readerIndex(); index < end; packets++) {
+                long bounds = nextPacket(content, index, end);
+                index = packetEnd(bounds);
+                int rule = ruleOf(content, packetStart(bounds), packetEnd(bounds));
+                if (rule < 0) {
+                    continue;
+                }
+                if (buckets.tryAcquire(rule)) {
+                    allowedCount.increment();
+                    continue;
+                }
+                if (packets < Long.SIZE) {
+                    droppedMask |= 1L << packets;
+                } else {
+                    if (droppedOverflow == null) {
+                        droppedOverflow = new BitSet();
+                    }
+                    droppedOverflow.set(packets - Long.SIZE);
+                }
+                droppedPackets++;
+                droppedCount.increment();
+                droppedByRule[rule].increment();
+                ackRateLimited(client, content, packetStart(bounds), packetEnd(bounds));
+            }
+            if (droppedPackets > 0 && buckets.recordViolations(droppedPackets)) {
+                disconnectCount.increment();
+                log.warn("Socket 事件持续超限，断开会话: sessionId={}, remote={}", client.getSessionId(),
+                        ctx.channel().remoteAddress());
+                client.disconnect();
+                return;
+            }
+            if (droppedPackets == 0) {
+                super.channelRead(ctx, msg);
+                return;
+            }
+            if (droppedPackets == packets) {
+                return;
+            }
+            // 轮询负载中只去掉超限的包，其余包连同长度前缀原样保留（第二遍重新解析包边界）
+            ByteBuf kept = ctx.alloc().buffer(content.readableBytes());
+            try {
+                int p = 0;
+                for (int index = content.readerIndex(); index < end; p++) {
+                    int headerStart = index;
+                    index = packetEnd(nextPacket(content, index, end));
+                    boolean dropped = p < Long.SIZE
+                            ? (droppedMask & (1L << p)) != 0
+                            : droppedOverflow != null && droppedOverflow.get(p - Long.SIZE);
+                    if (!dropped) {
+                        kept.writeBytes(content, headerStart, index - headerStart);
+                    }
+                }
+                super.channelRead(ctx, new PacketsMessage(client, kept, message.getTransport()));
+            } finally {
+                kept.release();
+            }
+        }
+    }
+
+    /**
+     * 单个会话的令牌桶与违规计数（轮询请求可能并发，读写加锁）
+     */
+    private class Buckets {
+        private final double[] tokens = capacities.clone();
+        private final long[] refilledAt = new long[capacities.length];
+        private int violations;
+        private long violationWindowStart;
+
+        private synchronized boolean tryAcquire(int rule) {
+            long now = System.nanoTime();
+            long last = refilledAt[rule];
+            refilledAt[rule] = now;
+            if (last != 0) {
+                tokens[rule] = Math.min(capacities[rule], tokens[rule] + (now - last) * ratesPerNano[rule]);
+            }
+            if (tokens[rule] >= 1) {
+                tokens[rule] -= 1;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return 是否已超过违规上限
+         */
+        private synchronized boolean recordViolations(int count) {
+            long now = System.currentTimeMillis();
+            if (now - violationWindowStart > violationWindowMs) {
+                violationWindowStart = now;
+                violations = 0;
+            }
+            violations += count;
+            return violations > maxViolations;
+        }
+    }
+}
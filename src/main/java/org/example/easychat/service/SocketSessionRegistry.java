@@ -0,0 +1,200 @@
+package org.example.easychat.service;
+
+import com.corundumstudio.socketio.SocketIOClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Socket.IO 会话注册表
+ * 按 userId -> 该用户所有在线连接 建立索引，支持同一用户多端同时在线；
+ * 连接认证成功时登记、断开时按连接上的 userId 直接移除，查找和推送均为 O(1)，不再遍历全部连接。
+ */
+@Slf4j
+@Service
+public class SocketSessionRegistry {
+
+    // 连接上保存用户ID的属性名（认证成功后设置）
+    public static final String USER_ID_KEY = "userId";
+
+    // 慢连接上改为写入离线收件箱的事件
+    private static final String RECEIVE_MSG_EVENT = "receiveMsg";
+
+    @Autowired
+    private OutboundFlowControlService outboundFlowControlService;
+
+    @Autowired
+    private WireCodecService wireCodecService;
+
+    @Autowired
+    private SessionResumptionService sessionResumptionService;
+
+    @Autowired
+    private OfflineInboxService offlineInboxService;
+
+    // userId -> (连接会话ID -> 连接)
+    private final ConcurrentHashMap<String, Map<UUID, SocketIOClient>> sessions = new ConcurrentHashMap<>();
+
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder missedCount = new LongAdder();
+    private final LongAdder divertedCount = new LongAdder();
+
+    /**
+     * 登记已认证的连接
+     * @return 是否为该用户的第一个在线连接
+     */
+    public boolean register(String userId, SocketIOClient client) {
+        boolean[] first = new boolean[1];
+        sessions.compute(userId, (key, clients) -> {
+            if (clients == null) {
+                clients = new ConcurrentHashMap<>();
+                first[0] = true;
+            }
+            clients.put(client.getSessionId(), client);
+            return clients;
+        });
+        return first[0];
+    }
+
+    /**
+     * 移除连接
+     * @return 是否为该用户的最后一个在线连接（移除后用户已无在线设备）
+     */
+    public boolean unregister(SocketIOClient client) {
+        String userId = client.get(USER_ID_KEY);
+        if (userId == null) {
+            return false;
+        }
+        boolean[] last = new boolean[1];
+        sessions.computeIfPresent(userId, (key, clients) -> {
+            if (clients.remove(client.getSessionId()) != null && clients.isEmpty()) {
+                last[0] = true;
+                return null;
+            }
+            return clients.isEmpty() ? null : clients;
+        });
+        return last[0];
+    }
+
+    /**
+     * 获取用户的全部在线连接
+     */
+    public Collection<SocketIOClient> getClients(String userId) {
+        if (userId == null) {
+            return Collections.emptyList();
+        }
+        Map<UUID, SocketIOClient> clients = sessions.get(userId);
+        return clients != null ? clients.values() : Collections.emptyList();
+    }
+
+    /**
+     * 在本节点有在线连接的用户ID（实时视图）
+     */
+    public Set<String> getOnlineUserIds() {
+        return sessions.keySet();
+    }
+
+    /**
+     * 用户是否有在线连接
+     */
+    public boolean isOnline(String userId) {
+        return userId != null && sessions.containsKey(userId);
+    }
+
+    /**
+     * 向用户的所有在线设备推送事件（经出站流控，慢连接上的低优先级事件会被丢弃）
+     * @return 实际推送到的连接数（宽限期内缓存计为 1），为 0 表示用户离线
+     */
+    public int sendToUser(String userId, String event, Object... payload) {
+        return sendToUser(userId, wireCodecService.prepare(event, payload));
+    }
+
+    /**
+     * 推送已准备好的事件，按连接协商的编码下发（同一事件可复用于多个接收者）
+     * 用户处于断线宽限期时事件先缓存，重连后补发；写缓冲积压的连接上单聊消息不再排队，改为写入离线收件箱
+     * （慢连接被驱逐时积压会被丢弃），积压消退时由出站流控提示客户端同步收件箱取回
+     * @return 已受理的连接数（实际推送、宽限期内缓存、转入收件箱均计入），为 0 表示用户离线；
+     *         指标中 delivered 只统计实际推送，转入收件箱的计入 divertedToInbox
+     */
+    public int sendToUser(String userId, WireCodecService.PreparedEvent prepared) {
+        int delivered = deliverLocal(userId, prepared);
+        if (delivered == 0) {
+            if (sessionResumptionService.buffer(userId, prepared)) {
+                return 1;
+            }
+            // 续连恢复先登记新连接再结束宽限期，宽限期刚结束时再查一次本地连接
+            delivered = deliverLocal(userId, prepared);
+        }
+        if (delivered == 0) {
+            missedCount.increment();
+        }
+        return delivered;
+    }
+
+    /**
+     * 推送到用户在本节点的连接
+     * @return 实际推送与转入收件箱的连接数之和
+     */
+    private int deliverLocal(String userId, WireCodecService.PreparedEvent prepared) {
+        int delivered = 0;
+        int sent = 0;
+        boolean diverted = false;
+        for (SocketIOClient client : getClients(userId)) {
+            if (!client.isChannelOpen()) {
+                continue;
+            }
+            if (RECEIVE_MSG_EVENT.equals(prepared.getEvent()) && outboundFlowControlService.isBacklogged(client)) {
+                // 收件箱按用户保存，同一用户多个慢连接只写一次
+                if (!diverted && offlineInboxService.appendPayload(userId, prepared.getPayload())) {
+                    diverted = true;
+                    divertedCount.increment();
+                }
+                if (diverted) {
+                    // 该连接恢复可写时提示客户端同步收件箱
+                    outboundFlowControlService.markDiverted(client);
+                    delivered++;
+                    continue;
+                }
+            }
+            if (outboundFlowControlService.send(client, prepared.getEvent(), wireCodecService.argsFor(client, prepared))) {
+                delivered++;
+                sent++;
+            }
+        }
+        deliveredCount.add(sent);
+        return delivered;
+    }
+
+    /**
+     * 在线用户数
+     */
+    public int getOnlineUserCount() {
+        return sessions.size();
+    }
+
+    /**
+     * 获取注册表指标
+     */
+    public Map<String, Object> getStats() {
+        int connections = 0;
+        for (Map<UUID, SocketIOClient> clients : sessions.values()) {
+            connections += clients.size();
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("onlineUsers", sessions.size());
+        stats.put("connections", connections);
+        stats.put("delivered", deliveredCount.sum());
+        stats.put("missed", missedCount.sum());
+        stats.put("divertedToInbox", divertedCount.sum());
+        return stats;
+    }
+}
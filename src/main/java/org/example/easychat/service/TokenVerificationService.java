@@ -0,0 +1,242 @@
+package org.example.easychat.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.example.easychat.utils.JwtUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 令牌校验服务
+ * Socket.IO 握手、onConnect 和 HTTP 过滤器共用的已验证令牌缓存：按令牌的 SHA-256 摘要索引，
+ * 保存 userId、过期时间和校验时的吊销纪元。重复出现的令牌只需一次摘要计算和哈希查找，不再验签、不再访问 Redis。
+ * 登录（旧令牌被替换）和登出时通过 Redis 频道广播吊销，各节点递增该用户的纪元，使旧缓存项在全集群失效；
+ * 缓存项另有存活上限，即使错过吊销广播也会在上限时间内重新校验。
+ */
+@Slf4j
+@Service
+public class TokenVerificationService {
+
+    public static final String USER_TOKEN_PREFIX = "userToken:";
+
+    public static final String REVOKE_CHANNEL = "chat:token:revoke";
+
+    // 超过该长度的令牌不做载荷预检
+    private static final int MAX_TOKEN_LENGTH = 4096;
+
+    // 最多缓存的令牌数
+    @Value("${chat.token-cache.max-size:100000}")
+    private int maxSize;
+
+    // 缓存项最长存活时间（毫秒）
+    @Value("${chat.token-cache.ttl-ms:300000}")
+    private long ttlMs;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private Map<String, VerifiedToken> cache;
+
+    // userId -> 吊销纪元，每次吊销加一
+    private final ConcurrentHashMap<String, Long> epochs = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder rejectCount = new LongAdder();
+    private final LongAdder revokeCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        cache = Collections.synchronizedMap(new LinkedHashMap<String, VerifiedToken>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+                return size() > maxSize;
+            }
+        });
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onRevoked(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(REVOKE_CHANNEL));
+    }
+
+    /**
+     * 校验令牌（验签、过期时间、与 userToken:<userId> 中登记的令牌一致）
+     * @param token 去掉 Bearer 前缀后的令牌
+     * @return 校验通过时返回 userId，否则返回 null
+     */
+    public String verify(String token) {
+        if (StringUtils.isBlank(token)) {
+            return null;
+        }
+        String key = digest(token);
+        long now = System.currentTimeMillis();
+        VerifiedToken cached = cache.get(key);
+        if (cached != null) {
+            if (cached.expiresAt > now && cached.epoch == epochOf(cached.userId)) {
+                hitCount.increment();
+                return cached.userId;
+            }
+            cache.remove(key);
+        }
+        missCount.increment();
+
+        Claims claims;
+        try {
+            claims = jwtUtil.getAllClaimsFromToken(token);
+        } catch (Exception e) {
+            rejectCount.increment();
+            return null;
+        }
+        String userId = claims.getSubject();
+        if (StringUtils.isBlank(userId) || claims.getExpiration() == null || claims.getExpiration().getTime() <= now) {
+            rejectCount.increment();
+            return null;
+        }
+        // 先取纪元再查 Redis：校验期间发生的吊销会使本次写入的缓存项直接失效
+        long epoch = epochOf(userId);
+        String current;
+        try {
+            current = stringRedisTemplate.opsForValue().get(USER_TOKEN_PREFIX + userId);
+        } catch (Exception e) {
+            log.error("读取 userToken 映射失败，userId={}", userId, e);
+            return null;
+        }
+        if (!token.equals(current)) {
+            rejectCount.increment();
+            log.warn("Redis 未命中 userToken 映射，userId={}", userId);
+            return null;
+        }
+        cache.put(key, new VerifiedToken(userId, Math.min(claims.getExpiration().getTime(), now + ttlMs), epoch));
+        return userId;
+    }
+
+    /**
+     * 令牌是否已在缓存中且仍有效（不验签、不访问 Redis，供握手准入判断优先级）
+     */
+    public boolean isCached(String token) {
+        if (StringUtils.isBlank(token)) {
+            return false;
+        }
+        VerifiedToken cached = cache.get(digest(token));
+        return cached != null && cached.expiresAt > System.currentTimeMillis() && cached.epoch == epochOf(cached.userId);
+    }
+
+    /**
+     * 令牌载荷中的 sub 与 exp 是否表明一个未过期的用户令牌（只做 Base64 解码，不验签、不访问 Redis），
+     * 供握手准入在扣减令牌桶之前廉价地区分优先级；结果不可信，握手认证时仍做完整校验
+     */
+    public boolean hasUnexpiredClaims(String token) {
+        if (StringUtils.isBlank(token) || token.length() > MAX_TOKEN_LENGTH) {
+            return false;
+        }
+        int first = token.indexOf('.');
+        int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        if (second < 0 || token.indexOf('.', second + 1) >= 0) {
+            return false;
+        }
+        try {
+            JsonNode claims = objectMapper.readTree(Base64.getUrlDecoder().decode(token.substring(first + 1, second)));
+            JsonNode exp = claims.get("exp");
+            return StringUtils.isNotBlank(claims.path("sub").asText(null)) && exp != null && exp.canConvertToLong()
+                    && exp.asLong() * 1000 > System.currentTimeMillis();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 吊销用户已缓存的令牌（登录替换旧令牌、登出时调用），广播到所有节点
+     */
+    public void revokeUser(String userId) {
+        if (StringUtils.isBlank(userId)) {
+            return;
+        }
+        onRevoked(userId);
+        try {
+            stringRedisTemplate.convertAndSend(REVOKE_CHANNEL, userId);
+        } catch (Exception e) {
+            log.error("广播令牌吊销失败: userId={}", userId, e);
+        }
+    }
+
+    /**
+     * 获取令牌缓存指标
+     */
+    public Map<String, Object> getStats() {
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", cache.size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("rejected", rejectCount.sum());
+        stats.put("revocations", revokeCount.sum());
+        stats.put("hitRatio", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+        return stats;
+    }
+
+    private void onRevoked(String userId) {
+        epochs.merge(userId, 1L, Long::sum);
+        revokeCount.increment();
+    }
+
+    private long epochOf(String userId) {
+        return epochs.getOrDefault(userId, 0L);
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 已验证的令牌
+     */
+    private static class VerifiedToken {
+        private final String userId;
+        private final long expiresAt;
+        private final long epoch;
+
+        private VerifiedToken(String userId, long expiresAt, long epoch) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package org.example.easychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Entity.ConversationSummary;
+import org.example.easychat.Handler.BusinessException;
+import org.example.easychat.Handler.ErrorCode;
+import org.example.easychat.Mapper.ChatMapper;
+import org.example.easychat.Mapper.ConversationSummaryMapper;
+import org.example.easychat.event.MessagesReadEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 未读计数服务
+ * 未读数按 (用户, 会话) 保存在 Redis 哈希 chat:unread:<userId> 中，消息落库后增量累加；
+ * "已读到某条消息" 的请求由定时任务合并后批量写回 MySQL，写回时按范围一次性标记 chat_histories 已读，
+ * 并按实际标记的行数扣减计数（而不是覆盖），与同时到达的新消息累加互不覆盖；同一会话在一个周期内只推送一次已读回执。
+ * 每条消息只累加一次、最多扣减一次，两者先后不定时计数可能短暂为负，读取时按 0 处理。
+ * 摘要表未读数与 Redis 计数的所有变更（累加、扣减）以及缓存重建都在同一个单线程的 summaryEventExecutor 上串行执行，
+ * 重建读到的摘要表与之后落到哈希上的增量不会重叠或遗漏；哈希设置过期时间，读取时续期。
+ */
+@Slf4j
+@Service
+public class UnreadCounterService {
+
+    public static final String UNREAD_PREFIX = "chat:unread:";
+
+    // 哈希已从数据库加载的标记字段，缺失时视为未加载
+    private static final String LOADED_FIELD = "_loaded";
+
+    // 仅对已加载的哈希累加（增量为负即扣减），未加载的由下次读取时从摘要表重建
+    private static final DefaultRedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "local n = 0 " +
+            "for i = 1, #KEYS do " +
+            "  if redis.call('HEXISTS', KEYS[i], '" + LOADED_FIELD + "') == 1 then " +
+            "    redis.call('HINCRBY', KEYS[i], ARGV[2 * i - 1], ARGV[2 * i]) " +
+            "    n = n + 1 " +
+            "  end " +
+            "end " +
+            "return n", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ChatMapper chatMapper;
+
+    @Autowired
+    private ConversationSummaryMapper conversationSummaryMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // 与会话摘要更新共用的单线程执行器，未读数的所有变更与重建都在其上串行执行
+    @Autowired
+    @Qualifier("summaryEventExecutor")
+    private Executor summaryEventExecutor;
+
+    // 未读数哈希的过期时间（秒），读取时续期
+    @Value("${chat.unread.cache-ttl-seconds:604800}")
+    private long cacheTtlSeconds;
+
+    // 缓存未加载时等待串行重建的最长时间（毫秒），超时则直接读摘要表返回
+    @Value("${chat.unread.rebuild-timeout-ms:2000}")
+    private long rebuildTimeoutMs;
+
+    // 待写回的已读位置，同一 (用户, 会话) 只保留最后一次
+    private final ConcurrentHashMap<String, ReadMark> pendingReads = new ConcurrentHashMap<>();
+
+    private final LongAdder readRequestCount = new LongAdder();
+    private final LongAdder readFlushCount = new LongAdder();
+    private final LongAdder receiptCount = new LongAdder();
+    private final LongAdder rebuildCount = new LongAdder();
+    private final LongAdder rebuildTimeoutCount = new LongAdder();
+
+    /**
+     * 摘要表写入成功后为接收方累加未读数，由 ConversationSummaryService 在 summaryEventExecutor 上调用
+     * @param summaries 本批合并后的会话摘要，unreadCount 为本批新增的未读数
+     */
+    void applyPersisted(List<ConversationSummary> summaries) {
+        Map<String, Map<String, Integer>> deltas = new LinkedHashMap<>();
+        for (ConversationSummary summary : summaries) {
+            if (summary.getUnreadCount() == null || summary.getUnreadCount() <= 0) {
+                continue;
+            }
+            deltas.computeIfAbsent(summary.getUserId(), k -> new LinkedHashMap<>())
+                    .merge(summary.getSessionId(), summary.getUnreadCount(), Integer::sum);
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            executeForEach(INCREMENT_SCRIPT, deltas);
+        } catch (Exception e) {
+            // 累加失败时删除对应哈希，下次读取时从摘要表重建
+            log.error("累加未读数失败，删除缓存等待重建: users={}", deltas.size(), e);
+            invalidate(deltas.keySet());
+        }
+    }
+
+    /**
+     * 获取用户各会话的未读数
+     */
+    public Map<String, Integer> getUnreadCounts(String userId) {
+        if (StringUtils.isBlank(userId)) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMS, "用户ID不能为空");
+        }
+        Map<String, Integer> cached = readCached(userId);
+        if (cached != null) {
+            return cached;
+        }
+
+        // 缓存未加载：交给串行执行器重建，保证重建期间不会有增量落在半成品哈希上或被漏掉
+        CompletableFuture<Map<String, Integer>> rebuilt = CompletableFuture.supplyAsync(() -> rebuild(userId), summaryEventExecutor);
+        try {
+            return rebuilt.get(rebuildTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            rebuildTimeoutCount.increment();
+            log.warn("等待未读数缓存重建超时或失败，直接读取摘要表: userId={}, error={}", userId, e.getMessage());
+        }
+        return fromSummaries(userId, null);
+    }
+
+    /**
+     * 读取已加载的哈希并续期；未加载或读取失败返回 null
+     */
+    private Map<String, Integer> readCached(String userId) {
+        String key = UNREAD_PREFIX + userId;
+        try {
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+            if (!entries.containsKey(LOADED_FIELD)) {
+                return null;
+            }
+            stringRedisTemplate.expire(key, Duration.ofSeconds(cacheTtlSeconds));
+            Map<String, Integer> result = new HashMap<>();
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                String sessionId = entry.getKey().toString();
+                int count = Integer.parseInt(entry.getValue().toString());
+                if (!LOADED_FIELD.equals(sessionId) && count > 0) {
+                    result.put(sessionId, count);
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("读取未读数缓存失败: userId={}", userId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 在 summaryEventExecutor 上从摘要表重建哈希；排队期间已有其他请求完成重建时直接读取
+     */
+    private Map<String, Integer> rebuild(String userId) {
+        Map<String, Integer> cached = readCached(userId);
+        if (cached != null) {
+            return cached;
+        }
+        Map<String, String> fields = new HashMap<>();
+        Map<String, Integer> result = fromSummaries(userId, fields);
+        fields.put(LOADED_FIELD, "1");
+        String key = UNREAD_PREFIX + userId;
+        try {
+            stringRedisTemplate.delete(key);
+            stringRedisTemplate.opsForHash().putAll(key, fields);
+            stringRedisTemplate.expire(key, Duration.ofSeconds(cacheTtlSeconds));
+            rebuildCount.increment();
+        } catch (Exception e) {
+            log.error("重建未读数缓存失败: userId={}", userId, e);
+            invalidate(Collections.singleton(userId));
+        }
+        return result;
+    }
+
+    private Map<String, Integer> fromSummaries(String userId, Map<String, String> fields) {
+        Map<String, Integer> result = new HashMap<>();
+        for (ConversationSummary summary : conversationSummaryMapper.selectByUserId(userId)) {
+            int count = summary.getUnreadCount() != null ? summary.getUnreadCount() : 0;
+            if (fields != null) {
+                fields.put(summary.getSessionId(), String.valueOf(count));
+            }
+            if (count > 0) {
+                result.put(summary.getSessionId(), count);
+            }
+        }
+        return result;
+    }
+
+    private void invalidate(Collection<String> userIds) {
+        List<String> keys = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            keys.add(UNREAD_PREFIX + userId);
+        }
+        try {
+            stringRedisTemplate.delete(keys);
+        } catch (Exception e) {
+            log.error("删除未读数缓存失败: users={}", keys.size(), e);
+        }
+    }
+
+    /**
+     * 标记会话已读到指定消息（含该消息）
+     */
+    public void markReadUpTo(String userId, String sessionId, String messageId) {
+        if (StringUtils.isAnyBlank(userId, sessionId, messageId)) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMS, "用户ID、会话ID和消息ID不能为空");
+        }
+        readRequestCount.increment();
+        // 计数在下一次写回时按实际标记的行数扣减，不在这里直接清零，避免覆盖同时到达的新消息
+        pendingReads.put(userId + ":" + sessionId, new ReadMark(userId, sessionId, messageId));
+    }
+
+    /**
+     * 批量写回已读位置：按范围更新已读标记、按标记的行数扣减未读数并合并推送已读回执
+     */
+    @Scheduled(fixedDelayString = "${chat.unread.flush-interval-ms:1000}")
+    public void flushReads() {
+        if (pendingReads.isEmpty()) {
+            return;
+        }
+        List<ReadMark> marks = new ArrayList<>();
+        for (String key : new ArrayList<>(pendingReads.keySet())) {
+            ReadMark mark = pendingReads.remove(key);
+            if (mark != null) {
+                marks.add(mark);
+            }
+        }
+
+        List<ConversationSummary> corrections = new ArrayList<>(marks.size());
+        Map<String, Map<String, Integer>> redisCorrections = new LinkedHashMap<>();
+        for (ReadMark mark : marks) {
+            try {
+                ChatHistory upTo = chatMapper.getChatHistoryById(mark.messageId);
+                if (upTo == null || !mark.sessionId.equals(upTo.getSessionId())) {
+                    log.warn("已读位置无效: userId={}, sessionId={}, messageId={}", mark.userId, mark.sessionId, mark.messageId);
+                    continue;
+                }
+                // has_read = 0 条件保证每条消息只被扣减一次
+                int marked = chatMapper.markReadUpTo(mark.sessionId, mark.userId, upTo.getCreateTime(), upTo.getId());
+                if (marked > 0) {
+                    ConversationSummary correction = new ConversationSummary();
+                    correction.setUserId(mark.userId);
+                    correction.setSessionId(mark.sessionId);
+                    correction.setUnreadCount(marked);
+                    corrections.add(correction);
+                    redisCorrections.computeIfAbsent(mark.userId, k -> new LinkedHashMap<>()).put(mark.sessionId, -marked);
+                }
+
+                // 对方即该会话中另一位参与者
+                String peerId = mark.userId.equals(upTo.getSenderId()) ? upTo.getReceiverId() : upTo.getSenderId();
+                eventPublisher.publishEvent(new MessagesReadEvent(this, mark.userId, peerId, mark.sessionId, upTo.getId()));
+                receiptCount.increment();
+            } catch (Exception e) {
+                log.error("写回已读位置失败: userId={}, sessionId={}", mark.userId, mark.sessionId, e);
+            }
+        }
+
+        if (!corrections.isEmpty()) {
+            // 扣减与累加、重建在同一个串行执行器上进行
+            summaryEventExecutor.execute(() -> applyCorrections(corrections, redisCorrections));
+        }
+        readFlushCount.increment();
+        log.debug("写回已读位置: marks={}, corrected={}", marks.size(), corrections.size());
+    }
+
+    private void applyCorrections(List<ConversationSummary> corrections, Map<String, Map<String, Integer>> redisCorrections) {
+        try {
+            conversationSummaryMapper.batchDecrementUnread(corrections);
+        } catch (Exception e) {
+            log.error("扣减未读数失败: size={}", corrections.size(), e);
+            return;
+        }
+        try {
+            executeForEach(INCREMENT_SCRIPT, redisCorrections);
+        } catch (Exception e) {
+            log.error("扣减未读数缓存失败，删除缓存等待重建: users={}", redisCorrections.size(), e);
+            invalidate(redisCorrections.keySet());
+        }
+    }
+
+    /**
+     * 停机前写回剩余的已读位置
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushReads();
+    }
+
+    /**
+     * 获取未读计数指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pendingReads", pendingReads.size());
+        stats.put("readRequests", readRequestCount.sum());
+        stats.put("flushes", readFlushCount.sum());
+        stats.put("receipts", receiptCount.sum());
+        stats.put("rebuilds", rebuildCount.sum());
+        stats.put("rebuildTimeouts", rebuildTimeoutCount.sum());
+        stats.put("cacheTtlSeconds", cacheTtlSeconds);
+        return stats;
+    }
+
+    /**
+     * 按用户展开为 KEYS / ARGV 后执行脚本，一批只往返一次
+     */
+    private void executeForEach(DefaultRedisScript<Long> script, Map<String, Map<String, Integer>> values) {
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Integer>> user : values.entrySet()) {
+            for (Map.Entry<String, Integer> session : user.getValue().entrySet()) {
+                keys.add(UNREAD_PREFIX + user.getKey());
+                args.add(session.getKey());
+                args.add(String.valueOf(session.getValue()));
+            }
+        }
+        stringRedisTemplate.execute(script, keys, args.toArray());
+    }
+
+    /**
+     * 已读位置
+     */
+    private static class ReadMark {
+        private final String userId;
+        private final String sessionId;
+        private final String messageId;
+
+        private ReadMark(String userId, String sessionId, String messageId) {
+            this.userId = userId;
+            this.sessionId = sessionId;
+            this.messageId = messageId;
+        }
+    }
+}
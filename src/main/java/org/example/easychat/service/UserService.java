@@ -46,6 +46,9 @@ public class UserService implements UserInterface{
     @Autowired
     private AliOSSUtil aliOSSUtil;
 
+    @Autowired
+    private PrincipalCacheService principalCacheService;
+
     @Override
     public User getUserById(String userId) {
         User user = userMapper.getUserWithTagsById(userId);
@@ -257,6 +260,7 @@ public class UserService implements UserInterface{
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         user.setUpdateTime(sdf.format(new Date()));
         userMapper.updateById(user);
+        principalCacheService.invalidate(user.getId());
     }
     @Override
     public String updateUserAvatar(MultipartFile avatar, String userId) throws IOException {
@@ -274,6 +278,7 @@ public class UserService implements UserInterface{
         // 使用Java 8的时间API格式化时间
         user.setUpdateTime(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
         userMapper.updateById(user);
+        principalCacheService.invalidate(userId);
         
         return avatarUrl;
     }
@@ -294,6 +299,7 @@ public class UserService implements UserInterface{
         user.setPassword(newPassword);
         user.setUpdateTime(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
         userMapper.updateById(user);
+        principalCacheService.invalidate(userId);
     }
 
     @Override
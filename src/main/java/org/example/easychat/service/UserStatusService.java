@@ -37,31 +37,18 @@ public class UserStatusService {
     
     @Autowired
     private UserService userService;
+
+    @Autowired
+    private LivenessTracker livenessTracker;
     
     private static final String USER_STATUS_KEY = "user:status:";
     private static final String ONLINE_USERS_KEY = "online:users";
     
     /**
-     * 更新最后活跃时间
+     * 更新最后活跃时间（先记入内存，由 LivenessTracker 定期批量写入数据库和缓存）
      */
     public void updateLastActiveTime(String userId) {
-        if (StringUtils.isBlank(userId)) {
-            return;
-        }
-        
-        try {
-            UserStatus userStatus = getUserStatus(userId);
-            if (userStatus != null) {
-                userStatus.setLastActiveTime(LocalDateTime.now());
-                userStatus.setUpdateTime(LocalDateTime.now());
-                userStatusMapper.updateById(userStatus);
-                
-                // 更新缓存
-                redisTemplate.opsForValue().set(USER_STATUS_KEY + userId, userStatus, Duration.ofHours(24));
-            }
-        } catch (Exception e) {
-            log.error("更新用户最后活跃时间失败: userId={}", userId, e);
-        }
+        livenessTracker.touch(userId);
     }
     
     /**
@@ -0,0 +1,153 @@
+package org.example.easychat.service;
+
+import com.corundumstudio.socketio.SocketIOClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import org.example.easychat.Config.SocketIOJsonSupport;
+import org.example.easychat.utils.MessagePackCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 推送编码服务
+ * 客户端在握手参数中携带 codec=msgpack 即可为高频事件（新消息、群消息、在线快照与增量）启用 MessagePack 二进制编码，
+ * 事件参数整体编码为一个 MessagePack 数组，作为 Socket.IO 二进制附件下发；未协商的客户端仍收到 JSON。
+ * 同一事件的二进制负载只编码一次，由所有二进制接收者共享。
+ */
+@Slf4j
+@Service
+public class WireCodecService {
+
+    // 握手参数名
+    public static final String CODEC_PARAM = "codec";
+
+    public static final String CODEC_MSGPACK = "msgpack";
+
+    // 连接上保存协商结果的属性名
+    private static final String CODEC_KEY = "wireCodec";
+
+    @Value("${chat.wire.binary-enabled:true}")
+    private boolean binaryEnabled;
+
+    // 支持二进制编码的事件
+    @Value("${chat.wire.binary-events:receiveMsg,receive_group_message,onlineUsers,presenceDelta}")
+    private String binaryEventConfig;
+
+    // 与 JSON 推送使用同一个 ObjectMapper，两种编码的字段格式一致
+    @Autowired
+    private SocketIOJsonSupport socketIOJsonSupport;
+
+    private Set<String> binaryEvents;
+
+    private final LongAdder binaryClientCount = new LongAdder();
+    private final LongAdder encodeCount = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder binarySendCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        binaryEvents = new HashSet<>();
+        for (String event : binaryEventConfig.split(",")) {
+            if (!event.isBlank()) {
+                binaryEvents.add(event.trim());
+            }
+        }
+    }
+
+    /**
+     * 根据握手参数协商连接的编码方式（连接认证成功后调用）
+     */
+    public void negotiate(SocketIOClient client) {
+        String codec = client.getHandshakeData().getSingleUrlParam(CODEC_PARAM);
+        if (binaryEnabled && CODEC_MSGPACK.equalsIgnoreCase(codec)) {
+            client.set(CODEC_KEY, CODEC_MSGPACK);
+            binaryClientCount.increment();
+        }
+    }
+
+    /**
+     * 准备一次推送：二进制负载按需编码并在接收者之间共享
+     */
+    public PreparedEvent prepare(String event, Object[] payload) {
+        return new PreparedEvent(event, payload, binaryEnabled && binaryEvents.contains(event));
+    }
+
+    /**
+     * 获取该连接应收到的事件参数
+     */
+    public Object[] argsFor(SocketIOClient client, PreparedEvent prepared) {
+        if (!prepared.binaryCapable || !CODEC_MSGPACK.equals(client.get(CODEC_KEY))) {
+            return prepared.payload;
+        }
+        binarySendCount.increment();
+        return new Object[]{prepared.binary()};
+    }
+
+    /**
+     * 获取编码指标
+     */
+    public Map<String, Object> getStats() {
+        long encodes = encodeCount.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("binaryEnabled", binaryEnabled);
+        stats.put("binaryEvents", binaryEvents);
+        stats.put("binaryClients", binaryClientCount.sum());
+        stats.put("encodes", encodes);
+        stats.put("binarySends", binarySendCount.sum());
+        stats.put("avgEncodedBytes", encodes > 0 ? encodedBytes.sum() / encodes : 0);
+        stats.put("avgEncodeMicros", encodes > 0 ? encodeNanos.sum() / encodes / 1000.0 : 0);
+        return stats;
+    }
+
+    /**
+     * 一次推送的事件与参数，二进制负载首次需要时编码
+     */
+    public class PreparedEvent {
+        private final String event;
+        private final Object[] payload;
+        private final boolean binaryCapable;
+        private volatile byte[] binary;
+
+        private PreparedEvent(String event, Object[] payload, boolean binaryCapable) {
+            this.event = event;
+            this.payload = payload;
+            this.binaryCapable = binaryCapable;
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        public Object[] getPayload() {
+            return payload;
+        }
+
+        private byte[] binary() {
+            byte[] bytes = binary;
+            if (bytes == null) {
+                synchronized (this) {
+                    bytes = binary;
+                    if (bytes == null) {
+                        long start = System.nanoTime();
+                        JsonNode tree = socketIOJsonSupport.getObjectMapper().valueToTree(payload);
+                        bytes = MessagePackCodec.encode(tree);
+                        encodeNanos.add(System.nanoTime() - start);
+                        encodeCount.increment();
+                        encodedBytes.add(bytes.length);
+                        binary = bytes;
+                    }
+                }
+            }
+            return bytes;
+        }
+    }
+}
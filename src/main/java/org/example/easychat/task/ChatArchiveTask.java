@@ -0,0 +1,33 @@
+package org.example.easychat.task;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.easychat.service.ChatArchiveService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 聊天记录归档定时任务
+ * 每天低峰期把超过保留期的消息迁入归档段文件
+ */
+@Slf4j
+@Component
+public class ChatArchiveTask {
+
+    @Autowired
+    private ChatArchiveService chatArchiveService;
+
+    /**
+     * 默认每天凌晨3点30分执行
+     */
+    @Scheduled(cron = "${chat.archive.cron:0 30 3 * * ?}")
+    public void archiveExpiredHistory() {
+        try {
+            log.info("开始执行聊天记录归档任务");
+            long archived = chatArchiveService.archiveExpired();
+            log.info("聊天记录归档任务执行完成: archived={}", archived);
+        } catch (Exception e) {
+            log.error("聊天记录归档任务执行失败", e);
+        }
+    }
+}
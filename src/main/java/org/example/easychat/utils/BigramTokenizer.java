@@ -0,0 +1,96 @@
+package org.example.easychat.utils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 消息检索分词器
+ * 中日韩文字按单字和相邻二字切分（单字用于一个字的查询），字母数字按连续串切分并转小写，其余字符作为分隔符。
+ * 查询词与消息使用同一套规则，检索时要求查询词的全部词项命中，再由调用方按原文校验，排除二字组合带来的误命中。
+ */
+public final class BigramTokenizer {
+
+    private BigramTokenizer() {
+    }
+
+    /**
+     * 对消息内容分词（含单字和二字）
+     */
+    public static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        StringBuilder word = new StringBuilder();
+        int prevCjk = -1;
+        int i = 0;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (isCjk(cp)) {
+                flushWord(word, terms);
+                terms.add(new String(Character.toChars(cp)));
+                if (prevCjk >= 0) {
+                    terms.add(new String(Character.toChars(prevCjk)) + new String(Character.toChars(cp)));
+                }
+                prevCjk = cp;
+            } else if (Character.isLetterOrDigit(cp)) {
+                prevCjk = -1;
+                word.appendCodePoint(Character.toLowerCase(cp));
+            } else {
+                prevCjk = -1;
+                flushWord(word, terms);
+            }
+        }
+        flushWord(word, terms);
+        return terms;
+    }
+
+    /**
+     * 对查询词分词：连续两个及以上的中日韩文字只取二字组合，减少需要求交的倒排列表
+     */
+    public static Set<String> tokenizeQuery(String keyword) {
+        Set<String> all = tokenize(keyword);
+        Set<String> terms = new LinkedHashSet<>();
+        for (String term : all) {
+            int cp = term.codePointAt(0);
+            boolean singleCjk = isCjk(cp) && term.length() == Character.charCount(cp);
+            if (!singleCjk || !hasCjkNeighbour(keyword, term)) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * 判断是否为中日韩文字（汉字、假名、谚文）
+     */
+    public static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static boolean hasCjkNeighbour(String text, String single) {
+        int idx = text.indexOf(single);
+        while (idx >= 0) {
+            int before = idx > 0 ? text.codePointBefore(idx) : -1;
+            int afterIdx = idx + single.length();
+            int after = afterIdx < text.length() ? text.codePointAt(afterIdx) : -1;
+            if ((before >= 0 && isCjk(before)) || (after >= 0 && isCjk(after))) {
+                return true;
+            }
+            idx = text.indexOf(single, afterIdx);
+        }
+        return false;
+    }
+
+    private static void flushWord(StringBuilder word, Set<String> terms) {
+        if (word.length() > 0) {
+            terms.add(word.toString());
+            word.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.easychat.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 聊天记录游标编解码
+ * 游标内容为 (create_time, id)，对外以 Base64URL 编码的不透明字符串传递
+ */
+public final class ChatCursorCodec {
+
+    private static final char SEPARATOR = '|';
+
+    private ChatCursorCodec() {
+    }
+
+    /**
+     * 编码游标
+     */
+    public static String encode(String createTime, String id) {
+        String raw = createTime + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标
+     * @return [createTime, id]
+     */
+    public static String[] decode(String cursor) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+        int idx = raw.lastIndexOf(SEPARATOR);
+        if (idx <= 0 || idx == raw.length() - 1) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+        return new String[]{raw.substring(0, idx), raw.substring(idx + 1)};
+    }
+}
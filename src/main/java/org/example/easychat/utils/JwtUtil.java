@@ -1,6 +1,7 @@
 package org.example.easychat.utils;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import lombok.extern.slf4j.Slf4j;
@@ -28,10 +29,14 @@ public class JwtUtil {
 
     private SecretKey secretKey;
 
+    // 解析器不可变且线程安全，全局复用一个
+    private JwtParser jwtParser;
+
     @PostConstruct
     public void init() {
         // 基于固定密钥构造 HMAC-SHA 密钥
         this.secretKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.jwtParser = Jwts.parserBuilder().setSigningKey(secretKey).build();
     }
 
     /**
@@ -90,22 +95,12 @@ public class JwtUtil {
     }
 
     /**
-     * 从 token 中获取所有 claim
-     * @param token
-     * @return
-     */
-    private Claims getAllClaimsFromToken(String token) {
-        return Jwts.parserBuilder().setSigningKey(secretKey).build().parseClaimsJws(token).getBody();
-    }
-
-    /**
-     * 判断 token 是否已过期
+     * 从 token 中获取所有 claim（验签并校验过期时间，失败时抛出异常）
      * @param token
      * @return
      */
-    private Boolean isTokenExpired(String token) {
-        final Date expiration = getExpirationDateFromToken(token);
-        return expiration.before(new Date());
+    public Claims getAllClaimsFromToken(String token) {
+        return jwtParser.parseClaimsJws(token).getBody();
     }
 
     /**
@@ -115,8 +110,9 @@ public class JwtUtil {
      */
     public Boolean validateToken(String token) {
         try {
-             String userId = getUserIdFromToken(token);
-            return (userId != null && !isTokenExpired(token));
+            // 只解析一次：同时取出 userId 与过期时间
+            Claims claims = getAllClaimsFromToken(token);
+            return claims.getSubject() != null && !claims.getExpiration().before(new Date());
         } catch (Exception e) {
             return false;
         }
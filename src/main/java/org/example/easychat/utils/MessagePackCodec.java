@@ -0,0 +1,236 @@
+package org.example.easychat.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * MessagePack 编解码
+ * 只覆盖 JSON 数据模型（nil、bool、整数、浮点、字符串、数组、映射），输出为标准 MessagePack，
+ * 客户端可直接使用任意 MessagePack 库解码。
+ */
+public final class MessagePackCodec {
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private MessagePackCodec() {
+    }
+
+    /**
+     * 编码 JSON 树
+     */
+    public static byte[] encode(JsonNode node) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        write(node, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码为 JSON 树
+     */
+    public static JsonNode decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        JsonNode node = read(buffer);
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("MessagePack 数据末尾有多余字节");
+        }
+        return node;
+    }
+
+    private static void write(JsonNode node, ByteArrayOutputStream out) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            out.write(0xc0);
+        } else if (node.isBoolean()) {
+            out.write(node.booleanValue() ? 0xc3 : 0xc2);
+        } else if (node.isIntegralNumber() && node.canConvertToLong()) {
+            writeLong(node.longValue(), out);
+        } else if (node.isNumber()) {
+            out.write(0xcb);
+            writeRaw(Double.doubleToLongBits(node.doubleValue()), 8, out);
+        } else if (node.isTextual()) {
+            writeString(node.textValue(), out);
+        } else if (node.isBinary()) {
+            byte[] bytes = binaryValue(node);
+            writeHeader(bytes.length, 0, 0xc4, 0xc5, 0xc6, out);
+            out.write(bytes, 0, bytes.length);
+        } else if (node.isArray()) {
+            writeHeader(node.size(), 0x90, 0, 0xdc, 0xdd, out);
+            for (JsonNode element : node) {
+                write(element, out);
+            }
+        } else if (node.isObject()) {
+            writeHeader(node.size(), 0x80, 0, 0xde, 0xdf, out);
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                writeString(field.getKey(), out);
+                write(field.getValue(), out);
+            }
+        } else {
+            writeString(node.asText(), out);
+        }
+    }
+
+    private static void writeLong(long value, ByteArrayOutputStream out) {
+        if (value >= 0 && value <= 0x7f) {
+            out.write((int) value);
+        } else if (value < 0 && value >= -32) {
+            out.write((int) value & 0xff);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            out.write(0xd0);
+            writeRaw(value, 1, out);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            out.write(0xd1);
+            writeRaw(value, 2, out);
+        } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            out.write(0xd2);
+            writeRaw(value, 4, out);
+        } else {
+            out.write(0xd3);
+            writeRaw(value, 8, out);
+        }
+    }
+
+    private static void writeString(String value, ByteArrayOutputStream out) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < 32) {
+            out.write(0xa0 | bytes.length);
+        } else {
+            writeHeader(bytes.length, 0, 0xd9, 0xda, 0xdb, out);
+        }
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 写入长度头：fix 类型（fixPrefix 非 0 且长度小于 16）、8 位、16 位或 32 位长度
+     */
+    private static void writeHeader(int length, int fixPrefix, int type8, int type16, int type32, ByteArrayOutputStream out) {
+        if (fixPrefix != 0 && length < 16) {
+            out.write(fixPrefix | length);
+        } else if (type8 != 0 && length <= 0xff) {
+            out.write(type8);
+            out.write(length);
+        } else if (length <= 0xffff) {
+            out.write(type16);
+            writeRaw(length, 2, out);
+        } else {
+            out.write(type32);
+            writeRaw(length, 4, out);
+        }
+    }
+
+    private static void writeRaw(long value, int bytes, ByteArrayOutputStream out) {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift) & 0xff);
+        }
+    }
+
+    private static JsonNode read(ByteBuffer in) {
+        int type = in.get() & 0xff;
+        if (type <= 0x7f) {
+            return NODES.numberNode(type);
+        }
+        if (type >= 0xe0) {
+            return NODES.numberNode((byte) type);
+        }
+        if ((type & 0xe0) == 0xa0) {
+            return NODES.textNode(readString(in, type & 0x1f));
+        }
+        if ((type & 0xf0) == 0x90) {
+            return readArray(in, type & 0x0f);
+        }
+        if ((type & 0xf0) == 0x80) {
+            return readMap(in, type & 0x0f);
+        }
+        switch (type) {
+            case 0xc0:
+                return NODES.nullNode();
+            case 0xc2:
+                return NODES.booleanNode(false);
+            case 0xc3:
+                return NODES.booleanNode(true);
+            case 0xc4:
+                return NODES.binaryNode(readBytes(in, in.get() & 0xff));
+            case 0xc5:
+                return NODES.binaryNode(readBytes(in, in.getShort() & 0xffff));
+            case 0xc6:
+                return NODES.binaryNode(readBytes(in, in.getInt()));
+            case 0xca:
+                return NODES.numberNode(in.getFloat());
+            case 0xcb:
+                return NODES.numberNode(in.getDouble());
+            case 0xcc:
+                return NODES.numberNode(in.get() & 0xff);
+            case 0xcd:
+                return NODES.numberNode(in.getShort() & 0xffff);
+            case 0xce:
+                return NODES.numberNode(in.getInt() & 0xffffffffL);
+            case 0xcf:
+            case 0xd3:
+                return NODES.numberNode(in.getLong());
+            case 0xd0:
+                return NODES.numberNode(in.get());
+            case 0xd1:
+                return NODES.numberNode(in.getShort());
+            case 0xd2:
+                return NODES.numberNode(in.getInt());
+            case 0xd9:
+                return NODES.textNode(readString(in, in.get() & 0xff));
+            case 0xda:
+                return NODES.textNode(readString(in, in.getShort() & 0xffff));
+            case 0xdb:
+                return NODES.textNode(readString(in, in.getInt()));
+            case 0xdc:
+                return readArray(in, in.getShort() & 0xffff);
+            case 0xdd:
+                return readArray(in, in.getInt());
+            case 0xde:
+                return readMap(in, in.getShort() & 0xffff);
+            case 0xdf:
+                return readMap(in, in.getInt());
+            default:
+                throw new IllegalArgumentException("不支持的 MessagePack 类型: 0x" + Integer.toHexString(type));
+        }
+    }
+
+    private static ArrayNode readArray(ByteBuffer in, int size) {
+        ArrayNode array = NODES.arrayNode(size);
+        for (int i = 0; i < size; i++) {
+            array.add(read(in));
+        }
+        return array;
+    }
+
+    private static ObjectNode readMap(ByteBuffer in, int size) {
+        ObjectNode object = NODES.objectNode();
+        for (int i = 0; i < size; i++) {
+            object.set(read(in).asText(), read(in));
+        }
+        return object;
+    }
+
+    private static String readString(ByteBuffer in, int length) {
+        return new String(readBytes(in, length), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer in, int length) {
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] binaryValue(JsonNode node) {
+        try {
+            return node.binaryValue();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("无法读取二进制节点", e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.example.easychat.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法 ID 生成器（无锁实现）
+ * 64 位 = 1 位符号 + 41 位毫秒时间戳 + 10 位节点ID + 12 位序列号。
+ * 时间戳与序列号合并保存在一个 AtomicLong 中通过 CAS 推进：同一毫秒内序列号用尽时直接进位到下一毫秒，
+ * 时钟回拨时沿用上次的逻辑时间继续递增，因此同一节点内生成的 ID 严格单调递增且不会阻塞等待。
+ * 节点ID由 SnowflakeNodeLease 提供（固定配置或 Redis 租约），租约失效时拒绝生成 ID。
+ */
+@Slf4j
+@Component
+public class SnowflakeIdGenerator {
+
+    // 起始时间 2024-01-01 00:00:00 UTC
+    private static final long EPOCH = 1704067200000L;
+
+    private static final int NODE_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    static final long MAX_NODE_ID = ~(-1L << NODE_ID_BITS);
+    private static final long SEQUENCE_MASK = ~(-1L << SEQUENCE_BITS);
+    private static final int TIMESTAMP_SHIFT = NODE_ID_BITS + SEQUENCE_BITS;
+
+    // 字符串形式的固定长度，补零后字典序与数值序一致
+    private static final int ID_STRING_LENGTH = 19;
+
+    @Autowired
+    private SnowflakeNodeLease nodeLease;
+
+    private long nodeId;
+
+    // 高位为相对时间戳，低 12 位为序列号
+    private final AtomicLong state = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        nodeId = nodeLease.getNodeId();
+        log.info("雪花ID生成器初始化完成: nodeId={}", nodeId);
+    }
+
+    /**
+     * 生成下一个 ID
+     */
+    public long nextId() {
+        if (!nodeLease.isValid()) {
+            throw new IllegalStateException("雪花节点ID租约已失效: nodeId=" + nodeId);
+        }
+        while (true) {
+            long now = System.currentTimeMillis() - EPOCH;
+            long prev = state.get();
+            long next;
+            if (now > (prev >>> SEQUENCE_BITS)) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                // 同一毫秒或时钟回拨：序列号递增，溢出时自然进位到时间戳部分
+                next = prev + 1;
+            }
+            if (state.compareAndSet(prev, next)) {
+                return ((next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT)
+                        | (nodeId << SEQUENCE_BITS)
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 生成下一个 ID 的字符串形式（左侧补零至 19 位）
+     */
+    public String nextIdStr() {
+        String id = Long.toString(nextId());
+        if (id.length() >= ID_STRING_LENGTH) {
+            return id;
+        }
+        StringBuilder sb = new StringBuilder(ID_STRING_LENGTH);
+        for (int i = id.length(); i < ID_STRING_LENGTH; i++) {
+            sb.append('0');
+        }
+        return sb.append(id).toString();
+    }
+
+    /**
+     * 从 ID 中解析出生成时间（毫秒时间戳）
+     */
+    public static long extractTimestamp(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+
+    /**
+     * 从 ID 中解析出节点ID
+     */
+    public static long extractNodeId(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_NODE_ID;
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.easychat.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 雪花算法节点ID租约
+ * 未配置 easychat.node-id 时，启动时在 Redis 中租用一个空闲的节点ID（chat:snowflake:node:<id>，SET NX PX），
+ * 由独立线程定期续租，保证集群内各实例的节点ID互不相同；租约丢失且无法重新取得时标记失效，由生成器拒绝生成 ID。
+ */
+@Slf4j
+@Component
+public class SnowflakeNodeLease {
+
+    public static final String NODE_LEASE_PREFIX = "chat:snowflake:node:";
+
+    // 仍持有租约时续期
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "end " +
+            "return 0", Long.class);
+
+    // 仍持有租约时释放
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('DEL', KEYS[1]) " +
+            "end " +
+            "return 0", Long.class);
+
+    // 固定节点ID，为空时从 Redis 租用
+    @Value("${easychat.node-id:}")
+    private String configuredNodeId;
+
+    // 节点ID租约时长（毫秒），每三分之一续租一次
+    @Value("${easychat.node-lease-ms:60000}")
+    private long leaseMs;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private long nodeId;
+
+    // 租约持有者标识
+    private final String leaseToken = UUID.randomUUID().toString();
+
+    private ScheduledExecutorService leaseExecutor;
+
+    private volatile boolean leaseLost;
+
+    @PostConstruct
+    public void init() {
+        if (StringUtils.isNotBlank(configuredNodeId)) {
+            nodeId = Long.parseLong(configuredNodeId.trim());
+            if (nodeId < 0 || nodeId > SnowflakeIdGenerator.MAX_NODE_ID) {
+                throw new IllegalStateException("easychat.node-id 超出范围 [0, " + SnowflakeIdGenerator.MAX_NODE_ID + "]: " + nodeId);
+            }
+            log.info("雪花节点ID: nodeId={}（固定配置）", nodeId);
+            return;
+        }
+        nodeId = acquireLease();
+        leaseExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "snowflake-node-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        leaseExecutor.scheduleWithFixedDelay(this::renewLease, leaseMs / 3, leaseMs / 3, TimeUnit.MILLISECONDS);
+        log.info("雪花节点ID: nodeId={}（Redis 租约）", nodeId);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (leaseExecutor == null) {
+            return;
+        }
+        leaseExecutor.shutdownNow();
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(NODE_LEASE_PREFIX + nodeId), leaseToken);
+        } catch (Exception e) {
+            log.warn("释放雪花节点ID租约失败: nodeId={}, error={}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * 当前节点ID
+     */
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 租约是否仍然有效（固定配置时始终有效）
+     */
+    public boolean isValid() {
+        return !leaseLost;
+    }
+
+    /**
+     * 从随机位置开始依次尝试租用空闲的节点ID
+     */
+    private long acquireLease() {
+        int start = ThreadLocalRandom.current().nextInt((int) SnowflakeIdGenerator.MAX_NODE_ID + 1);
+        for (int i = 0; i <= SnowflakeIdGenerator.MAX_NODE_ID; i++) {
+            long candidate = (start + i) & SnowflakeIdGenerator.MAX_NODE_ID;
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(NODE_LEASE_PREFIX + candidate, leaseToken, Duration.ofMillis(leaseMs));
+            if (Boolean.TRUE.equals(acquired)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("没有空闲的雪花节点ID（0-" + SnowflakeIdGenerator.MAX_NODE_ID + " 均已被占用）");
+    }
+
+    /**
+     * 续租；租约已过期时尝试重新取得同一节点ID，被其它实例占用则标记失效
+     */
+    private void renewLease() {
+        String key = NODE_LEASE_PREFIX + nodeId;
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key),
+                    leaseToken, String.valueOf(leaseMs));
+            if (renewed != null && renewed == 1L) {
+                leaseLost = false;
+                return;
+            }
+            Boolean reacquired = stringRedisTemplate.opsForValue().setIfAbsent(key, leaseToken, Duration.ofMillis(leaseMs));
+            leaseLost = !Boolean.TRUE.equals(reacquired);
+            if (leaseLost) {
+                log.error("雪花节点ID已被其它实例占用，停止生成 ID: nodeId={}", nodeId);
+            } else {
+                log.warn("雪花节点ID租约过期后已重新取得: nodeId={}", nodeId);
+            }
+        } catch (Exception e) {
+            // Redis 暂时不可用时租约仍在有效期内，下次再续
+            log.warn("雪花节点ID续租失败: nodeId={}, error={}", nodeId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+-- 会话摘要表
+-- 每个用户在每个会话上一条记录，保存最后一条消息与未读数，随消息写入增量维护，
+-- 会话列表查询不再聚合 chat_histories
+CREATE TABLE IF NOT EXISTS conversation_summaries (
+    user_id VARCHAR(19) NOT NULL COMMENT '用户ID',
+    session_id VARCHAR(19) NOT NULL COMMENT '会话ID',
+    peer_id VARCHAR(19) NOT NULL COMMENT '对方用户ID',
+    last_message_id VARCHAR(19) NULL COMMENT '最后一条消息ID',
+    last_sender_id VARCHAR(19) NULL COMMENT '最后一条消息发送者',
+    last_receiver_id VARCHAR(19) NULL COMMENT '最后一条消息接收者',
+    last_type INT NULL COMMENT '最后一条消息类型',
+    last_content TEXT NULL COMMENT '最后一条消息内容',
+    last_show_time INT NULL COMMENT '最后一条消息是否显示时间',
+    last_time DATETIME NULL COMMENT '最后一条消息时间',
+    unread_count INT NOT NULL DEFAULT 0 COMMENT '未读数',
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+
+    PRIMARY KEY (user_id, session_id),
+    KEY idx_user_last_time (user_id, last_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='会话摘要表';
+
+-- 历史数据回填（上线时执行一次）
+INSERT INTO conversation_summaries
+    (user_id, session_id, peer_id, last_message_id, last_sender_id, last_receiver_id,
+     last_type, last_content, last_show_time, last_time, unread_count)
+SELECT uf.user_id, uf.session_id, uf.friend_user_id, ch.id, ch.sender_id, ch.receiver_id,
+       ch.type, ch.content, ch.show_time, ch.create_time,
+       (SELECT COUNT(*) FROM chat_histories u
+        WHERE u.session_id = uf.session_id AND u.receiver_id = uf.user_id AND u.has_read = 0)
+FROM user_friends uf
+JOIN chat_histories ch ON ch.id = (
+    SELECT c2.id FROM chat_histories c2
+    WHERE c2.session_id = uf.session_id
+    ORDER BY c2.create_time DESC, c2.id DESC
+    LIMIT 1)
+ON DUPLICATE KEY UPDATE last_message_id = VALUES(last_message_id);
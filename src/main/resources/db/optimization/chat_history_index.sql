@@ -0,0 +1,8 @@
+-- 聊天记录游标分页索引
+-- 主要查询场景：按会话查询某条消息之前/之后的 N 条消息（ORDER BY create_time, id）
+-- 有该索引后每次翻页只需一次索引范围扫描，耗时与历史消息总量无关
+
+CREATE INDEX idx_chat_histories_session_time_id
+ON chat_histories(session_id, create_time, id);
+
+ANALYZE TABLE chat_histories;
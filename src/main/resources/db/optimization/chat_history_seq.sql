@@ -0,0 +1,17 @@
+-- 会话序号
+-- 每条单聊消息带有会话内单调递增的序号，接收方发现序号不连续时按区间补拉缺失消息
+
+ALTER TABLE chat_histories ADD COLUMN seq BIGINT NULL COMMENT '会话内序号';
+
+CREATE INDEX idx_chat_histories_session_seq
+ON chat_histories(session_id, seq);
+
+-- 历史数据回填（MySQL 8.0+，上线时执行一次）
+UPDATE chat_histories ch
+JOIN (
+    SELECT id, ROW_NUMBER() OVER (PARTITION BY session_id ORDER BY create_time, id) AS rn
+    FROM chat_histories
+) numbered ON numbered.id = ch.id
+SET ch.seq = numbered.rn;
+
+ANALYZE TABLE chat_histories;
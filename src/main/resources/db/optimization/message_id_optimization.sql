@@ -0,0 +1,11 @@
+-- 消息主键优化脚本
+-- 消息ID改由雪花算法生成（19位定长、按时间递增），新记录追加写入聚簇索引尾部，避免随机主键造成的页分裂
+
+-- 1. 单聊消息表：主键统一为19位定长字符串（补零后字典序与时间序一致）
+ALTER TABLE chat_histories MODIFY COLUMN id VARCHAR(19) NOT NULL COMMENT '消息ID（雪花算法）';
+
+-- 2. 群聊消息表：消息ID由应用生成
+ALTER TABLE group_messages MODIFY COLUMN message_id VARCHAR(19) NOT NULL COMMENT '消息ID（雪花算法）';
+
+-- 3. 通话记录表：通话ID由应用生成
+ALTER TABLE call_record MODIFY COLUMN call_id VARCHAR(64) NOT NULL COMMENT '通话ID（雪花算法）';
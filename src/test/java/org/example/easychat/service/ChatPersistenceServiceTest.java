@@ -0,0 +1,209 @@
+package org.example.easychat.service;
+
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Mapper.ChatMapper;
+import org.example.easychat.event.ChatMessagesPersistedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 写后合并提交：会话序号在刷盘线程写库前按会话连续分配，被拒绝或落库失败的消息不占用序号
+ */
+@ExtendWith(MockitoExtension.class)
+class ChatPersistenceServiceTest {
+
+    @Mock
+    private ChatMapper chatMapper;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private SessionSequenceService sessionSequenceService;
+
+    @InjectMocks
+    private ChatPersistenceService service;
+
+    // 模拟会话序号计数器
+    private final Map<String, Long> counters = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "queueCapacity", 100);
+        // 攒批等待足够长，一个用例提交的消息落在同一批
+        ReflectionTestUtils.setField(service, "flushIntervalMs", 1000L);
+        ReflectionTestUtils.setField(service, "offerTimeoutMs", 0L);
+        ReflectionTestUtils.setField(service, "maxRetries", 1);
+        ReflectionTestUtils.setField(service, "ackMode", ChatPersistenceService.ACK_MODE_COMMIT);
+
+        lenient().when(sessionSequenceService.reserve(anyString(), anyInt())).thenAnswer(invocation -> {
+            synchronized (counters) {
+                long last = counters.merge(invocation.getArgument(0), (long) invocation.<Integer>getArgument(1), Long::sum);
+                return last - invocation.<Integer>getArgument(1) + 1;
+            }
+        });
+        lenient().when(sessionSequenceService.release(anyString(), anyLong(), anyInt())).thenAnswer(invocation -> {
+            synchronized (counters) {
+                String sessionId = invocation.getArgument(0);
+                if (counters.get(sessionId) != (long) invocation.<Long>getArgument(1)) {
+                    return false;
+                }
+                counters.merge(sessionId, -(long) invocation.<Integer>getArgument(2), Long::sum);
+                return true;
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void assignsContiguousSeqsPerSessionInSubmitOrder() throws Exception {
+        start(5);
+        List<ChatHistory> messages = List.of(message("a1", "a"), message("b1", "b"), message("a2", "a"),
+                message("a3", "a"), message("b2", "b"));
+        List<CompletableFuture<ChatHistory>> futures = submitAll(messages);
+        for (CompletableFuture<ChatHistory> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(messages).extracting(ChatHistory::getSeq).containsExactly(1L, 1L, 2L, 3L, 2L);
+        verify(chatMapper).batchInsert(messages);
+        ArgumentCaptor<ChatMessagesPersistedEvent> event = ArgumentCaptor.forClass(ChatMessagesPersistedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertThat(event.getValue().getMessages()).containsExactlyElementsOf(messages);
+    }
+
+    @Test
+    void failedRowDoesNotConsumeSeqAndTailIsReleased() throws Exception {
+        doThrow(new RuntimeException("batch failed")).when(chatMapper).batchInsert(anyList());
+        doAnswer(invocation -> {
+            if ("a2".equals(invocation.<ChatHistory>getArgument(0).getId())) {
+                throw new RuntimeException("bad row");
+            }
+            return 1;
+        }).when(chatMapper).insert(any(ChatHistory.class));
+
+        start(3);
+        ChatHistory a1 = message("a1", "a");
+        ChatHistory a2 = message("a2", "a");
+        ChatHistory a3 = message("a3", "a");
+        List<CompletableFuture<ChatHistory>> futures = submitAll(List.of(a1, a2, a3));
+
+        assertThat(futures.get(0).get(5, TimeUnit.SECONDS).getSeq()).isEqualTo(1L);
+        assertThatThrownBy(() -> futures.get(1).get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThat(futures.get(2).get(5, TimeUnit.SECONDS).getSeq()).isEqualTo(2L);
+        assertThat(a2.getSeq()).isNull();
+        verify(sessionSequenceService).release("a", 3L, 1);
+        assertThat(counters.get("a")).isEqualTo(2L);
+        assertThat(service.getStats().get("seqGaps")).isEqualTo(0L);
+    }
+
+    @Test
+    void unreleasableTailIsCountedAsGap() throws Exception {
+        doThrow(new RuntimeException("batch failed")).when(chatMapper).batchInsert(anyList());
+        lenient().doAnswer(invocation -> {
+            // 逐条写入期间其他节点继续分配了序号
+            synchronized (counters) {
+                counters.merge("a", 1L, Long::sum);
+            }
+            throw new RuntimeException("bad row");
+        }).when(chatMapper).insert(argThat((ChatHistory row) -> "a2".equals(row.getId())));
+
+        start(2);
+        List<CompletableFuture<ChatHistory>> futures = submitAll(List.of(message("a1", "a"), message("a2", "a")));
+
+        assertThat(futures.get(0).get(5, TimeUnit.SECONDS).getSeq()).isEqualTo(1L);
+        assertThatThrownBy(() -> futures.get(1).get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThat(service.getStats().get("seqGaps")).isEqualTo(1L);
+    }
+
+    @Test
+    void seqReservationFailureFailsOnlyThatSession() throws Exception {
+        lenient().when(sessionSequenceService.reserve(eq("a"), anyInt())).thenThrow(new IllegalStateException("redis down"));
+        start(2);
+
+        ChatHistory a1 = message("a1", "a");
+        ChatHistory b1 = message("b1", "b");
+        List<CompletableFuture<ChatHistory>> futures = submitAll(List.of(a1, b1));
+
+        assertThatThrownBy(() -> futures.get(0).get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThat(futures.get(1).get(5, TimeUnit.SECONDS).getSeq()).isEqualTo(1L);
+        verify(chatMapper).batchInsert(List.of(b1));
+        assertThat(a1.getSeq()).isNull();
+    }
+
+    @Test
+    void rejectedMessageDoesNotReserveSeq() {
+        // 不启动刷盘线程，队列容量为 1
+        ReflectionTestUtils.setField(service, "queue", new ArrayBlockingQueue<>(1));
+        ReflectionTestUtils.setField(service, "running", true);
+
+        CompletableFuture<ChatHistory> queued = service.submit(message("a1", "a"));
+        CompletableFuture<ChatHistory> rejected = service.submit(message("a2", "a"));
+
+        assertThat(queued).isNotDone();
+        assertThatThrownBy(() -> rejected.get(1, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+        verify(sessionSequenceService, never()).reserve(anyString(), anyInt());
+        assertThat(service.getStats().get("rejected")).isEqualTo(1L);
+    }
+
+    private void start(int batchSize) {
+        ReflectionTestUtils.setField(service, "batchSize", batchSize);
+        service.start();
+    }
+
+    private List<CompletableFuture<ChatHistory>> submitAll(List<ChatHistory> messages) {
+        List<CompletableFuture<ChatHistory>> futures = new ArrayList<>();
+        for (ChatHistory message : messages) {
+            futures.add(service.submit(message));
+        }
+        return futures;
+    }
+
+    private static ChatHistory message(String id, String sessionId) {
+        ChatHistory message = new ChatHistory();
+        message.setId(id);
+        message.setSessionId(sessionId);
+        message.setSenderId("u1");
+        message.setReceiverId("u2");
+        message.setContent("hello " + id);
+        return message;
+    }
+}
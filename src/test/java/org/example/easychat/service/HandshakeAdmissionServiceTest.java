@@ -0,0 +1,135 @@
+package org.example.easychat.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 握手准入：放行数与推迟数按配置的速率、桶容量、保留额度和缓存命中上限计算
+ */
+@ExtendWith(MockitoExtension.class)
+class HandshakeAdmissionServiceTest {
+
+    private static final double RATE = 100;
+    private static final double BURST = 100;
+    private static final double VERIFIED_COST = 0.25;
+    private static final double VERIFIED_MAX_RATE = 50;
+    private static final long MIN_RETRY_MS = 500;
+    private static final long MAX_RETRY_MS = 30000;
+
+    // 避开 0 附近，推迟计数窗口按毫秒计
+    private static final long T0 = TimeUnit.SECONDS.toNanos(1000);
+
+    @Mock
+    private TokenVerificationService tokenVerificationService;
+
+    @InjectMocks
+    private HandshakeAdmissionService service;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "rate", RATE);
+        ReflectionTestUtils.setField(service, "burst", BURST);
+        ReflectionTestUtils.setField(service, "verifiedCost", VERIFIED_COST);
+        ReflectionTestUtils.setField(service, "verifiedMaxRate", VERIFIED_MAX_RATE);
+        ReflectionTestUtils.setField(service, "verifiedReserve", 0.2);
+        ReflectionTestUtils.setField(service, "minRetryMs", MIN_RETRY_MS);
+        ReflectionTestUtils.setField(service, "maxRetryMs", MAX_RETRY_MS);
+        service.init();
+        lenient().when(tokenVerificationService.isCached(anyString()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(0).startsWith("cached"));
+        lenient().when(tokenVerificationService.hasUnexpiredClaims(anyString()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(0).startsWith("unexpired"));
+    }
+
+    @Test
+    void newTokensCannotUseReservedShare() {
+        int admitted = admitAll("new", 200, T0);
+
+        assertThat(admitted).isEqualTo(80);
+        Map<String, Object> stats = service.getStats();
+        assertThat(stats.get("admittedNew")).isEqualTo(80L);
+        assertThat(stats.get("deferred")).isEqualTo(120L);
+    }
+
+    @Test
+    void unexpiredTokensAreAdmittedAtConfiguredRate() {
+        int first = admitAll("unexpired", 300, T0);
+        int second = admitAll("unexpired", 300, T0 + TimeUnit.SECONDS.toNanos(1));
+
+        assertThat(first).isEqualTo((int) BURST);
+        assertThat(second).isEqualTo((int) RATE);
+        Map<String, Object> stats = service.getStats();
+        assertThat(stats.get("admittedUnexpired")).isEqualTo(200L);
+        assertThat(stats.get("deferred")).isEqualTo(400L);
+    }
+
+    @Test
+    void unexpiredTokensMayUseReservedShare() {
+        admitAll("new", 200, T0);
+        int admitted = admitAll("unexpired", 100, T0);
+
+        assertThat(admitted).isEqualTo(20);
+    }
+
+    @Test
+    void cachedTokensAreDiscountedOnlyUpToVerifiedMaxRate() {
+        int admitted = admitAll("cached", 200, T0);
+
+        Map<String, Object> stats = service.getStats();
+        // 前 50 个按 0.25 计（共 12.5），其余按完整代价用掉剩下的 87.5
+        assertThat(stats.get("admittedVerified")).isEqualTo(50L);
+        assertThat(stats.get("admittedUnexpired")).isEqualTo(87L);
+        assertThat(admitted).isEqualTo(137);
+        assertThat(stats.get("deferred")).isEqualTo(63L);
+        verify(tokenVerificationService, never()).hasUnexpiredClaims(anyString());
+    }
+
+    @Test
+    void partialRefillAdmitsProportionally() {
+        admitAll("unexpired", 100, T0);
+        int admitted = admitAll("unexpired", 100, T0 + TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertThat(admitted).isEqualTo(50);
+    }
+
+    @Test
+    void deferredHandshakesGetRetryDelayWithinBounds() {
+        admitAll("unexpired", 100, T0);
+        for (int i = 0; i < 1000; i++) {
+            long retryAfterMs = service.admit("unexpired" + i, T0);
+            assertThat(retryAfterMs).isBetween(MIN_RETRY_MS, MAX_RETRY_MS);
+        }
+    }
+
+    @Test
+    void admissionDoesNotVerifyTokens() {
+        admitAll("new", 10, T0);
+
+        verify(tokenVerificationService, never()).verify(anyString());
+    }
+
+    private int admitAll(String prefix, int count, long now) {
+        int admitted = 0;
+        for (int i = 0; i < count; i++) {
+            if (service.admit(prefix + i, now) == 0) {
+                admitted++;
+            }
+        }
+        return admitted;
+    }
+}
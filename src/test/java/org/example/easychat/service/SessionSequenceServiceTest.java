@@ -0,0 +1,118 @@
+package org.example.easychat.service;
+
+import org.example.easychat.Mapper.ChatMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 会话序号：区间分配连续递增，计数器丢失时从库中最大序号恢复，只有计数器未被继续分配时才归还尾段
+ */
+@ExtendWith(MockitoExtension.class)
+class SessionSequenceServiceTest {
+
+    private static final String SESSION = "s1";
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private ChatMapper chatMapper;
+
+    @InjectMocks
+    private SessionSequenceService service;
+
+    // 模拟 Redis 中的计数器
+    private final Map<String, Long> counters = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any())).thenAnswer(invocation -> {
+            String script = invocation.<RedisScript<?>>getArgument(0).getScriptAsString();
+            String key = invocation.<List<String>>getArgument(1).get(0);
+            Object[] args = invocation.getArguments();
+            if (script.contains("INCRBY")) {
+                return counters.containsKey(key) ? counters.merge(key, Long.parseLong((String) args[2]), Long::sum) : -1L;
+            }
+            if (counters.containsKey(key) && counters.get(key) == Long.parseLong((String) args[2])) {
+                counters.merge(key, -Long.parseLong((String) args[3]), Long::sum);
+                return 1L;
+            }
+            return 0L;
+        });
+        lenient().when(valueOperations.setIfAbsent(anyString(), anyString()))
+                .thenAnswer(invocation -> counters.putIfAbsent(invocation.getArgument(0),
+                        Long.parseLong(invocation.getArgument(1))) == null);
+        lenient().when(valueOperations.increment(anyString(), anyLong()))
+                .thenAnswer(invocation -> counters.merge(invocation.getArgument(0), invocation.<Long>getArgument(1), Long::sum));
+    }
+
+    @Test
+    void reservesContiguousRanges() {
+        assertThat(service.reserve(SESSION, 2)).isEqualTo(1);
+        assertThat(service.reserve(SESSION, 3)).isEqualTo(3);
+        assertThat(service.next(SESSION)).isEqualTo(6);
+    }
+
+    @Test
+    void recoversMissingCounterFromMaxPersistedSeq() {
+        when(chatMapper.getMaxSeq(SESSION)).thenReturn(41L);
+
+        assertThat(service.reserve(SESSION, 3)).isEqualTo(42);
+        assertThat(service.next(SESSION)).isEqualTo(45);
+        verify(chatMapper, times(1)).getMaxSeq(SESSION);
+    }
+
+    @Test
+    void releasesUnusedTailWhenNobodyAllocatedSince() {
+        long first = service.reserve(SESSION, 3);
+
+        assertThat(service.release(SESSION, first + 2, 1)).isTrue();
+        assertThat(service.next(SESSION)).isEqualTo(3);
+    }
+
+    @Test
+    void keepsGapWhenCounterMovedOn() {
+        long first = service.reserve(SESSION, 3);
+        service.next(SESSION);
+
+        assertThat(service.release(SESSION, first + 2, 1)).isFalse();
+        assertThat(service.next(SESSION)).isEqualTo(5);
+    }
+
+    @Test
+    void releasingNothingIsNoop() {
+        assertThat(service.release(SESSION, 7, 0)).isTrue();
+    }
+
+    @Test
+    void rejectsBlankSessionAndEmptyRange() {
+        assertThatThrownBy(() -> service.reserve(" ", 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.reserve(SESSION, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
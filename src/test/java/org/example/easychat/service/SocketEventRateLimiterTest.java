@@ -0,0 +1,179 @@
+package org.example.easychat.service;
+
+import com.corundumstudio.socketio.Transport;
+import com.corundumstudio.socketio.handler.ClientHead;
+import com.corundumstudio.socketio.messages.PacketsMessage;
+import com.corundumstudio.socketio.protocol.Packet;
+import com.corundumstudio.socketio.store.MemoryStore;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Socket 事件限流：按会话 + 事件的令牌桶放行、丢弃与确认，轮询负载只去掉超限的包
+ */
+@ExtendWith(MockitoExtension.class)
+class SocketEventRateLimiterTest {
+
+    // 补充速率极低，测试期间的补充可以忽略，放行数等于桶容量
+    private static final String RULES = "sendMsg:0.001:3,markRead:0.001:1,*:0.001:2";
+
+    @Mock
+    private ClientHead client;
+
+    private SocketEventRateLimiter limiter;
+
+    private EmbeddedChannel channel;
+
+    // 限流器之后收到的负载（在 channelRead 内同步读取，限流器转发的新缓冲随后即被释放）
+    private final List<String> passed = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        limiter = new SocketEventRateLimiter();
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        ReflectionTestUtils.setField(limiter, "ruleConfig", RULES);
+        ReflectionTestUtils.setField(limiter, "maxViolations", 5);
+        ReflectionTestUtils.setField(limiter, "violationWindowMs", 10000L);
+        limiter.init();
+        channel = new EmbeddedChannel((ChannelHandler) ReflectionTestUtils.getField(limiter, "handler"),
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        passed.add(((PacketsMessage) msg).getContent().toString(StandardCharsets.UTF_8));
+                    }
+                });
+
+        MemoryStore store = new MemoryStore();
+        lenient().when(client.getStore()).thenReturn(store);
+        lenient().when(client.getSessionId()).thenReturn(UUID.randomUUID());
+    }
+
+    @Test
+    void eventsBeyondBucketCapacityAreDropped() {
+        for (int i = 0; i < 5; i++) {
+            channel.writeInbound(message("42[\"sendMsg\",{}]", Transport.WEBSOCKET));
+        }
+
+        assertThat(passed).hasSize(3);
+        Map<String, Object> stats = limiter.getStats();
+        assertThat(stats.get("allowed")).isEqualTo(3L);
+        assertThat(stats.get("dropped")).isEqualTo(2L);
+        assertThat(((Map<?, ?>) stats.get("droppedByRule")).get("sendMsg")).isEqualTo(2L);
+    }
+
+    @Test
+    void bucketsAreKeptPerEvent() {
+        channel.writeInbound(message("42[\"markRead\",{}]", Transport.WEBSOCKET));
+        channel.writeInbound(message("42[\"markRead\",{}]", Transport.WEBSOCKET));
+        channel.writeInbound(message("42[\"sendMsg\",{}]", Transport.WEBSOCKET));
+        // 未单独配置的事件共用默认规则
+        channel.writeInbound(message("42[\"typing\",{}]", Transport.WEBSOCKET));
+        channel.writeInbound(message("42[\"getProfile\",{}]", Transport.WEBSOCKET));
+        channel.writeInbound(message("42[\"typing\",{}]", Transport.WEBSOCKET));
+
+        assertThat(passed).containsExactly(
+                "42[\"markRead\",{}]", "42[\"sendMsg\",{}]", "42[\"typing\",{}]", "42[\"getProfile\",{}]");
+    }
+
+    @Test
+    void droppedEventWithAckIdIsAnsweredRateLimited() {
+        channel.writeInbound(message("42[\"markRead\",{}]", Transport.WEBSOCKET));
+        channel.writeInbound(message("4217[\"markRead\",{}]", Transport.WEBSOCKET));
+
+        ArgumentCaptor<Packet> ack = ArgumentCaptor.forClass(Packet.class);
+        verify(client).send(ack.capture());
+        assertThat(ack.getValue().getAckId()).isEqualTo(17L);
+        assertThat((List<?>) ack.getValue().getData()).containsExactly(SocketEventRateLimiter.RATE_LIMITED_ACK);
+        assertThat(limiter.getStats().get("rateLimitedAcks")).isEqualTo(1L);
+    }
+
+    @Test
+    void droppedEventWithoutAckIdIsNotAnswered() {
+        channel.writeInbound(message("42[\"markRead\",{}]", Transport.WEBSOCKET));
+        channel.writeInbound(message("42[\"markRead\",{}]", Transport.WEBSOCKET));
+
+        verify(client, never()).send(any(Packet.class));
+    }
+
+    @Test
+    void nonEventPacketsAreNotLimited() {
+        for (int i = 0; i < 10; i++) {
+            channel.writeInbound(message("2", Transport.WEBSOCKET));
+            channel.writeInbound(message("43[\"ok\"]", Transport.WEBSOCKET));
+        }
+
+        assertThat(passed).hasSize(20);
+        assertThat(limiter.getStats().get("dropped")).isEqualTo(0L);
+    }
+
+    @Test
+    void pollingPayloadKeepsOnlyAllowedPackets() {
+        String packet = "42[\"sendMsg\",{\"c\":\"你好\"}]";
+        String framed = packet.length() + ":" + packet;
+        channel.writeInbound(message(framed.repeat(5) + "1:2", Transport.POLLING));
+
+        // 前 3 个 sendMsg 和心跳包原样保留（含长度前缀），后 2 个 sendMsg 被去掉
+        assertThat(passed).containsExactly(framed.repeat(3) + "1:2");
+        assertThat(limiter.getStats().get("dropped")).isEqualTo(2L);
+    }
+
+    @Test
+    void pollingPayloadLongerThan64PacketsKeepsOnlyAllowedPackets() {
+        String packet = "42[\"sendMsg\",{}]";
+        String framed = packet.length() + ":" + packet;
+        // 被丢弃的第 68、69 个包超出位图的 64 位
+        channel.writeInbound(message("1:2".repeat(64) + framed.repeat(5) + "1:2", Transport.POLLING));
+
+        assertThat(passed).containsExactly("1:2".repeat(64) + framed.repeat(3) + "1:2");
+        assertThat(limiter.getStats().get("dropped")).isEqualTo(2L);
+    }
+
+    @Test
+    void pollingPayloadWithEveryPacketDroppedIsSwallowed() {
+        channel.writeInbound(message("42[\"markRead\",{}]", Transport.WEBSOCKET));
+        String packet = "42[\"markRead\",{}]";
+        channel.writeInbound(message((packet.length() + ":" + packet).repeat(2), Transport.POLLING));
+
+        assertThat(passed).containsExactly(packet);
+    }
+
+    @Test
+    void persistentViolatorIsDisconnected() {
+        for (int i = 0; i < 6; i++) {
+            channel.writeInbound(message("42[\"markRead\",{}]", Transport.WEBSOCKET));
+        }
+        verify(client, never()).disconnect();
+
+        // 1 条放行，第 2 到第 7 条违规，第 7 条时违规数 6 超过上限 5
+        channel.writeInbound(message("42[\"markRead\",{}]", Transport.WEBSOCKET));
+        verify(client, times(1)).disconnect();
+        assertThat(limiter.getStats().get("disconnected")).isEqualTo(1L);
+    }
+
+    private PacketsMessage message(String payload, Transport transport) {
+        return new PacketsMessage(client, Unpooled.copiedBuffer(payload, StandardCharsets.UTF_8), transport);
+    }
+}
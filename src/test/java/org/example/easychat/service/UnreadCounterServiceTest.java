@@ -0,0 +1,246 @@
+package org.example.easychat.service;
+
+import org.example.easychat.Entity.ChatHistory;
+import org.example.easychat.Entity.ConversationSummary;
+import org.example.easychat.Handler.BusinessException;
+import org.example.easychat.Mapper.ChatMapper;
+import org.example.easychat.Mapper.ConversationSummaryMapper;
+import org.example.easychat.event.MessagesReadEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 未读计数：缓存命中时续期读取，未加载时在串行执行器上从摘要表重建，落库累加与已读扣减按实际行数增减
+ */
+@ExtendWith(MockitoExtension.class)
+class UnreadCounterServiceTest {
+
+    private static final String KEY = UnreadCounterService.UNREAD_PREFIX + "u1";
+    private static final long TTL_SECONDS = 3600;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private ChatMapper chatMapper;
+
+    @Mock
+    private ConversationSummaryMapper conversationSummaryMapper;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private UnreadCounterService service;
+
+    // 每次执行脚本的 KEYS 与 ARGV
+    private final List<List<String>> scriptKeys = new ArrayList<>();
+    private final List<List<Object>> scriptArgs = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // 串行执行器在调用线程上直接执行
+        setExecutor(Runnable::run);
+        ReflectionTestUtils.setField(service, "cacheTtlSeconds", TTL_SECONDS);
+        ReflectionTestUtils.setField(service, "rebuildTimeoutMs", 1000L);
+
+        lenient().doReturn(hashOperations).when(stringRedisTemplate).opsForHash();
+        lenient().when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any())).thenAnswer(invocation -> {
+            Object[] arguments = invocation.getArguments();
+            scriptKeys.add(invocation.getArgument(1));
+            scriptArgs.add(Arrays.asList(arguments).subList(2, arguments.length));
+            return 1L;
+        });
+    }
+
+    @Test
+    void loadedHashIsReadAndTtlRefreshed() {
+        Map<Object, Object> entries = new HashMap<>();
+        entries.put("_loaded", "1");
+        entries.put("s1", "3");
+        entries.put("s2", "0");
+        // 扣减先于累加到达时计数可能短暂为负
+        entries.put("s3", "-1");
+        when(hashOperations.entries(KEY)).thenReturn(entries);
+
+        assertThat(service.getUnreadCounts("u1")).containsExactly(Map.entry("s1", 3));
+        verify(stringRedisTemplate).expire(KEY, Duration.ofSeconds(TTL_SECONDS));
+        verify(conversationSummaryMapper, never()).selectByUserId(anyString());
+    }
+
+    @Test
+    void missingHashIsRebuiltFromSummaries() {
+        when(hashOperations.entries(KEY)).thenReturn(Collections.emptyMap());
+        when(conversationSummaryMapper.selectByUserId("u1"))
+                .thenReturn(List.of(summary("u1", "s1", 2), summary("u1", "s2", 0)));
+
+        assertThat(service.getUnreadCounts("u1")).containsExactly(Map.entry("s1", 2));
+        verify(stringRedisTemplate).delete(KEY);
+        verify(hashOperations).putAll(KEY, Map.of("s1", "2", "s2", "0", "_loaded", "1"));
+        verify(stringRedisTemplate).expire(KEY, Duration.ofSeconds(TTL_SECONDS));
+        assertThat(service.getStats().get("rebuilds")).isEqualTo(1L);
+    }
+
+    @Test
+    void rebuildTimeoutFallsBackToSummaries() {
+        // 串行执行器一直繁忙，重建任务不会执行
+        setExecutor(task -> { });
+        ReflectionTestUtils.setField(service, "rebuildTimeoutMs", 50L);
+        when(hashOperations.entries(KEY)).thenReturn(Collections.emptyMap());
+        when(conversationSummaryMapper.selectByUserId("u1")).thenReturn(List.of(summary("u1", "s1", 4)));
+
+        assertThat(service.getUnreadCounts("u1")).containsExactly(Map.entry("s1", 4));
+        verify(hashOperations, never()).putAll(anyString(), any());
+        assertThat(service.getStats().get("rebuildTimeouts")).isEqualTo(1L);
+    }
+
+    @Test
+    void blankUserIsRejected() {
+        assertThatThrownBy(() -> service.getUnreadCounts(" ")).isInstanceOf(BusinessException.class);
+    }
+
+    @Test
+    void persistedSummariesIncrementOnlyPositiveCounts() {
+        service.applyPersisted(List.of(summary("u2", "s1", 1), summary("u2", "s1", 2), summary("u3", "s2", 0)));
+
+        assertThat(scriptKeys).containsExactly(List.of(UnreadCounterService.UNREAD_PREFIX + "u2"));
+        assertThat(scriptArgs).containsExactly(List.of("s1", "3"));
+    }
+
+    @Test
+    void persistedSummariesWithoutUnreadSkipRedis() {
+        service.applyPersisted(List.of(summary("u2", "s1", 0)));
+
+        assertThat(scriptKeys).isEmpty();
+    }
+
+    @Test
+    void failedIncrementInvalidatesHashes() {
+        doThrow(new IllegalStateException("redis down"))
+                .when(stringRedisTemplate).execute(any(RedisScript.class), anyList(), any());
+
+        service.applyPersisted(List.of(summary("u2", "s1", 1)));
+
+        verify(stringRedisTemplate).delete(List.of(UnreadCounterService.UNREAD_PREFIX + "u2"));
+    }
+
+    @Test
+    void readFlushDecrementsByMarkedRowsAndPublishesReceipt() {
+        when(chatMapper.getChatHistoryById("m9")).thenReturn(message("m9", "s1", "u2", "u1"));
+        when(chatMapper.markReadUpTo("s1", "u1", "2026-01-01 00:00:09", "m9")).thenReturn(2);
+
+        // 同一会话只保留最后一次已读位置
+        service.markReadUpTo("u1", "s1", "m8");
+        service.markReadUpTo("u1", "s1", "m9");
+        service.flushReads();
+
+        verify(chatMapper, never()).getChatHistoryById("m8");
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ConversationSummary>> corrections = ArgumentCaptor.forClass(List.class);
+        verify(conversationSummaryMapper).batchDecrementUnread(corrections.capture());
+        assertThat(corrections.getValue()).extracting(ConversationSummary::getUnreadCount).containsExactly(2);
+        assertThat(scriptKeys).containsExactly(List.of(KEY));
+        assertThat(scriptArgs).containsExactly(List.of("s1", "-2"));
+
+        ArgumentCaptor<MessagesReadEvent> event = ArgumentCaptor.forClass(MessagesReadEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertThat(event.getValue().getReaderId()).isEqualTo("u1");
+        assertThat(event.getValue().getPeerId()).isEqualTo("u2");
+        assertThat(event.getValue().getUpToMessageId()).isEqualTo("m9");
+        assertThat(service.getStats().get("pendingReads")).isEqualTo(0);
+    }
+
+    @Test
+    void alreadyReadPositionOnlyPublishesReceipt() {
+        when(chatMapper.getChatHistoryById("m9")).thenReturn(message("m9", "s1", "u2", "u1"));
+        when(chatMapper.markReadUpTo("s1", "u1", "2026-01-01 00:00:09", "m9")).thenReturn(0);
+
+        service.markReadUpTo("u1", "s1", "m9");
+        service.flushReads();
+
+        verify(conversationSummaryMapper, never()).batchDecrementUnread(anyList());
+        assertThat(scriptKeys).isEmpty();
+        verify(eventPublisher).publishEvent(any(MessagesReadEvent.class));
+    }
+
+    @Test
+    void positionFromAnotherSessionIsIgnored() {
+        when(chatMapper.getChatHistoryById("m9")).thenReturn(message("m9", "s2", "u2", "u1"));
+
+        service.markReadUpTo("u1", "s1", "m9");
+        service.flushReads();
+
+        verify(chatMapper, never()).markReadUpTo(anyString(), anyString(), anyString(), anyString());
+        verify(eventPublisher, never()).publishEvent(any(MessagesReadEvent.class));
+    }
+
+    @Test
+    void failedDecrementInCacheInvalidatesHash() {
+        when(chatMapper.getChatHistoryById("m9")).thenReturn(message("m9", "s1", "u2", "u1"));
+        when(chatMapper.markReadUpTo("s1", "u1", "2026-01-01 00:00:09", "m9")).thenReturn(1);
+        doThrow(new IllegalStateException("redis down"))
+                .when(stringRedisTemplate).execute(any(RedisScript.class), anyList(), any());
+
+        service.markReadUpTo("u1", "s1", "m9");
+        service.flushReads();
+
+        verify(conversationSummaryMapper).batchDecrementUnread(anyList());
+        verify(stringRedisTemplate).delete(List.of(KEY));
+    }
+
+    private void setExecutor(Executor executor) {
+        ReflectionTestUtils.setField(service, "summaryEventExecutor", executor);
+    }
+
+    private static ConversationSummary summary(String userId, String sessionId, int unreadCount) {
+        ConversationSummary summary = new ConversationSummary();
+        summary.setUserId(userId);
+        summary.setSessionId(sessionId);
+        summary.setUnreadCount(unreadCount);
+        return summary;
+    }
+
+    private static ChatHistory message(String id, String sessionId, String senderId, String receiverId) {
+        ChatHistory message = new ChatHistory();
+        message.setId(id);
+        message.setSessionId(sessionId);
+        message.setSenderId(senderId);
+        message.setReceiverId(receiverId);
+        message.setCreateTime("2026-01-01 00:00:09");
+        return message;
+    }
+}